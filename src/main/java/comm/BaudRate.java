@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+/**
+ * The standard baud rates recognized on at least one platform. Which of these 
+ * a port actually supports is described by the platform's 
+ * {@link SerialPorts#getPlatformBaudRateCapabilities() capabilities}.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public enum BaudRate {
+	  B0            (0)
+	, B50           (50)
+	, B75           (75)
+	, B110          (110)
+	, B134          (134)
+	, B150          (150)
+	, B200          (200)
+	, B300          (300)
+	, B600          (600)
+	, B1200         (1200)
+	, B1800         (1800)
+	, B2400         (2400)
+	, B4800         (4800)
+	, B7200         (7200)
+	, B9600         (9600)
+	, B14400        (14400)
+	, B19200        (19200)
+	, B28800        (28800)
+	, B38400        (38400)
+	, B57600        (57600)
+	, B76800        (76800)
+	, B115200       (115200)
+	, B230400       (230400)
+	, B460800       (460800)
+	, B500000       (500000)
+	, B576000       (576000)
+	, B921600       (921600)
+	, B1000000      (1000000)
+	, B1152000      (1152000)
+	, B1500000      (1500000)
+	, B2000000      (2000000)
+	, B2500000      (2500000)
+	, B3000000      (3000000)
+	, B3500000      (3500000)
+	, B4000000      (4000000)
+	;
+	
+	//<editor-fold defaultstate="collapsed" desc="Lookup">
+	/**
+	 * Open addressed table from rate to constant so {@link #fromValue(int)} 
+	 * doesn't have to scan.
+	 */
+	private static final int TABLE_SIZE = 128;
+	private static final int[] keys = new int[TABLE_SIZE];
+	private static final BaudRate[] slots = new BaudRate[TABLE_SIZE];
+	
+	static {
+		for(BaudRate e : values()) {
+			int i = slot(e.value);
+			while(slots[i] != null)
+				i = (i + 1) & (TABLE_SIZE - 1);
+			keys[i] = e.value;
+			slots[i] = e;
+		}
+	}
+	
+	private static int slot(int value) {
+		int h = value * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (TABLE_SIZE - 1);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private final int value;
+	
+	private BaudRate(int value) {
+		this.value = value;
+	}
+	
+	public int getValue() {
+		return value;
+	}
+	
+	public static int toValue(BaudRate value) {
+		return value.value;
+	}
+	
+	/**
+	 * @return The matching standard rate or null if the rate isn't a standard one.
+	 */
+	public static BaudRate fromValue(int value) {
+		for(int i = slot(value); slots[i] != null; i = (i + 1) & (TABLE_SIZE - 1))
+			if (keys[i] == value)
+				return slots[i];
+		return null;
+	}
+	
+	public static boolean isStandard(int value) {
+		return fromValue(value) != null;
+	}
+	//</editor-fold>
+}
@@ -46,6 +46,9 @@ public interface CommPort extends ICommPort {
 	public static interface ErrorListener extends ICommPort.IErrorListener {
 	}
 	
+	public static interface LineListener extends ICommPort.ILineListener {
+	}
+	
 	public static abstract class ReadListenerAdapter extends ICommPort.ReadListenerAdapter {
 	}
 	
@@ -54,5 +57,8 @@ public interface CommPort extends ICommPort {
 	
 	public static abstract class ErrorListenerAdapter extends ICommPort.ErrorListenerAdapter {
 	}
+	
+	public static abstract class LineListenerAdapter extends ICommPort.LineListenerAdapter {
+	}
 	//</editor-fold>
 }
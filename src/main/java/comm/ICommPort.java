@@ -35,6 +35,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
+import java.util.Map;
 
 /**
  * Provides generic access to system communication ports.
@@ -73,6 +74,11 @@ public interface ICommPort extends IDisposable {
 		  DEFAULT_CHARSET = Charset.forName("ASCII") 
 	;
 	
+	/**
+	 * Shared, stateful encoder. It is not thread safe -- prefer 
+	 * {@link #print(java.lang.CharSequence, java.nio.charset.Charset)} which 
+	 * does not need one.
+	 */
 	public static final CharsetEncoder 
 		  DEFAULT_CHARSET_ENCODER = (
 			DEFAULT_CHARSET.newEncoder()
@@ -81,6 +87,10 @@ public interface ICommPort extends IDisposable {
 		)
 	;
 	
+	/**
+	 * Shared, stateful decoder. It is not thread safe -- prefer an 
+	 * {@link ILineListener} which decodes using per-port state.
+	 */
 	public static final CharsetDecoder 
 		  DEFAULT_CHARSET_DECODER = (
 			DEFAULT_CHARSET.newDecoder()
@@ -103,6 +113,14 @@ public interface ICommPort extends IDisposable {
 		void exceptionCaught(Throwable exc);
 	}
 	
+	/**
+	 * Receives complete lines of text decoded using the port's charset. Decoding 
+	 * state is kept per port so no external synchronization is needed.
+	 */
+	public static interface ILineListener {
+		void lineRead(String line);
+	}
+	
 	public static abstract class ReadListenerAdapter implements IReadListener {
 		@Override
 		public void bytesRead(ByteBuffer buffer, int offset, int length) {
@@ -124,6 +142,12 @@ public interface ICommPort extends IDisposable {
 		public void exceptionCaught(Throwable exc) {
 		}
 	}
+	
+	public static abstract class LineListenerAdapter implements ILineListener {
+		@Override
+		public void lineRead(String line) {
+		}
+	}
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Listeners">
@@ -144,6 +168,12 @@ public interface ICommPort extends IDisposable {
 	boolean addErrorListener(IErrorListener listener);
 	boolean removeErrorListener(IErrorListener listener);
 	boolean clearErrorListeners();
+	
+	boolean hasLineListeners();
+	boolean hasLineListener(ILineListener listener);
+	boolean addLineListener(ILineListener listener);
+	boolean removeLineListener(ILineListener listener);
+	boolean clearLineListeners();
 	//</editor-fold>
 	
 	String getName();
@@ -152,9 +182,30 @@ public interface ICommPort extends IDisposable {
 	boolean isOpen();
 	boolean isOwned();
 	String getOwner();
+	
+	/**
+	 * Marks the port as owned by the given party. Succeeds if the port is 
+	 * unowned or already owned by the same party.
+	 */
+	boolean claimOwnership(String owner);
+	
+	/**
+	 * Gives up ownership. Fails if the port is owned by someone else.
+	 */
+	boolean releaseOwnership(String owner);
 	boolean isAvailable();
 	PortType getPortType();
 	Object getLock();
+	Charset getCharset();
+	boolean setCharset(Charset charset);
+	
+	/**
+	 * Platform specific details about the port and how the driver has been 
+	 * tuned, such as the Linux latency settings.
+	 * 
+	 * @return A read-only snapshot. Empty if there's nothing to report.
+	 */
+	Map<String, String> getProperties();
 	
 	boolean println();
 	boolean println(CharSequence value);
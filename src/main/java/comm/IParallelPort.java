@@ -39,6 +39,27 @@ public interface IParallelPort extends ICommPort {
 	 * Describes a state where no parallel ports are available on the system.
 	 */
 	public static final IParallelPort[] EMPTY_PARALLEL_PORTS = { };
+	
+	/**
+	 * Control register bits, as in linux/parport.h.
+	 */
+	public static final int 
+		  CONTROL_STROBE    = 0x01
+		, CONTROL_AUTOFD    = 0x02
+		, CONTROL_INIT      = 0x04
+		, CONTROL_SELECT    = 0x08
+	;
+	
+	/**
+	 * Status register bits, as in linux/parport.h.
+	 */
+	public static final int 
+		  STATUS_ERROR      = 0x08
+		, STATUS_SELECT     = 0x10
+		, STATUS_PAPEROUT   = 0x20
+		, STATUS_ACK        = 0x40
+		, STATUS_BUSY       = 0x80
+	;
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Interfaces">
@@ -49,4 +70,23 @@ public interface IParallelPort extends ICommPort {
 	
 	boolean configure(IConfiguration configuration);
 	boolean configure();
+	
+	/**
+	 * @return The STATUS_* lines, or -1 if the port isn't open or the 
+	 * platform can't read them.
+	 */
+	int readStatus();
+	boolean writeData(int value);
+	boolean writeControl(int value);
+	
+	boolean run(ParallelSequence sequence);
+	
+	/**
+	 * Runs every step of the sequence while holding the port.
+	 * 
+	 * @param status Receives each readStatus() step in order. May be null if 
+	 * the sequence doesn't read the status.
+	 * @return False if a step failed or a waitStatus() step timed out.
+	 */
+	boolean run(ParallelSequence sequence, byte[] status);
 }
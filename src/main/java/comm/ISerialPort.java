@@ -110,6 +110,51 @@ public interface ISerialPort extends ICommPort {
 	 * XON/XOFF flow control on output.
 	 */
 	public static final int FLOWCONTROL_XONXOFF_OUT = 8;
+	
+	/**
+	 * Modem lines as reported by {@link #getModemStatus()} and {@link IModemListener}. 
+	 * CTS, DSR, RING and DCD are inputs; RTS and DTR are outputs.
+	 */
+	public static final int 
+		  MODEM_CTS                 = 0x01
+		, MODEM_DSR                 = 0x02
+		, MODEM_RING                = 0x04
+		, MODEM_DCD                 = 0x08
+		, MODEM_RTS                 = 0x10
+		, MODEM_DTR                 = 0x20
+	;
+	
+	/**
+	 * Line errors as reported by {@link IModemListener#lineErrors(int)}.
+	 */
+	public static final int 
+		  LINE_ERROR_OVERRUN        = 0x01
+		, LINE_ERROR_PARITY         = 0x02
+		, LINE_ERROR_FRAMING        = 0x04
+		, LINE_ERROR_RX_OVERFLOW    = 0x08
+	;
+	
+	/**
+	 * Names of properties reported by {@link #getProperties()}.
+	 */
+	public static final String 
+		  PROPERTY_LATENCY_PROFILE  = "latency.profile"
+		, PROPERTY_LOW_LATENCY      = "latency.lowLatency"
+		, PROPERTY_VMIN             = "latency.vmin"
+		, PROPERTY_VTIME            = "latency.vtime"
+		, PROPERTY_LATENCY_TIMER    = "latency.timer"
+		, PROPERTY_RS485_MODE       = "rs485.mode"
+	;
+	
+	/**
+	 * Values of {@link #PROPERTY_RS485_MODE}: the driver switches RTS itself, 
+	 * or the library raises RTS before writing and drops it once the 
+	 * transmitter reports empty.
+	 */
+	public static final String 
+		  RS485_MODE_DRIVER         = "driver"
+		, RS485_MODE_RTS_TOGGLE     = "rts-toggle"
+	;
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Interfaces">
@@ -119,19 +164,142 @@ public interface ISerialPort extends ICommPort {
 		StopBits getStopBits();
 		Parity getParity();
 	}
+	
+	/**
+	 * Receives modem line changes, breaks and line errors as the driver reports 
+	 * them, so handshake lines don't have to be polled.
+	 */
+	public static interface IModemListener {
+		/**
+		 * @param changed The MODEM_* input lines that changed.
+		 * @param status The state of every MODEM_* line after the change.
+		 */
+		void modemLinesChanged(int changed, int status);
+		void breakReceived();
+		
+		/**
+		 * @param errors A combination of LINE_ERROR_* flags.
+		 */
+		void lineErrors(int errors);
+	}
+	
+	public static abstract class ModemListenerAdapter implements IModemListener {
+		@Override
+		public void modemLinesChanged(int changed, int status) {
+		}
+		
+		@Override
+		public void breakReceived() {
+		}
+		
+		@Override
+		public void lineErrors(int errors) {
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Listeners">
+	boolean hasModemListeners();
+	boolean hasModemListener(IModemListener listener);
+	boolean addModemListener(IModemListener listener);
+	boolean removeModemListener(IModemListener listener);
+	boolean clearModemListeners();
 	//</editor-fold>
 	
 	int getBaudRate();
+	
+	/**
+	 * @return The rate the driver reports it's actually using, which can differ 
+	 * from {@link #getBaudRate()} when the requested rate isn't an exact divisor 
+	 * of the UART clock. Same as the requested rate when the port is closed or 
+	 * the driver doesn't say.
+	 */
+	int getActualBaudRate();
 	DataBits getDataBits();
 	StopBits getStopBits();
 	Parity getParity();
 	FlowControl[] getFlowControl();
 	int getFlowControlFlag();
 	
+	/**
+	 * @return The current baud rate, framing and flow control as one snapshot.
+	 */
+	LineSettings getLineSettings();
+	
 	boolean configure(IConfiguration configuration);
 	boolean configure(int baudRate, int dataBits, int stopBits, int parity);
 	boolean configure(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity);
 	
 	boolean changeFlowControl(int flag);
 	boolean changeFlowControl(FlowControl...flowControl);
+	
+	/**
+	 * @return The MODEM_* lines that are currently asserted, or -1 if the port 
+	 * is closed or the driver can't say.
+	 */
+	int getModemStatus();
+	
+	/**
+	 * Asserts (true) or clears (false) RTS. Fails if RTS is under hardware flow control.
+	 */
+	boolean setRTS(boolean state);
+	
+	/**
+	 * Asserts (true) or clears (false) DTR.
+	 */
+	boolean setDTR(boolean state);
+	
+	/**
+	 * Starts (true) or stops (false) sending a break.
+	 */
+	boolean setBreak(boolean state);
+	
+	/**
+	 * Throws away bytes that have been received but not yet delivered to the 
+	 * read listeners, along with any partly decoded line.
+	 */
+	boolean purgeInput();
+	
+	/**
+	 * @return The RS-485 settings in use, or null if RS-485 is off.
+	 */
+	RS485Settings getRS485Settings();
+	
+	/**
+	 * Turns on RS-485 transmit enable, or turns it off if settings is null. 
+	 * The driver's own RS-485 support is used where there is one; otherwise 
+	 * RTS is toggled around each write, which isn't possible while RTS is 
+	 * under hardware flow control. Which one is in use is reported through 
+	 * {@link #PROPERTY_RS485_MODE}.
+	 */
+	boolean setRS485Settings(RS485Settings settings);
+	
+	/**
+	 * @return The read timing in use, or null for the platform default of 
+	 * reading whatever has arrived as soon as it arrives.
+	 */
+	ReadTiming getReadTiming();
+	
+	/**
+	 * Lets the driver hold received bytes until the line has gone quiet, so 
+	 * that a gap-delimited frame is delivered in one read. Null goes back to the platform default. Takes effect 
+	 * immediately if the port is open and otherwise when it's opened.
+	 */
+	boolean setReadTiming(ReadTiming timing);
+	
+	LatencyProfile getLatencyProfile();
+	
+	/**
+	 * Tunes the driver for latency or efficiency. Takes effect immediately if 
+	 * the port is open and otherwise when it's opened. What was actually 
+	 * applied is reported through {@link #getProperties()}.
+	 */
+	boolean setLatencyProfile(LatencyProfile profile);
+	
+	/**
+	 * Applies every change in the builder together. When the port is open the 
+	 * settings are pushed to the driver in one call, and not at all if they 
+	 * match what was last applied.
+	 */
+	boolean reconfigure(LineSettings.Builder changes);
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+/**
+ * How a serial port trades latency for efficiency.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public enum LatencyProfile {
+	  /**
+	   * Leave the driver's buffering as it is.
+	   */
+	  STANDARD
+	  /**
+	   * Hand each byte up as soon as it arrives. On Linux this sets 
+	   * ASYNC_LOW_LATENCY, wakes readers on the first byte (VMIN 1, VTIME 0) 
+	   * and lowers the FTDI latency timer where there is one.
+	   */
+	, LOW_LATENCY
+	;
+	
+	public static LatencyProfile getDefault() {
+		return STANDARD;
+	}
+}
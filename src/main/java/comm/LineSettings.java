@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+/**
+ * An immutable snapshot of a serial port's line settings: baud rate, framing, 
+ * flow control and read timing.
+ * 
+ * Use a {@link Builder} with {@link ISerialPort#reconfigure(comm.LineSettings.Builder)} 
+ * to change several settings at once. Only the settings given to the builder 
+ * are changed; everything else keeps its current value.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class LineSettings implements ISerialPort.IConfiguration {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final int baudRate;
+	private final DataBits dataBits;
+	private final StopBits stopBits;
+	private final Parity parity;
+	private final int flowControlFlag;
+	private final ReadTiming readTiming;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public LineSettings(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity, int flowControlFlag) {
+		this(baudRate, dataBits, stopBits, parity, flowControlFlag, null);
+	}
+	
+	/**
+	 * @param readTiming Null for the platform default.
+	 */
+	public LineSettings(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity, int flowControlFlag, ReadTiming readTiming) {
+		if (dataBits == null)
+			throw new IllegalArgumentException("dataBits cannot be null");
+		if (stopBits == null)
+			throw new IllegalArgumentException("stopBits cannot be null");
+		if (parity == null)
+			throw new IllegalArgumentException("parity cannot be null");
+		
+		this.baudRate = baudRate;
+		this.dataBits = dataBits;
+		this.stopBits = stopBits;
+		this.parity = parity;
+		this.flowControlFlag = flowControlFlag;
+		this.readTiming = readTiming;
+	}
+	
+	public LineSettings(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity, FlowControl...flowControl) {
+		this(baudRate, dataBits, stopBits, parity, FlowControl.asFlag(flowControl));
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Builder">
+	/**
+	 * Collects changes to apply in a single step. Settings that aren't set are 
+	 * left as they are.
+	 */
+	public static final class Builder {
+		private Integer baudRate;
+		private DataBits dataBits;
+		private StopBits stopBits;
+		private Parity parity;
+		private Integer flowControlFlag;
+		private ReadTiming readTiming;
+		private boolean readTimingSet;
+		
+		public Builder setBaudRate(int baudRate) {
+			this.baudRate = baudRate;
+			return this;
+		}
+		
+		public Builder setDataBits(DataBits dataBits) {
+			this.dataBits = dataBits;
+			return this;
+		}
+		
+		public Builder setStopBits(StopBits stopBits) {
+			this.stopBits = stopBits;
+			return this;
+		}
+		
+		public Builder setParity(Parity parity) {
+			this.parity = parity;
+			return this;
+		}
+		
+		public Builder setFlowControl(FlowControl...flowControl) {
+			this.flowControlFlag = FlowControl.asFlag(flowControl);
+			return this;
+		}
+		
+		public Builder setFlowControlFlag(int flag) {
+			this.flowControlFlag = flag;
+			return this;
+		}
+		
+		/**
+		 * @param timing Null to go back to the platform default.
+		 */
+		public Builder setReadTiming(ReadTiming timing) {
+			this.readTiming = timing;
+			this.readTimingSet = true;
+			return this;
+		}
+		
+		/**
+		 * @return The given settings with this builder's changes laid on top.
+		 */
+		public LineSettings applyTo(LineSettings base) {
+			return new LineSettings(
+				  (baudRate != null ? baudRate.intValue() : base.baudRate)
+				, (dataBits != null ? dataBits : base.dataBits)
+				, (stopBits != null ? stopBits : base.stopBits)
+				, (parity != null ? parity : base.parity)
+				, (flowControlFlag != null ? flowControlFlag.intValue() : base.flowControlFlag)
+				, (readTimingSet ? readTiming : base.readTiming)
+			);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	@Override
+	public int getBaudRate() {
+		return baudRate;
+	}
+	
+	@Override
+	public DataBits getDataBits() {
+		return dataBits;
+	}
+	
+	@Override
+	public StopBits getStopBits() {
+		return stopBits;
+	}
+	
+	@Override
+	public Parity getParity() {
+		return parity;
+	}
+	
+	public FlowControl[] getFlowControl() {
+		return FlowControl.fromFlag(flowControlFlag);
+	}
+	
+	public int getFlowControlFlag() {
+		return flowControlFlag;
+	}
+	
+	/**
+	 * @return The read timing, or null for the platform default.
+	 */
+	public ReadTiming getReadTiming() {
+		return readTiming;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Object">
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof LineSettings))
+			return false;
+		final LineSettings other = (LineSettings)obj;
+		return (
+			   baudRate == other.baudRate
+			&& dataBits == other.dataBits
+			&& stopBits == other.stopBits
+			&& parity == other.parity
+			&& flowControlFlag == other.flowControlFlag
+			&& ReadTiming.isSame(readTiming, other.readTiming)
+		);
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = baudRate;
+		hash = 31 * hash + dataBits.hashCode();
+		hash = 31 * hash + stopBits.hashCode();
+		hash = 31 * hash + parity.hashCode();
+		hash = 31 * hash + flowControlFlag;
+		hash = 31 * hash + (readTiming != null ? readTiming.hashCode() : 0);
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		return baudRate + " " + dataBits + " " + parity + " " + stopBits + " flow=" + flowControlFlag + (readTiming != null ? " timing=" + readTiming : "");
+	}
+	//</editor-fold>
+}
@@ -51,6 +51,9 @@ public final class ParallelPorts {
 			case Windows:
 				osImpl = new comm.platform.dev.win32.APIParallelPortImplementation();
 				break;
+			case Unix:
+				osImpl = new comm.platform.dev.unix.PPDevParallelPortImplementation();
+				break;
 			default:
 				osImpl = null;
 				break;
@@ -222,8 +225,6 @@ public final class ParallelPorts {
 				return true;
 			}
 		});
-		Sys.gc();
-		System.runFinalization();
 	}
 	//</editor-fold>
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import java.util.Arrays;
+
+/**
+ * A list of register steps run against a parallel port in one call with 
+ * {@link IParallelPort#run(comm.ParallelSequence, byte[])}.
+ * 
+ * Bit-banged devices such as relay boards and label printers need thousands 
+ * of data and control changes a second. Building the steps up front lets the 
+ * platform run them back to back without a round trip through the caller 
+ * for each one, and writes that wouldn't change a register are skipped.
+ * 
+ * Control and status values are the IParallelPort.CONTROL_* and STATUS_* 
+ * bits. Delays are in microseconds.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class ParallelSequence {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	/**
+	 * Each step is an op in the top byte and an argument in the rest.
+	 */
+	public static final int 
+		  OP_DATA           = 1
+		, OP_CONTROL        = 2
+		, OP_DELAY          = 3
+		, OP_READ_STATUS    = 4
+		, OP_WAIT_STATUS    = 5
+	;
+	
+	public static final int 
+		  MAX_ARGUMENT      = 0x00FFFFFF
+		, DEFAULT_TIMEOUT   = 1000000
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final int[] steps;
+	private final int statusCount;
+	private final int timeout;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private ParallelSequence(int[] steps, int timeout) {
+		int count = 0;
+		for(int step : steps)
+			if (opOf(step) == OP_READ_STATUS)
+				++count;
+		
+		this.steps = steps;
+		this.statusCount = count;
+		this.timeout = timeout;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Builder">
+	public static final class Builder {
+		private int[] steps = new int[16];
+		private int size = 0;
+		private int control = 0;
+		private int timeout = DEFAULT_TIMEOUT;
+		
+		private Builder add(int op, int argument) {
+			if (argument < 0 || argument > MAX_ARGUMENT)
+				throw new IllegalArgumentException("Argument out of range: " + argument);
+			if (size == steps.length)
+				steps = Arrays.copyOf(steps, size * 2);
+			steps[size++] = (op << 24) | argument;
+			return this;
+		}
+		
+		public Builder data(int value) {
+			return add(OP_DATA, value & 0xFF);
+		}
+		
+		public Builder control(int value) {
+			control = value & 0xFF;
+			return add(OP_CONTROL, control);
+		}
+		
+		public Builder delay(int microseconds) {
+			return (microseconds > 0 ? add(OP_DELAY, microseconds) : this);
+		}
+		
+		/**
+		 * Asserts the control bits on top of the last control() value, holds 
+		 * them for the delay and drops them again.
+		 */
+		public Builder pulse(int bits, int microseconds) {
+			final int idle = control;
+			control(idle | bits);
+			delay(microseconds);
+			return control(idle);
+		}
+		
+		/**
+		 * Puts a byte on the data lines and pulses STROBE, the way a printer 
+		 * expects it without waiting on BUSY.
+		 */
+		public Builder strobe(int value, int microseconds) {
+			data(value);
+			return pulse(IParallelPort.CONTROL_STROBE, microseconds);
+		}
+		
+		/**
+		 * Reads the status lines into the next slot of the status array.
+		 */
+		public Builder readStatus() {
+			return add(OP_READ_STATUS, 0);
+		}
+		
+		/**
+		 * Waits for (status &amp; mask) == value, failing the run once the 
+		 * timeout passes.
+		 */
+		public Builder waitStatus(int mask, int value) {
+			return add(OP_WAIT_STATUS, ((mask & 0xFF) << 8) | (value & 0xFF));
+		}
+		
+		/**
+		 * How long each waitStatus() step may wait, in microseconds.
+		 */
+		public Builder setTimeout(int microseconds) {
+			if (microseconds < 0)
+				throw new IllegalArgumentException("timeout must be >= 0");
+			this.timeout = microseconds;
+			return this;
+		}
+		
+		public ParallelSequence build() {
+			return new ParallelSequence(Arrays.copyOf(steps, size), timeout);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public int size() {
+		return steps.length;
+	}
+	
+	public int getStep(int index) {
+		return steps[index];
+	}
+	
+	/**
+	 * @return The number of readStatus() steps, and so the least length of 
+	 * the status array passed to run().
+	 */
+	public int getStatusCount() {
+		return statusCount;
+	}
+	
+	public int getTimeout() {
+		return timeout;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
+	public static int opOf(int step) {
+		return (step >>> 24);
+	}
+	
+	public static int argumentOf(int step) {
+		return (step & MAX_ARGUMENT);
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import comm.platform.api.MemoryBuffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Funnels the data read from many ports into one ordered stream of 
+ * (port, timestamp, bytes) events for a single consumer thread.
+ * 
+ * Each port's I/O thread claims slots in a bounded ring with a single 
+ * compare-and-set and copies its data in; nothing is locked and the I/O 
+ * thread never waits. The consumer calls 
+ * {@link #drain(comm.PortGroup.IEventHandler, int)} to handle everything 
+ * published so far in one batch and releases the slots once at the end.
+ * 
+ * A read larger than a slot is split across consecutive slots and delivered 
+ * as several events with the same timestamp. When the ring is full, or once 
+ * it is half full and a port already holds more than its share of the slots, 
+ * the read is dropped and counted against the port, so one busy port can't 
+ * crowd out the rest.
+ * 
+ * {@link #write(java.nio.ByteBuffer)} goes the other way and sends one 
+ * payload to every port in the group.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class PortGroup implements IDisposable {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_CAPACITY      = 1024
+		, DEFAULT_SLOT_SIZE     = ICommPort.DEFAULT_READ_BUFFER_SIZE
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Interfaces">
+	/**
+	 * Receives events on the thread calling drain(). The buffer is only valid 
+	 * for the length of the call.
+	 */
+	public static interface IEventHandler {
+		void bytesRead(ICommPort port, long timestamp, ByteBuffer buffer, int offset, int length);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Object lock = new Object();
+	private final Map<ICommPort, Member> members = new IdentityHashMap<ICommPort, Member>();
+	private volatile boolean disposed = false;
+	private volatile int fairShare;
+	
+	private final int capacity;
+	private final int mask;
+	private final int slotSize;
+	private final byte[] data;
+	private final ByteBuffer view;
+	private final Member[] slotMember;
+	private final long[] slotTimestamp;
+	private final int[] slotLength;
+	
+	//published[i] holds the sequence + 1 of the last event written to slot i.
+	private final AtomicLongArray published;
+	private final AtomicLong tail = new AtomicLong(0L);
+	private final AtomicLong head = new AtomicLong(0L);
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+	private final AtomicLong dropped = new AtomicLong(0L);
+	private final AtomicLong droppedBytes = new AtomicLong(0L);
+	private volatile Thread waiter;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public PortGroup() {
+		this(DEFAULT_CAPACITY, DEFAULT_SLOT_SIZE);
+	}
+	
+	/**
+	 * @param capacity The number of slots, rounded up to a power of 2.
+	 * @param slotSize The most bytes a single event carries.
+	 */
+	public PortGroup(int capacity, int slotSize) {
+		if (capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException("capacity must be > 0 and <= 2^30");
+		if (slotSize <= 0)
+			throw new IllegalArgumentException("slotSize must be > 0");
+		
+		this.capacity = (Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1);
+		this.mask = this.capacity - 1;
+		this.slotSize = slotSize;
+		this.data = new byte[this.capacity * slotSize];
+		this.view = ByteBuffer.wrap(data);
+		this.slotMember = new Member[this.capacity];
+		this.slotTimestamp = new long[this.capacity];
+		this.slotLength = new int[this.capacity];
+		this.published = new AtomicLongArray(this.capacity);
+		this.fairShare = this.capacity;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="WriteFuture">
+	/**
+	 * Tracks a broadcast. It's done once every port has finished with the 
+	 * shared buffer, including writes the platform completes asynchronously.
+	 */
+	public static final class WriteFuture implements Future<Integer> {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final List<ICommPort> failed = new ArrayList<ICommPort>(1);
+		private volatile int written;
+		
+		WriteFuture() {
+		}
+		
+		private final Runnable completion = new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		};
+		
+		/**
+		 * @return The ports that refused the write.
+		 */
+		public ICommPort[] getFailedPorts() {
+			synchronized(failed) {
+				return failed.toArray(new ICommPort[failed.size()]);
+			}
+		}
+		
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+		
+		@Override
+		public boolean isDone() {
+			return (done.getCount() == 0L);
+		}
+		
+		/**
+		 * @return The number of ports the payload was written to.
+		 */
+		@Override
+		public Integer get() throws InterruptedException {
+			done.await();
+			return written;
+		}
+		
+		@Override
+		public Integer get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			if (!done.await(timeout, unit))
+				throw new TimeoutException();
+			return written;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Member">
+	/**
+	 * One attached port and its accounting.
+	 */
+	private final class Member implements ICommPort.IReadListener {
+		final ICommPort port;
+		final AtomicInteger held = new AtomicInteger(0);
+		final AtomicLong events = new AtomicLong(0L);
+		final AtomicLong bytes = new AtomicLong(0L);
+		final AtomicLong dropped = new AtomicLong(0L);
+		final AtomicLong droppedBytes = new AtomicLong(0L);
+		
+		Member(ICommPort port) {
+			this.port = port;
+		}
+		
+		@Override
+		public void bytesRead(ByteBuffer buffer, int offset, int length) {
+			publish(this, buffer, offset, length);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public int getSlotSize() {
+		return slotSize;
+	}
+	
+	/**
+	 * @return The number of slots waiting to be drained.
+	 */
+	public int getPending() {
+		return (int)(tail.get() - head.get());
+	}
+	
+	public ICommPort[] getPorts() {
+		synchronized(lock) {
+			return members.keySet().toArray(new ICommPort[members.size()]);
+		}
+	}
+	
+	public boolean isAttached(ICommPort port) {
+		synchronized(lock) {
+			return members.containsKey(port);
+		}
+	}
+	
+	/**
+	 * @return Reads dropped across every port because the ring was full or 
+	 * the port was over its share.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	public long getDroppedBytes() {
+		return droppedBytes.get();
+	}
+	
+	public long getDroppedCount(ICommPort port) {
+		final Member m = memberFor(port);
+		return (m != null ? m.dropped.get() : 0L);
+	}
+	
+	public long getDroppedBytes(ICommPort port) {
+		final Member m = memberFor(port);
+		return (m != null ? m.droppedBytes.get() : 0L);
+	}
+	
+	/**
+	 * @return Reads from the port that made it into the ring.
+	 */
+	public long getEventCount(ICommPort port) {
+		final Member m = memberFor(port);
+		return (m != null ? m.events.get() : 0L);
+	}
+	
+	public long getByteCount(ICommPort port) {
+		final Member m = memberFor(port);
+		return (m != null ? m.bytes.get() : 0L);
+	}
+	
+	@Override
+	public boolean isDisposed() {
+		return disposed;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * Starts collecting the port's reads. The port doesn't need to be open.
+	 */
+	public boolean attach(ICommPort port) {
+		if (port == null || disposed)
+			return false;
+		
+		final Member m;
+		synchronized(lock) {
+			if (members.containsKey(port))
+				return false;
+			m = new Member(port);
+			members.put(port, m);
+			updateFairShare();
+		}
+		port.addReadListener(m);
+		return true;
+	}
+	
+	/**
+	 * Stops collecting the port's reads. Events already in the ring are still 
+	 * delivered.
+	 */
+	public boolean detach(ICommPort port) {
+		final Member m;
+		synchronized(lock) {
+			m = members.remove(port);
+			if (m == null)
+				return false;
+			updateFairShare();
+		}
+		port.removeReadListener(m);
+		return true;
+	}
+	
+	/**
+	 * Hands every published event, up to max, to the handler. Only one thread 
+	 * may drain at a time.
+	 * 
+	 * @return The number of events handled.
+	 */
+	public int drain(IEventHandler handler, int max) {
+		if (handler == null)
+			throw new NullPointerException("handler cannot be null");
+		if (!draining.compareAndSet(false, true))
+			throw new IllegalStateException("Another thread is already draining");
+		
+		try {
+			final long start = head.get();
+			long seq = start;
+			int idx;
+			try {
+				while(seq - start < max && published.get(idx = (int)seq & mask) == seq + 1L) {
+					final Member m = slotMember[idx];
+					slotMember[idx] = null;
+					++seq;
+					m.held.decrementAndGet();
+					handler.bytesRead(m.port, slotTimestamp[idx], view, idx * slotSize, slotLength[idx]);
+				}
+			} finally {
+				//One release for the whole batch, even if the handler threw.
+				if (seq != start)
+					head.lazySet(seq);
+			}
+			return (int)(seq - start);
+		} finally {
+			draining.set(false);
+		}
+	}
+	
+	/**
+	 * Like {@link #drain(comm.PortGroup.IEventHandler, int)} but waits up to 
+	 * the timeout for something to arrive when the ring is empty.
+	 */
+	public int drain(IEventHandler handler, int max, long timeout, TimeUnit unit) throws InterruptedException {
+		final int n = drain(handler, max);
+		if (n > 0 || timeout <= 0L)
+			return n;
+		
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		waiter = Thread.currentThread();
+		try {
+			long remaining;
+			while(!isReady() && !disposed && (remaining = deadline - System.nanoTime()) > 0L) {
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		} finally {
+			waiter = null;
+		}
+		return drain(handler, max);
+	}
+	
+	public WriteFuture write(byte[] buffer, int offset, int length) {
+		return write(ByteBuffer.wrap(buffer, offset, length));
+	}
+	
+	/**
+	 * Sends the payload (position to limit, which are left untouched) to every 
+	 * attached port.
+	 * 
+	 * The payload is copied once into native memory and every port writes 
+	 * from that same buffer, one straight after the other, so there's no 
+	 * per-port copy or allocation and the ports start transmitting as close 
+	 * together as possible. The buffer is freed when the last port is done 
+	 * with it.
+	 */
+	public WriteFuture write(ByteBuffer payload) {
+		if (payload == null)
+			throw new NullPointerException("payload cannot be null");
+		
+		final ICommPort[] targets = getPorts();
+		final int length = payload.remaining();
+		final WriteFuture future = new WriteFuture();
+		if (length == 0 || targets.length == 0) {
+			future.written = targets.length;
+			future.completion.run();
+			return future;
+		}
+		
+		final MemoryBuffer shared;
+		try {
+			shared = new MemoryBuffer(length, future.completion);
+		} catch(OutOfMemoryError oome) {
+			synchronized(future.failed) {
+				for(ICommPort port : targets)
+					future.failed.add(port);
+			}
+			future.completion.run();
+			return future;
+		}
+		
+		final ByteBuffer bb = shared.getByteBuffer(0L, length);
+		bb.put(payload.duplicate());
+		bb.clear();
+		
+		int written = 0;
+		for(ICommPort port : targets) {
+			boolean ok;
+			try {
+				ok = port.write(bb, 0, length);
+			} catch(Throwable t) {
+				ok = false;
+			}
+			
+			if (ok) {
+				++written;
+			} else {
+				synchronized(future.failed) {
+					future.failed.add(port);
+				}
+			}
+		}
+		future.written = written;
+		
+		//Our own reference. Frees the buffer (and completes the future) unless 
+		//a platform still has a write in flight.
+		shared.unreference();
+		return future;
+	}
+	
+	/**
+	 * Detaches every port and wakes a waiting consumer.
+	 */
+	@Override
+	public void dispose() {
+		final Member[] all;
+		synchronized(lock) {
+			if (disposed)
+				return;
+			disposed = true;
+			all = members.values().toArray(new Member[members.size()]);
+			members.clear();
+		}
+		
+		for(Member m : all)
+			m.port.removeReadListener(m);
+		
+		final Thread t = waiter;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private Member memberFor(ICommPort port) {
+		synchronized(lock) {
+			return members.get(port);
+		}
+	}
+	
+	/**
+	 * Must be called while holding lock.
+	 */
+	private void updateFairShare() {
+		fairShare = Math.max(1, capacity / Math.max(1, members.size()));
+	}
+	
+	private boolean isReady() {
+		final long seq = head.get();
+		return (published.get((int)seq & mask) == seq + 1L);
+	}
+	
+	/**
+	 * Called on the port's I/O thread -- must never block.
+	 */
+	private void publish(Member m, ByteBuffer buffer, int offset, int length) {
+		if (length <= 0 || disposed)
+			return;
+		
+		final long timestamp = System.nanoTime();
+		final int slots = (length + slotSize - 1) / slotSize;
+		
+		long seq;
+		do {
+			seq = tail.get();
+			final long used = seq - head.get();
+			if (used + slots > capacity || (used >= (capacity >> 1) && m.held.get() + slots > fairShare)) {
+				m.dropped.incrementAndGet();
+				m.droppedBytes.addAndGet(length);
+				dropped.incrementAndGet();
+				droppedBytes.addAndGet(length);
+				return;
+			}
+		} while(!tail.compareAndSet(seq, seq + slots));
+		m.held.addAndGet(slots);
+		
+		final ByteBuffer src = buffer.duplicate();
+		src.limit(offset + length);
+		src.position(offset);
+		
+		int remaining = length;
+		for(int i = 0; i < slots; ++i, ++seq) {
+			final int idx = (int)seq & mask;
+			final int count = Math.min(remaining, slotSize);
+			src.get(data, idx * slotSize, count);
+			slotMember[idx] = m;
+			slotTimestamp[idx] = timestamp;
+			slotLength[idx] = count;
+			remaining -= count;
+			
+			//Ordered store: the slot's contents are visible before it's marked ready.
+			published.lazySet(idx, seq + 1L);
+		}
+		m.events.incrementAndGet();
+		m.bytes.addAndGet(length);
+		
+		final Thread t = waiter;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares a small set of serial ports between several users.
+ * 
+ * A caller leases a port for exclusive use and hands it back when done. The 
+ * port is left open between leases and is only reconfigured when the next 
+ * lease asks for different line settings, so back-to-back users don't pay for 
+ * a full open/configure/close cycle each time.
+ * 
+ * Waiters for the same port are served in the order they arrived. While a 
+ * port is leased it reports the lease holder through {@link ICommPort#getOwner()}.
+ * 
+ * Each lease starts clean: releasing one removes every listener from the port 
+ * and throws away input nobody read, so nothing meant for one lessee reaches 
+ * the next.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class PortPool implements IDisposable {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Object lock = new Object();
+	private final Map<String, Entry> entries = new HashMap<String, Entry>(8);
+	private final int readBufferSize;
+	private final int writeBufferSize;
+	private volatile boolean disposed = false;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public PortPool() {
+		this(ICommPort.DEFAULT_READ_BUFFER_SIZE, ICommPort.DEFAULT_WRITE_BUFFER_SIZE);
+	}
+	
+	public PortPool(int readBufferSize, int writeBufferSize) {
+		if (readBufferSize <= 0)
+			throw new IllegalArgumentException("readBufferSize must be > 0");
+		if (writeBufferSize <= 0)
+			throw new IllegalArgumentException("writeBufferSize must be > 0");
+		
+		this.readBufferSize = readBufferSize;
+		this.writeBufferSize = writeBufferSize;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Entry">
+	private static final class Entry {
+		final ISerialPort port;
+		final Semaphore available = new Semaphore(1, true);
+		volatile Lease lease;
+		
+		Entry(ISerialPort port) {
+			this.port = port;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Lease">
+	/**
+	 * Exclusive use of a pooled port. Release it when finished so the next 
+	 * waiter can have it.
+	 */
+	public final class Lease {
+		private final Entry entry;
+		private final String owner;
+		private boolean released = false;
+		
+		private Lease(Entry entry, String owner) {
+			this.entry = entry;
+			this.owner = owner;
+		}
+		
+		public ISerialPort getPort() {
+			return entry.port;
+		}
+		
+		public String getOwner() {
+			return owner;
+		}
+		
+		public boolean isReleased() {
+			synchronized(this) {
+				return released;
+			}
+		}
+		
+		/**
+		 * Returns the port to the pool. The port stays open for the next lease 
+		 * but loses its listeners and any unread input.
+		 * 
+		 * @return False if the lease had already been released.
+		 */
+		public boolean release() {
+			synchronized(this) {
+				if (released)
+					return false;
+				released = true;
+			}
+			
+			final ISerialPort port = entry.port;
+			scrub(port);
+			port.releaseOwnership(owner);
+			entry.lease = null;
+			
+			//Nobody is going to lease it again.
+			if (disposed)
+				port.close();
+			
+			entry.available.release();
+			return true;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static String keyFor(String name) {
+		return name.toUpperCase(Locale.ENGLISH);
+	}
+	
+	private Entry entryFor(String name) {
+		if (name == null)
+			return null;
+		synchronized(lock) {
+			return entries.get(keyFor(name));
+		}
+	}
+	
+	/**
+	 * Detaches the last lessee: listeners first so nothing is delivered to 
+	 * them while the input is purged.
+	 */
+	private static void scrub(ISerialPort port) {
+		port.clearReadListeners();
+		port.clearWriteListeners();
+		port.clearErrorListeners();
+		port.clearLineListeners();
+		port.clearModemListeners();
+		port.purgeInput();
+	}
+	
+	private static boolean matches(ISerialPort port, ISerialPort.IConfiguration config) {
+		return (
+			   port.getBaudRate() == config.getBaudRate()
+			&& port.getDataBits() == config.getDataBits()
+			&& port.getStopBits() == config.getStopBits()
+			&& port.getParity() == config.getParity()
+		);
+	}
+	
+	/**
+	 * Opens and configures the port if needed. Settings that are already in 
+	 * effect are left alone.
+	 */
+	private boolean prepare(ISerialPort port, ISerialPort.IConfiguration config) {
+		if (!port.isOpen()) {
+			//Settings given before opening are applied by open().
+			if (config != null && !port.configure(config))
+				return false;
+			return port.open(readBufferSize, writeBufferSize);
+		}
+		
+		if (config == null || matches(port, config))
+			return true;
+		return port.configure(config);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public int getReadBufferSize() {
+		return readBufferSize;
+	}
+	
+	public int getWriteBufferSize() {
+		return writeBufferSize;
+	}
+	
+	public boolean contains(String name) {
+		return entryFor(name) != null;
+	}
+	
+	public ISerialPort[] getPorts() {
+		synchronized(lock) {
+			if (entries.isEmpty())
+				return ISerialPort.EMPTY_SERIAL_PORTS;
+			final List<ISerialPort> ports = new ArrayList<ISerialPort>(entries.size());
+			for(Entry e : entries.values())
+				ports.add(e.port);
+			return ports.toArray(new ISerialPort[ports.size()]);
+		}
+	}
+	
+	/**
+	 * @return True if the named port is currently leased.
+	 */
+	public boolean isLeased(String name) {
+		final Entry e = entryFor(name);
+		return (e != null && e.lease != null);
+	}
+	
+	/**
+	 * @return An estimate of the number of callers waiting for the named port.
+	 */
+	public int getWaitingCount(String name) {
+		final Entry e = entryFor(name);
+		return (e != null ? e.available.getQueueLength() : 0);
+	}
+	
+	@Override
+	public boolean isDisposed() {
+		return disposed;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	public boolean add(String name) {
+		return add(SerialPorts.find(name));
+	}
+	
+	public boolean add(ISerialPort port) {
+		if (port == null || disposed)
+			return false;
+		synchronized(lock) {
+			final String key = keyFor(port.getName());
+			if (entries.containsKey(key))
+				return false;
+			entries.put(key, new Entry(port));
+			return true;
+		}
+	}
+	
+	/**
+	 * Takes a port out of the pool once its current lease, if any, has been 
+	 * released and closes it.
+	 * 
+	 * @param timeout Milliseconds to wait for the current lease, or a negative value to wait indefinitely.
+	 */
+	public boolean remove(String name, long timeout) {
+		final Entry e = entryFor(name);
+		if (e == null || !acquire(e, timeout))
+			return false;
+		
+		synchronized(lock) {
+			entries.remove(keyFor(name));
+		}
+		e.port.close();
+		
+		//Let anyone still queued find out it's gone.
+		e.available.release();
+		return true;
+	}
+	
+	/**
+	 * Leases the named port, waiting up to the timeout for it to become free.
+	 * 
+	 * @param name The port's name.
+	 * @param owner Who the port will report as its owner while leased.
+	 * @param config Line settings to use, or null to keep whatever is in effect.
+	 * @param timeout Milliseconds to wait, or a negative value to wait indefinitely.
+	 * @return null if the port isn't in the pool, the wait timed out, or the port couldn't be opened or configured.
+	 */
+	public Lease lease(String name, String owner, ISerialPort.IConfiguration config, long timeout) {
+		if (owner == null)
+			throw new IllegalArgumentException("owner cannot be null");
+		
+		final Entry e = entryFor(name);
+		if (e == null || !acquire(e, timeout))
+			return null;
+		
+		//The port may have been removed or the pool disposed while we waited.
+		if (disposed || entryFor(name) != e) {
+			e.available.release();
+			return null;
+		}
+		
+		final ISerialPort port = e.port;
+		if (!port.claimOwnership(owner)) {
+			e.available.release();
+			return null;
+		}
+		
+		if (!prepare(port, config)) {
+			port.releaseOwnership(owner);
+			e.available.release();
+			return null;
+		}
+		
+		final Lease lease = new Lease(e, owner);
+		e.lease = lease;
+		return lease;
+	}
+	
+	/**
+	 * Leases the named port only if it's free right now.
+	 */
+	public Lease tryLease(String name, String owner, ISerialPort.IConfiguration config) {
+		return lease(name, owner, config, 0L);
+	}
+	
+	private static boolean acquire(Entry e, long timeout) {
+		try {
+			if (timeout < 0L) {
+				e.available.acquire();
+				return true;
+			}
+			//A zero timeout still honors waiters that are already queued.
+			return e.available.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Closes every idle port. Ports that are leased are closed when their 
+	 * lease is released.
+	 */
+	@Override
+	public void dispose() {
+		final Entry[] all;
+		synchronized(lock) {
+			if (disposed)
+				return;
+			disposed = true;
+			all = entries.values().toArray(new Entry[entries.size()]);
+		}
+		
+		for(Entry e : all) {
+			if (e.available.tryAcquire()) {
+				e.port.close();
+				e.available.release();
+			}
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import comm.platform.UnsupportedPlatformException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Reports serial ports as they're attached, detached, or changed.
+ * 
+ * Where the platform provides change notifications (the SERIALCOMM registry 
+ * key on Windows, inotify on /dev on Linux) the watcher thread sleeps until 
+ * something changes and then refreshes only the ports involved. Otherwise it 
+ * falls back to polling every {@link #getPollInterval()} milliseconds.
+ * 
+ * The watcher starts when the first listener is added and stops when the 
+ * last one is removed.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class PortWatcher {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final long 
+		  DEFAULT_POLL_INTERVAL = 2000L
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private static final Object lock = new Object();
+	private static final Object portListenerLock = new Object();
+	private static final List<IPortListener> portListeners = new CopyOnWriteArrayList<IPortListener>();
+	
+	private static volatile long pollInterval = DEFAULT_POLL_INTERVAL;
+	private static Thread watcherThread;
+	private static Watcher watcher;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private PortWatcher() {
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Interfaces">
+	public static interface IPortListener {
+		void portAdded(ISerialPort port);
+		void portRemoved(ISerialPort port);
+		void portChanged(ISerialPort port);
+	}
+	
+	public static abstract class PortListenerAdapter implements IPortListener {
+		@Override
+		public void portAdded(ISerialPort port) {
+		}
+		
+		@Override
+		public void portRemoved(ISerialPort port) {
+		}
+		
+		@Override
+		public void portChanged(ISerialPort port) {
+		}
+	}
+	
+	/**
+	 * Blocks until the platform reports that the set of ports may have changed. 
+	 * Implemented by each platform.
+	 */
+	public static interface IChangeSource {
+		/**
+		 * Waits for a change.
+		 * 
+		 * @param timeout Milliseconds to wait, or a negative value to wait indefinitely.
+		 * @return True if a change was detected, false if the wait timed out, 
+		 * woke for something irrelevant, the source was closed or it failed.
+		 */
+		boolean await(long timeout);
+		
+		/**
+		 * @return True once the source has failed and will never report a 
+		 * change again. The watcher falls back to polling.
+		 */
+		boolean isFailed();
+		
+		/**
+		 * Releases native resources and wakes up any thread blocked in {@link #await(long)}.
+		 */
+		void close();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public static long getPollInterval() {
+		return pollInterval;
+	}
+	
+	/**
+	 * Sets how often ports are polled on platforms without change notifications.
+	 */
+	public static void setPollInterval(long pollInterval) {
+		if (pollInterval <= 0L)
+			throw new IllegalArgumentException("pollInterval must be greater than 0");
+		PortWatcher.pollInterval = pollInterval;
+	}
+	
+	public static boolean isWatching() {
+		synchronized(lock) {
+			return (watcherThread != null);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Listeners">
+	public static boolean hasPortListeners() {
+		return !portListeners.isEmpty();
+	}
+
+	public static boolean hasPortListener(IPortListener listener) {
+		if (listener == null)
+			return false;
+		synchronized(portListenerLock) {
+			return portListeners.contains(listener);
+		}
+	}
+
+	public static boolean addPortListener(IPortListener listener) {
+		if (listener == null)
+			return false;
+		synchronized(portListenerLock) {
+			if (!portListeners.add(listener))
+				return false;
+		}
+		start();
+		return true;
+	}
+
+	public static boolean removePortListener(IPortListener listener) {
+		if (listener == null)
+			return false;
+		boolean removed;
+		synchronized(portListenerLock) {
+			removed = portListeners.remove(listener);
+		}
+		if (!hasPortListeners())
+			stop();
+		return removed;
+	}
+
+	public static boolean clearPortListeners() {
+		synchronized(portListenerLock) {
+			portListeners.clear();
+		}
+		stop();
+		return true;
+	}
+	
+	/**
+	 * Invalidates the discovery snapshot before passing each change along so 
+	 * listeners looking ports up see the new state. A listener that throws 
+	 * doesn't keep the others, or the rest of the changes, from being reported.
+	 */
+	private static final IPortListener dispatcher = new IPortListener() {
+		@Override
+		public void portAdded(ISerialPort port) {
+			SerialPorts.invalidate();
+			for(IPortListener listener : portListeners) {
+				try {
+					listener.portAdded(port);
+				} catch(Throwable t) {
+				}
+			}
+		}
+
+		@Override
+		public void portRemoved(ISerialPort port) {
+			SerialPorts.invalidate();
+			for(IPortListener listener : portListeners) {
+				try {
+					listener.portRemoved(port);
+				} catch(Throwable t) {
+				}
+			}
+		}
+
+		@Override
+		public void portChanged(ISerialPort port) {
+			SerialPorts.invalidate();
+			for(IPortListener listener : portListeners) {
+				try {
+					listener.portChanged(port);
+				} catch(Throwable t) {
+				}
+			}
+		}
+	};
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static void start() {
+		final SerialPorts.Implementation impl = SerialPorts.getImplementation();
+		if (impl == null)
+			throw new UnsupportedPlatformException();
+		
+		synchronized(lock) {
+			if (watcherThread != null)
+				return;
+			
+			watcher = new Watcher(impl);
+			watcherThread = new Thread(watcher, "Port Watcher");
+			watcherThread.setDaemon(true);
+			watcherThread.start();
+		}
+	}
+	
+	private static void stop() {
+		final Thread t;
+		synchronized(lock) {
+			if (watcherThread == null)
+				return;
+			t = watcherThread;
+			watcher.cancel();
+			watcher = null;
+			watcherThread = null;
+		}
+		
+		if (t != Thread.currentThread()) {
+			t.interrupt();
+			try {
+				t.join();
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private static class Watcher implements Runnable {
+		private final SerialPorts.Implementation impl;
+		private volatile boolean running = true;
+		private volatile IChangeSource source;
+		
+		public Watcher(SerialPorts.Implementation impl) {
+			this.impl = impl;
+		}
+		
+		public void cancel() {
+			running = false;
+			final IChangeSource s = source;
+			if (s != null)
+				s.close();
+		}
+		
+		@Override
+		public void run() {
+			//Change sources may be tied to the thread that creates them (e.g. 
+			//registry notifications on Windows) so create it here.
+			source = impl.createChangeSource();
+			try {
+				//Prime the cache so only changes from here on are reported.
+				impl.refreshAvailableSerialPorts(null);
+				
+				while(running) {
+					final IChangeSource s = source;
+					if (s != null) {
+						if (!s.await(-1L)) {
+							//Waiting again on a broken source would return straight away.
+							if (s.isFailed()) {
+								source = null;
+								s.close();
+							}
+							continue;
+						}
+					} else {
+						try {
+							Thread.sleep(pollInterval);
+						} catch(InterruptedException ie) {
+							break;
+						}
+					}
+					
+					if (!running)
+						break;
+					
+					try {
+						impl.refreshAvailableSerialPorts(dispatcher);
+					} catch(Throwable t) {
+						//Keep watching -- discovery failing once doesn't mean 
+						//it will the next time.
+					}
+				}
+			} finally {
+				final IChangeSource s = source;
+				if (s != null)
+					s.close();
+			}
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Shutdown">
+	public static void shutdown() {
+		stop();
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+/**
+ * Transmit enable settings for a half-duplex RS-485 transceiver wired to RTS.
+ * 
+ * RTS is driven to {@link #isRTSOnSend()} for as long as data is going out 
+ * and returned to {@link #isRTSAfterSend()} once the last bit has left the 
+ * transmitter. The delays are in milliseconds and are added before the first 
+ * byte and after the last one.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class RS485Settings {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final boolean rtsOnSend;
+	private final boolean rtsAfterSend;
+	private final int delayBeforeSend;
+	private final int delayAfterSend;
+	private final boolean receiveDuringTransmit;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public RS485Settings(boolean rtsOnSend, boolean rtsAfterSend, int delayBeforeSend, int delayAfterSend, boolean receiveDuringTransmit) {
+		if (delayBeforeSend < 0)
+			throw new IllegalArgumentException("delayBeforeSend must be >= 0");
+		if (delayAfterSend < 0)
+			throw new IllegalArgumentException("delayAfterSend must be >= 0");
+		if (rtsOnSend == rtsAfterSend)
+			throw new IllegalArgumentException("RTS must change level while sending");
+		
+		this.rtsOnSend = rtsOnSend;
+		this.rtsAfterSend = rtsAfterSend;
+		this.delayBeforeSend = delayBeforeSend;
+		this.delayAfterSend = delayAfterSend;
+		this.receiveDuringTransmit = receiveDuringTransmit;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Builder">
+	/**
+	 * Starts from RTS high while sending, no delays and the receiver 
+	 * disabled while transmitting.
+	 */
+	public static final class Builder {
+		private boolean rtsOnSend = true;
+		private int delayBeforeSend = 0;
+		private int delayAfterSend = 0;
+		private boolean receiveDuringTransmit = false;
+		
+		/**
+		 * @param activeHigh True if the transceiver's driver enable is asserted 
+		 * by RTS high, false if by RTS low.
+		 */
+		public Builder setRTSOnSend(boolean activeHigh) {
+			this.rtsOnSend = activeHigh;
+			return this;
+		}
+		
+		public Builder setDelayBeforeSend(int milliseconds) {
+			this.delayBeforeSend = milliseconds;
+			return this;
+		}
+		
+		public Builder setDelayAfterSend(int milliseconds) {
+			this.delayAfterSend = milliseconds;
+			return this;
+		}
+		
+		public Builder setReceiveDuringTransmit(boolean receive) {
+			this.receiveDuringTransmit = receive;
+			return this;
+		}
+		
+		public RS485Settings build() {
+			return new RS485Settings(rtsOnSend, !rtsOnSend, delayBeforeSend, delayAfterSend, receiveDuringTransmit);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public boolean isRTSOnSend() {
+		return rtsOnSend;
+	}
+	
+	public boolean isRTSAfterSend() {
+		return rtsAfterSend;
+	}
+	
+	public int getDelayBeforeSend() {
+		return delayBeforeSend;
+	}
+	
+	public int getDelayAfterSend() {
+		return delayAfterSend;
+	}
+	
+	/**
+	 * Only honored by drivers that do the switching themselves.
+	 */
+	public boolean isReceiveDuringTransmit() {
+		return receiveDuringTransmit;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Object">
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof RS485Settings))
+			return false;
+		final RS485Settings other = (RS485Settings)obj;
+		return (
+			   rtsOnSend == other.rtsOnSend
+			&& rtsAfterSend == other.rtsAfterSend
+			&& delayBeforeSend == other.delayBeforeSend
+			&& delayAfterSend == other.delayAfterSend
+			&& receiveDuringTransmit == other.receiveDuringTransmit
+		);
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = (rtsOnSend ? 1 : 0);
+		hash = 31 * hash + (rtsAfterSend ? 1 : 0);
+		hash = 31 * hash + delayBeforeSend;
+		hash = 31 * hash + delayAfterSend;
+		hash = 31 * hash + (receiveDuringTransmit ? 1 : 0);
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		return "rts on send=" + rtsOnSend + " before=" + delayBeforeSend + "ms after=" + delayAfterSend + "ms rx during tx=" + receiveDuringTransmit;
+	}
+	//</editor-fold>
+}
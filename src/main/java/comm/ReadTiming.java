@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+/**
+ * How long the operating system holds on to received bytes before handing 
+ * them to the reader.
+ * 
+ * Left unset, a port reads whatever has arrived as soon as it arrives, which 
+ * means a wakeup every few bytes at higher rates. A read timing lets the 
+ * driver assemble a whole frame instead: a read completes once the line has 
+ * been quiet for {@link #getInterCharacterTimeout()} milliseconds, the way 
+ * gap-delimited protocols such as Modbus RTU mark the end of a message, and 
+ * each frame is delivered in its own callback.
+ * 
+ * Windows maps the gap and the total timeout onto <code>COMMTIMEOUTS</code> 
+ * and has nothing to map the minimum byte count onto. POSIX maps the gap 
+ * onto <code>VTIME</code>, which counts in tenths of a second so short gaps 
+ * are rounded up, and uses <code>VMIN</code> for the minimum byte count when 
+ * there's no gap. The total timeout has no effect on POSIX since reads there 
+ * are only issued once data is waiting.
+ * 
+ * On Linux the shortest gap that can be told apart is therefore 100 ms: 
+ * frames that follow each other more closely than that are delivered as one, 
+ * whatever gap was asked for. Modbus RTU's 3.5 character gap at 9600 baud 
+ * (about 4 ms) only works there if the master leaves more time between 
+ * messages.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class ReadTiming {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  MAXIMUM_MINIMUM_BYTES = 255
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final int interCharacterTimeout;
+	private final int totalTimeout;
+	private final int minimumBytes;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public ReadTiming(int interCharacterTimeout, int totalTimeout, int minimumBytes) {
+		if (interCharacterTimeout < 0)
+			throw new IllegalArgumentException("interCharacterTimeout must be >= 0");
+		if (totalTimeout < 0)
+			throw new IllegalArgumentException("totalTimeout must be >= 0");
+		if (minimumBytes < 0 || minimumBytes > MAXIMUM_MINIMUM_BYTES)
+			throw new IllegalArgumentException("minimumBytes must be between 0 and " + MAXIMUM_MINIMUM_BYTES);
+		if (interCharacterTimeout == 0 && totalTimeout == 0 && minimumBytes == 0)
+			throw new IllegalArgumentException("A read timing needs a gap, a total timeout or a minimum byte count");
+		
+		this.interCharacterTimeout = interCharacterTimeout;
+		this.totalTimeout = totalTimeout;
+		this.minimumBytes = minimumBytes;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Builder">
+	/**
+	 * Starts from a one byte minimum with no gap and no total timeout.
+	 */
+	public static final class Builder {
+		private int interCharacterTimeout = 0;
+		private int totalTimeout = 0;
+		private int minimumBytes = 1;
+		
+		/**
+		 * @param milliseconds How long the line must be quiet after the last 
+		 * byte before the read completes. 0 waits for no gap.
+		 */
+		public Builder setInterCharacterTimeout(int milliseconds) {
+			this.interCharacterTimeout = milliseconds;
+			return this;
+		}
+		
+		/**
+		 * @param milliseconds Upper bound on a read, 0 for none. Windows only.
+		 */
+		public Builder setTotalTimeout(int milliseconds) {
+			this.totalTimeout = milliseconds;
+			return this;
+		}
+		
+		/**
+		 * @param count Bytes to wait for before waking the reader when there's 
+		 * no gap. POSIX only.
+		 */
+		public Builder setMinimumBytes(int count) {
+			this.minimumBytes = count;
+			return this;
+		}
+		
+		/**
+		 * Uses the 3.5 character silence that ends a Modbus RTU frame at the 
+		 * given line settings, or the fixed 1.75ms the specification allows 
+		 * above 19200 baud.
+		 */
+		public Builder setFrameGap(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
+			if (baudRate <= 0)
+				throw new IllegalArgumentException("baudRate must be > 0");
+			if (baudRate > 19200) {
+				this.interCharacterTimeout = 2;
+				return this;
+			}
+			final int bits = 1 + dataBits.getValue() + (parity == Parity.NONE ? 0 : 1) + (stopBits == StopBits.STOPBITS_1 ? 1 : 2);
+			this.interCharacterTimeout = (int)Math.ceil((3.5D * bits * 1000.0D) / baudRate);
+			return this;
+		}
+		
+		public ReadTiming build() {
+			return new ReadTiming(interCharacterTimeout, totalTimeout, minimumBytes);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public int getInterCharacterTimeout() {
+		return interCharacterTimeout;
+	}
+	
+	public int getTotalTimeout() {
+		return totalTimeout;
+	}
+	
+	public int getMinimumBytes() {
+		return minimumBytes;
+	}
+	
+	/**
+	 * The gap in the tenths of a second <code>VTIME</code> counts in, 
+	 * rounded up so a short gap is never turned into none.
+	 */
+	public int getIntervalDeciseconds() {
+		return Math.min(255, (interCharacterTimeout + 99) / 100);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
+	/**
+	 * Compares two timings where null stands for the platform default.
+	 */
+	public static boolean isSame(ReadTiming a, ReadTiming b) {
+		return (a == null ? b == null : a.equals(b));
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Object">
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ReadTiming))
+			return false;
+		final ReadTiming other = (ReadTiming)obj;
+		return (
+			   interCharacterTimeout == other.interCharacterTimeout
+			&& totalTimeout == other.totalTimeout
+			&& minimumBytes == other.minimumBytes
+		);
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = interCharacterTimeout;
+		hash = 31 * hash + totalTimeout;
+		hash = 31 * hash + minimumBytes;
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		return "gap=" + interCharacterTimeout + "ms total=" + totalTimeout + "ms min=" + minimumBytes;
+	}
+	//</editor-fold>
+}
@@ -30,9 +30,13 @@ package comm;
 
 import comm.platform.Sys;
 import comm.platform.UnsupportedPlatformException;
+import comm.platform.dev.BaudRateCapabilities;
 import comm.util.StringUtil;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Provides access to system serial ports.
@@ -40,8 +44,24 @@ import java.util.List;
  * @author David Hoyt <dhoyt@hoytsoft.org>
  */
 public final class SerialPorts {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	/**
+	 * How long (in milliseconds) a discovered list of ports is reused before 
+	 * the platform is enumerated again.
+	 */
+	public static final long 
+		  DEFAULT_DISCOVERY_TTL = 1000L
+	;
+	//</editor-fold>
+	
 	//<editor-fold defaultstate="collapsed" desc="Variables">
 	private static final Implementation impl;
+	private static final comm.net.rfc2217.RFC2217SerialPortImplementation remote = new comm.net.rfc2217.RFC2217SerialPortImplementation();
+	
+	private static final Object snapshotLock = new Object();
+	private static volatile Snapshot snapshot;
+	private static volatile long discoveryTTL = DEFAULT_DISCOVERY_TTL;
+	private static volatile Thread backgroundRefreshThread;
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Initialization">
@@ -51,6 +71,9 @@ public final class SerialPorts {
 			case Windows:
 				osImpl = new comm.platform.dev.win32.APISerialPortImplementation();
 				break;
+			case Unix:
+				osImpl = new comm.platform.dev.unix.SysfsSerialPortImplementation();
+				break;
 			default:
 				osImpl = null;
 				break;
@@ -73,12 +96,33 @@ public final class SerialPorts {
 		
 		boolean isPlatformSupported();
 		int[] getPlatformBaudRateOptions();
+		BaudRateCapabilities getBaudRateCapabilities();
 		DataBits[] getPlatformDataBitsOptions();
 		StopBits[] getPlatformStopBitsOptions();
 		FlowControl[] getPlatformFlowControlOptions();
 		Parity[] getPlatformParityOptions();
 		
 		void visitAvailableSerialPorts(IVisitor visitor);
+		
+		/**
+		 * Brings the cached ports up to date, reporting only what was added, 
+		 * removed, or changed since the last refresh. Visiting ports in 
+		 * between doesn't count as having reported them.
+		 */
+		void refreshAvailableSerialPorts(PortWatcher.IPortListener listener);
+		
+		/**
+		 * Creates a source of change notifications for {@link PortWatcher}.
+		 * 
+		 * @return null if the platform can only be polled.
+		 */
+		PortWatcher.IChangeSource createChangeSource();
+		
+		/**
+		 * Releases any threads or handles the platform keeps around between 
+		 * port opens. Called after every port has been closed.
+		 */
+		void shutdown();
 		void addPlatformHint(final String name, final Object value);
 		<T> T findPlatformHint(final String name);
 	}
@@ -97,9 +141,70 @@ public final class SerialPorts {
 	}
 	//</editor-fold>
 	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	static Implementation getImplementation() {
+		return impl;
+	}
+	
+	private static Snapshot snapshot() {
+		Snapshot s = snapshot;
+		if (s != null && (backgroundRefreshThread != null || !s.isExpired(discoveryTTL)))
+			return s;
+		
+		synchronized(snapshotLock) {
+			//Someone else may have refreshed it while we waited.
+			s = snapshot;
+			if (s == null || (backgroundRefreshThread == null && s.isExpired(discoveryTTL)))
+				snapshot = s = discover();
+			return s;
+		}
+	}
+	
+	private static Snapshot discover() {
+		final List<ISerialPort> lst = new ArrayList<ISerialPort>(4);
+		impl.visitAvailableSerialPorts(new IVisitor() {
+			@Override
+			public boolean visit(ISerialPort SerialPort) {
+				lst.add(SerialPort);
+				return true;
+			}
+		});
+		return new Snapshot(lst.toArray(new ISerialPort[lst.size()]));
+	}
+	
+	/**
+	 * An immutable list of discovered ports indexed by name.
+	 */
+	private static final class Snapshot {
+		final long created = System.nanoTime();
+		final ISerialPort[] ports;
+		final Map<String, ISerialPort> index;
+		
+		Snapshot(ISerialPort[] ports) {
+			this.ports = ports;
+			this.index = new HashMap<String, ISerialPort>(Math.max(16, ports.length * 2));
+			for(ISerialPort port : ports)
+				if (!StringUtil.isNullOrEmpty(port.getName()))
+					index.put(key(port.getName()), port);
+		}
+		
+		boolean isExpired(long ttl) {
+			return (System.nanoTime() - created >= ttl * 1000000L);
+		}
+		
+		static String key(String name) {
+			return name.toUpperCase(Locale.ENGLISH);
+		}
+	}
+	//</editor-fold>
+	
 	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
 	/**
 	 * Examine each found port via the {@link IVisitor#visit(comm.ISerialPort) visit()} callback.
+	 * 
+	 * Ports come from the discovery snapshot which is re-enumerated at most 
+	 * once every {@link #getDiscoveryTTL()} milliseconds.
+	 * 
 	 * @param visitor The object that will handle the callback.
 	 */
 	public static void visitAvailableSerialPorts(IVisitor visitor) {
@@ -107,11 +212,13 @@ public final class SerialPorts {
 			throw new UnsupportedPlatformException();
 		if (visitor == null)
 			return;
-		impl.visitAvailableSerialPorts(visitor);
+		for(ISerialPort port : snapshot().ports)
+			if (!visitor.visit(port))
+				break;
 	}
 	
 	/**
-	 * Retrieves the list of available ports by visiting each one and accumulating references.
+	 * Retrieves the list of available ports from the discovery snapshot.
 	 * 
 	 * @return An array of valid, available ports.
 	 */
@@ -119,44 +226,123 @@ public final class SerialPorts {
 		if (impl == null)
 			throw new UnsupportedPlatformException();
 		
-		final List<ISerialPort> lst = new ArrayList<ISerialPort>(4);
-		visitAvailableSerialPorts(new IVisitor() {
-			@Override
-			public boolean visit(ISerialPort SerialPort) {
-				lst.add(SerialPort);
-				return true;
-			}
-		});
-		
-		if (!lst.isEmpty())
-			return lst.toArray(new ISerialPort[lst.size()]);
+		final ISerialPort[] ports = snapshot().ports;
+		if (ports.length > 0)
+			return ports.clone();
 		else
 			return ISerialPort.EMPTY_SERIAL_PORTS;
 	}
 	
 	/**
-	 * Searches through the ports looking for one with the given name.
+	 * Looks up a port by name (case insensitive) in the discovery snapshot.
 	 * 
-	 * @param name The name of the port such as "COM1" or "LPT1".
+	 * Names of the form "host:port" (optionally prefixed with "rfc2217://") 
+	 * refer to a port on an RFC 2217 server instead, such as a terminal 
+	 * server. Those are always found and only connect when opened.
+	 * 
+	 * @param name The name of the port such as "COM1", "LPT1" or "10.0.0.5:4001".
 	 * @return The instance of the port if found, null otherwise.
 	 */
 	public static ISerialPort find(final String name) {
 		if (StringUtil.isNullOrEmpty(name))
 			return null;
-		final ISerialPort[] finder = new ISerialPort[1];
-		visitAvailableSerialPorts(new IVisitor() {
-			@Override
-			public boolean visit(ISerialPort SerialPort) {
-				if (name.equalsIgnoreCase(SerialPort.getName())) {
-					finder[0] = SerialPort;
-					//We can exit since we found what we were looking for.
-					return false;
-				}
-				return true;
-			}
-		});
+		if (comm.net.rfc2217.RFC2217SerialPortImplementation.isRemoteName(name))
+			return remote.find(name);
+		if (impl == null)
+			throw new UnsupportedPlatformException();
 		//Will return null if it couldn't find the serial port.
-		return finder[0];
+		return snapshot().index.get(Snapshot.key(name));
+	}
+	
+	/**
+	 * Enumerates the platform's ports now, replacing the discovery snapshot.
+	 */
+	public static void refresh() {
+		if (impl == null)
+			throw new UnsupportedPlatformException();
+		synchronized(snapshotLock) {
+			snapshot = discover();
+		}
+	}
+	
+	/**
+	 * Marks the discovery snapshot as stale so the next lookup enumerates 
+	 * the platform's ports again.
+	 */
+	public static void invalidate() {
+		snapshot = null;
+	}
+	
+	public static long getDiscoveryTTL() {
+		return discoveryTTL;
+	}
+	
+	/**
+	 * Sets how long (in milliseconds) discovered ports are reused. Zero 
+	 * enumerates on every call.
+	 */
+	public static void setDiscoveryTTL(long ttl) {
+		if (ttl < 0L)
+			throw new IllegalArgumentException("ttl cannot be negative");
+		discoveryTTL = ttl;
+	}
+	
+	public static boolean isBackgroundRefreshEnabled() {
+		synchronized(snapshotLock) {
+			return (backgroundRefreshThread != null);
+		}
+	}
+	
+	/**
+	 * When enabled, a daemon thread refreshes the snapshot every 
+	 * {@link #getDiscoveryTTL()} milliseconds and the snapshot doesn't expire 
+	 * in between, so callers don't pay for enumeration themselves. They 
+	 * still do if the snapshot was {@link #invalidate() invalidated} and the 
+	 * thread hasn't replaced it yet.
+	 */
+	public static void setBackgroundRefreshEnabled(boolean enabled) {
+		if (impl == null)
+			throw new UnsupportedPlatformException();
+		
+		final Thread t;
+		synchronized(snapshotLock) {
+			if (enabled == (backgroundRefreshThread != null))
+				return;
+			
+			if (enabled) {
+				backgroundRefreshThread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						final Thread self = Thread.currentThread();
+						while(backgroundRefreshThread == self) {
+							//Enumerate outside the lock so lookups aren't held up.
+							try {
+								final Snapshot s = discover();
+								synchronized(snapshotLock) {
+									if (backgroundRefreshThread != self)
+										return;
+									snapshot = s;
+								}
+							} catch(Throwable t) {
+								//Try again next time around.
+							}
+							try {
+								Thread.sleep(Math.max(discoveryTTL, 1L));
+							} catch(InterruptedException ie) {
+								return;
+							}
+						}
+					}
+				}, "Serial Port Discovery");
+				backgroundRefreshThread.setDaemon(true);
+				backgroundRefreshThread.start();
+				return;
+			}
+			
+			t = backgroundRefreshThread;
+			backgroundRefreshThread = null;
+		}
+		t.interrupt();
 	}
 	
 	/**
@@ -170,6 +356,7 @@ public final class SerialPorts {
 		if (impl == null)
 			throw new UnsupportedPlatformException();
 		impl.addPlatformHint(name, value);
+		remote.addPlatformHint(name, value);
 	}
 	
 	/**
@@ -181,7 +368,8 @@ public final class SerialPorts {
 	public static <T> T findPlatformHint(final String name) {
 		if (impl == null)
 			throw new UnsupportedPlatformException();
-		return impl.findPlatformHint(name);
+		final T value = impl.<T>findPlatformHint(name);
+		return (value != null ? value : remote.<T>findPlatformHint(name));
 	}
 	
 	/**
@@ -261,6 +449,23 @@ public final class SerialPorts {
 		return impl.getPlatformBaudRateOptions();
 	}
 	
+	/**
+	 * Describes the standard rates the platform supports and whether other 
+	 * rates can be requested.
+	 */
+	public static BaudRateCapabilities getPlatformBaudRateCapabilities() {
+		if (impl == null)
+			throw new UnsupportedPlatformException();
+		return impl.getBaudRateCapabilities();
+	}
+	
+	/**
+	 * Checks a baud rate against the platform's capabilities in constant time.
+	 */
+	public static boolean isValidBaudRate(int baudRate) {
+		return getPlatformBaudRateCapabilities().isValid(baudRate);
+	}
+	
 	/**
 	 * Requests a list of valid data bit values that the platform allows.
 	 * 
@@ -308,6 +513,9 @@ public final class SerialPorts {
 	
 	//<editor-fold defaultstate="collapsed" desc="Shutdown">
 	public static synchronized void shutdown() {
+		PortWatcher.shutdown();
+		if (impl != null)
+			setBackgroundRefreshEnabled(false);
 		visitAvailableSerialPorts(new IVisitor() {
 			@Override
 			public boolean visit(ISerialPort SerialPort) {
@@ -315,8 +523,16 @@ public final class SerialPorts {
 				return true;
 			}
 		});
-		Sys.gc();
-		System.runFinalization();
+		remote.visitAvailableSerialPorts(new IVisitor() {
+			@Override
+			public boolean visit(ISerialPort SerialPort) {
+				SerialPort.close();
+				return true;
+			}
+		});
+		remote.shutdown();
+		if (impl != null)
+			impl.shutdown();
 	}
 	//</editor-fold>
 }
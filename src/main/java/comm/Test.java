@@ -4,7 +4,7 @@
  */
 package comm;
 
-import comm.ICommPort.IReadListener;
+import comm.ICommPort.ILineListener;
 import comm.ICommPort.IWriteListener;
 import comm.platform.api.MemoryBuffer;
 import comm.util.StringUtil;
@@ -34,21 +34,10 @@ class Test {
 		
 		System.out.println("Opening " + serialPort.getName() + " [" + serialPort.getTitle() + "]");
 		
-		serialPort.addReadListener(new IReadListener() {
+		serialPort.addLineListener(new ILineListener() {
 			@Override
-			public void bytesRead(ByteBuffer buffer, int offset, int bytesRead) {
-				try {
-					synchronized(decoder) {
-						CharBuffer cb = CharBuffer.allocate(bytesRead);
-						decoder.decode(buffer, cb, true);
-						cb.flip();
-					
-						String msg = cb.toString();
-						
-						System.out.println(Thread.currentThread().getName() +  ", recv: " + msg);
-					}
-				} catch(Throwable t) {
-				}
+			public void lineRead(String line) {
+				System.out.println(Thread.currentThread().getName() +  ", recv: " + line);
 			}
 		});
 		
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.capture;
+
+import java.io.File;
+
+/**
+ * Describes the binary layout of capture segment files.
+ * 
+ * Every segment starts with a fixed size header:
+ * <pre>
+ *   int   magic          ('CCAP')
+ *   short version
+ *   short header size    (bytes)
+ *   int   sequence       (segment number, starting at 0)
+ *   long  base nanos     (System.nanoTime() when recording started)
+ *   long  base millis    (System.currentTimeMillis() when recording started)
+ *   int   reserved
+ * </pre>
+ * 
+ * Followed by records:
+ * <pre>
+ *   long  timestamp      (nanoseconds since base nanos)
+ *   int   length         (payload bytes)
+ *   byte  direction      ({@link #DIRECTION_READ} or {@link #DIRECTION_WRITE})
+ *   byte[length] payload
+ * </pre>
+ * 
+ * All values are big-endian. Segments are pre-sized and zero filled so a 
+ * record with a direction of 0 marks the end of the data.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class CaptureFormat {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  MAGIC                     = 0x43434150 //CCAP
+		, VERSION                   = 1
+	;
+	
+	public static final int 
+		  HEADER_SIZE               = 32
+		, RECORD_HEADER_SIZE        = 13
+	;
+	
+	public static final int 
+		  HEADER_OFFSET_MAGIC       = 0
+		, HEADER_OFFSET_VERSION     = 4
+		, HEADER_OFFSET_HEADER_SIZE = 6
+		, HEADER_OFFSET_SEQUENCE    = 8
+		, HEADER_OFFSET_BASE_NANOS  = 12
+		, HEADER_OFFSET_BASE_MILLIS = 20
+	;
+	
+	public static final byte 
+		  DIRECTION_END             = 0
+		, DIRECTION_READ            = 1
+		, DIRECTION_WRITE           = 2
+	;
+	
+	public static final String 
+		  FILE_EXTENSION            = ".cap"
+	;
+	
+	public static final int 
+		  DEFAULT_SEGMENT_SIZE      = 16 * 1024 * 1024
+		, MINIMUM_SEGMENT_SIZE      = 4 * 1024
+	;
+	//</editor-fold>
+	
+	private CaptureFormat() {
+	}
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
+	/**
+	 * Builds the file for a segment such as "COM1-000003.cap".
+	 */
+	public static File segmentFile(File directory, String prefix, int sequence) {
+		return new File(directory, String.format("%s-%06d%s", prefix, sequence, FILE_EXTENSION));
+	}
+	
+	/**
+	 * Removes characters that aren't safe to use in a file name (e.g. "\\.\COM10").
+	 */
+	public static String toFilePrefix(String portName) {
+		if (portName == null || portName.length() == 0)
+			return "capture";
+		StringBuilder sb = new StringBuilder(portName.length());
+		char c;
+		for(int i = 0; i < portName.length(); ++i) {
+			c = portName.charAt(i);
+			if (Character.isLetterOrDigit(c) || c == '-' || c == '_')
+				sb.append(c);
+			else if (sb.length() > 0 && sb.charAt(sb.length() - 1) != '_')
+				sb.append('_');
+		}
+		return (sb.length() > 0 ? sb.toString() : "capture");
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.capture;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Iterates the records in one or more capture segments (see 
+ * {@link CaptureFormat}).
+ * 
+ * Segments are memory-mapped one at a time as the reader reaches them and 
+ * records are never copied: {@link #getBuffer()} and {@link #getOffset()} 
+ * point directly into the mapped segment.
+ * 
+ * Not thread safe.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class CaptureReader {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final List<File> files;
+	private int fileIndex = -1;
+	private MappedByteBuffer segment;
+	private int position;
+	
+	private int sequence;
+	private long baseNanos;
+	private long baseMillis;
+	
+	private long timestamp;
+	private byte direction;
+	private int offset;
+	private int length;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public CaptureReader(File...files) {
+		this(Arrays.asList(files));
+	}
+	
+	public CaptureReader(List<File> files) {
+		if (files == null)
+			throw new NullPointerException("files cannot be null");
+		this.files = new ArrayList<File>(files);
+	}
+	
+	/**
+	 * Opens every segment in a directory written with the given prefix, in 
+	 * sequence order.
+	 */
+	public static CaptureReader open(File directory, final String prefix) {
+		final String p = CaptureFormat.toFilePrefix(prefix) + "-";
+		File[] found = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				String n = f.getName();
+				return f.isFile() && n.startsWith(p) && n.endsWith(CaptureFormat.FILE_EXTENSION);
+			}
+		});
+		
+		List<File> lst = new ArrayList<File>();
+		if (found != null)
+			lst.addAll(Arrays.asList(found));
+		
+		//Sequence numbers are zero padded so the names sort in order.
+		Collections.sort(lst);
+		return new CaptureReader(lst);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public List<File> getFiles() {
+		return Collections.unmodifiableList(files);
+	}
+	
+	/**
+	 * Sequence number of the segment holding the current record.
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * {@link System#nanoTime()} when the capture began.
+	 */
+	public long getBaseNanos() {
+		return baseNanos;
+	}
+	
+	/**
+	 * Wall clock time (in milliseconds) when the capture began.
+	 */
+	public long getBaseMillis() {
+		return baseMillis;
+	}
+	
+	/**
+	 * Nanoseconds from the start of the capture to the current record.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	public byte getDirection() {
+		return direction;
+	}
+	
+	public boolean isRead() {
+		return (direction == CaptureFormat.DIRECTION_READ);
+	}
+	
+	public boolean isWrite() {
+		return (direction == CaptureFormat.DIRECTION_WRITE);
+	}
+	
+	/**
+	 * The mapped segment holding the current record's payload. Use absolute 
+	 * gets with {@link #getOffset()} and {@link #getLength()}.
+	 */
+	public ByteBuffer getBuffer() {
+		return segment;
+	}
+	
+	public int getOffset() {
+		return offset;
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * Advances to the next record.
+	 * 
+	 * @return false when every segment has been read.
+	 */
+	public boolean next() throws IOException {
+		while(true) {
+			if (segment != null && readRecord())
+				return true;
+			if (!openNextSegment())
+				return false;
+		}
+	}
+	
+	/**
+	 * Goes back to the first record.
+	 */
+	public void rewind() {
+		close();
+		fileIndex = -1;
+	}
+	
+	/**
+	 * Releases the current segment. The mapping itself is freed when it's 
+	 * garbage collected.
+	 */
+	public void close() {
+		segment = null;
+		fileIndex = files.size();
+		timestamp = 0L;
+		direction = CaptureFormat.DIRECTION_END;
+		offset = 0;
+		length = 0;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private boolean readRecord() {
+		final int limit = segment.limit();
+		if (limit - position < CaptureFormat.RECORD_HEADER_SIZE)
+			return false;
+		
+		final long ts = segment.getLong(position);
+		final int len = segment.getInt(position + 8);
+		final byte dir = segment.get(position + 12);
+		
+		//A zeroed record marks the end of the segment. A length that runs 
+		//past the end means the segment was cut short.
+		if (dir == CaptureFormat.DIRECTION_END || len < 0 || len > limit - position - CaptureFormat.RECORD_HEADER_SIZE)
+			return false;
+		
+		timestamp = ts;
+		direction = dir;
+		offset = position + CaptureFormat.RECORD_HEADER_SIZE;
+		length = len;
+		position = offset + len;
+		return true;
+	}
+	
+	private boolean openNextSegment() throws IOException {
+		segment = null;
+		if (fileIndex + 1 >= files.size())
+			return false;
+		++fileIndex;
+		
+		final File file = files.get(fileIndex);
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final MappedByteBuffer mapped;
+		try {
+			//The mapping stays valid after the channel is closed.
+			mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, raf.length());
+		} finally {
+			raf.close();
+		}
+		
+		if (mapped.limit() < CaptureFormat.HEADER_SIZE || mapped.getInt(CaptureFormat.HEADER_OFFSET_MAGIC) != CaptureFormat.MAGIC)
+			throw new IOException("Not a capture segment: " + file);
+		if (mapped.getShort(CaptureFormat.HEADER_OFFSET_VERSION) != CaptureFormat.VERSION)
+			throw new IOException("Unsupported capture version " + mapped.getShort(CaptureFormat.HEADER_OFFSET_VERSION) + ": " + file);
+		
+		sequence = mapped.getInt(CaptureFormat.HEADER_OFFSET_SEQUENCE);
+		baseNanos = mapped.getLong(CaptureFormat.HEADER_OFFSET_BASE_NANOS);
+		baseMillis = mapped.getLong(CaptureFormat.HEADER_OFFSET_BASE_MILLIS);
+		position = mapped.getShort(CaptureFormat.HEADER_OFFSET_HEADER_SIZE);
+		segment = mapped;
+		return true;
+	}
+	//</editor-fold>
+}
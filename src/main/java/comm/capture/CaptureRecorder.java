@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.capture;
+
+import comm.ICommPort;
+import comm.platform.dev.DisposableObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every chunk read from and written to a port into rolling, 
+ * memory-mapped segment files (see {@link CaptureFormat}).
+ * 
+ * The port's I/O thread only copies the chunk into a pre-allocated slot and 
+ * hands it off to a dedicated writer thread. If every slot is in use (the 
+ * disk can't keep up), the chunk is dropped and counted instead of blocking 
+ * the port.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class CaptureRecorder extends DisposableObject {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_QUEUE_CAPACITY  = 256
+		, DEFAULT_SLOT_SIZE       = ICommPort.DEFAULT_READ_BUFFER_SIZE
+		, DEFAULT_MAX_SEGMENTS    = 0 //Unlimited
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Object lock = new Object();
+	private final ICommPort port;
+	private final File directory;
+	private final String prefix;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final ArrayBlockingQueue<Chunk> free;
+	private final ArrayBlockingQueue<Chunk> pending;
+	private final Chunk stopMarker = new Chunk(0);
+	private final LinkedList<File> segments = new LinkedList<File>();
+	
+	/**
+	 * I/O threads inside enqueue(). stop() waits for them to leave so no 
+	 * chunk can land behind the stop marker.
+	 */
+	private final AtomicInteger producers = new AtomicInteger(0);
+	private final Object producersLock = new Object();
+	private final AtomicLong recorded = new AtomicLong(0L);
+	private final AtomicLong recordedBytes = new AtomicLong(0L);
+	private final AtomicLong dropped = new AtomicLong(0L);
+	private final AtomicLong droppedBytes = new AtomicLong(0L);
+	
+	private volatile boolean recording = false;
+	private volatile IOException lastError;
+	private Thread writerThread;
+	private long baseNanos;
+	private long baseMillis;
+	
+	//Owned by the writer thread.
+	private int sequence;
+	
+	/**
+	 * Rotated out segments that couldn't be deleted yet. Windows refuses 
+	 * while a file is still mapped, so they're retried on every rotation.
+	 */
+	private final List<File> undeleted = new ArrayList<File>();
+	private RandomAccessFile segmentFile;
+	private MappedByteBuffer segment;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public CaptureRecorder(ICommPort port, File directory) {
+		this(port, directory, CaptureFormat.toFilePrefix(port.getName()), CaptureFormat.DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	public CaptureRecorder(ICommPort port, File directory, int segmentSize, int maxSegments) {
+		this(port, directory, CaptureFormat.toFilePrefix(port.getName()), segmentSize, maxSegments, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	public CaptureRecorder(ICommPort port, File directory, String prefix, int segmentSize, int maxSegments, int queueCapacity) {
+		if (port == null)
+			throw new NullPointerException("port cannot be null");
+		if (directory == null)
+			throw new NullPointerException("directory cannot be null");
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("queueCapacity must be greater than 0");
+		
+		this.port = port;
+		this.directory = directory;
+		this.prefix = CaptureFormat.toFilePrefix(prefix);
+		this.segmentSize = Math.max(segmentSize, CaptureFormat.MINIMUM_SEGMENT_SIZE);
+		this.maxSegments = Math.max(maxSegments, 0);
+		this.free = new ArrayBlockingQueue<Chunk>(queueCapacity);
+		this.pending = new ArrayBlockingQueue<Chunk>(queueCapacity + 1);
+		
+		for(int i = 0; i < queueCapacity; ++i)
+			this.free.offer(new Chunk(DEFAULT_SLOT_SIZE));
+	}
+	
+	@Override
+	protected void disposeObject() {
+		stop();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public ICommPort getPort() {
+		return port;
+	}
+	
+	public File getDirectory() {
+		return directory;
+	}
+	
+	public String getPrefix() {
+		return prefix;
+	}
+	
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+	
+	public int getMaxSegments() {
+		return maxSegments;
+	}
+	
+	public boolean isRecording() {
+		return recording;
+	}
+	
+	/**
+	 * Number of chunks handed off to the writer thread.
+	 */
+	public long getRecordedCount() {
+		return recorded.get();
+	}
+	
+	public long getRecordedBytes() {
+		return recordedBytes.get();
+	}
+	
+	/**
+	 * Number of chunks discarded because the writer thread fell behind.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	public long getDroppedBytes() {
+		return droppedBytes.get();
+	}
+	
+	/**
+	 * The last I/O error seen by the writer thread, if any. Recording stops 
+	 * when one occurs.
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+	
+	/**
+	 * Segment files currently on disk, oldest first.
+	 */
+	public List<File> getSegments() {
+		synchronized(segments) {
+			return new ArrayList<File>(segments);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Listeners">
+	private final ICommPort.IReadListener readListener = new ICommPort.IReadListener() {
+		@Override
+		public void bytesRead(ByteBuffer buffer, int offset, int length) {
+			enqueue(CaptureFormat.DIRECTION_READ, buffer, offset, length);
+		}
+	};
+	
+	private final ICommPort.IWriteListener writeListener = new ICommPort.WriteListenerAdapter() {
+		@Override
+		public void bytesWritten(ByteBuffer buffer, int offset, int length) {
+			enqueue(CaptureFormat.DIRECTION_WRITE, buffer, offset, length);
+		}
+	};
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	public boolean start() {
+		synchronized(lock) {
+			if (recording)
+				return true;
+			if (isDisposed())
+				return false;
+			if (!directory.isDirectory() && !directory.mkdirs())
+				return false;
+			
+			lastError = null;
+			baseNanos = System.nanoTime();
+			baseMillis = System.currentTimeMillis();
+			sequence = 0;
+			
+			try {
+				openSegment();
+			} catch(IOException e) {
+				lastError = e;
+				closeSegment();
+				return false;
+			}
+			
+			recording = true;
+			writerThread = new Thread(writer, "Capture Recorder [" + prefix + "]");
+			writerThread.setDaemon(true);
+			writerThread.start();
+			
+			port.addReadListener(readListener);
+			port.addWriteListener(writeListener);
+			return true;
+		}
+	}
+	
+	public boolean stop() {
+		synchronized(lock) {
+			if (writerThread == null)
+				return true;
+			
+			port.removeReadListener(readListener);
+			port.removeWriteListener(writeListener);
+			recording = false;
+			
+			//Let any I/O thread that got past the recording check finish 
+			//queueing its chunk ahead of the marker.
+			boolean interrupted = false;
+			synchronized(producersLock) {
+				while(producers.get() != 0) {
+					try {
+						producersLock.wait();
+					} catch(InterruptedException ie) {
+						interrupted = true;
+					}
+				}
+			}
+			
+			//There's always room for the marker since pending is one larger 
+			//than the number of slots.
+			pending.offer(stopMarker);
+			try {
+				writerThread.join();
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			writerThread = null;
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			
+			//Nothing should be left, but a stray chunk must not carry over 
+			//into the next start().
+			Chunk chunk;
+			while((chunk = pending.poll()) != null) {
+				if (chunk != stopMarker)
+					free.offer(chunk);
+			}
+			return (lastError == null);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	/**
+	 * Called on the port's I/O thread -- must never block.
+	 */
+	private void enqueue(byte direction, ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return;
+		
+		producers.incrementAndGet();
+		try {
+			if (!recording)
+				return;
+			
+			final long timestamp = System.nanoTime();
+			final Chunk chunk = free.poll();
+			if (chunk == null) {
+				dropped.incrementAndGet();
+				droppedBytes.addAndGet(length);
+				return;
+			}
+			
+			chunk.fill(timestamp, direction, buffer, offset, length);
+			pending.offer(chunk);
+			recorded.incrementAndGet();
+			recordedBytes.addAndGet(length);
+		} finally {
+			//Only the last one out while stopping has anyone to wake.
+			if (producers.decrementAndGet() == 0 && !recording) {
+				synchronized(producersLock) {
+					producersLock.notifyAll();
+				}
+			}
+		}
+	}
+	
+	private final Runnable writer = new Runnable() {
+		@Override
+		public void run() {
+			final List<Chunk> batch = new ArrayList<Chunk>(free.remainingCapacity() + pending.remainingCapacity());
+			boolean stopping = false;
+			Chunk chunk;
+			
+			try {
+				while(!stopping) {
+					try {
+						batch.add(pending.take());
+					} catch(InterruptedException ie) {
+						break;
+					}
+					pending.drainTo(batch);
+					
+					for(int i = 0; i < batch.size(); ++i) {
+						chunk = batch.get(i);
+						if (chunk == stopMarker) {
+							stopping = true;
+							continue;
+						}
+						
+						if (lastError == null) {
+							try {
+								writeChunk(chunk);
+							} catch(IOException e) {
+								lastError = e;
+								recording = false;
+							}
+						}
+						free.offer(chunk);
+					}
+					batch.clear();
+				}
+			} finally {
+				closeSegment();
+				
+				//Report old segments that are still taking up disk.
+				retryDeletes();
+				if (!undeleted.isEmpty() && lastError == null)
+					lastError = new IOException("Unable to delete old capture segment " + undeleted.get(0));
+			}
+		}
+	};
+	
+	private void writeChunk(Chunk chunk) throws IOException {
+		final long timestamp = chunk.timestamp - baseNanos;
+		int offset = 0;
+		int remaining = chunk.length;
+		int count;
+		
+		//Chunks larger than the space left in a segment are split across 
+		//records with the same timestamp.
+		while(remaining > 0) {
+			if (segment.remaining() <= CaptureFormat.RECORD_HEADER_SIZE) {
+				closeSegment();
+				++sequence;
+				openSegment();
+			}
+			
+			count = Math.min(remaining, segment.remaining() - CaptureFormat.RECORD_HEADER_SIZE);
+			segment.putLong(timestamp);
+			segment.putInt(count);
+			segment.put(chunk.direction);
+			segment.put(chunk.data, offset, count);
+			
+			offset += count;
+			remaining -= count;
+		}
+	}
+	
+	private void openSegment() throws IOException {
+		final File file = CaptureFormat.segmentFile(directory, prefix, sequence);
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			//Start from a clean, zero filled file so the reader sees the end marker.
+			raf.setLength(0L);
+			raf.setLength(segmentSize);
+			segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, segmentSize);
+		} catch(IOException e) {
+			raf.close();
+			throw e;
+		}
+		segmentFile = raf;
+		
+		segment.putInt(CaptureFormat.HEADER_OFFSET_MAGIC, CaptureFormat.MAGIC);
+		segment.putShort(CaptureFormat.HEADER_OFFSET_VERSION, (short)CaptureFormat.VERSION);
+		segment.putShort(CaptureFormat.HEADER_OFFSET_HEADER_SIZE, (short)CaptureFormat.HEADER_SIZE);
+		segment.putInt(CaptureFormat.HEADER_OFFSET_SEQUENCE, sequence);
+		segment.putLong(CaptureFormat.HEADER_OFFSET_BASE_NANOS, baseNanos);
+		segment.putLong(CaptureFormat.HEADER_OFFSET_BASE_MILLIS, baseMillis);
+		segment.position(CaptureFormat.HEADER_SIZE);
+		
+		retryDeletes();
+		synchronized(segments) {
+			segments.addLast(file);
+			while(maxSegments > 0 && segments.size() > maxSegments)
+				delete(segments.removeFirst());
+		}
+	}
+	
+	private void delete(File file) {
+		if (!file.delete() && file.exists())
+			undeleted.add(file);
+	}
+	
+	private void retryDeletes() {
+		File file;
+		for(int i = undeleted.size() - 1; i >= 0; --i) {
+			file = undeleted.get(i);
+			if (file.delete() || !file.exists())
+				undeleted.remove(i);
+		}
+	}
+	
+	private void closeSegment() {
+		if (segment != null) {
+			segment.force();
+			segment = null;
+		}
+		if (segmentFile != null) {
+			try {
+				segmentFile.close();
+			} catch(IOException e) {
+				if (lastError == null)
+					lastError = e;
+			}
+			segmentFile = null;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Chunk">
+	private static final class Chunk {
+		long timestamp;
+		byte direction;
+		int length;
+		byte[] data;
+		
+		Chunk(int capacity) {
+			this.data = new byte[capacity];
+		}
+		
+		void fill(long timestamp, byte direction, ByteBuffer buffer, int offset, int length) {
+			if (data.length < length)
+				data = new byte[length];
+			
+			this.timestamp = timestamp;
+			this.direction = direction;
+			this.length = length;
+			
+			//A duplicate leaves the buffer's position and limit untouched 
+			//for the remaining listeners.
+			final ByteBuffer source = buffer.duplicate();
+			source.limit(offset + length);
+			source.position(offset);
+			source.get(data, 0, length);
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.capture;
+
+import comm.platform.dev.VirtualCommPort;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a capture into a {@link VirtualCommPort}, reproducing the original 
+ * timing between chunks or compressing it by a speed factor.
+ * 
+ * A speed of 1.0 plays back in real time, 10.0 ten times faster, and 
+ * {@link #AS_FAST_AS_POSSIBLE} ignores the timestamps entirely.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class CaptureReplayer {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final double 
+		  REAL_TIME           = 1.0
+		, AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final CaptureReader reader;
+	private final VirtualCommPort port;
+	private final double speed;
+	private final boolean includeWrites;
+	
+	private volatile boolean cancelled = false;
+	private volatile long replayed = 0L;
+	private volatile long replayedBytes = 0L;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public CaptureReplayer(CaptureReader reader, VirtualCommPort port) {
+		this(reader, port, REAL_TIME, false);
+	}
+	
+	public CaptureReplayer(CaptureReader reader, VirtualCommPort port, double speed) {
+		this(reader, port, speed, false);
+	}
+	
+	/**
+	 * @param includeWrites when true, recorded writes are reported to the 
+	 *        port's write listeners as well.
+	 */
+	public CaptureReplayer(CaptureReader reader, VirtualCommPort port, double speed, boolean includeWrites) {
+		if (reader == null)
+			throw new NullPointerException("reader cannot be null");
+		if (port == null)
+			throw new NullPointerException("port cannot be null");
+		if (!(speed > 0.0))
+			throw new IllegalArgumentException("speed must be greater than 0");
+		
+		this.reader = reader;
+		this.port = port;
+		this.speed = speed;
+		this.includeWrites = includeWrites;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public CaptureReader getReader() {
+		return reader;
+	}
+	
+	public VirtualCommPort getPort() {
+		return port;
+	}
+	
+	public double getSpeed() {
+		return speed;
+	}
+	
+	public boolean isIncludingWrites() {
+		return includeWrites;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Number of records delivered to the port so far.
+	 */
+	public long getReplayedCount() {
+		return replayed;
+	}
+	
+	public long getReplayedBytes() {
+		return replayedBytes;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * Stops a replay in progress after the current record.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Replays the capture on the calling thread.
+	 * 
+	 * @return false if the replay was cancelled or interrupted.
+	 */
+	public boolean replay() throws IOException {
+		final boolean paced = !Double.isInfinite(speed);
+		final long start = System.nanoTime();
+		long first = -1L;
+		long target;
+		long wait;
+		
+		cancelled = false;
+		replayed = 0L;
+		replayedBytes = 0L;
+		
+		while(!cancelled && reader.next()) {
+			if (!reader.isRead() && !(includeWrites && reader.isWrite()))
+				continue;
+			
+			if (paced) {
+				if (first < 0L)
+					first = reader.getTimestamp();
+				target = start + (long)((reader.getTimestamp() - first) / speed);
+				while((wait = target - System.nanoTime()) > 0L) {
+					LockSupport.parkNanos(wait);
+					if (Thread.interrupted()) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+			}
+			
+			//Listeners get a buffer bounded to the record like a real read, and 
+			//can't disturb the reader's view of the segment.
+			final ByteBuffer record = reader.getBuffer().duplicate();
+			record.limit(reader.getOffset() + reader.getLength());
+			record.position(reader.getOffset());
+			if (reader.isRead())
+				port.inject(record.slice(), 0, reader.getLength());
+			else
+				port.injectWritten(record.slice(), 0, reader.getLength());
+			
+			replayed++;
+			replayedBytes += reader.getLength();
+		}
+		return !cancelled;
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import comm.util.StringUtil;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Provides hints that can be used to modify how remote ports behave.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class PlatformHint {
+	public static final String 
+		  /**
+		   * How long (in milliseconds, as an Integer) opening a remote port waits 
+		   * for the TCP connection. Defaults to 5000.
+		   */
+		  ConnectTimeout = "RFC2217ConnectTimeout"
+	;
+	
+	private static final Map<String, Object> hints = new TreeMap<String, Object>();
+	
+	static {
+		hints.put(ConnectTimeout, RFC2217SerialPort.DEFAULT_CONNECT_TIMEOUT);
+	}
+	
+	static void add(final String name, final Object value) {
+		if (StringUtil.isNullOrEmpty(name))
+			return;
+		hints.put(name, value);
+	}
+	
+	static <T> T hint(final String name) {
+		return (T)hints.get(name);
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import comm.DataBits;
+import comm.FlowControl;
+import comm.ISerialPort;
+import comm.Parity;
+import comm.StopBits;
+
+/**
+ * Telnet and RFC 2217 (Telnet Com Port Control Option) constants, plus the 
+ * translation between the wire values and this library's types.
+ * 
+ * http://tools.ietf.org/html/rfc2217
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class RFC2217 {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_PORT                  = 2217
+	;
+	
+	//Telnet commands
+	public static final int 
+		  SE                            = 240
+		, SB                            = 250
+		, WILL                          = 251
+		, WONT                          = 252
+		, DO                            = 253
+		, DONT                          = 254
+		, IAC                           = 255
+	;
+	
+	//Telnet options
+	public static final int 
+		  TRANSMIT_BINARY               = 0
+		, SUPPRESS_GO_AHEAD             = 3
+		, COM_PORT_OPTION               = 44
+	;
+	
+	//Com port commands as sent by the client. The server answers with the same 
+	//command plus SERVER_OFFSET.
+	public static final int 
+		  SIGNATURE                     = 0
+		, SET_BAUDRATE                  = 1
+		, SET_DATASIZE                  = 2
+		, SET_PARITY                    = 3
+		, SET_STOPSIZE                  = 4
+		, SET_CONTROL                   = 5
+		, NOTIFY_LINESTATE              = 6
+		, NOTIFY_MODEMSTATE             = 7
+		, FLOWCONTROL_SUSPEND           = 8
+		, FLOWCONTROL_RESUME            = 9
+		, SET_LINESTATE_MASK            = 10
+		, SET_MODEMSTATE_MASK           = 11
+		, PURGE_DATA                    = 12
+		, SERVER_OFFSET                 = 100
+	;
+	
+	//SET_PARITY values
+	public static final int 
+		  PARITY_REQUEST                = 0
+		, PARITY_NONE                   = 1
+		, PARITY_ODD                    = 2
+		, PARITY_EVEN                   = 3
+		, PARITY_MARK                   = 4
+		, PARITY_SPACE                  = 5
+	;
+	
+	//SET_STOPSIZE values
+	public static final int 
+		  STOPSIZE_REQUEST              = 0
+		, STOPSIZE_1                    = 1
+		, STOPSIZE_2                    = 2
+		, STOPSIZE_1_5                  = 3
+	;
+	
+	//SET_CONTROL values
+	public static final int 
+		  CONTROL_FLOW_REQUEST          = 0
+		, CONTROL_FLOW_NONE             = 1
+		, CONTROL_FLOW_XONXOFF          = 2
+		, CONTROL_FLOW_HARDWARE         = 3
+		, CONTROL_BREAK_REQUEST         = 4
+		, CONTROL_BREAK_ON              = 5
+		, CONTROL_BREAK_OFF             = 6
+		, CONTROL_DTR_REQUEST           = 7
+		, CONTROL_DTR_ON                = 8
+		, CONTROL_DTR_OFF               = 9
+		, CONTROL_RTS_REQUEST           = 10
+		, CONTROL_RTS_ON                = 11
+		, CONTROL_RTS_OFF               = 12
+		, CONTROL_INBOUND_FLOW_REQUEST  = 13
+		, CONTROL_INBOUND_FLOW_NONE     = 14
+		, CONTROL_INBOUND_FLOW_XONXOFF  = 15
+		, CONTROL_INBOUND_FLOW_HARDWARE = 16
+	;
+	
+	//NOTIFY_MODEMSTATE bits
+	public static final int 
+		  MODEMSTATE_DELTA_CTS          = 0x01
+		, MODEMSTATE_DELTA_DSR          = 0x02
+		, MODEMSTATE_TRAILING_RI        = 0x04
+		, MODEMSTATE_DELTA_DCD          = 0x08
+		, MODEMSTATE_CTS                = 0x10
+		, MODEMSTATE_DSR                = 0x20
+		, MODEMSTATE_RI                 = 0x40
+		, MODEMSTATE_DCD                = 0x80
+	;
+	
+	//NOTIFY_LINESTATE bits
+	public static final int 
+		  LINESTATE_DATA_READY          = 0x01
+		, LINESTATE_OVERRUN             = 0x02
+		, LINESTATE_PARITY              = 0x04
+		, LINESTATE_FRAMING             = 0x08
+		, LINESTATE_BREAK               = 0x10
+		, LINESTATE_TX_HOLDING_EMPTY    = 0x20
+		, LINESTATE_TX_SHIFT_EMPTY      = 0x40
+		, LINESTATE_TIMEOUT             = 0x80
+	;
+	
+	//PURGE_DATA values
+	public static final int 
+		  PURGE_RECEIVE                 = 1
+		, PURGE_TRANSMIT                = 2
+		, PURGE_BOTH                    = 3
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private RFC2217() {
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	public static int fromParity(Parity parity) {
+		switch(parity) {
+			case ODD:
+				return PARITY_ODD;
+			case EVEN:
+				return PARITY_EVEN;
+			case MARK:
+				return PARITY_MARK;
+			case SPACE:
+				return PARITY_SPACE;
+			case NONE:
+			default:
+				return PARITY_NONE;
+		}
+	}
+	
+	/**
+	 * @return The parity, or null for PARITY_REQUEST and unknown values.
+	 */
+	public static Parity toParity(int value) {
+		switch(value) {
+			case PARITY_NONE:
+				return Parity.NONE;
+			case PARITY_ODD:
+				return Parity.ODD;
+			case PARITY_EVEN:
+				return Parity.EVEN;
+			case PARITY_MARK:
+				return Parity.MARK;
+			case PARITY_SPACE:
+				return Parity.SPACE;
+			default:
+				return null;
+		}
+	}
+	
+	public static int fromStopBits(StopBits stopBits) {
+		switch(stopBits) {
+			case STOPBITS_2:
+				return STOPSIZE_2;
+			case STOPBITS_1_5:
+				return STOPSIZE_1_5;
+			case STOPBITS_1:
+			default:
+				return STOPSIZE_1;
+		}
+	}
+	
+	/**
+	 * @return The stop bits, or null for STOPSIZE_REQUEST and unknown values.
+	 */
+	public static StopBits toStopBits(int value) {
+		switch(value) {
+			case STOPSIZE_1:
+				return StopBits.STOPBITS_1;
+			case STOPSIZE_2:
+				return StopBits.STOPBITS_2;
+			case STOPSIZE_1_5:
+				return StopBits.STOPBITS_1_5;
+			default:
+				return null;
+		}
+	}
+	
+	public static int fromDataBits(DataBits dataBits) {
+		switch(dataBits) {
+			case DATABITS_5:
+				return 5;
+			case DATABITS_6:
+				return 6;
+			case DATABITS_7:
+				return 7;
+			case DATABITS_8:
+			default:
+				return 8;
+		}
+	}
+	
+	/**
+	 * @return The data bits, or null for 0 (a request) and unknown values.
+	 */
+	public static DataBits toDataBits(int value) {
+		switch(value) {
+			case 5:
+				return DataBits.DATABITS_5;
+			case 6:
+				return DataBits.DATABITS_6;
+			case 7:
+				return DataBits.DATABITS_7;
+			case 8:
+				return DataBits.DATABITS_8;
+			default:
+				return null;
+		}
+	}
+	
+	/**
+	 * @return The SET_CONTROL value for the outbound half of a 
+	 * {@link FlowControl} flag.
+	 */
+	public static int fromOutboundFlowControl(int flag) {
+		if (FlowControl.isFlagged(flag, FlowControl.RTSCTS_OUT))
+			return CONTROL_FLOW_HARDWARE;
+		if (FlowControl.isFlagged(flag, FlowControl.XONXOFF_OUT))
+			return CONTROL_FLOW_XONXOFF;
+		return CONTROL_FLOW_NONE;
+	}
+	
+	/**
+	 * @return The SET_CONTROL value for the inbound half of a 
+	 * {@link FlowControl} flag.
+	 */
+	public static int fromInboundFlowControl(int flag) {
+		if (FlowControl.isFlagged(flag, FlowControl.RTSCTS_IN))
+			return CONTROL_INBOUND_FLOW_HARDWARE;
+		if (FlowControl.isFlagged(flag, FlowControl.XONXOFF_IN))
+			return CONTROL_INBOUND_FLOW_XONXOFF;
+		return CONTROL_INBOUND_FLOW_NONE;
+	}
+	
+	/**
+	 * Builds a NOTIFY_MODEMSTATE value from ISerialPort.MODEM_* lines.
+	 */
+	public static int fromModemLines(int changed, int status) {
+		int state = 0;
+		if ((status & ISerialPort.MODEM_CTS) != 0)
+			state |= MODEMSTATE_CTS;
+		if ((status & ISerialPort.MODEM_DSR) != 0)
+			state |= MODEMSTATE_DSR;
+		if ((status & ISerialPort.MODEM_RING) != 0)
+			state |= MODEMSTATE_RI;
+		if ((status & ISerialPort.MODEM_DCD) != 0)
+			state |= MODEMSTATE_DCD;
+		if ((changed & ISerialPort.MODEM_CTS) != 0)
+			state |= MODEMSTATE_DELTA_CTS;
+		if ((changed & ISerialPort.MODEM_DSR) != 0)
+			state |= MODEMSTATE_DELTA_DSR;
+		if ((changed & ISerialPort.MODEM_RING) != 0 && (status & ISerialPort.MODEM_RING) == 0)
+			state |= MODEMSTATE_TRAILING_RI;
+		if ((changed & ISerialPort.MODEM_DCD) != 0)
+			state |= MODEMSTATE_DELTA_DCD;
+		return state;
+	}
+	
+	/**
+	 * @return The ISerialPort.MODEM_* input lines set in a NOTIFY_MODEMSTATE value.
+	 */
+	public static int toModemLines(int state) {
+		int lines = 0;
+		if ((state & MODEMSTATE_CTS) != 0)
+			lines |= ISerialPort.MODEM_CTS;
+		if ((state & MODEMSTATE_DSR) != 0)
+			lines |= ISerialPort.MODEM_DSR;
+		if ((state & MODEMSTATE_RI) != 0)
+			lines |= ISerialPort.MODEM_RING;
+		if ((state & MODEMSTATE_DCD) != 0)
+			lines |= ISerialPort.MODEM_DCD;
+		return lines;
+	}
+	
+	/**
+	 * @return The ISerialPort.MODEM_* input lines flagged as changed in a 
+	 * NOTIFY_MODEMSTATE value.
+	 */
+	public static int toChangedModemLines(int state) {
+		int lines = 0;
+		if ((state & MODEMSTATE_DELTA_CTS) != 0)
+			lines |= ISerialPort.MODEM_CTS;
+		if ((state & MODEMSTATE_DELTA_DSR) != 0)
+			lines |= ISerialPort.MODEM_DSR;
+		if ((state & MODEMSTATE_TRAILING_RI) != 0)
+			lines |= ISerialPort.MODEM_RING;
+		if ((state & MODEMSTATE_DELTA_DCD) != 0)
+			lines |= ISerialPort.MODEM_DCD;
+		return lines;
+	}
+	
+	/**
+	 * Builds a NOTIFY_LINESTATE value from ISerialPort.LINE_ERROR_* flags.
+	 */
+	public static int fromLineErrors(int errors) {
+		int state = 0;
+		if ((errors & (ISerialPort.LINE_ERROR_OVERRUN | ISerialPort.LINE_ERROR_RX_OVERFLOW)) != 0)
+			state |= LINESTATE_OVERRUN;
+		if ((errors & ISerialPort.LINE_ERROR_PARITY) != 0)
+			state |= LINESTATE_PARITY;
+		if ((errors & ISerialPort.LINE_ERROR_FRAMING) != 0)
+			state |= LINESTATE_FRAMING;
+		return state;
+	}
+	
+	/**
+	 * @return The ISerialPort.LINE_ERROR_* flags set in a NOTIFY_LINESTATE value.
+	 */
+	public static int toLineErrors(int state) {
+		int errors = 0;
+		if ((state & LINESTATE_OVERRUN) != 0)
+			errors |= ISerialPort.LINE_ERROR_OVERRUN;
+		if ((state & LINESTATE_PARITY) != 0)
+			errors |= ISerialPort.LINE_ERROR_PARITY;
+		if ((state & LINESTATE_FRAMING) != 0)
+			errors |= ISerialPort.LINE_ERROR_FRAMING;
+		return errors;
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,631 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import comm.DataBits;
+import comm.FlowControl;
+import comm.LineSettings;
+import comm.Parity;
+import comm.PortType;
+import comm.ReadTiming;
+import comm.StopBits;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import static comm.net.rfc2217.RFC2217.*;
+
+/**
+ * A serial port on the far side of an RFC 2217 server such as a terminal 
+ * server or {@link RFC2217Server}.
+ * 
+ * Every remote port shares one selector thread. Writes are escaped into a 
+ * single outgoing buffer which the selector thread sends with one write per 
+ * wakeup, so a burst of small writes goes out in as few TCP segments as 
+ * possible without relying on Nagle. Writers block once the buffer holds more 
+ * than the larger of the write buffer size and {@link #MIN_PENDING} bytes.
+ * 
+ * Line settings, flow control, RTS, DTR and break are sent as Com Port 
+ * Control subnegotiations. The rate the server reports back becomes the 
+ * actual baud rate, and its modem and line state notifications go to the 
+ * modem listeners. Losing the connection closes the port and is reported to 
+ * the error listeners.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+class RFC2217SerialPort extends comm.platform.dev.SerialPort {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_CONNECT_TIMEOUT   = 5000
+		, MIN_PENDING               = 16 * 1024
+	;
+	
+	private static final int 
+		  MODEMSTATE_MASK           = 0xFF
+		, LINESTATE_MASK            = LINESTATE_OVERRUN | LINESTATE_PARITY | LINESTATE_FRAMING | LINESTATE_BREAK
+		, OUTPUT_LINES              = MODEM_RTS | MODEM_DTR
+	;
+	
+	private static final long 
+		  STOP_TIMEOUT              = 2000L
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private static final Object loopLock = new Object();
+	private static SelectorLoop loop;
+	
+	private final String host;
+	private final int port;
+	private volatile Connection connection;
+	private volatile int inputLines;
+	private volatile int outputLines;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	RFC2217SerialPort(String name, String host, int port) {
+		super(name, name, "RFC 2217 port " + port + " on " + host, PortType.SERIAL, RFC2217SerialPortImplementation.DEFAULT_BAUD_RATE);
+		this.host = host;
+		this.port = port;
+		this.available = true;
+	}
+	
+	@Override
+	protected void disposeObject() {
+		close();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static SelectorLoop loop() throws IOException {
+		synchronized(loopLock) {
+			if (loop == null || !loop.isRunning())
+				loop = new SelectorLoop("RFC 2217 Client");
+			return loop;
+		}
+	}
+	
+	/**
+	 * Stops the selector thread, dropping any connections still open. The 
+	 * next open starts it again.
+	 */
+	static void shutdown() {
+		final SelectorLoop l;
+		synchronized(loopLock) {
+			l = loop;
+			loop = null;
+		}
+		if (l != null)
+			l.stop(STOP_TIMEOUT);
+	}
+	
+	private static int connectTimeout() {
+		final Integer timeout = PlatformHint.hint(PlatformHint.ConnectTimeout);
+		return (timeout != null && timeout >= 0 ? timeout : DEFAULT_CONNECT_TIMEOUT);
+	}
+	
+	private static byte[] control(int value) {
+		return TelnetCodec.subnegotiation(COM_PORT_OPTION, SET_CONTROL, value, 1);
+	}
+	
+	private static byte[] settings(LineSettings settings) {
+		final byte[][] parts = new byte[][] {
+			  TelnetCodec.subnegotiation(COM_PORT_OPTION, SET_BAUDRATE, settings.getBaudRate(), 4)
+			, TelnetCodec.subnegotiation(COM_PORT_OPTION, SET_DATASIZE, fromDataBits(settings.getDataBits()), 1)
+			, TelnetCodec.subnegotiation(COM_PORT_OPTION, SET_PARITY, fromParity(settings.getParity()), 1)
+			, TelnetCodec.subnegotiation(COM_PORT_OPTION, SET_STOPSIZE, fromStopBits(settings.getStopBits()), 1)
+		};
+		return concat(parts);
+	}
+	
+	private static byte[] flowControl(int flag) {
+		return concat(new byte[][] {
+			  control(fromOutboundFlowControl(flag))
+			, control(fromInboundFlowControl(flag))
+		});
+	}
+	
+	private static byte[] concat(byte[][] parts) {
+		int length = 0;
+		for(byte[] part : parts)
+			length += part.length;
+		
+		final byte[] all = new byte[length];
+		int offset = 0;
+		for(byte[] part : parts) {
+			System.arraycopy(part, 0, all, offset, part.length);
+			offset += part.length;
+		}
+		return all;
+	}
+	
+	/**
+	 * Called once a connection is gone. Only the first call for the current 
+	 * connection does anything.
+	 * 
+	 * @return True if it was the current connection.
+	 */
+	private boolean detach(Connection c) {
+		synchronized(commLock) {
+			if (c == null || connection != c)
+				return false;
+			connection = null;
+			opened = false;
+			appliedSettings = null;
+			actualBaudRate = 0;
+			inputLines = 0;
+			outputLines = 0;
+			return true;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	@Override
+	public boolean open(int readBufferSize, int writeBufferSize) {
+		if (readBufferSize <= 0)
+			throw new IllegalArgumentException("readBufferSize must be > 0");
+		if (writeBufferSize <= 0)
+			throw new IllegalArgumentException("writeBufferSize must be > 0");
+		
+		synchronized(commLock) {
+			if (opened)
+				return true;
+			
+			SocketChannel channel = null;
+			try {
+				final SelectorLoop l = loop();
+				
+				channel = SocketChannel.open();
+				channel.socket().setTcpNoDelay(true);
+				channel.socket().connect(new InetSocketAddress(host, port), connectTimeout());
+				channel.configureBlocking(false);
+				
+				final LineSettings settings = getLineSettings();
+				final Connection c = new Connection(l, channel, readBufferSize, Math.max(writeBufferSize, MIN_PENDING));
+				c.start();
+				
+				//Everything up front goes out in the first segment. Servers that 
+				//refuse the option simply ignore the subnegotiations.
+				c.send(concat(new byte[][] {
+					  c.codec.request(WILL, TRANSMIT_BINARY)
+					, c.codec.request(DO, TRANSMIT_BINARY)
+					, c.codec.request(WILL, SUPPRESS_GO_AHEAD)
+					, c.codec.request(DO, SUPPRESS_GO_AHEAD)
+					, c.codec.request(WILL, COM_PORT_OPTION)
+					, settings(settings)
+					, flowControl(settings.getFlowControlFlag())
+					, control(CONTROL_DTR_ON)
+					, control(CONTROL_RTS_ON)
+					, TelnetCodec.subnegotiation(COM_PORT_OPTION, SET_MODEMSTATE_MASK, MODEMSTATE_MASK, 1)
+					, TelnetCodec.subnegotiation(COM_PORT_OPTION, SET_LINESTATE_MASK, LINESTATE_MASK, 1)
+				}));
+				
+				this.connection = c;
+				this.appliedSettings = settings;
+				this.outputLines = OUTPUT_LINES;
+				opened = true;
+				return true;
+			} catch(IOException e) {
+				if (channel != null) {
+					try {
+						channel.close();
+					} catch(IOException ignored) {
+					}
+				}
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Sends whatever is still queued (as far as the socket will take it 
+	 * without blocking) and then disconnects.
+	 */
+	@Override
+	public boolean close() {
+		final Connection c = connection;
+		if (!detach(c))
+			return true;
+		c.finish();
+		return true;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="System Methods">
+	@Override
+	protected boolean configureSystemSerialPort(LineSettings settings) {
+		final Connection c = connection;
+		if (c == null)
+			return false;
+		
+		//RFC 2217 has no read timing to send; refuse before changing anything else.
+		if (!ReadTiming.isSame(settings.getReadTiming(), readTiming) && !changeSystemReadTiming(settings.getReadTiming()))
+			return false;
+		
+		//One buffer so the whole change goes out together.
+		if (settings.getFlowControlFlag() != getFlowControlFlag())
+			return c.send(concat(new byte[][] { flowControl(settings.getFlowControlFlag()), settings(settings) }));
+		return c.send(settings(settings));
+	}
+	
+	@Override
+	protected boolean configureSystemSerialPort(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
+		return configureSystemSerialPort(new LineSettings(baudRate, dataBits, stopBits, parity, getFlowControlFlag(), readTiming));
+	}
+	
+	@Override
+	protected boolean changeSystemFlowControl(FlowControl... flowControl) {
+		final Connection c = connection;
+		return (c != null && c.send(flowControl(FlowControl.asFlag(flowControl))));
+	}
+	
+	@Override
+	protected int querySystemModemStatus() {
+		return inputLines | outputLines;
+	}
+	
+	@Override
+	protected boolean changeSystemModemLine(int line, boolean state) {
+		final int value;
+		switch(line) {
+			case MODEM_RTS:
+				value = (state ? CONTROL_RTS_ON : CONTROL_RTS_OFF);
+				break;
+			case MODEM_DTR:
+				value = (state ? CONTROL_DTR_ON : CONTROL_DTR_OFF);
+				break;
+			default:
+				return false;
+		}
+		
+		final Connection c = connection;
+		if (c == null || !c.send(control(value)))
+			return false;
+		outputLines = (state ? outputLines | line : outputLines & ~line);
+		return true;
+	}
+	
+	@Override
+	protected boolean changeSystemBreak(boolean state) {
+		final Connection c = connection;
+		return (c != null && c.send(control(state ? CONTROL_BREAK_ON : CONTROL_BREAK_OFF)));
+	}
+	
+	@Override
+	protected boolean purgeSystemInput() {
+		final Connection c = connection;
+		return (c != null && c.send(TelnetCodec.subnegotiation(COM_PORT_OPTION, PURGE_DATA, PURGE_RECEIVE, 1)));
+	}
+	
+	@Override
+	protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return true;
+		
+		final Connection c = connection;
+		if (c == null || !c.write(buffer, offset, length))
+			return false;
+		
+		if (hasWriteListeners()) {
+			try {
+				notifyWriteListenersBytesWritten(buffer, offset, length);
+				notifyWriteListenersWriteComplete(buffer, length);
+			} catch(Throwable t) {
+				if (hasErrorListeners())
+					notifyErrorListenersExceptionCaught(t);
+			}
+		}
+		return true;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Connection">
+	/**
+	 * One TCP connection to the server. The outgoing buffer and flags are 
+	 * guarded by this; everything else belongs to the selector thread.
+	 */
+	private final class Connection implements SelectorLoop.Attachment, TelnetCodec.Handler {
+		final SelectorLoop loop;
+		final SocketChannel channel;
+		final TelnetCodec codec = new TelnetCodec(this);
+		final ByteBuffer readBuffer;
+		final int maxPending;
+		SelectionKey key;
+		
+		//Guarded by this. Always in fill mode.
+		ByteBuffer outbound;
+		boolean writeRequested;
+		boolean suspended;
+		boolean closed;
+		
+		private final Runnable flushTask = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch(IOException ioe) {
+					close();
+				}
+			}
+		};
+		
+		Connection(SelectorLoop loop, SocketChannel channel, int readBufferSize, int maxPending) {
+			this.loop = loop;
+			this.channel = channel;
+			this.readBuffer = ByteBuffer.allocate(readBufferSize);
+			this.outbound = ByteBuffer.allocate(maxPending);
+			this.maxPending = maxPending;
+		}
+		
+		//<editor-fold defaultstate="collapsed" desc="Lifecycle">
+		void start() {
+			synchronized(this) {
+				//The flush after registering takes care of anything queued.
+				writeRequested = true;
+			}
+			loop.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						key = loop.register(channel, SelectionKey.OP_READ, Connection.this);
+						flush();
+					} catch(IOException ioe) {
+						close();
+					}
+				}
+			});
+		}
+		
+		/**
+		 * Flushes what it can and closes, on the selector thread.
+		 */
+		void finish() {
+			loop.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						flush();
+					} catch(IOException ioe) {
+					}
+					close();
+				}
+			});
+			
+			//If the loop had already stopped the task won't run.
+			if (!loop.isRunning())
+				close();
+		}
+		
+		@Override
+		public void close() {
+			synchronized(this) {
+				if (closed)
+					return;
+				closed = true;
+				notifyAll();
+			}
+			
+			if (key != null)
+				key.cancel();
+			try {
+				channel.close();
+			} catch(IOException ioe) {
+			}
+			
+			if (detach(this) && hasErrorListeners())
+				notifyErrorListenersExceptionCaught(new IOException("Lost the connection to " + host + ":" + port));
+		}
+		//</editor-fold>
+		
+		//<editor-fold defaultstate="collapsed" desc="Network">
+		@Override
+		public void ready(SelectionKey key) throws IOException {
+			if (key.isReadable())
+				read();
+			if (key.isValid() && key.isWritable())
+				flush();
+		}
+		
+		void read() throws IOException {
+			readBuffer.clear();
+			final int n = channel.read(readBuffer);
+			if (n < 0) {
+				close();
+				return;
+			}
+			if (n > 0)
+				codec.decode(readBuffer.array(), 0, n);
+		}
+		
+		/**
+		 * Sends as much of the outgoing buffer as the socket takes in one write 
+		 * and waits for OP_WRITE if anything is left.
+		 */
+		void flush() throws IOException {
+			if (key == null || !key.isValid())
+				return;
+			
+			synchronized(this) {
+				if (!suspended && outbound.position() > 0) {
+					outbound.flip();
+					channel.write(outbound);
+					outbound.compact();
+					notifyAll();
+				}
+				
+				writeRequested = (!suspended && outbound.position() > 0);
+				key.interestOps(writeRequested ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+			}
+		}
+		
+		/**
+		 * Queues protocol bytes. These never block so settings can be changed 
+		 * while a writer is waiting for room.
+		 */
+		boolean send(byte[] bytes) {
+			synchronized(this) {
+				if (closed)
+					return false;
+				reserve(bytes.length);
+				outbound.put(bytes);
+				requestWrite();
+				return true;
+			}
+		}
+		
+		/**
+		 * Escapes and queues port data, waiting while the server is behind.
+		 */
+		boolean write(ByteBuffer buffer, int offset, int length) {
+			synchronized(this) {
+				try {
+					//The selector thread can't wait on itself.
+					while(!closed && outbound.position() >= maxPending && !loop.isLoopThread())
+						wait();
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				if (closed)
+					return false;
+				
+				//Worst case every byte is IAC and doubles.
+				reserve(length * 2);
+				for(int i = offset; i < offset + length; ++i) {
+					final byte b = buffer.get(i);
+					outbound.put(b);
+					if ((b & 0xFF) == IAC)
+						outbound.put(b);
+				}
+				requestWrite();
+				return true;
+			}
+		}
+		
+		/**
+		 * Must be called while holding this.
+		 */
+		private void reserve(int length) {
+			if (outbound.remaining() >= length)
+				return;
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(outbound.capacity() * 2, outbound.position() + length));
+			outbound.flip();
+			larger.put(outbound);
+			outbound = larger;
+		}
+		
+		/**
+		 * Must be called while holding this.
+		 */
+		private void requestWrite() {
+			if (writeRequested || suspended)
+				return;
+			writeRequested = true;
+			loop.submit(flushTask);
+		}
+		//</editor-fold>
+		
+		//<editor-fold defaultstate="collapsed" desc="Telnet">
+		@Override
+		public void data(byte[] buffer, int offset, int length) {
+			try {
+				notifyReadListenersBytesRead(ByteBuffer.wrap(buffer), offset, length);
+			} catch(Throwable t) {
+				if (hasErrorListeners())
+					notifyErrorListenersExceptionCaught(t);
+			}
+		}
+		
+		private boolean isSupported(int option) {
+			return (option == TRANSMIT_BINARY || option == SUPPRESS_GO_AHEAD || option == COM_PORT_OPTION);
+		}
+		
+		@Override
+		public void command(int command, int option) {
+			final byte[] reply = codec.answer(command, option, isSupported(option));
+			if (reply != null)
+				send(reply);
+		}
+		
+		@Override
+		public void subnegotiation(int option, byte[] payload, int length) {
+			if (option != COM_PORT_OPTION || length < 1)
+				return;
+			
+			final int command = (payload[0] & 0xFF) - SERVER_OFFSET;
+			final int value = TelnetCodec.value(payload, 1, length - 1);
+			
+			switch(command) {
+				case SET_BAUDRATE:
+					if (value > 0)
+						actualBaudRate = value;
+					break;
+				case NOTIFY_MODEMSTATE:
+					modemState(value);
+					break;
+				case NOTIFY_LINESTATE:
+					lineState(value);
+					break;
+				case FLOWCONTROL_SUSPEND:
+					synchronized(this) {
+						suspended = true;
+					}
+					break;
+				case FLOWCONTROL_RESUME:
+					synchronized(this) {
+						suspended = false;
+						if (outbound.position() > 0)
+							requestWrite();
+					}
+					break;
+			}
+		}
+		
+		private void modemState(int state) {
+			final int changed = toChangedModemLines(state);
+			inputLines = toModemLines(state);
+			if (changed != 0 && hasModemListeners())
+				notifyModemListenersLinesChanged(changed, inputLines | outputLines);
+		}
+		
+		private void lineState(int state) {
+			if (!hasModemListeners())
+				return;
+			if ((state & LINESTATE_BREAK) != 0)
+				notifyModemListenersBreakReceived();
+			final int errors = toLineErrors(state);
+			if (errors != 0)
+				notifyModemListenersLineErrors(errors);
+		}
+		//</editor-fold>
+	}
+	//</editor-fold>
+}
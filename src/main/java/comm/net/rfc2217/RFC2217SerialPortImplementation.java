@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import comm.BaudRate;
+import comm.DataBits;
+import comm.FlowControl;
+import comm.ISerialPort;
+import comm.Parity;
+import comm.PortWatcher;
+import comm.StopBits;
+import comm.platform.dev.BaudRateCapabilities;
+import comm.util.StringUtil;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Serial ports reached over the network with RFC 2217. There's nothing to 
+ * discover: a port exists once it has been asked for by name, written as 
+ * "host:port", "[IPv6 address]:port", or either of those prefixed with 
+ * "rfc2217://".
+ * 
+ * {@link comm.SerialPorts#find(java.lang.String)} hands names in that form 
+ * here, so code written against local ports works unchanged against a 
+ * terminal server.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class RFC2217SerialPortImplementation implements comm.SerialPorts.Implementation {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final String 
+		  SCHEME                = "rfc2217://"
+	;
+	
+	public static final int 
+		  DEFAULT_BAUD_RATE     = 9600
+	;
+	
+	private static final BaudRateCapabilities Capabilities;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private static final Object cacheLock = new Object();
+	private static final Map<String, RFC2217SerialPort> cache = new TreeMap<String, RFC2217SerialPort>();
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Initialization">
+	static {
+		//The server decides what it can do; anything positive can be asked for.
+		final EnumSet<BaudRate> standard = EnumSet.allOf(BaudRate.class);
+		standard.remove(BaudRate.B0);
+		Capabilities = new BaudRateCapabilities(standard, true, 1, Integer.MAX_VALUE);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	/**
+	 * Splits a remote port name into its host and TCP port.
+	 * 
+	 * @return An unresolved address, or null if the name isn't a remote port.
+	 */
+	private static InetSocketAddress parse(String name) {
+		if (StringUtil.isNullOrEmpty(name))
+			return null;
+		
+		String address = name.trim();
+		if (address.regionMatches(true, 0, SCHEME, 0, SCHEME.length()))
+			address = address.substring(SCHEME.length());
+		
+		final int colon = address.lastIndexOf(':');
+		if (colon <= 0 || colon == address.length() - 1)
+			return null;
+		
+		String host = address.substring(0, colon);
+		if (host.startsWith("[") && host.endsWith("]"))
+			host = host.substring(1, host.length() - 1);
+		else if (host.indexOf(':') >= 0)
+			return null;
+		if (host.length() == 0 || host.indexOf('/') >= 0 || host.indexOf('\\') >= 0)
+			return null;
+		
+		final String digits = address.substring(colon + 1);
+		if (digits.length() > 5)
+			return null;
+		for(int i = 0; i < digits.length(); ++i)
+			if (!Character.isDigit(digits.charAt(i)))
+				return null;
+		
+		final int port = Integer.parseInt(digits);
+		if (port <= 0 || port > 0xFFFF)
+			return null;
+		return InetSocketAddress.createUnresolved(host, port);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
+	/**
+	 * @return True if the name refers to a port on an RFC 2217 server.
+	 */
+	public static boolean isRemoteName(String name) {
+		return (parse(name) != null);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * Looks up the port for the name, creating it the first time. Nothing is 
+	 * connected until the port is opened.
+	 * 
+	 * @return null if the name isn't a remote port.
+	 */
+	public ISerialPort find(String name) {
+		final InetSocketAddress address = parse(name);
+		if (address == null)
+			return null;
+		
+		final String host = address.getHostName();
+		final int port = address.getPort();
+		final String canonical = (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+		final String key = canonical.toLowerCase(Locale.ENGLISH);
+		
+		synchronized(cacheLock) {
+			RFC2217SerialPort inst = cache.get(key);
+			if (inst == null)
+				cache.put(key, (inst = new RFC2217SerialPort(canonical, host, port)));
+			return inst;
+		}
+	}
+	
+	/**
+	 * Visits every remote port asked for so far.
+	 */
+	@Override
+	public void visitAvailableSerialPorts(comm.SerialPorts.IVisitor visitor) {
+		if (visitor == null)
+			return;
+		
+		final List<ISerialPort> ports;
+		synchronized(cacheLock) {
+			ports = new ArrayList<ISerialPort>(cache.values());
+		}
+		for(ISerialPort port : ports)
+			if (!visitor.visit(port))
+				break;
+	}
+	
+	@Override
+	public void refreshAvailableSerialPorts(PortWatcher.IPortListener listener) {
+		//Remote ports come and go with find(), not with the system.
+	}
+	
+	@Override
+	public PortWatcher.IChangeSource createChangeSource() {
+		return null;
+	}
+	
+	@Override
+	public void shutdown() {
+		RFC2217SerialPort.shutdown();
+	}
+	
+	@Override
+	public boolean isPlatformSupported() {
+		return true;
+	}
+	
+	@Override
+	public void addPlatformHint(String name, Object value) {
+		PlatformHint.add(name, value);
+	}
+	
+	@Override
+	public <T> T findPlatformHint(String name) {
+		return PlatformHint.hint(name);
+	}
+	
+	@Override
+	public int getDefaultBaudRate() {
+		return DEFAULT_BAUD_RATE;
+	}
+	
+	@Override
+	public int[] getPlatformBaudRateOptions() {
+		return Capabilities.getOptions();
+	}
+	
+	@Override
+	public BaudRateCapabilities getBaudRateCapabilities() {
+		return Capabilities;
+	}
+	
+	@Override
+	public DataBits[] getPlatformDataBitsOptions() {
+		return DataBits.values();
+	}
+	
+	@Override
+	public StopBits[] getPlatformStopBitsOptions() {
+		return StopBits.values();
+	}
+	
+	@Override
+	public FlowControl[] getPlatformFlowControlOptions() {
+		return FlowControl.values();
+	}
+	
+	@Override
+	public Parity[] getPlatformParityOptions() {
+		return Parity.values();
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,842 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import comm.FlowControl;
+import comm.ICommPort;
+import comm.ISerialPort;
+import comm.LineSettings;
+import comm.platform.dev.DisposableObject;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import static comm.net.rfc2217.RFC2217.*;
+
+/**
+ * Exports serial ports over TCP using RFC 2217 (Telnet Com Port Control).
+ * 
+ * Every exported port and every connection shares one selector and one 
+ * thread, so a gateway can serve hundreds of clients without a thread per 
+ * connection. Each port takes one client at a time; further connections are 
+ * closed straight away. A port that isn't open is opened when its client 
+ * connects and closed again when the client goes away.
+ * 
+ * Data from the port is queued per client. If a client stops reading and 
+ * more than the pending limit builds up, further data is dropped and counted 
+ * rather than stalling the port.
+ * 
+ * The selector thread never touches a port, since a write can block for as 
+ * long as the port's flow control holds it up. Data and commands from the 
+ * client are queued per port and carried out in order on a writer thread. 
+ * A client that sends more than the pending limit ahead of the port stops 
+ * being read until the port catches up, which pushes back through TCP.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class RFC2217Server extends DisposableObject {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_MAX_PENDING       = 64 * 1024
+	;
+	
+	public static final String 
+		  SERVER_SIGNATURE          = "comm RFC 2217 server"
+	;
+	
+	private static final int 
+		  SOCKET_READ_BUFFER_SIZE   = ICommPort.DEFAULT_READ_BUFFER_SIZE
+		, DEFAULT_MODEMSTATE_MASK   = 0xFF
+		, DEFAULT_LINESTATE_MASK    = 0x00
+	;
+	
+	private static final long 
+		  CLOSE_TIMEOUT             = 2000L
+	;
+	
+	private static final byte[] 
+		  SIGNATURE_BYTES           = ascii(SERVER_SIGNATURE)
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Object lock = new Object();
+	private final Map<ISerialPort, Export> exports = new HashMap<ISerialPort, Export>();
+	private final AtomicLong dropped = new AtomicLong(0L);
+	private final SelectorLoop loop;
+	private final ExecutorService writers;
+	private final int maxPending;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public RFC2217Server() throws IOException {
+		this(DEFAULT_MAX_PENDING);
+	}
+	
+	/**
+	 * @param maxPending The most data to hold in either direction, in bytes: 
+	 * port data for a client that isn't keeping up, and client data for a 
+	 * port that isn't.
+	 */
+	public RFC2217Server(int maxPending) throws IOException {
+		if (maxPending <= 0)
+			throw new IllegalArgumentException("maxPending must be > 0");
+		
+		this.maxPending = maxPending;
+		this.loop = new SelectorLoop("RFC 2217 Server");
+		this.writers = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "RFC 2217 Port Writer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	@Override
+	protected void disposeObject() {
+		synchronized(lock) {
+			exports.clear();
+		}
+		loop.stop(CLOSE_TIMEOUT);
+		
+		//Lets the sessions just closed release their ports.
+		writers.shutdown();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static byte[] ascii(String value) {
+		final byte[] bytes = new byte[value.length()];
+		for(int i = 0; i < bytes.length; ++i)
+			bytes[i] = (byte)value.charAt(i);
+		return bytes;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public boolean isExported(ISerialPort port) {
+		synchronized(lock) {
+			return exports.containsKey(port);
+		}
+	}
+	
+	public int getConnectionCount() {
+		int count = 0;
+		synchronized(lock) {
+			for(Export e : exports.values())
+				if (e.session != null)
+					++count;
+		}
+		return count;
+	}
+	
+	/**
+	 * @return Bytes of port data thrown away because a client fell behind.
+	 */
+	public long getDroppedBytes() {
+		return dropped.get();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	public InetSocketAddress export(ISerialPort port, int tcpPort) throws IOException {
+		return export(port, new InetSocketAddress(tcpPort));
+	}
+	
+	/**
+	 * Starts listening for a client for the port.
+	 * 
+	 * @return The address actually bound, which tells you the port number 
+	 * when asked for port 0.
+	 */
+	public InetSocketAddress export(ISerialPort port, InetSocketAddress address) throws IOException {
+		if (port == null)
+			throw new IllegalArgumentException("port cannot be null");
+		if (address == null)
+			throw new IllegalArgumentException("address cannot be null");
+		if (isDisposed() || !loop.isRunning())
+			throw new IllegalStateException("The server has been disposed");
+		
+		synchronized(lock) {
+			if (exports.containsKey(port))
+				throw new IllegalStateException(port.getName() + " is already exported");
+		}
+		
+		final ServerSocketChannel ssc = ServerSocketChannel.open();
+		try {
+			ssc.configureBlocking(false);
+			ssc.socket().setReuseAddress(true);
+			ssc.socket().bind(address);
+		} catch(IOException e) {
+			ssc.close();
+			throw e;
+		}
+		
+		final Export e = new Export(port, ssc);
+		synchronized(lock) {
+			if (exports.containsKey(port)) {
+				ssc.close();
+				throw new IllegalStateException(port.getName() + " is already exported");
+			}
+			exports.put(port, e);
+		}
+		
+		loop.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					e.key = loop.register(ssc, SelectionKey.OP_ACCEPT, e);
+				} catch(ClosedChannelException cce) {
+					//Unexported before we got to it.
+				}
+			}
+		});
+		return (InetSocketAddress)ssc.socket().getLocalSocketAddress();
+	}
+	
+	/**
+	 * Stops listening and drops the port's client, if any.
+	 */
+	public boolean unexport(ISerialPort port) {
+		final Export e;
+		synchronized(lock) {
+			e = exports.remove(port);
+		}
+		if (e == null)
+			return false;
+		
+		loop.submit(new Runnable() {
+			@Override
+			public void run() {
+				e.close();
+			}
+		});
+		return true;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Accept">
+	private void accept(Export e) {
+		SocketChannel channel = null;
+		try {
+			channel = e.server.accept();
+			if (channel == null)
+				return;
+			
+			//One client per port.
+			if (e.session != null) {
+				channel.close();
+				return;
+			}
+			
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			final Session s = new Session(e, channel);
+			s.key = loop.register(channel, SelectionKey.OP_READ, s);
+			e.session = s;
+			s.start();
+		} catch(IOException ioe) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch(IOException ignored) {
+				}
+			}
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Export">
+	/**
+	 * Runs one port's work in order on the writer threads, one task at a 
+	 * time. A task that throws is dropped and the next one runs.
+	 */
+	private final class PortQueue implements Runnable {
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean draining;
+		
+		void execute(Runnable task) {
+			synchronized(this) {
+				tasks.add(task);
+				if (draining)
+					return;
+				draining = true;
+			}
+			try {
+				writers.execute(this);
+			} catch(RejectedExecutionException ree) {
+				//Shutting down; finish up here.
+				run();
+			}
+		}
+		
+		@Override
+		public void run() {
+			while(true) {
+				final Runnable task;
+				synchronized(this) {
+					task = tasks.poll();
+					if (task == null) {
+						draining = false;
+						return;
+					}
+				}
+				try {
+					task.run();
+				} catch(Throwable t) {
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A listening socket for one port. Only touched on the selector thread 
+	 * apart from session, which is read by getConnectionCount(), and queue, 
+	 * which carries every session's port work so that one session's close 
+	 * is done before the next one starts.
+	 */
+	private final class Export implements SelectorLoop.Attachment {
+		final ISerialPort port;
+		final ServerSocketChannel server;
+		final PortQueue queue = new PortQueue();
+		SelectionKey key;
+		volatile Session session;
+		
+		Export(ISerialPort port, ServerSocketChannel server) {
+			this.port = port;
+			this.server = server;
+		}
+		
+		@Override
+		public void ready(SelectionKey key) {
+			accept(this);
+		}
+		
+		@Override
+		public void close() {
+			final Session s = session;
+			if (s != null)
+				s.close();
+			if (key != null)
+				key.cancel();
+			try {
+				server.close();
+			} catch(IOException ioe) {
+			}
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Session">
+	/**
+	 * One client connection. The network side belongs to the selector thread 
+	 * and the port side to the export's queue. The outbound queue is also 
+	 * filled from the port's listeners.
+	 */
+	private final class Session implements SelectorLoop.Attachment, TelnetCodec.Handler, ICommPort.IReadListener, ISerialPort.IModemListener {
+		final Export export;
+		final ISerialPort port;
+		final SocketChannel channel;
+		final TelnetCodec codec = new TelnetCodec(this);
+		final ByteBuffer readBuffer = ByteBuffer.allocate(SOCKET_READ_BUFFER_SIZE);
+		final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+		SelectionKey key;
+		
+		//Guarded by this.
+		int pendingData;
+		boolean writeRequested;
+		boolean suspended;
+		int inboundData;
+		boolean readPaused;
+		
+		volatile int modemStateMask = DEFAULT_MODEMSTATE_MASK;
+		volatile int lineStateMask = DEFAULT_LINESTATE_MASK;
+		
+		//Port side.
+		boolean breaking;
+		boolean openedPort;
+		
+		//Network side.
+		boolean closed;
+		
+		Session(Export export, SocketChannel channel) {
+			this.export = export;
+			this.port = export.port;
+			this.channel = channel;
+		}
+		
+		//<editor-fold defaultstate="collapsed" desc="Lifecycle">
+		/**
+		 * Opens the port on the export's queue and drops the client if that 
+		 * fails.
+		 */
+		void start() {
+			export.queue.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (!attach()) {
+						loop.submit(new Runnable() {
+							@Override
+							public void run() {
+								close();
+							}
+						});
+					}
+				}
+			});
+		}
+		
+		private boolean attach() {
+			if (!port.isOpen()) {
+				if (!port.open())
+					return false;
+				openedPort = true;
+			}
+			port.addReadListener(this);
+			port.addModemListener(this);
+			
+			//Binary in both directions so data passes through untouched.
+			send(codec.request(WILL, TRANSMIT_BINARY));
+			send(codec.request(DO, TRANSMIT_BINARY));
+			send(codec.request(WILL, SUPPRESS_GO_AHEAD));
+			send(codec.request(DO, SUPPRESS_GO_AHEAD));
+			return true;
+		}
+		
+		private void detach() {
+			port.removeReadListener(this);
+			port.removeModemListener(this);
+			if (openedPort)
+				port.close();
+			openedPort = false;
+		}
+		
+		/**
+		 * Closes the connection right away. The port is let go once the 
+		 * client's queued writes have gone out.
+		 */
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			
+			if (key != null)
+				key.cancel();
+			try {
+				channel.close();
+			} catch(IOException ioe) {
+			}
+			if (export.session == this)
+				export.session = null;
+			
+			export.queue.execute(new Runnable() {
+				@Override
+				public void run() {
+					detach();
+				}
+			});
+		}
+		//</editor-fold>
+		
+		//<editor-fold defaultstate="collapsed" desc="Network">
+		@Override
+		public void ready(SelectionKey key) throws IOException {
+			if (key.isReadable())
+				read();
+			if (key.isValid() && key.isWritable())
+				flush();
+		}
+		
+		void read() throws IOException {
+			readBuffer.clear();
+			final int n = channel.read(readBuffer);
+			if (n < 0) {
+				close();
+				return;
+			}
+			if (n > 0)
+				codec.decode(readBuffer.array(), 0, n);
+		}
+		
+		void flush() throws IOException {
+			synchronized(this) {
+				if (!suspended) {
+					ByteBuffer b;
+					while((b = outbound.peek()) != null) {
+						channel.write(b);
+						if (b.hasRemaining())
+							return;
+						outbound.poll();
+						pendingData -= b.limit();
+					}
+				}
+				writeRequested = false;
+				updateInterest();
+			}
+		}
+		
+		/**
+		 * Must be called on the selector thread while holding this.
+		 */
+		private void updateInterest() {
+			if (key.isValid())
+				key.interestOps((readPaused ? 0 : SelectionKey.OP_READ) | (writeRequested ? SelectionKey.OP_WRITE : 0));
+		}
+		
+		private void send(byte[] bytes) {
+			synchronized(this) {
+				outbound.add(ByteBuffer.wrap(bytes));
+				pendingData += bytes.length;
+				requestWrite();
+			}
+		}
+		
+		/**
+		 * Must be called while holding this.
+		 */
+		private void requestWrite() {
+			if (writeRequested || suspended)
+				return;
+			writeRequested = true;
+			submitInterest();
+		}
+		
+		private void submitInterest() {
+			loop.submit(new Runnable() {
+				@Override
+				public void run() {
+					synchronized(Session.this) {
+						updateInterest();
+					}
+				}
+			});
+		}
+		
+		/**
+		 * Queues port work from the client. Called on the selector thread, 
+		 * which stops reading the client once too much is waiting.
+		 */
+		private void enqueue(int size, Runnable task) {
+			synchronized(this) {
+				inboundData += size;
+				if (!readPaused && inboundData > maxPending) {
+					readPaused = true;
+					updateInterest();
+				}
+			}
+			export.queue.execute(task);
+		}
+		
+		/**
+		 * Called on the port side once queued data has gone out. Reading 
+		 * resumes when the backlog is down to half the limit.
+		 */
+		private void dequeued(int size) {
+			synchronized(this) {
+				inboundData -= size;
+				if (readPaused && inboundData <= maxPending / 2) {
+					readPaused = false;
+					submitInterest();
+				}
+			}
+		}
+		//</editor-fold>
+		
+		//<editor-fold defaultstate="collapsed" desc="Port Listeners">
+		@Override
+		public void bytesRead(ByteBuffer buffer, int offset, int length) {
+			final byte[] data = new byte[length];
+			final ByteBuffer src = buffer.duplicate();
+			src.limit(offset + length);
+			src.position(offset);
+			src.get(data);
+			
+			final byte[] escaped = TelnetCodec.escape(data, 0, length);
+			synchronized(this) {
+				if (pendingData + escaped.length > maxPending) {
+					dropped.addAndGet(length);
+					return;
+				}
+				outbound.add(ByteBuffer.wrap(escaped));
+				pendingData += escaped.length;
+				requestWrite();
+			}
+		}
+		
+		@Override
+		public void modemLinesChanged(int changed, int status) {
+			final int state = fromModemLines(changed, status) & modemStateMask;
+			if (state != 0)
+				send(TelnetCodec.subnegotiation(COM_PORT_OPTION, NOTIFY_MODEMSTATE + SERVER_OFFSET, state, 1));
+		}
+		
+		@Override
+		public void breakReceived() {
+			final int state = LINESTATE_BREAK & lineStateMask;
+			if (state != 0)
+				send(TelnetCodec.subnegotiation(COM_PORT_OPTION, NOTIFY_LINESTATE + SERVER_OFFSET, state, 1));
+		}
+		
+		@Override
+		public void lineErrors(int errors) {
+			final int state = fromLineErrors(errors) & lineStateMask;
+			if (state != 0)
+				send(TelnetCodec.subnegotiation(COM_PORT_OPTION, NOTIFY_LINESTATE + SERVER_OFFSET, state, 1));
+		}
+		//</editor-fold>
+		
+		//<editor-fold defaultstate="collapsed" desc="Telnet">
+		@Override
+		public void data(byte[] buffer, int offset, int length) {
+			//The codec reuses its buffers.
+			final byte[] data = new byte[length];
+			System.arraycopy(buffer, offset, data, 0, length);
+			enqueue(length, new Runnable() {
+				@Override
+				public void run() {
+					try {
+						port.write(data, 0, data.length);
+					} finally {
+						dequeued(data.length);
+					}
+				}
+			});
+		}
+		
+		private boolean isSupported(int option) {
+			return (option == TRANSMIT_BINARY || option == SUPPRESS_GO_AHEAD || option == COM_PORT_OPTION);
+		}
+		
+		@Override
+		public void command(int command, int option) {
+			final byte[] reply = codec.answer(command, option, isSupported(option));
+			if (reply != null)
+				send(reply);
+		}
+		
+		@Override
+		public void subnegotiation(int option, byte[] payload, int length) {
+			if (option != COM_PORT_OPTION || length < 1)
+				return;
+			
+			//Kept in order with the data around it.
+			final byte[] copy = new byte[length];
+			System.arraycopy(payload, 0, copy, 0, length);
+			enqueue(0, new Runnable() {
+				@Override
+				public void run() {
+					comPortControl(copy, copy.length);
+				}
+			});
+		}
+		
+		/**
+		 * Runs on the export's queue.
+		 */
+		private void comPortControl(byte[] payload, int length) {
+			final int command = payload[0] & 0xFF;
+			final int size = length - 1;
+			final int value = TelnetCodec.value(payload, 1, size);
+			
+			switch(command) {
+				case SIGNATURE:
+					//A non-empty signature is the client introducing itself.
+					if (size == 0)
+						reply(command, SIGNATURE_BYTES);
+					break;
+				case SET_BAUDRATE:
+					if (value > 0)
+						port.reconfigure(new LineSettings.Builder().setBaudRate(value));
+					reply(command, port.getBaudRate(), 4);
+					break;
+				case SET_DATASIZE:
+					if (toDataBits(value) != null)
+						port.reconfigure(new LineSettings.Builder().setDataBits(toDataBits(value)));
+					reply(command, fromDataBits(port.getDataBits()), 1);
+					break;
+				case SET_PARITY:
+					if (toParity(value) != null)
+						port.reconfigure(new LineSettings.Builder().setParity(toParity(value)));
+					reply(command, fromParity(port.getParity()), 1);
+					break;
+				case SET_STOPSIZE:
+					if (toStopBits(value) != null)
+						port.reconfigure(new LineSettings.Builder().setStopBits(toStopBits(value)));
+					reply(command, fromStopBits(port.getStopBits()), 1);
+					break;
+				case SET_CONTROL:
+					reply(command, control(value), 1);
+					break;
+				case FLOWCONTROL_SUSPEND:
+					synchronized(this) {
+						suspended = true;
+					}
+					break;
+				case FLOWCONTROL_RESUME:
+					synchronized(this) {
+						suspended = false;
+						if (!outbound.isEmpty())
+							requestWrite();
+					}
+					break;
+				case SET_LINESTATE_MASK:
+					lineStateMask = value & 0xFF;
+					reply(command, lineStateMask, 1);
+					break;
+				case SET_MODEMSTATE_MASK:
+					modemStateMask = value & 0xFF;
+					reply(command, modemStateMask, 1);
+					break;
+				case PURGE_DATA:
+					if (value == PURGE_RECEIVE || value == PURGE_BOTH)
+						purgeReceived();
+					reply(command, value, 1);
+					break;
+			}
+		}
+		
+		private void reply(int command, byte[] value) {
+			send(TelnetCodec.subnegotiation(COM_PORT_OPTION, command + SERVER_OFFSET, value));
+		}
+		
+		private void reply(int command, int value, int size) {
+			send(TelnetCodec.subnegotiation(COM_PORT_OPTION, command + SERVER_OFFSET, value, size));
+		}
+		
+		/**
+		 * Drops port data the client hasn't been sent yet. Replies already 
+		 * queued are kept since they're whole subnegotiations.
+		 */
+		private void purgeReceived() {
+			synchronized(this) {
+				//Only untouched buffers can go; a partly written one has to finish.
+				final Iterator<ByteBuffer> it = outbound.iterator();
+				boolean first = true;
+				while(it.hasNext()) {
+					final ByteBuffer b = it.next();
+					if (!(first && b.position() > 0) && !isProtocol(b)) {
+						it.remove();
+						pendingData -= b.limit();
+					}
+					first = false;
+				}
+			}
+		}
+		
+		private boolean isProtocol(ByteBuffer b) {
+			return (b.limit() >= 3 && (b.get(0) & 0xFF) == IAC && (b.get(1) & 0xFF) != IAC);
+		}
+		
+		/**
+		 * Handles SET_CONTROL and returns the value to report back.
+		 */
+		private int control(int value) {
+			final int flag = port.getFlowControlFlag();
+			switch(value) {
+				case CONTROL_FLOW_NONE:
+					changeFlowControl(flag & ~(FlowControl.RTSCTS_OUT.getValue() | FlowControl.XONXOFF_OUT.getValue()));
+					return outboundFlow();
+				case CONTROL_FLOW_XONXOFF:
+					changeFlowControl((flag & ~FlowControl.RTSCTS_OUT.getValue()) | FlowControl.XONXOFF_OUT.getValue());
+					return outboundFlow();
+				case CONTROL_FLOW_HARDWARE:
+					changeFlowControl((flag & ~FlowControl.XONXOFF_OUT.getValue()) | FlowControl.RTSCTS_OUT.getValue());
+					return outboundFlow();
+				case CONTROL_FLOW_REQUEST:
+					return outboundFlow();
+				case CONTROL_INBOUND_FLOW_NONE:
+					changeFlowControl(flag & ~(FlowControl.RTSCTS_IN.getValue() | FlowControl.XONXOFF_IN.getValue()));
+					return inboundFlow();
+				case CONTROL_INBOUND_FLOW_XONXOFF:
+					changeFlowControl((flag & ~FlowControl.RTSCTS_IN.getValue()) | FlowControl.XONXOFF_IN.getValue());
+					return inboundFlow();
+				case CONTROL_INBOUND_FLOW_HARDWARE:
+					changeFlowControl((flag & ~FlowControl.XONXOFF_IN.getValue()) | FlowControl.RTSCTS_IN.getValue());
+					return inboundFlow();
+				case CONTROL_INBOUND_FLOW_REQUEST:
+					return inboundFlow();
+				case CONTROL_BREAK_ON:
+				case CONTROL_BREAK_OFF:
+					if (port.setBreak(value == CONTROL_BREAK_ON))
+						breaking = (value == CONTROL_BREAK_ON);
+					return (breaking ? CONTROL_BREAK_ON : CONTROL_BREAK_OFF);
+				case CONTROL_BREAK_REQUEST:
+					return (breaking ? CONTROL_BREAK_ON : CONTROL_BREAK_OFF);
+				case CONTROL_DTR_ON:
+				case CONTROL_DTR_OFF:
+					port.setDTR(value == CONTROL_DTR_ON);
+					return (isAsserted(ISerialPort.MODEM_DTR) ? CONTROL_DTR_ON : CONTROL_DTR_OFF);
+				case CONTROL_DTR_REQUEST:
+					return (isAsserted(ISerialPort.MODEM_DTR) ? CONTROL_DTR_ON : CONTROL_DTR_OFF);
+				case CONTROL_RTS_ON:
+				case CONTROL_RTS_OFF:
+					port.setRTS(value == CONTROL_RTS_ON);
+					return (isAsserted(ISerialPort.MODEM_RTS) ? CONTROL_RTS_ON : CONTROL_RTS_OFF);
+				case CONTROL_RTS_REQUEST:
+					return (isAsserted(ISerialPort.MODEM_RTS) ? CONTROL_RTS_ON : CONTROL_RTS_OFF);
+				default:
+					return value;
+			}
+		}
+		
+		private void changeFlowControl(int flag) {
+			port.changeFlowControl(flag);
+		}
+		
+		private boolean isAsserted(int line) {
+			final int status = port.getModemStatus();
+			return (status >= 0 && (status & line) == line);
+		}
+		
+		private int outboundFlow() {
+			return fromOutboundFlowControl(port.getFlowControlFlag());
+		}
+		
+		private int inboundFlow() {
+			return fromInboundFlowControl(port.getFlowControlFlag());
+		}
+		//</editor-fold>
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector and the daemon thread that services it. Channels are only 
+ * registered and their interest changed on that thread; other threads hand 
+ * work over with {@link #submit(java.lang.Runnable)}.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+final class SelectorLoop {
+	//<editor-fold defaultstate="collapsed" desc="Interfaces">
+	static interface Attachment {
+		/**
+		 * Called on the loop thread when the key is ready. Throwing anything 
+		 * closes the attachment; the loop keeps serving the others.
+		 */
+		void ready(SelectionKey key) throws IOException;
+		
+		/**
+		 * Called on the loop thread, including when the loop stops.
+		 */
+		void close();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Selector selector;
+	private final Thread thread;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private volatile boolean running = true;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	SelectorLoop(String name) throws IOException {
+		this.selector = Selector.open();
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				serve();
+			}
+		}, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	boolean isRunning() {
+		return running;
+	}
+	
+	boolean isLoopThread() {
+		return (Thread.currentThread() == thread);
+	}
+	
+	/**
+	 * Runs the task on the loop thread.
+	 */
+	void submit(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+	
+	/**
+	 * Must be called on the loop thread.
+	 */
+	SelectionKey register(SelectableChannel channel, int ops, Attachment attachment) throws ClosedChannelException {
+		return channel.register(selector, ops, attachment);
+	}
+	
+	/**
+	 * Closes every attachment and waits for the thread to finish.
+	 */
+	void stop(long timeout) {
+		running = false;
+		selector.wakeup();
+		if (!isLoopThread()) {
+			try {
+				thread.join(timeout);
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Loop">
+	/**
+	 * A task that throws is dropped so the rest still run.
+	 */
+	private void runTasks() {
+		Runnable task;
+		while((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch(Throwable t) {
+			}
+		}
+	}
+	
+	private static void close(Attachment a) {
+		if (a == null)
+			return;
+		try {
+			a.close();
+		} catch(Throwable t) {
+		}
+	}
+	
+	private void serve() {
+		try {
+			while(running) {
+				selector.select();
+				runTasks();
+				
+				final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					final SelectionKey key = it.next();
+					it.remove();
+					if (!key.isValid())
+						continue;
+					
+					final Attachment a = (Attachment)key.attachment();
+					try {
+						a.ready(key);
+					} catch(Throwable t) {
+						//Only the attachment at fault goes.
+						key.cancel();
+						close(a);
+					}
+				}
+			}
+		} catch(IOException ioe) {
+			//The selector itself failed. Nothing more can be served.
+		} finally {
+			running = false;
+			
+			//Registrations still in the queue are closed along with the rest.
+			runTasks();
+			final List<Attachment> remaining = new ArrayList<Attachment>();
+			for(SelectionKey key : selector.keys())
+				remaining.add((Attachment)key.attachment());
+			for(Attachment a : remaining)
+				close(a);
+			try {
+				selector.close();
+			} catch(IOException ioe) {
+			}
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import static comm.net.rfc2217.RFC2217.*;
+
+/**
+ * Splits a Telnet stream into data, option negotiation and subnegotiations, 
+ * and builds the escaped byte sequences going the other way.
+ * 
+ * Data is handed over in runs straight out of the caller's array, so a 
+ * stream without IAC bytes is never copied.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+final class TelnetCodec {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final int 
+		  MAX_SUBNEGOTIATION  = 256
+	;
+	
+	private static final int 
+		  STATE_DATA          = 0
+		, STATE_IAC           = 1
+		, STATE_COMMAND       = 2
+		, STATE_SB_OPTION     = 3
+		, STATE_SB_DATA       = 4
+		, STATE_SB_IAC        = 5
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Interfaces">
+	static interface Handler {
+		void data(byte[] buffer, int offset, int length);
+		
+		/**
+		 * @param command WILL, WONT, DO or DONT.
+		 */
+		void command(int command, int option);
+		
+		/**
+		 * @param payload Everything between IAC SB option and IAC SE, unescaped.
+		 */
+		void subnegotiation(int option, byte[] payload, int length);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Handler handler;
+	private final byte[] subnegotiation = new byte[MAX_SUBNEGOTIATION];
+	private final boolean[] local = new boolean[256];
+	private final boolean[] remote = new boolean[256];
+	private int state = STATE_DATA;
+	private int command;
+	private int option;
+	private int length;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	TelnetCodec(Handler handler) {
+		this.handler = handler;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Decode">
+	void decode(byte[] buffer, int offset, int count) {
+		final int end = offset + count;
+		int run = offset;
+		
+		for(int i = offset; i < end; ++i) {
+			final int b = buffer[i] & 0xFF;
+			final boolean inData = (state == STATE_DATA);
+			switch(state) {
+				case STATE_DATA:
+					if (b == IAC) {
+						if (i > run)
+							handler.data(buffer, run, i - run);
+						state = STATE_IAC;
+					}
+					break;
+				case STATE_IAC:
+					switch(b) {
+						case IAC:
+							//An escaped 0xFF starts the next run of data.
+							run = i;
+							state = STATE_DATA;
+							continue;
+						case WILL:
+						case WONT:
+						case DO:
+						case DONT:
+							command = b;
+							state = STATE_COMMAND;
+							break;
+						case SB:
+							state = STATE_SB_OPTION;
+							break;
+						default:
+							//NOP, AYT, GA and friends carry nothing we need.
+							state = STATE_DATA;
+							break;
+					}
+					break;
+				case STATE_COMMAND:
+					handler.command(command, b);
+					state = STATE_DATA;
+					break;
+				case STATE_SB_OPTION:
+					option = b;
+					length = 0;
+					state = STATE_SB_DATA;
+					break;
+				case STATE_SB_DATA:
+					if (b == IAC)
+						state = STATE_SB_IAC;
+					else
+						append(b);
+					break;
+				case STATE_SB_IAC:
+					if (b == IAC) {
+						append(b);
+						state = STATE_SB_DATA;
+					} else {
+						//SE, or a broken peer -- either way the subnegotiation is over.
+						handler.subnegotiation(option, subnegotiation, length);
+						state = STATE_DATA;
+					}
+					break;
+			}
+			
+			//Protocol bytes are never data.
+			if (!inData || state != STATE_DATA)
+				run = i + 1;
+		}
+		
+		if (state == STATE_DATA && end > run)
+			handler.data(buffer, run, end - run);
+	}
+	
+	private void append(int b) {
+		//Anything past the limit is garbage as far as RFC 2217 is concerned.
+		if (length < subnegotiation.length)
+			subnegotiation[length++] = (byte)b;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Negotiate">
+	/**
+	 * Marks the option as on at our end (WILL) or theirs (DO) and returns the 
+	 * command announcing it.
+	 */
+	byte[] request(int command, int option) {
+		if (command == WILL)
+			local[option] = true;
+		else if (command == DO)
+			remote[option] = true;
+		return command(command, option);
+	}
+	
+	/**
+	 * Works out the reply to the peer's WILL, WONT, DO or DONT. Only changes 
+	 * are answered so the two ends can't loop.
+	 * 
+	 * @return The reply, or null if none is needed.
+	 */
+	byte[] answer(int command, int option, boolean supported) {
+		switch(command) {
+			case DO:
+				if (!supported)
+					return command(WONT, option);
+				if (local[option])
+					return null;
+				local[option] = true;
+				return command(WILL, option);
+			case DONT:
+				if (!local[option])
+					return null;
+				local[option] = false;
+				return command(WONT, option);
+			case WILL:
+				if (!supported)
+					return command(DONT, option);
+				if (remote[option])
+					return null;
+				remote[option] = true;
+				return command(DO, option);
+			case WONT:
+				if (!remote[option])
+					return null;
+				remote[option] = false;
+				return command(DONT, option);
+			default:
+				return null;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Encode">
+	/**
+	 * @return The data with every 0xFF doubled.
+	 */
+	static byte[] escape(byte[] buffer, int offset, int count) {
+		int iacs = 0;
+		for(int i = offset; i < offset + count; ++i)
+			if ((buffer[i] & 0xFF) == IAC)
+				++iacs;
+		
+		final byte[] escaped = new byte[count + iacs];
+		if (iacs == 0) {
+			System.arraycopy(buffer, offset, escaped, 0, count);
+			return escaped;
+		}
+		
+		int j = 0;
+		for(int i = offset; i < offset + count; ++i) {
+			escaped[j++] = buffer[i];
+			if ((buffer[i] & 0xFF) == IAC)
+				escaped[j++] = (byte)IAC;
+		}
+		return escaped;
+	}
+	
+	static byte[] command(int command, int option) {
+		return new byte[] { (byte)IAC, (byte)command, (byte)option };
+	}
+	
+	static byte[] subnegotiation(int option, int command, byte[] value) {
+		final byte[] escaped = escape(value, 0, value.length);
+		final byte[] sb = new byte[escaped.length + 6];
+		sb[0] = (byte)IAC;
+		sb[1] = (byte)SB;
+		sb[2] = (byte)option;
+		sb[3] = (byte)command;
+		System.arraycopy(escaped, 0, sb, 4, escaped.length);
+		sb[sb.length - 2] = (byte)IAC;
+		sb[sb.length - 1] = (byte)SE;
+		return sb;
+	}
+	
+	/**
+	 * @param size 1 for a byte value or 4 for a big-endian int (baud rates).
+	 */
+	static byte[] subnegotiation(int option, int command, int value, int size) {
+		final byte[] bytes = new byte[size];
+		for(int i = size - 1; i >= 0; --i, value >>>= 8)
+			bytes[i] = (byte)value;
+		return subnegotiation(option, command, bytes);
+	}
+	
+	/**
+	 * Reads the big-endian int (or byte, when there's only one) at the start 
+	 * of a subnegotiation value.
+	 */
+	static int value(byte[] payload, int offset, int length) {
+		int value = 0;
+		for(int i = 0; i < length && i < 4; ++i)
+			value = (value << 8) | (payload[offset + i] & 0xFF);
+		return value;
+	}
+	//</editor-fold>
+}
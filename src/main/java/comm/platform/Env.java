@@ -30,7 +30,6 @@ package comm.platform;
 
 import comm.platform.api.win32.Win32Library;
 import com.sun.jna.Library;
-import com.sun.jna.Native;
 
 /**
  * Sets/unsets environment variables.
@@ -49,7 +48,7 @@ public class Env {
 		;
 
 		public static final EnvLibraryWindows
-			INSTANCE = (EnvLibraryWindows)Native.loadLibrary(LIB_NAME, EnvLibraryWindows.class)
+			INSTANCE = EnvLibraryWindowsDirect.loadLibrary()
 		;
 		//</editor-fold>
 
@@ -64,7 +63,7 @@ public class Env {
 		;
 
 		public static final EnvLibraryUnix
-			INSTANCE = (EnvLibraryUnix)Native.loadLibrary(LIB_NAME, EnvLibraryUnix.class)
+			INSTANCE = EnvLibraryUnixDirect.loadLibrary()
 		;
 		//</editor-fold>
 
@@ -73,6 +72,38 @@ public class Env {
 		public int unsetenv(final String name);
 		public int chdir(final String path);
 	}
+	
+	public static class EnvLibraryWindowsDirect extends comm.platform.api.Library implements EnvLibraryWindows {
+		static EnvLibraryWindows loadLibrary() {
+			EnvLibraryWindows inst = directMapping(LIB_NAME, EnvLibraryWindowsDirect.class);
+			if (inst == null)
+				throw new UnsatisfiedLinkError("Could not load library " + LIB_NAME);
+			return inst;
+		}
+		
+		@Override
+		public native String getenv(final String name);
+		@Override
+		public native int _putenv(final String name);
+	}
+	
+	public static class EnvLibraryUnixDirect extends comm.platform.api.Library implements EnvLibraryUnix {
+		static EnvLibraryUnix loadLibrary() {
+			EnvLibraryUnix inst = directMapping(LIB_NAME, EnvLibraryUnixDirect.class);
+			if (inst == null)
+				throw new UnsatisfiedLinkError("Could not load library " + LIB_NAME);
+			return inst;
+		}
+		
+		@Override
+		public native String getenv(final String name);
+		@Override
+		public native int setenv(final String name, final String value, final int overwrite);
+		@Override
+		public native int unsetenv(final String name);
+		@Override
+		public native int chdir(final String path);
+	}
 	//</editor-fold>
 
 	//<editor-fold defaultstate="collapsed" desc="Constants">
@@ -30,7 +30,6 @@ package comm.platform;
 
 import comm.platform.api.win32.Win32Library;
 import com.sun.jna.Library;
-import com.sun.jna.Native;
 import com.sun.jna.NativeLibrary;
 import java.io.File;
 import comm.util.StringUtil;
@@ -50,7 +49,7 @@ public class Process {
 		;
 
 		public static final ProcLibraryWindows
-			INSTANCE = (ProcLibraryWindows)Native.loadLibrary(LIB_NAME, ProcLibraryWindows.class, DEFAULT_OPTIONS)
+			INSTANCE = ProcLibraryWindowsDirect.loadLibrary()
 		;
 		//</editor-fold>
 
@@ -66,13 +65,43 @@ public class Process {
 		;
 
 		public static final ProcLibraryUnix
-			INSTANCE = (ProcLibraryUnix)Native.loadLibrary(LIB_NAME, ProcLibraryUnix.class);
+			INSTANCE = ProcLibraryUnixDirect.loadLibrary()
 		;
 		//</editor-fold>
 
 		public int getpid();
 		public int chdir(final String path);
 	}
+	
+	public static class ProcLibraryWindowsDirect extends comm.platform.api.Library implements ProcLibraryWindows {
+		static ProcLibraryWindows loadLibrary() {
+			ProcLibraryWindows inst = directMapping(LIB_NAME, DEFAULT_OPTIONS, ProcLibraryWindowsDirect.class);
+			if (inst == null)
+				throw new UnsatisfiedLinkError("Could not load library " + LIB_NAME);
+			return inst;
+		}
+		
+		@Override
+		public native int GetLastError();
+		@Override
+		public native int GetCurrentProcessId();
+		@Override
+		public native int SetCurrentDirectory(final String path);
+	}
+	
+	public static class ProcLibraryUnixDirect extends comm.platform.api.Library implements ProcLibraryUnix {
+		static ProcLibraryUnix loadLibrary() {
+			ProcLibraryUnix inst = directMapping(LIB_NAME, ProcLibraryUnixDirect.class);
+			if (inst == null)
+				throw new UnsatisfiedLinkError("Could not load library " + LIB_NAME);
+			return inst;
+		}
+		
+		@Override
+		public native int getpid();
+		@Override
+		public native int chdir(final String path);
+	}
 	//</editor-fold>
 
 	//<editor-fold defaultstate="collapsed" desc="Variables">
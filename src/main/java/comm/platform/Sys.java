@@ -29,7 +29,6 @@
 package comm.platform;
 
 import comm.util.StringUtil;
-import java.lang.ref.WeakReference;
 
 /**
  * Utilities for accessing various system attributes and configuration.
@@ -68,13 +67,13 @@ public final class Sys {
 	//</editor-fold>
 
 	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
+	/**
+	 * Requests a collection. Native resources no longer depend on it -- 
+	 * anything not disposed is released by {@link comm.util.ResourceTracker} 
+	 * once the collector gets to it.
+	 */
 	public static void gc() {
-		Object obj = new Object();
-		WeakReference ref = new WeakReference<Object>(obj);
-		obj = null;
-		while(ref.get() != null) {
-			System.gc();
-		}
+		System.gc();
 	}
 	
 	public static boolean isOS(final OS OS) {
@@ -23,32 +23,79 @@ package comm.platform.api;
  */
 
 
-import com.sun.jna.Memory;
-
-public class FreeableMemory extends Memory {
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import comm.util.ResourceTracker;
 
+/**
+ * Native memory that can be freed explicitly with {@link #dispose()}. 
+ * 
+ * Memory that's never disposed is freed by {@link ResourceTracker} once 
+ * this object is unreachable (and reported as a leak) instead of relying on 
+ * a finalizer.
+ */
+public class FreeableMemory extends Pointer {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final long size;
+	private final ResourceTracker.ICleanable cleanable;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
 	public FreeableMemory(long size) {
-		super(size);
+		super(allocate(size));
+		this.size = size;
+		this.cleanable = ResourceTracker.register(this, new Free(peer), "FreeableMemory");
+	}
+	
+	private static long allocate(long size) {
+		if (size <= 0L)
+			throw new IllegalArgumentException("Allocation size must be greater than zero");
+		long peer = Native.malloc(size);
+		if (peer == 0L)
+			throw new OutOfMemoryError("Cannot allocate " + size + " bytes");
+		return peer;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public long size() {
+		return size;
+	}
+	
+	public boolean isDisposed() {
+		synchronized(this) {
+			return (peer == 0L);
+		}
 	}
+	//</editor-fold>
 	
-	@Override
-	@SuppressWarnings("FinalizeCalledExplicitly")
+	//<editor-fold defaultstate="collapsed" desc="Dispose">
+	/**
+	 * Frees the memory. Avoids re-freeing already-freed memory.
+	 */
 	public void dispose() {
 		synchronized(this) {
 			if (peer == 0L)
 				return;
-			super.dispose();
-			super.finalize();
 			peer = 0L;
 		}
+		cleanable.clean();
 	}
-
+	
 	/**
-	 * avoid re-freeing already-freed memory
+	 * Must not refer to the {@link FreeableMemory} instance.
 	 */
-	@Override
-	@SuppressWarnings({"FinalizeDeclaration", "FinalizeDoesntCallSuperFinalize"})
-	protected void finalize() {
-		dispose();
+	private static final class Free implements Runnable {
+		private final long peer;
+		
+		Free(long peer) {
+			this.peer = peer;
+		}
+		
+		@Override
+		public void run() {
+			Native.free(peer);
+		}
 	}
-}
\ No newline at end of file
+	//</editor-fold>
+}
@@ -61,7 +61,7 @@ public abstract class Library implements com.sun.jna.Library {
 	}
 	
 	protected static <T> T directMapping(String libraryName, Class cls) {
-		return directMapping(libraryName, null, Library.class);
+		return directMapping(libraryName, null, cls);
 	}
 	
 	protected static <T> T directMapping(String libraryName, Map options, Class cls) {
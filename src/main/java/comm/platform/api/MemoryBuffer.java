@@ -15,16 +15,43 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class MemoryBuffer extends Structure {
 	private static Map<Pointer, MemoryBuffer> refs = new ConcurrentHashMap<Pointer, MemoryBuffer>();
+	
+	private static final int 
+		  OFFSET_REFERENCE_COUNT
+		, OFFSET_SIZE
+		, OFFSET_BUFFER
+	;
+	
+	static {
+		final MemoryBuffer prototype = new MemoryBuffer();
+		prototype.reference_count = -1;
+		prototype.size = -1L;
+		prototype.buffer = Pointer.createConstant(-1L);
+		OFFSET_REFERENCE_COUNT = Structures.offsetOf(prototype, "reference_count");
+		OFFSET_SIZE = Structures.offsetOf(prototype, "size");
+		OFFSET_BUFFER = Structures.offsetOf(prototype, "buffer");
+	}
 
 	public int reference_count;
 	public long size;
 	public Pointer buffer;
 	
+	//Not public so JNA leaves it out of the structure.
+	private Runnable onDispose;
+	
 	public MemoryBuffer() {
 	}
 	
-	@SuppressWarnings("LeakingThisInConstructor")
 	public MemoryBuffer(long size) {
+		this(size, null);
+	}
+	
+	/**
+	 * @param onDispose Run once the memory has been freed, which for a shared 
+	 * buffer is when the last reference is released.
+	 */
+	@SuppressWarnings("LeakingThisInConstructor")
+	public MemoryBuffer(long size, Runnable onDispose) {
 		if (size <= 0L)
 			return;
 		
@@ -32,6 +59,7 @@ public class MemoryBuffer extends Structure {
 		this.size = size;
 		this.reference_count = 1;
 		this.buffer = new FreeableMemory(size);
+		this.onDispose = onDispose;
 		
 		refs.put(buffer, this);
 	}
@@ -43,6 +71,19 @@ public class MemoryBuffer extends Structure {
 		refresh(ptr);
 	}
 	
+	/**
+	 * Points this instance at another copy of the structure, reading its 
+	 * fields straight from memory.
+	 */
+	public void reuse(Pointer ptr) {
+		useMemory(ptr);
+		synchronized(this) {
+			this.reference_count = ptr.getInt(OFFSET_REFERENCE_COUNT);
+			this.size = ptr.getLong(OFFSET_SIZE);
+			this.buffer = ptr.getPointer(OFFSET_BUFFER);
+		}
+	}
+	
 	public void refresh() {
 		refresh(buffer);
 	}
@@ -57,21 +98,40 @@ public class MemoryBuffer extends Structure {
 		}
 	}
 	
+	/**
+	 * Creates another structure describing the same memory, for handing to 
+	 * a second native call. Its reference count isn't used; reference and 
+	 * unreference the instance returned by {@link #find(com.sun.jna.Pointer)}.
+	 */
+	public MemoryBuffer share() {
+		final MemoryBuffer mb = new MemoryBuffer();
+		mb.size = size;
+		mb.buffer = buffer;
+		mb.reference_count = reference_count;
+		return mb;
+	}
+	
 	public int reference() {
-		return ++reference_count;
+		synchronized(this) {
+			return ++reference_count;
+		}
 	}
 	
 	public int unreference() {
-		int count = reference_count - 1;
-		if (count < 0)
-			return 0;
-		--reference_count;
+		int count;
+		synchronized(this) {
+			count = reference_count - 1;
+			if (count < 0)
+				return 0;
+			--reference_count;
+		}
 		if (count <= 0)
 			dispose();
 		return count;
 	}
 	
 	public void dispose() {
+		final Runnable action;
 		synchronized(this) {
 			Pointer ptr = getBufferPointer();
 			if (!refs.containsKey(ptr))
@@ -79,13 +139,11 @@ public class MemoryBuffer extends Structure {
 			refs.remove(ptr);
 			if (buffer instanceof FreeableMemory)
 				((FreeableMemory)buffer).dispose();
+			action = onDispose;
+			onDispose = null;
 		}
-	}
-
-	@Override
-	@SuppressWarnings("FinalizeDeclaration")
-	protected void finalize() throws Throwable {
-		dispose();
+		if (action != null)
+			action.run();
 	}
 	
 	public ByteBuffer getByteBuffer(long offset, long length) {
@@ -107,4 +165,12 @@ public class MemoryBuffer extends Structure {
 	public static int getGlobalInstanceCount() {
 		return refs.size();
 	}
+	
+	/**
+	 * @return The buffer that allocated the memory at ptr, or null if it 
+	 * wasn't allocated by a MemoryBuffer or has been freed.
+	 */
+	public static MemoryBuffer find(Pointer ptr) {
+		return (ptr != null ? refs.get(ptr) : null);
+	}
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.api;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+/**
+ * Helpers for reading structures without going through Structure.read(), 
+ * which walks every field with reflection.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class Structures {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private Structures() {
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
+	/**
+	 * Finds where JNA laid out a field. The field in the prototype must hold 
+	 * a value whose first byte in memory isn't zero (e.g. -1), since this 
+	 * writes it into cleared memory and looks for the first byte that 
+	 * changed. Meant to be called once from a static initializer.
+	 * 
+	 * @return The offset of the field from the start of the structure.
+	 */
+	public static int offsetOf(Structure prototype, String field) {
+		final Pointer p = prototype.getPointer();
+		final int size = prototype.size();
+		
+		p.clear(size);
+		prototype.writeField(field);
+		for(int i = 0; i < size; ++i)
+			if (p.getByte(i) != 0)
+				return i;
+		throw new IllegalArgumentException("Unable to locate " + field + " in " + prototype.getClass().getName());
+	}
+	//</editor-fold>
+}
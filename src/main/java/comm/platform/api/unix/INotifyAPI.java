@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.api.unix;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Structure;
+
+/**
+ * Linux inotify and the handful of libc calls needed to wait on it.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public interface INotifyAPI extends com.sun.jna.Library {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final String
+		  LIBRARY_NAME = UnixLibrary.LIBC_NAME
+	;
+	
+	public static final INotifyAPI
+		INSTANCE = INotifyAPIDirect.loadLibrary()
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="API">
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  IN_ACCESS                 = 0x00000001
+		, IN_MODIFY                 = 0x00000002
+		, IN_ATTRIB                 = 0x00000004
+		, IN_CLOSE_WRITE            = 0x00000008
+		, IN_CLOSE_NOWRITE          = 0x00000010
+		, IN_OPEN                   = 0x00000020
+		, IN_MOVED_FROM             = 0x00000040
+		, IN_MOVED_TO               = 0x00000080
+		, IN_CREATE                 = 0x00000100
+		, IN_DELETE                 = 0x00000200
+		, IN_DELETE_SELF            = 0x00000400
+		, IN_MOVE_SELF              = 0x00000800
+		, IN_Q_OVERFLOW             = 0x00004000
+		, IN_IGNORED                = 0x00008000
+		, IN_ONLYDIR                = 0x01000000
+	;
+	
+	public static final int 
+		  IN_NONBLOCK               = 00004000
+		, IN_CLOEXEC                = 02000000
+		, EFD_NONBLOCK              = 00004000
+		, EFD_CLOEXEC               = 02000000
+	;
+	
+	public static final int 
+		  POLLIN                    = 0x0001
+		, POLLERR                   = 0x0008
+		, POLLHUP                   = 0x0010
+	;
+	
+	/**
+	 * Size of struct inotify_event without the trailing name.
+	 */
+	public static final int 
+		  INOTIFY_EVENT_SIZE        = 16
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Structs">
+	public static class pollfd extends Structure {
+		public int fd;
+		public short events;
+		public short revents;
+	}
+	//</editor-fold>
+	
+	int inotify_init1(int flags);
+	int inotify_add_watch(int fd, String pathname, int mask);
+	int inotify_rm_watch(int fd, int wd);
+	int eventfd(int initval, int flags);
+	int poll(pollfd[] fds, int nfds, int timeout);
+	NativeLong read(int fd, byte[] buf, NativeLong count);
+	NativeLong write(int fd, byte[] buf, NativeLong count);
+	int close(int fd);
+	//</editor-fold>
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.api.unix;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Linux ppdev (/dev/parport*) and the libc calls used to drive it.
+ * 
+ * The ioctl request numbers are from linux/ppdev.h.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public interface PPDevAPI extends com.sun.jna.Library {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final String
+		  LIBRARY_NAME = UnixLibrary.LIBC_NAME
+	;
+	
+	public static final PPDevAPI
+		INSTANCE = PPDevAPIDirect.loadLibrary()
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="API">
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  O_RDWR                    = 00000002
+		, O_CLOEXEC                 = 02000000
+	;
+	
+	public static final int 
+		  PPSETMODE                 = 0x40047080
+		, PPRSTATUS                 = 0x80017081
+		, PPRCONTROL                = 0x80017083
+		, PPWCONTROL                = 0x40017084
+		, PPRDATA                   = 0x80017085
+		, PPWDATA                   = 0x40017086
+		, PPCLAIM                   = 0x0000708B
+		, PPRELEASE                 = 0x0000708C
+		, PPYIELD                   = 0x0000708D
+		, PPFCONTROL                = 0x4002708E
+		, PPEXCL                    = 0x0000708F
+		, PPDATADIR                 = 0x40047090
+		, PPNEGOT                   = 0x40047091
+	;
+	
+	public static final int 
+		  IEEE1284_MODE_NIBBLE      = 0
+		, IEEE1284_MODE_BYTE        = 1 << 0
+		, IEEE1284_MODE_COMPAT      = 1 << 8
+		, IEEE1284_MODE_EPP         = 1 << 6
+		, IEEE1284_MODE_ECP         = 1 << 4
+	;
+	//</editor-fold>
+	
+	int open(String path, int flags);
+	int close(int fd);
+	NativeLong write(int fd, Pointer buf, NativeLong count);
+	int ioctl(int fd, NativeLong request, Pointer arg);
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Util">
+	public static class Util {
+		/**
+		 * ioctl request numbers are unsigned longs.
+		 */
+		public static NativeLong request(int request) {
+			return new NativeLong(request & 0xFFFFFFFFL);
+		}
+		
+		public static int ioctl(PPDevAPI API, int fd, int request, Pointer arg) {
+			return API.ioctl(fd, request(request), arg);
+		}
+	}
+	//</editor-fold>
+}
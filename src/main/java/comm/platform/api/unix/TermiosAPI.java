@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.api.unix;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * Linux terminal calls for driving serial ports.
+ * 
+ * The ioctl request numbers are the asm-generic values used by x86 and ARM.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public interface TermiosAPI extends com.sun.jna.Library {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final String
+		  LIBRARY_NAME = UnixLibrary.LIBC_NAME
+	;
+	
+	public static final TermiosAPI
+		INSTANCE = TermiosAPIDirect.loadLibrary()
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="API">
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  O_RDWR                    = 00000002
+		, O_NOCTTY                  = 00000400
+		, O_NONBLOCK                = 00004000
+		, O_CLOEXEC                 = 02000000
+	;
+	
+	public static final int 
+		  F_GETFL                   = 3
+		, F_SETFL                   = 4
+	;
+	
+	public static final int 
+		  TCGETS2                   = 0x802C542A
+		, TCSETS2                   = 0x402C542B
+		, TCSBRK                    = 0x5409
+		, TCFLSH                    = 0x540B
+		, TIOCEXCL                  = 0x540C
+		, TIOCNXCL                  = 0x540D
+		, TIOCINQ                   = 0x541B
+		, TIOCGSERIAL               = 0x541E
+		, TIOCSSERIAL               = 0x541F
+		, TIOCMGET                  = 0x5415
+		, TIOCMBIS                  = 0x5416
+		, TIOCMBIC                  = 0x5417
+		, TIOCSBRK                  = 0x5427
+		, TIOCCBRK                  = 0x5428
+		, TIOCMIWAIT                = 0x545C
+		, TIOCGICOUNT               = 0x545D
+		, TIOCGRS485                = 0x542E
+		, TIOCSRS485                = 0x542F
+	;
+	
+	//serial_rs485.flags
+	public static final int 
+		  SER_RS485_ENABLED         = 1 << 0
+		, SER_RS485_RTS_ON_SEND     = 1 << 1
+		, SER_RS485_RTS_AFTER_SEND  = 1 << 2
+		, SER_RS485_RX_DURING_TX    = 1 << 4
+	;
+	
+	//Modem lines for TIOCMGET/TIOCMBIS/TIOCMBIC/TIOCMIWAIT
+	public static final int 
+		  TIOCM_LE                  = 0x001
+		, TIOCM_DTR                 = 0x002
+		, TIOCM_RTS                 = 0x004
+		, TIOCM_CTS                 = 0x020
+		, TIOCM_CAR                 = 0x040
+		, TIOCM_RNG                 = 0x080
+		, TIOCM_DSR                 = 0x100
+		, TIOCM_LOOP                = 0x8000
+	;
+	
+	//serial_struct.flags
+	public static final int 
+		  ASYNC_LOW_LATENCY         = 1 << 13
+	;
+	
+	public static final int 
+		  TCIFLUSH                  = 0
+		, TCOFLUSH                  = 1
+		, TCIOFLUSH                 = 2
+	;
+	
+	//c_iflag
+	public static final int 
+		  IGNBRK                    = 0000001
+		, BRKINT                    = 0000002
+		, IGNPAR                    = 0000004
+		, PARMRK                    = 0000010
+		, INPCK                     = 0000020
+		, ISTRIP                    = 0000040
+		, INLCR                     = 0000100
+		, IGNCR                     = 0000200
+		, ICRNL                     = 0000400
+		, IXON                      = 0002000
+		, IXANY                     = 0004000
+		, IXOFF                     = 0010000
+	;
+	
+	//c_oflag
+	public static final int 
+		  OPOST                     = 0000001
+	;
+	
+	//c_cflag
+	public static final int 
+		  CBAUD                     = 0010017
+		, CSIZE                     = 0000060
+		, CS5                       = 0000000
+		, CS6                       = 0000020
+		, CS7                       = 0000040
+		, CS8                       = 0000060
+		, CSTOPB                    = 0000100
+		, CREAD                     = 0000200
+		, PARENB                    = 0000400
+		, PARODD                    = 0001000
+		, HUPCL                     = 0002000
+		, CLOCAL                    = 0004000
+		, BOTHER                    = 0010000
+		, CIBAUD                    = 002003600000
+		, CMSPAR                    = 010000000000
+		, CRTSCTS                   = 020000000000
+		, IBSHIFT                   = 16
+	;
+	
+	//c_lflag
+	public static final int 
+		  ISIG                      = 0000001
+		, ICANON                    = 0000002
+		, ECHO                      = 0000010
+		, ECHOE                     = 0000020
+		, ECHOK                     = 0000040
+		, ECHONL                    = 0000100
+		, IEXTEN                    = 0100000
+	;
+	
+	//c_cc
+	public static final int 
+		  VTIME                     = 5
+		, VMIN                      = 6
+		, NCCS2                     = 19
+	;
+	
+	//Speed codes for CBAUD.
+	public static final int 
+		  B0                        = 0000000
+		, B50                       = 0000001
+		, B75                       = 0000002
+		, B110                      = 0000003
+		, B134                      = 0000004
+		, B150                      = 0000005
+		, B200                      = 0000006
+		, B300                      = 0000007
+		, B600                      = 0000010
+		, B1200                     = 0000011
+		, B1800                     = 0000012
+		, B2400                     = 0000013
+		, B4800                     = 0000014
+		, B9600                     = 0000015
+		, B19200                    = 0000016
+		, B38400                    = 0000017
+		, B57600                    = 0010001
+		, B115200                   = 0010002
+		, B230400                   = 0010003
+		, B460800                   = 0010004
+		, B500000                   = 0010005
+		, B576000                   = 0010006
+		, B921600                   = 0010007
+		, B1000000                  = 0010010
+		, B1152000                  = 0010011
+		, B1500000                  = 0010012
+		, B2000000                  = 0010013
+		, B2500000                  = 0010014
+		, B3000000                  = 0010015
+		, B3500000                  = 0010016
+		, B4000000                  = 0010017
+	;
+	
+	public static final int 
+		  POLLIN                    = 0x0001
+		, POLLOUT                   = 0x0004
+		, POLLERR                   = 0x0008
+		, POLLHUP                   = 0x0010
+		, POLLNVAL                  = 0x0020
+	;
+	
+	/**
+	 * Layout of struct pollfd, which is the same on every Linux ABI. Used to 
+	 * poll with a plain buffer instead of a pollfd[].
+	 */
+	public static final int 
+		  POLLFD_SIZE               = 8
+		, POLLFD_FD                 = 0
+		, POLLFD_EVENTS             = 4
+		, POLLFD_REVENTS            = 6
+	;
+	
+	public static final int 
+		  EFD_NONBLOCK              = 00004000
+		, EFD_CLOEXEC               = 02000000
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Structs">
+	/**
+	 * struct termios2 -- like termios but with explicit input and output 
+	 * speeds, which is what makes BOTHER (arbitrary rates) possible.
+	 */
+	public static class termios2 extends Structure {
+		public int c_iflag;
+		public int c_oflag;
+		public int c_cflag;
+		public int c_lflag;
+		public byte c_line;
+		public byte[] c_cc = new byte[NCCS2];
+		public int c_ispeed;
+		public int c_ospeed;
+	}
+	
+	/**
+	 * struct serial_struct from linux/serial.h.
+	 */
+	public static class serial_struct extends Structure {
+		public int type;
+		public int line;
+		public int port;
+		public int irq;
+		public int flags;
+		public int xmit_fifo_size;
+		public int custom_divisor;
+		public int baud_base;
+		public short close_delay;
+		public byte io_type;
+		public byte reserved_char;
+		public int hub6;
+		public short closing_wait;
+		public short closing_wait2;
+		public Pointer iomem_base;
+		public short iomem_reg_shift;
+		public int port_high;
+		public NativeLong iomap_base;
+	}
+	
+	/**
+	 * struct serial_icounter_struct from linux/serial.h.
+	 */
+	public static class serial_icounter_struct extends Structure {
+		public int cts;
+		public int dsr;
+		public int rng;
+		public int dcd;
+		public int rx;
+		public int tx;
+		public int frame;
+		public int overrun;
+		public int parity;
+		public int brk;
+		public int buf_overrun;
+		public int[] reserved = new int[9];
+	}
+	
+	/**
+	 * struct serial_rs485 from linux/serial.h.
+	 */
+	public static class serial_rs485 extends Structure {
+		public int flags;
+		public int delay_rts_before_send;
+		public int delay_rts_after_send;
+		public int[] padding = new int[5];
+	}
+	
+	public static class pollfd extends Structure {
+		public int fd;
+		public short events;
+		public short revents;
+	}
+	//</editor-fold>
+	
+	int open(String path, int flags);
+	int close(int fd);
+	int dup(int fd);
+	int fcntl(int fd, int cmd, int arg);
+	NativeLong read(int fd, Pointer buf, NativeLong count);
+	NativeLong write(int fd, Pointer buf, NativeLong count);
+	NativeLong write(int fd, byte[] buf, NativeLong count);
+	int ioctl(int fd, NativeLong request, termios2 arg);
+	int ioctl(int fd, NativeLong request, serial_struct arg);
+	int ioctl(int fd, NativeLong request, serial_icounter_struct arg);
+	int ioctl(int fd, NativeLong request, serial_rs485 arg);
+	int ioctl(int fd, NativeLong request, IntByReference arg);
+	int ioctl(int fd, NativeLong request, NativeLong arg);
+	int poll(pollfd[] fds, int nfds, int timeout);
+	int poll(Pointer fds, int nfds, int timeout);
+	int eventfd(int initval, int flags);
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Util">
+	public static class Util {
+		/**
+		 * ioctl request numbers are unsigned longs.
+		 */
+		public static NativeLong request(int value) {
+			return new NativeLong(value & 0xFFFFFFFFL);
+		}
+		
+		public static int ioctl(TermiosAPI API, int fd, int request, termios2 arg) {
+			return API.ioctl(fd, request(request), arg);
+		}
+		
+		public static int ioctl(TermiosAPI API, int fd, int request, serial_struct arg) {
+			return API.ioctl(fd, request(request), arg);
+		}
+		
+		public static int ioctl(TermiosAPI API, int fd, int request, serial_icounter_struct arg) {
+			return API.ioctl(fd, request(request), arg);
+		}
+		
+		public static int ioctl(TermiosAPI API, int fd, int request, serial_rs485 arg) {
+			return API.ioctl(fd, request(request), arg);
+		}
+		
+		public static int ioctl(TermiosAPI API, int fd, int request, IntByReference arg) {
+			return API.ioctl(fd, request(request), arg);
+		}
+		
+		public static int ioctl(TermiosAPI API, int fd, int request, int arg) {
+			return API.ioctl(fd, request(request), new NativeLong(arg));
+		}
+	}
+	//</editor-fold>
+}
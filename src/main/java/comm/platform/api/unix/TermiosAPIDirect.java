@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.api.unix;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import comm.platform.api.Library;
+import static comm.platform.api.unix.TermiosAPI.*;
+
+/**
+ * Linux terminal calls.
+ * This class is setup as a direct-mapped library for enhanced performance. 
+ * If the natives can't be registered the interface mapping is used instead.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class TermiosAPIDirect extends Library implements TermiosAPI {
+	//<editor-fold defaultstate="collapsed" desc="Initialization">
+	public static TermiosAPI loadLibrary() {
+		TermiosAPI inst = directMapping(TermiosAPI.LIBRARY_NAME, UnixLibrary.DEFAULT_OPTIONS, TermiosAPIDirect.class);
+		if (inst == null)
+			inst = interfaceMapping(TermiosAPI.LIBRARY_NAME, UnixLibrary.DEFAULT_OPTIONS, TermiosAPI.class);
+		if (inst == null)
+			throw new UnsatisfiedLinkError("Could not load library " + LIBRARY_NAME);
+		return inst;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="API">
+	@Override
+	public native int        open(String path, int flags);
+	@Override
+	public native int        close(int fd);
+	@Override
+	public native int        dup(int fd);
+	@Override
+	public native int        fcntl(int fd, int cmd, int arg);
+	@Override
+	public native NativeLong read(int fd, Pointer buf, NativeLong count);
+	@Override
+	public native NativeLong write(int fd, Pointer buf, NativeLong count);
+	@Override
+	public native NativeLong write(int fd, byte[] buf, NativeLong count);
+	@Override
+	public native int        ioctl(int fd, NativeLong request, termios2 arg);
+	@Override
+	public native int        ioctl(int fd, NativeLong request, serial_struct arg);
+	@Override
+	public native int        ioctl(int fd, NativeLong request, serial_icounter_struct arg);
+	@Override
+	public native int        ioctl(int fd, NativeLong request, serial_rs485 arg);
+	@Override
+	public native int        ioctl(int fd, NativeLong request, IntByReference arg);
+	@Override
+	public native int        ioctl(int fd, NativeLong request, NativeLong arg);
+	@Override
+	public native int        poll(Pointer fds, int nfds, int timeout);
+	@Override
+	public native int        eventfd(int initval, int flags);
+	
+	/**
+	 * Structure arrays can't be passed to a direct-mapped call, so this 
+	 * polls on the array's memory. The array must come from toArray().
+	 */
+	@Override
+	public int poll(pollfd[] fds, int nfds, int timeout) {
+		if (fds == null || fds.length == 0)
+			return poll((Pointer)null, nfds, timeout);
+		for(pollfd fd : fds)
+			fd.write();
+		final int ret = poll(fds[0].getPointer(), nfds, timeout);
+		for(pollfd fd : fds)
+			fd.read();
+		return ret;
+	}
+	//</editor-fold>
+}
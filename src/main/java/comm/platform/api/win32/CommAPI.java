@@ -104,6 +104,32 @@ public interface CommAPI extends com.sun.jna.Library {
 		, EV_EVENT2                     = 0x1000
 	;
 	
+	public static final int 
+		  SETXOFF                       = 1
+		, SETXON                        = 2
+		, SETRTS                        = 3
+		, CLRRTS                        = 4
+		, SETDTR                        = 5
+		, CLRDTR                        = 6
+		, SETBREAK                      = 8
+		, CLRBREAK                      = 9
+	;
+	
+	public static final int 
+		  MS_CTS_ON                     = 0x0010
+		, MS_DSR_ON                     = 0x0020
+		, MS_RING_ON                    = 0x0040
+		, MS_RLSD_ON                    = 0x0080
+	;
+	
+	public static final int 
+		  CE_RXOVER                     = 0x0001
+		, CE_OVERRUN                    = 0x0002
+		, CE_RXPARITY                   = 0x0004
+		, CE_FRAME                      = 0x0008
+		, CE_BREAK                      = 0x0010
+	;
+	
 	public static byte 
 		  DC1                           = 0x11 //Ctrl-Q
 		, DC3                           = 0x13 //Ctrl-S
@@ -119,6 +145,37 @@ public interface CommAPI extends com.sun.jna.Library {
 	public static final int 
 		  PURGE_ALL                     = PURGE_TXABORT | PURGE_RXABORT | PURGE_TXCLEAR | PURGE_RXCLEAR
 	;
+	
+	//COMMPROP.dwSettableBaud
+	public static final int 
+		  BAUD_075                      = 0x00000001
+		, BAUD_110                      = 0x00000002
+		, BAUD_134_5                    = 0x00000004
+		, BAUD_150                      = 0x00000008
+		, BAUD_300                      = 0x00000010
+		, BAUD_600                      = 0x00000020
+		, BAUD_1200                     = 0x00000040
+		, BAUD_1800                     = 0x00000080
+		, BAUD_2400                     = 0x00000100
+		, BAUD_4800                     = 0x00000200
+		, BAUD_7200                     = 0x00000400
+		, BAUD_9600                     = 0x00000800
+		, BAUD_14400                    = 0x00001000
+		, BAUD_19200                    = 0x00002000
+		, BAUD_38400                    = 0x00004000
+		, BAUD_56K                      = 0x00008000
+		, BAUD_128K                     = 0x00010000
+		, BAUD_115200                   = 0x00020000
+		, BAUD_57600                    = 0x00040000
+		, BAUD_USER                     = 0x10000000
+	;
+	
+	//COMMPROP.wSettableStopParity
+	public static final int 
+		  STOPBITS_10                   = 0x0001
+		, STOPBITS_15                   = 0x0002
+		, STOPBITS_20                   = 0x0004
+	;
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Types">
@@ -164,6 +221,11 @@ public interface CommAPI extends com.sun.jna.Library {
 			, BIT_FIELD_FLAG_DUMMY2             = 0xFFFF8000
 		;
 		
+		public static final int 
+			  DTR_CONTROL_ENABLE                = 0x00000010
+			, RTS_CONTROL_ENABLE                = 0x00001000
+		;
+		
 		public int DCBlength;
 		public int BaudRate;
 		public int fFlags; //No bit field mapping in JNA so define a flags field and masks for fFlags -- fBinary through fDummy2
@@ -181,6 +243,30 @@ public interface CommAPI extends com.sun.jna.Library {
 		public short wReserved1;
 	}
 
+	/**
+	 * http://msdn.microsoft.com/en-us/library/aa363189%28v=vs.85%29.aspx
+	 */
+	public static class COMMPROP extends Structure {
+		public short wPacketLength;
+		public short wPacketVersion;
+		public int dwServiceMask;
+		public int dwReserved1;
+		public int dwMaxTxQueue;
+		public int dwMaxRxQueue;
+		public int dwMaxBaud;
+		public int dwProvSubType;
+		public int dwProvCapabilities;
+		public int dwSettableParams;
+		public int dwSettableBaud;
+		public short wSettableData;
+		public short wSettableStopParity;
+		public int dwCurrentTxQueue;
+		public int dwCurrentRxQueue;
+		public int dwProvSpec1;
+		public int dwProvSpec2;
+		public short[] wcProvChar = new short[1];
+	}
+
 	public static class COMMTIMEOUTS extends Structure {
 		public int ReadIntervalTimeout;
 		public int ReadTotalTimeoutMultiplier;
@@ -201,6 +287,15 @@ public interface CommAPI extends com.sun.jna.Library {
 		public static final int fReserved = 0xFFFFFF80;
 		public int cbInQue;
 		public int cbOutQue;
+		
+		/**
+		 * Layout for reading a COMSTAT out of plain memory.
+		 */
+		public static final int 
+			  SIZE = 12
+			, OFFSET_CBINQUE = 4
+			, OFFSET_CBOUTQUE = 8
+		;
 	}
 	//</editor-fold>
 	
@@ -217,6 +312,7 @@ public interface CommAPI extends com.sun.jna.Library {
 	boolean SetCommMask(HANDLE hFile, int dwEvtMask);
 	boolean GetCommMask(HANDLE hFile, int[] dwEvtMask);
 	boolean GetCommState(HANDLE hFile, DCB dcb);
+	boolean GetCommProperties(HANDLE hFile, COMMPROP lpCommProp);
 	boolean SetCommState(HANDLE hFile, DCB dcb);
 	boolean GetCommTimeouts(HANDLE hFile, COMMTIMEOUTS tout);
 	boolean SetCommTimeouts(HANDLE hFile, COMMTIMEOUTS tout);
@@ -29,6 +29,7 @@
 package comm.platform.api.win32;
 
 import comm.platform.api.MemoryBuffer;
+import comm.platform.api.Structures;
 import com.sun.jna.LastErrorException;
 import java.nio.ByteBuffer;
 import com.sun.jna.Pointer;
@@ -108,6 +109,34 @@ public interface IOComPortsAPI extends com.sun.jna.Library {
 		public HANDLE ev;
 		public MemoryBuffer memBuffer;
 		
+		/**
+		 * Bytes of a write that have completed so far, so a partial 
+		 * completion is resubmitted from where it left off.
+		 */
+		public int progress;
+		
+		private static final int 
+			  OFFSET_OP
+			, OFFSET_EX
+			, OFFSET_EV
+			, OFFSET_MEMBUFFER
+			, OFFSET_PROGRESS
+		;
+		
+		static {
+			final OVERLAPPED_EX prototype = new OVERLAPPED_EX();
+			prototype.op = -1;
+			prototype.ex = -1;
+			prototype.ev = comm.platform.api.win32.API.Util.newINVALID_HANDLE_VALUE();
+			prototype.memBuffer.reference_count = -1;
+			prototype.progress = -1;
+			OFFSET_OP = Structures.offsetOf(prototype, "op");
+			OFFSET_EX = Structures.offsetOf(prototype, "ex");
+			OFFSET_EV = Structures.offsetOf(prototype, "ev");
+			OFFSET_MEMBUFFER = Structures.offsetOf(prototype, "memBuffer");
+			OFFSET_PROGRESS = Structures.offsetOf(prototype, "progress");
+		}
+		
 		public OVERLAPPED_EX() {
 			super();
 		}
@@ -118,9 +147,26 @@ public interface IOComPortsAPI extends com.sun.jna.Library {
 			read();
 		}
 		
+		/**
+		 * Points this instance at a completed OVERLAPPED_EX. Only the fields 
+		 * the completion handler looks at are read, straight from memory. 
+		 * ovl is left alone.
+		 */
 		public void reuse(Pointer memory) {
 			useMemory(memory);
-			read();
+			op = memory.getInt(OFFSET_OP);
+			ex = memory.getInt(OFFSET_EX);
+			progress = memory.getInt(OFFSET_PROGRESS);
+			
+			final Pointer e = memory.getPointer(OFFSET_EV);
+			if (e == null)
+				ev = null;
+			else if (ev == null || !e.equals(ev.getPointer()))
+				ev = new HANDLE(e);
+			
+			if (memBuffer == null)
+				memBuffer = new MemoryBuffer();
+			memBuffer.reuse(memory.share(OFFSET_MEMBUFFER));
 		}
 	}
 	//</editor-fold>
@@ -135,16 +181,24 @@ public interface IOComPortsAPI extends com.sun.jna.Library {
 	boolean /*BOOL*/   SetEvent(HANDLE /*HANDLE*/ hEvent);
 	
 	boolean /*BOOL*/   GetQueuedCompletionStatus(HANDLE /*HANDLE*/ completionPort, IntByReference /*LPDWORD*/ lpNumberOfBytes, PointerByReference /*PULONG_PTR*/ lpCompletionKey, PointerByReference /*LPOVERLAPPED*/ lpOverlapped, int /*DWORD*/ dwMilliseconds);
+	boolean /*BOOL*/   GetQueuedCompletionStatus(HANDLE /*HANDLE*/ completionPort, Pointer /*LPDWORD*/ lpNumberOfBytes, Pointer /*PULONG_PTR*/ lpCompletionKey, Pointer /*LPOVERLAPPED*/ lpOverlapped, int /*DWORD*/ dwMilliseconds);
 	boolean /*BOOL*/   PostQueuedCompletionStatus(HANDLE /*HANDLE*/ completionPort, int /*DWORD*/ dwNumberOfBytesTransferred, Pointer /*ULONG_PTR*/ dwCompletionKey, OVERLAPPED_EX /*LPOVERLAPPED*/ lpOverlapped);
 	boolean /*BOOL*/   ReadFile(HANDLE hFile, Pointer lpBuffer, int /*DWORD*/ nNumberOfBytesToRead, IntByReference /*LPDWORD*/ lpNumberOfBytesRead, Pointer /*LPOVERLAPPED*/ lpOverlapped);
+	boolean /*BOOL*/   ReadFile(HANDLE hFile, Pointer lpBuffer, int /*DWORD*/ nNumberOfBytesToRead, Pointer /*LPDWORD*/ lpNumberOfBytesRead, Pointer /*LPOVERLAPPED*/ lpOverlapped);
 	boolean /*BOOL*/   ReadFile(HANDLE hFile, byte[] lpBuffer, int /*DWORD*/ nNumberOfBytesToRead, IntByReference /*LPDWORD*/ lpNumberOfBytesRead, OVERLAPPED_EX /*LPOVERLAPPED*/ lpOverlapped);
 	boolean /*BOOL*/   WriteFile(HANDLE hFile, ByteBuffer lpBuffer, int /*DWORD*/ nNumberOfBytesToWrite, IntByReference /*LPDWORD*/ lpNumberOfBytesWritten, OVERLAPPED_EX /*LPOVERLAPPED */ lpOverlapped) throws LastErrorException;
 	boolean /*BOOL*/   WriteFile(HANDLE hFile, Pointer lpBuffer, int /*DWORD*/ nNumberOfBytesToWrite, IntByReference /*LPDWORD*/ lpNumberOfBytesWritten, OVERLAPPED_EX /*LPOVERLAPPED */ lpOverlapped) throws LastErrorException;
 	boolean /*BOOL*/   WriteFile(HANDLE hFile, Pointer buf, int wrn, int[] nwrtn, Pointer /*OVERLAPPED*/ lpOverlapped);
 	boolean /*BOOL*/   FlushFileBuffers(HANDLE hFile);
 	boolean /*BOOL*/   GetOverlappedResult(HANDLE hFile, Pointer /*OVERLAPPED*/ lpOverlapped, IntByReference lpNumberOfBytesTransferred, boolean bWait);
+	boolean /*BOOL*/   GetOverlappedResult(HANDLE hFile, Pointer /*OVERLAPPED*/ lpOverlapped, Pointer /*LPDWORD*/ lpNumberOfBytesTransferred, boolean bWait);
 	
 	boolean /*BOOL*/   SetCommMask(HANDLE hFile, int dwEvtMask);
 	boolean /*BOOL*/   WaitCommEvent(HANDLE hFile, IntByReference lpEvtMask, OVERLAPPED_EX lpOverlapped);
+	boolean /*BOOL*/   WaitCommEvent(HANDLE hFile, Pointer /*LPDWORD*/ lpEvtMask, Pointer /*LPOVERLAPPED*/ lpOverlapped);
+	boolean /*BOOL*/   GetCommModemStatus(HANDLE hFile, IntByReference lpModemStat);
+	boolean /*BOOL*/   GetCommModemStatus(HANDLE hFile, Pointer /*LPDWORD*/ lpModemStat);
+	boolean /*BOOL*/   ClearCommError(HANDLE hFile, IntByReference lpErrors, Pointer /*COMSTAT*/ lpStat);
+	boolean /*BOOL*/   ClearCommError(HANDLE hFile, Pointer /*LPDWORD*/ lpErrors, Pointer /*COMSTAT*/ lpStat);
 	//</editor-fold>
 }
@@ -72,10 +72,14 @@ public class IOComPortsAPIDirect extends Library implements IOComPortsAPI {
 	@Override
 	public native boolean /*BOOL*/   GetQueuedCompletionStatus(HANDLE /*HANDLE*/ completionPort, IntByReference /*LPDWORD*/ lpNumberOfBytes, PointerByReference /*PULONG_PTR*/ lpCompletionKey, PointerByReference /*LPOVERLAPPED*/ lpOverlapped, int /*DWORD*/ dwMilliseconds);
 	@Override
+	public native boolean /*BOOL*/   GetQueuedCompletionStatus(HANDLE /*HANDLE*/ completionPort, Pointer /*LPDWORD*/ lpNumberOfBytes, Pointer /*PULONG_PTR*/ lpCompletionKey, Pointer /*LPOVERLAPPED*/ lpOverlapped, int /*DWORD*/ dwMilliseconds);
+	@Override
 	public native boolean /*BOOL*/   PostQueuedCompletionStatus(HANDLE /*HANDLE*/ completionPort, int /*DWORD*/ dwNumberOfBytesTransferred, Pointer /*ULONG_PTR*/ dwCompletionKey, OVERLAPPED_EX /*LPOVERLAPPED*/ lpOverlapped);
 	@Override
 	public native boolean /*BOOL*/   ReadFile(HANDLE hFile, Pointer lpBuffer, int /*DWORD*/ nNumberOfBytesToRead, IntByReference /*LPDWORD*/ lpNumberOfBytesRead, Pointer /*LPOVERLAPPED*/ lpOverlapped);
 	@Override
+	public native boolean /*BOOL*/   ReadFile(HANDLE hFile, Pointer lpBuffer, int /*DWORD*/ nNumberOfBytesToRead, Pointer /*LPDWORD*/ lpNumberOfBytesRead, Pointer /*LPOVERLAPPED*/ lpOverlapped);
+	@Override
 	public native boolean /*BOOL*/   ReadFile(HANDLE hFile, byte[] lpBuffer, int /*DWORD*/ nNumberOfBytesToRead, IntByReference /*LPDWORD*/ lpNumberOfBytesRead, OVERLAPPED_EX /*LPOVERLAPPED*/ lpOverlapped);
 	@Override
 	public native boolean /*BOOL*/   WriteFile(HANDLE hFile, ByteBuffer lpBuffer, int /*DWORD*/ nNumberOfBytesToWrite, IntByReference /*LPDWORD*/ lpNumberOfBytesWritten, OVERLAPPED_EX /*LPOVERLAPPED */ lpOverlapped) throws LastErrorException;
@@ -87,10 +91,22 @@ public class IOComPortsAPIDirect extends Library implements IOComPortsAPI {
 	public native boolean /*BOOL*/   FlushFileBuffers(HANDLE hFile);
 	@Override
 	public native boolean /*BOOL*/   GetOverlappedResult(HANDLE hFile, Pointer /*OVERLAPPED*/ lpOverlapped, IntByReference lpNumberOfBytesTransferred, boolean bWait);
+	@Override
+	public native boolean /*BOOL*/   GetOverlappedResult(HANDLE hFile, Pointer /*OVERLAPPED*/ lpOverlapped, Pointer /*LPDWORD*/ lpNumberOfBytesTransferred, boolean bWait);
 	
 	@Override
 	public native boolean /*BOOL*/   SetCommMask(HANDLE hFile, int dwEvtMask);
 	@Override
 	public native boolean /*BOOL*/   WaitCommEvent(HANDLE hFile, IntByReference lpEvtMask, OVERLAPPED_EX lpOverlapped);
+	@Override
+	public native boolean /*BOOL*/   WaitCommEvent(HANDLE hFile, Pointer /*LPDWORD*/ lpEvtMask, Pointer /*LPOVERLAPPED*/ lpOverlapped);
+	@Override
+	public native boolean /*BOOL*/   GetCommModemStatus(HANDLE hFile, IntByReference lpModemStat);
+	@Override
+	public native boolean /*BOOL*/   GetCommModemStatus(HANDLE hFile, Pointer /*LPDWORD*/ lpModemStat);
+	@Override
+	public native boolean /*BOOL*/   ClearCommError(HANDLE hFile, IntByReference lpErrors, Pointer /*COMSTAT*/ lpStat);
+	@Override
+	public native boolean /*BOOL*/   ClearCommError(HANDLE hFile, Pointer /*LPDWORD*/ lpErrors, Pointer /*COMSTAT*/ lpStat);
 	//</editor-fold>
 }
@@ -31,6 +31,7 @@ package comm.platform.api.win32;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
 import static comm.platform.api.win32.API.*;
 
 /**
@@ -120,6 +121,17 @@ public interface RegistryAPI extends com.sun.jna.Library {
 		, REG_QWORD                         = 11
 		, REG_QWORD_LITTLE_ENDIAN           = 11
 	;
+	
+	public static final int 
+		  REG_NOTIFY_CHANGE_NAME            = 0x00000001
+		, REG_NOTIFY_CHANGE_ATTRIBUTES      = 0x00000002
+		, REG_NOTIFY_CHANGE_LAST_SET        = 0x00000004
+		, REG_NOTIFY_CHANGE_SECURITY        = 0x00000008
+	;
+	
+	public static final String 
+		  REG_SERIALCOMM_KEY_NAME           = "HARDWARE\\DEVICEMAP\\SERIALCOMM"
+	;
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Types">
@@ -135,6 +147,13 @@ public interface RegistryAPI extends com.sun.jna.Library {
 			super(new Pointer(value));
 		}
 	}
+	
+	public static final HKEY 
+		  HKEY_CLASSES_ROOT                 = new HKEY(0x80000000)
+		, HKEY_CURRENT_USER                 = new HKEY(0x80000001)
+		, HKEY_LOCAL_MACHINE                = new HKEY(0x80000002)
+		, HKEY_USERS                        = new HKEY(0x80000003)
+	;
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Structs">
@@ -185,5 +204,32 @@ public interface RegistryAPI extends com.sun.jna.Library {
 	 * @return If the function succeeds, the return value is ERROR_SUCCESS. If the function fails, the return value is a nonzero error code defined in Winerror.h.
 	 */
 	public int RegCloseKey(HKEY hKey);
+	
+	/**
+	 * Opens the specified registry key.
+	 * 
+	 * @param hKey A handle to an open registry key or one of the predefined keys such as HKEY_LOCAL_MACHINE.
+	 * @param lpSubKey The name of the registry subkey to be opened.
+	 * @param ulOptions Reserved, must be zero.
+	 * @param samDesired A mask that specifies the desired access rights to the key (e.g. KEY_NOTIFY).
+	 * @param phkResult Receives a handle to the opened key.
+	 * @return If the function succeeds, the return value is ERROR_SUCCESS. If the function fails, the return value is a nonzero error code defined in Winerror.h.
+	 */
+	public int RegOpenKeyEx(HKEY hKey, String lpSubKey, int ulOptions, int samDesired, PointerByReference phkResult);
+	
+	/**
+	 * Notifies the caller about changes to the attributes or contents of a specified registry key.
+	 * 
+	 * Asynchronous notifications are one-shot and are cancelled when the thread that requested them exits, 
+	 * so they must be re-armed from the same long-lived thread after every signal.
+	 * 
+	 * @param hKey A handle to an open registry key opened with the KEY_NOTIFY access right.
+	 * @param bWatchSubtree If true, changes in the key and its subkeys are reported.
+	 * @param dwNotifyFilter A combination of the REG_NOTIFY_CHANGE_* values.
+	 * @param hEvent A handle to an event that's signaled when a change occurs. Ignored if fAsynchronous is false.
+	 * @param fAsynchronous If true, the function returns immediately and signals hEvent when a change occurs.
+	 * @return If the function succeeds, the return value is ERROR_SUCCESS. If the function fails, the return value is a nonzero error code defined in Winerror.h.
+	 */
+	public int RegNotifyChangeKeyValue(HKEY hKey, boolean bWatchSubtree, int dwNotifyFilter, HANDLE hEvent, boolean fAsynchronous);
 	//</editor-fold>
 }
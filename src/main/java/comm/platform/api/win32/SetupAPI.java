@@ -29,6 +29,7 @@
 package comm.platform.api.win32;
 
 import java.util.Map;
+import java.util.Set;
 import com.sun.jna.Native;
 import com.sun.jna.Structure;
 import com.sun.jna.Pointer;
@@ -92,6 +93,17 @@ public interface SetupAPI extends com.sun.jna.Library{
 		}
 		
 		public static Map<String, CommDetails> discoverCommDetails(SetupAPI API, RegistryAPI RegAPI, PortType filter) {
+			return discoverCommDetails(API, RegAPI, filter, null);
+		}
+		
+		/**
+		 * Only queries the friendly name and description for the ports in <code>names</code>, stopping 
+		 * as soon as they've all been found. Used to pick up newly attached devices without 
+		 * re-querying every port.
+		 */
+		public static Map<String, CommDetails> discoverCommDetails(SetupAPI API, RegistryAPI RegAPI, PortType filter, Set<String> names) {
+			if (names != null && names.isEmpty())
+				return new TreeMap<String, CommDetails>();
 			if (API == null)
 				API = SetupAPI.INSTANCE;
 			if (RegAPI == null)
@@ -124,6 +136,9 @@ public interface SetupAPI extends com.sun.jna.Library{
 			
 			for(GUID guid : guids) {
 				HDEVINFO devinfo = null;
+				
+				if (names != null && map.size() >= names.size())
+					break;
 
 				try {
 					devinfo = API.SetupDiGetClassDevs(guid, null, null, DIGCF_PRESENT);
@@ -131,7 +146,7 @@ public interface SetupAPI extends com.sun.jna.Library{
 						continue;
 
 					deviceIndex = 0;
-					while(API.SetupDiEnumDeviceInfo(devinfo, deviceIndex, deviceInfoData)) {
+					while((names == null || map.size() < names.size()) && API.SetupDiEnumDeviceInfo(devinfo, deviceIndex, deviceInfoData)) {
 						++deviceIndex;
 						if (Native.getLastError() == ERROR_NOT_FOUND)
 							break;
@@ -139,7 +154,7 @@ public interface SetupAPI extends com.sun.jna.Library{
 						try {
 							if ((deviceHKey = API.SetupDiOpenDevRegKey(devinfo, deviceInfoData, DICS_FLAG_GLOBAL, 0, DIREG_DEV, KEY_QUERY_VALUE)) != null && deviceHKey != INVALID_HANDLE_VALUE) {
 								if (!StringUtil.isNullOrEmpty(devicePortName = RegistryAPI.Util.RegQueryKeyStringValue(RegAPI, deviceHKey, REG_COMM_PORT_VALUE_NAME))) {
-									if (comm.platform.api.win32.API.Util.isAnyPortNameMatch(devicePortName)) {
+									if (comm.platform.api.win32.API.Util.isAnyPortNameMatch(devicePortName) && (names == null || names.contains(devicePortName))) {
 										//At this point we've located a port name that will (hopefully) have a friendly name associated with it.
 										//Some may not (e.g. some virtual serial port devices).
 										map.put(devicePortName, new CommDetails(
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import comm.BaudRate;
+import java.util.EnumSet;
+
+/**
+ * Describes which baud rates a platform can drive: a set of standard rates 
+ * and, where the driver allows it, any rate within a range.
+ * 
+ * All lookups are constant time.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class BaudRateCapabilities {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final EnumSet<BaudRate> standard;
+	private final boolean arbitrary;
+	private final int minimum;
+	private final int maximum;
+	private final int[] options;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	/**
+	 * @param standard The standard rates the platform supports.
+	 * @param arbitrary True if any rate from minimum to maximum (inclusive) can be requested.
+	 */
+	public BaudRateCapabilities(EnumSet<BaudRate> standard, boolean arbitrary, int minimum, int maximum) {
+		if (standard == null)
+			throw new IllegalArgumentException("standard cannot be null");
+		if (arbitrary && (minimum <= 0 || maximum < minimum))
+			throw new IllegalArgumentException("Invalid range for arbitrary rates");
+		
+		this.standard = EnumSet.copyOf(standard);
+		this.arbitrary = arbitrary;
+		this.minimum = minimum;
+		this.maximum = maximum;
+		
+		//Enum order is ascending.
+		this.options = new int[this.standard.size()];
+		int i = 0;
+		for(BaudRate b : this.standard)
+			this.options[i++] = b.getValue();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public boolean isArbitrarySupported() {
+		return arbitrary;
+	}
+	
+	public int getMinimum() {
+		return minimum;
+	}
+	
+	public int getMaximum() {
+		return maximum;
+	}
+	
+	public EnumSet<BaudRate> getStandardRates() {
+		return EnumSet.copyOf(standard);
+	}
+	
+	/**
+	 * @return The supported standard rates in ascending order.
+	 */
+	public int[] getOptions() {
+		return options.clone();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	public boolean isStandard(int baudRate) {
+		final BaudRate b = BaudRate.fromValue(baudRate);
+		return (b != null && standard.contains(b));
+	}
+	
+	public boolean isValid(int baudRate) {
+		if (isStandard(baudRate))
+			return true;
+		return (arbitrary && baudRate >= minimum && baudRate <= maximum);
+	}
+	//</editor-fold>
+}
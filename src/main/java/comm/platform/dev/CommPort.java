@@ -37,7 +37,10 @@ import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -59,6 +62,21 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	
 	protected final Object errorListenerLock = new Object();
 	protected final List<IErrorListener> errorListeners = new CopyOnWriteArrayList<IErrorListener>();
+	
+	protected final Object lineListenerLock = new Object();
+	protected final List<ILineListener> lineListeners = new CopyOnWriteArrayList<ILineListener>();
+	
+	private final Map<String, String> properties = new TreeMap<String, String>();
+	
+	protected volatile Charset charset = DEFAULT_CHARSET;
+	protected volatile LineDecoder lineDecoder = new LineDecoder(DEFAULT_CHARSET);
+	
+	private final ILineListener lineDispatcher = new ILineListener() {
+		@Override
+		public void lineRead(String line) {
+			notifyLineListenersLineRead(line);
+		}
+	};
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Init">
@@ -123,9 +141,84 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	public final PortType getPortType() {
 		return portType;
 	}
+	
+	@Override
+	public final Charset getCharset() {
+		return charset;
+	}
+	
+	@Override
+	public final Map<String, String> getProperties() {
+		synchronized(properties) {
+			if (properties.isEmpty())
+				return Collections.emptyMap();
+			return Collections.unmodifiableMap(new TreeMap<String, String>(properties));
+		}
+	}
+	
+	/**
+	 * Sets or, when the value is null, removes a property.
+	 */
+	protected final void setProperty(String name, String value) {
+		if (name == null)
+			return;
+		synchronized(properties) {
+			if (value != null)
+				properties.put(name, value);
+			else
+				properties.remove(name);
+		}
+	}
+	
+	@Override
+	public final boolean setCharset(Charset charset) {
+		if (charset == null)
+			return false;
+		synchronized(lineListenerLock) {
+			if (!charset.equals(this.charset)) {
+				this.lineDecoder = new LineDecoder(charset);
+				this.charset = charset;
+			}
+		}
+		return true;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Ownership">
+	@Override
+	public final boolean claimOwnership(String owner) {
+		if (owner == null)
+			return false;
+		synchronized(commLock) {
+			if (owned && !owner.equals(this.owner))
+				return false;
+			this.owner = owner;
+			this.owned = true;
+			return true;
+		}
+	}
+	
+	@Override
+	public final boolean releaseOwnership(String owner) {
+		synchronized(commLock) {
+			if (!owned)
+				return true;
+			if (owner == null || !owner.equals(this.owner))
+				return false;
+			this.owner = null;
+			this.owned = false;
+			return true;
+		}
+	}
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private boolean writeText(CharBuffer value, TextEncoding encoding) {
+		//Consume the buffer the same way a CharsetEncoder would.
+		boolean ret = writeSystem(value, encoding);
+		value.position(value.limit());
+		return ret;
+	}
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Listeners">
@@ -176,6 +269,8 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	public final void notifyReadListenersBytesRead(ByteBuffer buffer, int offset, int length) {
 		for(IReadListener listener : readListeners)
 			listener.bytesRead(buffer, offset, length);
+		if (!lineListeners.isEmpty())
+			lineDecoder.decode(buffer, offset, length, lineDispatcher);
 	}
 	//</editor-fold>
 	
@@ -281,6 +376,57 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 			listener.exceptionCaught(exc);
 	}
 	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Line Listener">
+	@Override
+	public final boolean hasLineListeners() {
+		return !lineListeners.isEmpty();
+	}
+	
+	@Override
+	public final boolean hasLineListener(ILineListener listener) {
+		if (listener == null)
+			return false;
+		synchronized(lineListenerLock) {
+			return lineListeners.contains(listener);
+		}
+	}
+	
+	@Override
+	public final boolean addLineListener(ILineListener listener) {
+		if (listener == null)
+			return false;
+		synchronized(lineListenerLock) {
+			lineListeners.add(listener);
+		}
+		return true;
+	}
+	
+	@Override
+	public final boolean removeLineListener(ILineListener listener) {
+		if (listener == null)
+			return true;
+		synchronized(lineListenerLock) {
+			return lineListeners.remove(listener);
+		}
+	}
+	
+	@Override
+	public final boolean clearLineListeners() {
+		synchronized(lineListenerLock) {
+			if (lineListeners.isEmpty())
+				return true;
+			lineListeners.clear();
+			lineDecoder.reset();
+			return lineListeners.isEmpty();
+		}
+	}
+	
+	public final void notifyLineListenersLineRead(String line) {
+		for(ILineListener listener : lineListeners)
+			listener.lineRead(line);
+	}
+	//</editor-fold>
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Public Methods">
@@ -371,23 +517,26 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	
 	@Override
 	public final boolean println() {
-		return print("\n", DEFAULT_CHARSET_ENCODER);
+		return print("\n", charset);
 	}
 	
 	@Override
 	public final boolean println(CharSequence value) {
-		return print(value + "\n", DEFAULT_CHARSET_ENCODER);
+		return print(value + "\n", charset);
 	}
 	
 	@Override
 	public final boolean print(CharSequence value) {
-		return print(value, DEFAULT_CHARSET_ENCODER);
+		return print(value, charset);
 	}
 	
 	@Override
 	public final boolean print(CharSequence value, Charset charset) {
 		if (value == null || charset == null)
 			return false;
+		TextEncoding encoding = TextEncoding.fromCharset(charset);
+		if (encoding != null)
+			return writeSystem(value, encoding);
 		return write(CharBuffer.wrap(value), charset);
 	}
 	
@@ -395,6 +544,10 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	public final boolean print(CharSequence value, CharsetEncoder encoder) {
 		if (value == null || encoder == null)
 			return false;
+		//The shared default encoder is configured to replace bad input 
+		//which is exactly what the fast path does.
+		if (encoder == DEFAULT_CHARSET_ENCODER)
+			return writeSystem(value, TextEncoding.ASCII);
 		return write(CharBuffer.wrap(value), encoder);
 	}
 	
@@ -402,6 +555,9 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	public final boolean write(CharBuffer value, Charset charset) {
 		if (value == null || charset == null)
 			return false;
+		TextEncoding encoding = TextEncoding.fromCharset(charset);
+		if (encoding != null)
+			return writeText(value, encoding);
 		return write(
 			value, 
 			charset.newEncoder()
@@ -414,6 +570,8 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	public final boolean write(CharBuffer value, CharsetEncoder encoder) {
 		if (value == null || encoder == null)
 			return false;
+		if (encoder == DEFAULT_CHARSET_ENCODER)
+			return writeText(value, TextEncoding.ASCII);
 		
 		ByteBuffer bb;
 		try {
@@ -426,5 +584,17 @@ public abstract class CommPort extends DisposableObject implements comm.CommPort
 	}
 	//</editor-fold>
 	
+	/**
+	 * Writes text that can be encoded without a {@link CharsetEncoder}. Platforms 
+	 * should override this and encode directly into their native staging buffer. 
+	 * The default implementation encodes into a heap buffer.
+	 */
+	protected boolean writeSystem(CharSequence value, TextEncoding encoding) {
+		int length = encoding.encodedLength(value);
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		encoding.encode(value, bb);
+		return writeSystem(bb, 0, length);
+	}
+	
 	protected abstract boolean writeSystem(ByteBuffer buffer, int offset, int length);
 }
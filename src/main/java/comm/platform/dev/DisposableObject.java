@@ -29,19 +29,30 @@
 package comm.platform.dev;
 
 import comm.IDisposable;
-import java.util.LinkedList;
-import java.util.NoSuchElementException;
+import comm.util.ResourceTracker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Creates an object that can be manually or automatically cleaned up.
  * 
+ * Live objects are kept in an intrusive doubly-linked list so creating and 
+ * disposing one is O(1). Anything still alive when the JVM exits is disposed 
+ * by a shutdown hook (and listed on stderr if the "comm.leakReport" system 
+ * property is set).
+ * 
  * @author David Hoyt <dhoyt@hoytsoft.org>
  */
 public abstract class DisposableObject implements IDisposable {
 	//<editor-fold defaultstate="collapsed" desc="Variables">
 	private volatile boolean disposed = false;
+	private DisposableObject prev, next;
+	
 	private static final Object disposeObjectLock = new Object();
-	private static final LinkedList<IDisposable> disposeObjects = new LinkedList<IDisposable>();
+	private static final DisposableObject disposeObjects = new DisposableObject(true) { };
+	private static int disposeObjectCount = 0;
 	private static final Thread disposeShutdownHook;
 	//</editor-fold>
 	
@@ -50,16 +61,19 @@ public abstract class DisposableObject implements IDisposable {
 		Runtime.getRuntime().addShutdownHook(disposeShutdownHook = new Thread(new Runnable() {
 			@Override
 			public void run() {
-				IDisposable d;
+				final List<DisposableObject> remaining = new ArrayList<DisposableObject>();
 				synchronized(disposeObjectLock) {
-					try {
-						while((d = disposeObjects.pop()) != null)
-							if (!d.isDisposed())
-								d.dispose();
-					} catch(NoSuchElementException nsee) {
-					}
+					for(DisposableObject d = disposeObjects.next; d != disposeObjects; d = d.next)
+						remaining.add(d);
 				}
-				System.runFinalization();
+				
+				if (!remaining.isEmpty() && ResourceTracker.isLeakReportEnabled())
+					System.err.print(describe(remaining));
+				
+				//Most recently created first.
+				for(DisposableObject d : remaining)
+					if (!d.isDisposed())
+						d.dispose();
 			}
 		}));
 		disposeShutdownHook.setDaemon(false);
@@ -69,7 +83,29 @@ public abstract class DisposableObject implements IDisposable {
 	@SuppressWarnings("LeakingThisInConstructor")
 	public DisposableObject() {
 		synchronized(disposeObjectLock) {
-			disposeObjects.push(this);
+			prev = disposeObjects;
+			next = disposeObjects.next;
+			disposeObjects.next.prev = this;
+			disposeObjects.next = this;
+			++disposeObjectCount;
+		}
+	}
+	
+	/**
+	 * Used for the list sentinel.
+	 */
+	private DisposableObject(boolean sentinel) {
+		prev = next = this;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	/**
+	 * Number of objects created but not yet disposed.
+	 */
+	public static int getUndisposedCount() {
+		synchronized(disposeObjectLock) {
+			return disposeObjectCount;
 		}
 	}
 	//</editor-fold>
@@ -87,23 +123,39 @@ public abstract class DisposableObject implements IDisposable {
 		synchronized(this) {
 			if (disposed)
 				return;
+			disposed = true;
 			
 			synchronized(disposeObjectLock) {
-				disposed = true;
-				disposeObjects.remove(this);
-				disposeObject();
+				if (next != null) {
+					prev.next = next;
+					next.prev = prev;
+					next = prev = null;
+					--disposeObjectCount;
+				}
 			}
+			disposeObject();
 		}
 	}
 	
 	protected void disposeObject() {
 	}
+	//</editor-fold>
 	
-	@Override
-	@SuppressWarnings("FinalizeDeclaration")
-	protected final void finalize() throws Throwable {
-		super.finalize();
-		dispose();
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static String describe(List<DisposableObject> remaining) {
+		final Map<String, int[]> counts = new TreeMap<String, int[]>();
+		for(DisposableObject d : remaining) {
+			int[] c = counts.get(d.getClass().getName());
+			if (c == null)
+				counts.put(d.getClass().getName(), (c = new int[1]));
+			c[0]++;
+		}
+		
+		final StringBuilder sb = new StringBuilder(64 * (counts.size() + 1));
+		sb.append("Undisposed objects at shutdown:\n");
+		for(Map.Entry<String, int[]> e : counts.entrySet())
+			sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()[0]).append('\n');
+		return sb.toString();
 	}
 	//</editor-fold>
 }
@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import comm.ICommPort;
+import comm.ISerialPort;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps another port and misbehaves on purpose: writes are split up, reads 
+ * are chopped, delayed, corrupted or lose bytes, listeners are woken with 
+ * nothing to read, and the port can vanish altogether. Each {@link Fault} 
+ * has its own rate and every decision comes from a seeded {@link Random}, 
+ * so a failing run can be repeated exactly.
+ * 
+ * Reads and writes draw from separate generators. Given the same seed and 
+ * the same sequence of writes (and of chunks read from the wrapped port), 
+ * the same faults are injected in the same places regardless of how the two 
+ * sides interleave.
+ * 
+ * Wrap a {@link VirtualCommPort} to test a pipeline without hardware, or a 
+ * real port to see how it holds up against a misbehaving device. Line errors 
+ * are reported to the modem listeners added here, along with whatever a 
+ * wrapped serial port reports itself, so code under test only has to listen 
+ * to the wrapper.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class FaultInjectingCommPort extends CommPort {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static enum Fault {
+		  /**
+		   * A write reaches the wrapped port in several pieces, the way a 
+		   * driver that only takes part of it has the rest resubmitted. This 
+		   * happens above the wrapped port; to drive the Windows engine's own 
+		   * resubmission, set the win32 <code>WriteLimit</code> platform hint.
+		   */
+		  PARTIAL_WRITE
+		  /**
+		   * A read is delivered to the listeners in several pieces.
+		   */
+		, SHORT_READ
+		  /**
+		   * A read or write is held up for up to the maximum delay.
+		   */
+		, DELAYED_COMPLETION
+		  /**
+		   * A run of bytes is cut out of a read.
+		   */
+		, DROPPED_BYTES
+		  /**
+		   * One byte of a read has a bit flipped and a parity or framing error 
+		   * is reported to this port's modem listeners.
+		   */
+		, LINE_ERROR
+		  /**
+		   * The read listeners are called with nothing to read.
+		   */
+		, SPURIOUS_WAKEUP
+		  /**
+		   * The port goes away: the wrapped port is closed, the error 
+		   * listeners are told, and every write from then on fails.
+		   */
+		, DISCONNECT
+		;
+	}
+	
+	public static final int 
+		  DEFAULT_MAXIMUM_DELAY = 10 //ms
+	;
+	
+	private static final Fault[] 
+		  FAULTS = Fault.values()
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final ICommPort port;
+	private final long seed;
+	private final double[] rates;
+	private final int maximumDelay;
+	private final AtomicLongArray injected = new AtomicLongArray(FAULTS.length);
+	
+	private final Object readLock = new Object();
+	private final Random readRandom;
+	private byte[] scratch = new byte[0];
+	
+	private final Object writeLock = new Object();
+	private final Random writeRandom;
+	
+	private volatile boolean disconnected;
+	
+	private final Object modemListenerLock = new Object();
+	private final List<ISerialPort.IModemListener> modemListeners = new CopyOnWriteArrayList<ISerialPort.IModemListener>();
+	private boolean forwardingModem;
+	
+	private final IReadListener readListener = new IReadListener() {
+		@Override
+		public void bytesRead(ByteBuffer buffer, int offset, int length) {
+			read(buffer, offset, length);
+		}
+	};
+	
+	private final IErrorListener errorListener = new IErrorListener() {
+		@Override
+		public void exceptionCaught(Throwable exc) {
+			if (hasErrorListeners())
+				notifyErrorListenersExceptionCaught(exc);
+		}
+	};
+	
+	private final ISerialPort.IModemListener modemListener = new ISerialPort.IModemListener() {
+		@Override
+		public void modemLinesChanged(int changed, int status) {
+			for(ISerialPort.IModemListener listener : modemListeners)
+				listener.modemLinesChanged(changed, status);
+		}
+		
+		@Override
+		public void breakReceived() {
+			for(ISerialPort.IModemListener listener : modemListeners)
+				listener.breakReceived();
+		}
+		
+		@Override
+		public void lineErrors(int errors) {
+			notifyModemListenersLineErrors(errors);
+		}
+	};
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private FaultInjectingCommPort(ICommPort port, long seed, double[] rates, int maximumDelay) {
+		super(port.getName(), port.getTitle(), port.getDescription(), port.getPortType());
+		this.port = port;
+		this.seed = seed;
+		this.rates = rates;
+		this.maximumDelay = maximumDelay;
+		this.readRandom = new Random(seed);
+		this.writeRandom = new Random(~seed);
+		this.available = port.isAvailable();
+	}
+	
+	@Override
+	protected void disposeObject() {
+		close();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Builder">
+	/**
+	 * Starts from seed 0 with every rate at 0, which passes everything 
+	 * through untouched.
+	 */
+	public static final class Builder {
+		private long seed = 0L;
+		private final double[] rates = new double[FAULTS.length];
+		private int maximumDelay = DEFAULT_MAXIMUM_DELAY;
+		
+		public Builder setSeed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+		
+		/**
+		 * @param probability Chance of the fault on each read or write it 
+		 * applies to, from 0 (never) to 1 (every time).
+		 */
+		public Builder setRate(Fault fault, double probability) {
+			if (fault == null)
+				throw new NullPointerException("fault cannot be null");
+			if (!(probability >= 0.0D && probability <= 1.0D))
+				throw new IllegalArgumentException("probability must be between 0 and 1");
+			this.rates[fault.ordinal()] = probability;
+			return this;
+		}
+		
+		public Builder setMaximumDelay(int milliseconds) {
+			if (milliseconds < 0)
+				throw new IllegalArgumentException("maximumDelay must be >= 0");
+			this.maximumDelay = milliseconds;
+			return this;
+		}
+		
+		public FaultInjectingCommPort build(ICommPort port) {
+			if (port == null)
+				throw new NullPointerException("port cannot be null");
+			return new FaultInjectingCommPort(port, seed, rates.clone(), maximumDelay);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public ICommPort getPort() {
+		return port;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	public double getRate(Fault fault) {
+		return rates[fault.ordinal()];
+	}
+	
+	public int getMaximumDelay() {
+		return maximumDelay;
+	}
+	
+	/**
+	 * @return How many times the fault has been injected so far.
+	 */
+	public long getInjectedCount(Fault fault) {
+		return injected.get(fault.ordinal());
+	}
+	
+	public boolean isDisconnected() {
+		return disconnected;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Modem Listener">
+	public boolean hasModemListeners() {
+		return !modemListeners.isEmpty();
+	}
+	
+	public boolean addModemListener(ISerialPort.IModemListener listener) {
+		if (listener == null)
+			return false;
+		synchronized(modemListenerLock) {
+			modemListeners.add(listener);
+		}
+		synchronized(commLock) {
+			updateModemForwarding();
+		}
+		return true;
+	}
+	
+	public boolean removeModemListener(ISerialPort.IModemListener listener) {
+		if (listener == null)
+			return true;
+		final boolean removed;
+		synchronized(modemListenerLock) {
+			removed = modemListeners.remove(listener);
+		}
+		synchronized(commLock) {
+			updateModemForwarding();
+		}
+		return removed;
+	}
+	
+	public boolean clearModemListeners() {
+		synchronized(modemListenerLock) {
+			modemListeners.clear();
+		}
+		synchronized(commLock) {
+			updateModemForwarding();
+		}
+		return true;
+	}
+	
+	public final void notifyModemListenersLineErrors(int errors) {
+		for(ISerialPort.IModemListener listener : modemListeners)
+			listener.lineErrors(errors);
+	}
+	
+	/**
+	 * Listens to a wrapped serial port only while open and only while 
+	 * someone is listening here, since that can start a watcher thread. Must 
+	 * be called while holding commLock.
+	 */
+	private void updateModemForwarding() {
+		if (!(port instanceof ISerialPort))
+			return;
+		final boolean forward = (opened && !modemListeners.isEmpty());
+		if (forward == forwardingModem)
+			return;
+		forwardingModem = forward;
+		if (forward)
+			((ISerialPort)port).addModemListener(modemListener);
+		else
+			((ISerialPort)port).removeModemListener(modemListener);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	@Override
+	public boolean open(int readBufferSize, int writeBufferSize) {
+		synchronized(commLock) {
+			if (opened)
+				return true;
+			if (disconnected)
+				return false;
+			
+			port.addReadListener(readListener);
+			port.addErrorListener(errorListener);
+			if (!port.open(readBufferSize, writeBufferSize)) {
+				port.removeReadListener(readListener);
+				port.removeErrorListener(errorListener);
+				return false;
+			}
+			opened = true;
+			updateModemForwarding();
+			return true;
+		}
+	}
+	
+	@Override
+	public boolean updateConfiguration() {
+		return port.updateConfiguration();
+	}
+	
+	@Override
+	public boolean close() {
+		synchronized(commLock) {
+			if (!opened)
+				return true;
+			opened = false;
+			port.removeReadListener(readListener);
+			port.removeErrorListener(errorListener);
+			updateModemForwarding();
+			return port.close();
+		}
+	}
+	
+	/**
+	 * Brings a disconnected port back so it can be opened again. The fault 
+	 * rates and the random sequences carry on where they were.
+	 */
+	public void reconnect() {
+		synchronized(commLock) {
+			disconnected = false;
+			available = port.isAvailable();
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	/**
+	 * Must be called while holding the lock for random.
+	 */
+	private boolean roll(Random random, Fault fault) {
+		final double rate = rates[fault.ordinal()];
+		if (rate <= 0.0D || random.nextDouble() >= rate)
+			return false;
+		injected.incrementAndGet(fault.ordinal());
+		return true;
+	}
+	
+	private void pause(Random random) {
+		if (maximumDelay <= 0)
+			return;
+		final long deadline = System.nanoTime() + (random.nextInt(maximumDelay) + 1) * 1000000L;
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0L)
+			LockSupport.parkNanos(remaining);
+	}
+	
+	private void disconnect() {
+		synchronized(commLock) {
+			if (disconnected)
+				return;
+			disconnected = true;
+			available = false;
+			opened = false;
+			port.removeReadListener(readListener);
+			port.removeErrorListener(errorListener);
+			updateModemForwarding();
+		}
+		port.close();
+		
+		if (hasErrorListeners())
+			notifyErrorListenersExceptionCaught(new IOException(name + " was disconnected"));
+	}
+	
+	private void deliver(ByteBuffer buffer, int offset, int length) {
+		try {
+			notifyReadListenersBytesRead(buffer, offset, length);
+		} catch(Throwable t) {
+			if (hasErrorListeners())
+				notifyErrorListenersExceptionCaught(t);
+		}
+	}
+	
+	/**
+	 * Called on the wrapped port's reader with each chunk it reads. The chunk 
+	 * is copied before it's tampered with so the wrapped port's buffer is 
+	 * left alone.
+	 */
+	private void read(ByteBuffer buffer, int offset, int length) {
+		boolean vanish = false;
+		
+		synchronized(readLock) {
+			if (disconnected || length <= 0)
+				return;
+			
+			if (roll(readRandom, Fault.DISCONNECT)) {
+				vanish = true;
+			} else {
+				if (roll(readRandom, Fault.SPURIOUS_WAKEUP))
+					deliver(buffer, offset, 0);
+				if (roll(readRandom, Fault.DELAYED_COMPLETION))
+					pause(readRandom);
+				
+				if (scratch.length < length)
+					scratch = new byte[length];
+				final ByteBuffer src = buffer.duplicate();
+				src.limit(offset + length);
+				src.position(offset);
+				src.get(scratch, 0, length);
+				
+				int count = length;
+				if (roll(readRandom, Fault.DROPPED_BYTES)) {
+					final int run = 1 + readRandom.nextInt(Math.max(1, count / 4));
+					final int at = readRandom.nextInt(count - run + 1);
+					System.arraycopy(scratch, at + run, scratch, at, count - at - run);
+					count -= run;
+				}
+				
+				int lineErrors = 0;
+				if (count > 0 && roll(readRandom, Fault.LINE_ERROR)) {
+					scratch[readRandom.nextInt(count)] ^= (byte)(1 << readRandom.nextInt(8));
+					lineErrors = (readRandom.nextBoolean() ? ISerialPort.LINE_ERROR_PARITY : ISerialPort.LINE_ERROR_FRAMING);
+				}
+				
+				final ByteBuffer data = ByteBuffer.wrap(scratch, 0, count);
+				if (count > 1 && roll(readRandom, Fault.SHORT_READ)) {
+					int at = 0;
+					while(at < count) {
+						final int piece = 1 + readRandom.nextInt(count - at);
+						deliver(data, at, piece);
+						at += piece;
+					}
+				} else if (count > 0) {
+					deliver(data, 0, count);
+				}
+				
+				if (lineErrors != 0) {
+					try {
+						notifyModemListenersLineErrors(lineErrors);
+					} catch(Throwable t) {
+						if (hasErrorListeners())
+							notifyErrorListenersExceptionCaught(t);
+					}
+				}
+			}
+		}
+		
+		if (vanish)
+			disconnect();
+	}
+	
+	@Override
+	protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return true;
+		
+		boolean vanish = false;
+		
+		synchronized(writeLock) {
+			synchronized(commLock) {
+				if (!opened || disconnected)
+					return false;
+			}
+			
+			if (roll(writeRandom, Fault.DISCONNECT)) {
+				vanish = true;
+			} else {
+				if (roll(writeRandom, Fault.DELAYED_COMPLETION))
+					pause(writeRandom);
+				
+				int at = 0;
+				if (length > 1 && roll(writeRandom, Fault.PARTIAL_WRITE)) {
+					while(at < length) {
+						final int piece = 1 + writeRandom.nextInt(length - at);
+						if (!port.write(buffer, offset + at, piece))
+							return false;
+						notifyBytesWritten(buffer, offset + at, piece);
+						at += piece;
+					}
+				} else {
+					if (!port.write(buffer, offset, length))
+						return false;
+					notifyBytesWritten(buffer, offset, length);
+				}
+			}
+		}
+		
+		if (vanish) {
+			disconnect();
+			return false;
+		}
+		
+		if (hasWriteListeners()) {
+			try {
+				notifyWriteListenersWriteComplete(buffer, length);
+			} catch(Throwable t) {
+				if (hasErrorListeners())
+					notifyErrorListenersExceptionCaught(t);
+			}
+		}
+		return true;
+	}
+	
+	private void notifyBytesWritten(ByteBuffer buffer, int offset, int length) {
+		if (!hasWriteListeners())
+			return;
+		try {
+			notifyWriteListenersBytesWritten(buffer, offset, length);
+		} catch(Throwable t) {
+			if (hasErrorListeners())
+				notifyErrorListenersExceptionCaught(t);
+		}
+	}
+	//</editor-fold>
+}
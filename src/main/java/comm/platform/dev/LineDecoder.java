@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import comm.ICommPort;
+import comm.ICommPort.ILineListener;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incrementally decodes received bytes into lines of text. Each port owns 
+ * its own instance so there's no shared decoder state (or lock) between 
+ * ports.
+ * 
+ * Lines are terminated by '\n' and a trailing '\r' is removed. Multi-byte 
+ * sequences that are split across reads are held onto until the rest of 
+ * the sequence arrives. A line that reaches the maximum length without a 
+ * terminator is delivered as it is so that binary traffic (or the wrong 
+ * terminator) can't grow it forever.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class LineDecoder {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_LINE_CAPACITY      = 256
+		, DEFAULT_CHAR_BUFFER_SIZE   = 1024
+		, DEFAULT_MAXIMUM_LINE       = 4096
+	;
+	
+	private static final char 
+		  REPLACEMENT                = '\uFFFD'
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Charset charset;
+	private final TextEncoding encoding;
+	private final StringBuilder line;
+	private final int maximumLine;
+	
+	/**
+	 * Lines completed by the current decode(), handed to the listener once 
+	 * the lock is released. Guarded by this.
+	 */
+	private List<String> completed;
+	
+	//Only used when a CharsetDecoder is required (e.g. UTF-8).
+	private CharsetDecoder decoder;
+	private ByteBuffer input;
+	private CharBuffer output;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public LineDecoder(Charset charset) {
+		this(charset, DEFAULT_MAXIMUM_LINE);
+	}
+	
+	/**
+	 * @param maximumLine The most chars a line can hold before it's delivered 
+	 * without a terminator.
+	 */
+	public LineDecoder(Charset charset, int maximumLine) {
+		if (charset == null)
+			throw new IllegalArgumentException("charset cannot be null");
+		if (maximumLine <= 0)
+			throw new IllegalArgumentException("maximumLine must be > 0");
+		
+		this.charset = charset;
+		this.maximumLine = maximumLine;
+		this.line = new StringBuilder(Math.min(DEFAULT_LINE_CAPACITY, maximumLine));
+		
+		//Single byte charsets are mapped directly without a decoder.
+		TextEncoding te = TextEncoding.fromCharset(charset);
+		this.encoding = (te == TextEncoding.UTF_8 ? null : te);
+		
+		if (this.encoding == null) {
+			this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+			;
+			this.input = ByteBuffer.allocate(ICommPort.DEFAULT_READ_BUFFER_SIZE);
+			this.output = CharBuffer.allocate(DEFAULT_CHAR_BUFFER_SIZE);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public Charset getCharset() {
+		return charset;
+	}
+	
+	public int getMaximumLine() {
+		return maximumLine;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * Decodes the bytes in [offset, offset + length) of the buffer. The buffer's 
+	 * position and limit are left untouched.
+	 * 
+	 * @param buffer The received data.
+	 * @param offset Absolute index of the first byte.
+	 * @param length The number of bytes to decode.
+	 * @param listener Receives every complete line, after the decoder's lock 
+	 * has been released.
+	 */
+	public void decode(ByteBuffer buffer, int offset, int length, ILineListener listener) {
+		if (buffer == null || length <= 0)
+			return;
+		
+		final List<String> lines;
+		synchronized(this) {
+			decodeLines(buffer, offset, length);
+			lines = completed;
+			completed = null;
+		}
+		
+		if (lines == null || listener == null)
+			return;
+		for(int i = 0, count = lines.size(); i < count; ++i)
+			listener.lineRead(lines.get(i));
+	}
+	
+	/**
+	 * Discards any partially received line and decoder state.
+	 */
+	public synchronized void reset() {
+		line.setLength(0);
+		if (decoder != null) {
+			decoder.reset();
+			input.clear();
+			output.clear();
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private void decodeLines(ByteBuffer buffer, int offset, int length) {
+		if (encoding != null) {
+			//Straight byte to char mapping.
+			final boolean ascii = (encoding == TextEncoding.ASCII);
+			byte b;
+			for(int i = offset, end = offset + length; i < end; ++i) {
+				b = buffer.get(i);
+				append(ascii && b < 0 ? REPLACEMENT : (char)(b & 0xFF));
+			}
+			return;
+		}
+		
+		//Add to whatever is left over from last time (an incomplete sequence).
+		ensureInputCapacity(length);
+		for(int i = offset, end = offset + length; i < end; ++i)
+			input.put(buffer.get(i));
+		input.flip();
+		
+		CoderResult result;
+		do {
+			result = decoder.decode(input, output, false);
+			output.flip();
+			while(output.hasRemaining())
+				append(output.get());
+			output.clear();
+		} while(result.isOverflow());
+		
+		//Anything remaining is the start of a sequence that has been split.
+		input.compact();
+	}
+	
+	private void append(char c) {
+		if (c != '\n') {
+			line.append(c);
+			//No terminator in sight, so hand over what there is.
+			if (line.length() >= maximumLine)
+				complete(line.toString());
+			return;
+		}
+		
+		int len = line.length();
+		if (len > 0 && line.charAt(len - 1) == '\r')
+			--len;
+		complete(line.substring(0, len));
+	}
+	
+	private void complete(String value) {
+		line.setLength(0);
+		if (completed == null)
+			completed = new ArrayList<String>(4);
+		completed.add(value);
+	}
+	
+	private void ensureInputCapacity(int length) {
+		if (input.remaining() >= length)
+			return;
+		ByteBuffer bb = ByteBuffer.allocate(Math.max(input.capacity() * 2, input.position() + length));
+		input.flip();
+		bb.put(input);
+		input = bb;
+	}
+	//</editor-fold>
+}
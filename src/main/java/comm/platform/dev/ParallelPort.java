@@ -28,13 +28,26 @@
  */
 package comm.platform.dev;
 
+import comm.ParallelSequence;
 import comm.PortType;
+import java.util.concurrent.locks.LockSupport;
+import static comm.ParallelSequence.*;
 
 /**
  *
  * @author David Hoyt <dhoyt@hoytsoft.org>
  */
 public abstract class ParallelPort extends CommPort implements comm.ParallelPort {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	/**
+	 * Delays shorter than this are spun out. Parking can't wake up that 
+	 * precisely.
+	 */
+	private static final long 
+		  SPIN_THRESHOLD = 100000L
+	;
+	//</editor-fold>
+	
 	//<editor-fold defaultstate="collapsed" desc="Variables">
 	//</editor-fold>
 	
@@ -58,6 +71,77 @@ public abstract class ParallelPort extends CommPort implements comm.ParallelPort
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	protected static void delayMicroseconds(int microseconds) {
+		if (microseconds <= 0)
+			return;
+		final long deadline = System.nanoTime() + microseconds * 1000L;
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0L) {
+			if (remaining > SPIN_THRESHOLD)
+				LockSupport.parkNanos(remaining - SPIN_THRESHOLD);
+		}
+	}
+	
+	/**
+	 * Runs the steps one register access at a time, skipping data and 
+	 * control writes that wouldn't change anything. Platforms that can do 
+	 * better override it. Called while holding commLock with the port open.
+	 */
+	protected boolean runSystemSequence(ParallelSequence sequence, byte[] status) {
+		int data = -1;
+		int control = -1;
+		int statusIndex = 0;
+		
+		for(int i = 0; i < sequence.size(); ++i) {
+			final int step = sequence.getStep(i);
+			final int arg = argumentOf(step);
+			
+			switch(opOf(step)) {
+				case OP_DATA:
+					if (arg != data) {
+						if (!writeSystemData(arg))
+							return false;
+						data = arg;
+					}
+					break;
+				case OP_CONTROL:
+					if (arg != control) {
+						if (!writeSystemControl(arg))
+							return false;
+						control = arg;
+					}
+					break;
+				case OP_DELAY:
+					delayMicroseconds(arg);
+					break;
+				case OP_READ_STATUS: {
+					final int value = readSystemStatus();
+					if (value < 0)
+						return false;
+					if (status != null)
+						status[statusIndex] = (byte)value;
+					++statusIndex;
+					break;
+				}
+				case OP_WAIT_STATUS: {
+					final int mask = (arg >>> 8) & 0xFF;
+					final int expected = arg & mask;
+					final long deadline = System.nanoTime() + sequence.getTimeout() * 1000L;
+					int value;
+					while((value = readSystemStatus()) >= 0 && (value & mask) != expected) {
+						if (System.nanoTime() - deadline > 0L)
+							return false;
+					}
+					if (value < 0)
+						return false;
+					break;
+				}
+				default:
+					return false;
+			}
+		}
+		return true;
+	}
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Public Methods">
@@ -90,7 +174,65 @@ public abstract class ParallelPort extends CommPort implements comm.ParallelPort
 		}
 		return false;
 	}
+	
+	@Override
+	public final int readStatus() {
+		synchronized(commLock) {
+			if (!opened)
+				return -1;
+			return readSystemStatus();
+		}
+	}
+	
+	@Override
+	public final boolean writeData(int value) {
+		synchronized(commLock) {
+			if (!opened)
+				return false;
+			return writeSystemData(value & 0xFF);
+		}
+	}
+	
+	@Override
+	public final boolean writeControl(int value) {
+		synchronized(commLock) {
+			if (!opened)
+				return false;
+			return writeSystemControl(value & 0xFF);
+		}
+	}
+	
+	@Override
+	public final boolean run(ParallelSequence sequence) {
+		return run(sequence, null);
+	}
+	
+	@Override
+	public final boolean run(ParallelSequence sequence, byte[] status) {
+		if (sequence == null)
+			return false;
+		if (status != null && status.length < sequence.getStatusCount())
+			throw new IllegalArgumentException("status must hold at least " + sequence.getStatusCount() + " values");
+		
+		synchronized(commLock) {
+			if (!opened)
+				return false;
+			return runSystemSequence(sequence, status);
+		}
+	}
 	//</editor-fold>
 
 	protected abstract boolean configureSystemParallelPort();
+	
+	protected int readSystemStatus() {
+		return -1;
+	}
+	
+	protected boolean writeSystemData(int value) {
+		return false;
+	}
+	
+	protected boolean writeSystemControl(int value) {
+		return false;
+	}
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import com.sun.jna.Pointer;
+import comm.platform.api.FreeableMemory;
+import java.nio.ByteBuffer;
+
+/**
+ * The native buffer a port reads into, sized to what the port is actually 
+ * receiving.
+ * 
+ * Reads append to the buffer until the driver has nothing more queued and 
+ * the whole batch goes out in one callback. The buffer starts at the read 
+ * buffer size the port was opened with. It doubles when a batch fills it, 
+ * up to the limit, and halves again once batches have been using less than 
+ * a quarter of it for a while.
+ * 
+ * Only the thread servicing the port's reads uses it. The native memory is 
+ * freed as soon as it's replaced, and for good with {@link #dispose()} once 
+ * nothing can be reading into it any longer.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class ReadBatch {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_LIMIT = 64 * 1024
+	;
+	
+	/**
+	 * Batches are averaged over roughly this many reads, and the buffer 
+	 * only shrinks after this many small batches in a row.
+	 */
+	private static final int 
+		  AVERAGE_WEIGHT = 8
+		, SHRINK_AFTER = 64
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final int minimum;
+	private final int maximum;
+	private FreeableMemory buffer;
+	private int filled;
+	private int average;
+	private int quiet;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	/**
+	 * @param minimum The read buffer size the port was opened with.
+	 * @param limit How large the buffer may grow. Values at or below minimum 
+	 * keep the buffer at a fixed size.
+	 */
+	public ReadBatch(int minimum, int limit) {
+		if (minimum <= 0)
+			throw new IllegalArgumentException("minimum must be > 0");
+		this.minimum = minimum;
+		this.maximum = Math.max(minimum, limit);
+		this.buffer = new FreeableMemory(minimum);
+		this.average = minimum;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public int getCapacity() {
+		return (int)buffer.size();
+	}
+	
+	public int getFilled() {
+		return filled;
+	}
+	
+	public int getRoom() {
+		return getCapacity() - filled;
+	}
+	
+	public boolean isFull() {
+		return (filled >= getCapacity());
+	}
+	
+	public boolean isAdaptive() {
+		return (maximum > minimum);
+	}
+	
+	/**
+	 * @return Where the next read should go. Only valid until the next call 
+	 * to {@link #reset()}.
+	 */
+	public Pointer getFree() {
+		return (filled == 0 ? buffer : buffer.share(filled));
+	}
+	
+	/**
+	 * @return The bytes read so far. Only valid until the next call to 
+	 * {@link #reset()}.
+	 */
+	public ByteBuffer getBatch() {
+		return buffer.getByteBuffer(0L, filled);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * Makes room for bytes the driver says are waiting, before the first read 
+	 * of a batch.
+	 */
+	public void ensure(int available) {
+		if (filled != 0 || available <= getCapacity() || getCapacity() >= maximum)
+			return;
+		resize(available >= maximum ? maximum : Math.min(maximum, nextPowerOf2(available)));
+	}
+	
+	public void filled(int count) {
+		if (count > 0)
+			filled = Math.min(getCapacity(), filled + count);
+	}
+	
+	/**
+	 * Ends the batch once it's been delivered, adjusting the buffer size to 
+	 * the batches seen so far.
+	 */
+	public void reset() {
+		final int batch = filled;
+		final int capacity = getCapacity();
+		filled = 0;
+		
+		if (!isAdaptive() || batch <= 0)
+			return;
+		
+		final int delta = batch - average;
+		average += (delta / AVERAGE_WEIGHT != 0 ? delta / AVERAGE_WEIGHT : Integer.signum(delta));
+		if (batch >= capacity && capacity < maximum) {
+			quiet = 0;
+			resize((int)Math.min(maximum, capacity * 2L));
+		} else if (capacity > minimum && average < capacity / 4) {
+			if (++quiet >= SHRINK_AFTER) {
+				quiet = 0;
+				resize(Math.max(minimum, capacity / 2));
+			}
+		} else {
+			quiet = 0;
+		}
+	}
+	
+	/**
+	 * Frees the buffer. Only once the port can no longer be reading into it.
+	 */
+	public void dispose() {
+		buffer.dispose();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private void resize(int capacity) {
+		if (capacity == getCapacity())
+			return;
+		//Allocate first so a failure leaves the old buffer in place.
+		final FreeableMemory previous = buffer;
+		buffer = new FreeableMemory(capacity);
+		previous.dispose();
+	}
+	
+	private static int nextPowerOf2(int value) {
+		final int highest = Integer.highestOneBit(value);
+		return (highest == value ? value : highest << 1);
+	}
+	//</editor-fold>
+}
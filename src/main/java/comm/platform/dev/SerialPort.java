@@ -30,9 +30,15 @@ package comm.platform.dev;
 
 import comm.DataBits;
 import comm.FlowControl;
+import comm.LatencyProfile;
+import comm.LineSettings;
 import comm.Parity;
 import comm.PortType;
+import comm.RS485Settings;
+import comm.ReadTiming;
 import comm.StopBits;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  *
@@ -45,6 +51,25 @@ public abstract class SerialPort extends CommPort implements comm.SerialPort {
 	protected StopBits stopBits;
 	protected Parity parity;
 	protected FlowControl[] flowControl;
+	
+	/**
+	 * The settings last pushed to the driver, or null if nothing has been 
+	 * applied since the port was opened. Guarded by commLock.
+	 */
+	protected LineSettings appliedSettings;
+	
+	/**
+	 * The rate the driver reported after the last configuration, or 0 if 
+	 * unknown.
+	 */
+	protected int actualBaudRate;
+	
+	protected LatencyProfile latencyProfile = LatencyProfile.getDefault();
+	protected RS485Settings rs485Settings = null;
+	protected ReadTiming readTiming = null;
+	
+	protected final Object modemListenerLock = new Object();
+	protected final List<IModemListener> modemListeners = new CopyOnWriteArrayList<IModemListener>();
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Init">
@@ -58,6 +83,21 @@ public abstract class SerialPort extends CommPort implements comm.SerialPort {
 		init();
 	}
 	
+	/**
+	 * For ports that don't belong to the local platform (such as a port on 
+	 * a terminal server). They start from the given baud rate and the 
+	 * standard framing instead of the platform's defaults, so they can be 
+	 * created where there's no local implementation at all.
+	 */
+	protected SerialPort(String name, String title, String description, PortType portType, int defaultBaudRate) {
+		super(name, title, description, portType);
+		this.parity = Parity.getDefault();
+		this.baudRate = defaultBaudRate;
+		this.dataBits = DataBits.getDefault();
+		this.stopBits = StopBits.getDefault();
+		this.flowControl = FlowControl.getDefault();
+	}
+	
 	private void init() {
 		//Use the system default values when setting these options.
 		this.parity = comm.SerialPorts.getPlatformDefaultParity();
@@ -74,6 +114,12 @@ public abstract class SerialPort extends CommPort implements comm.SerialPort {
 		return baudRate;
 	}
 	
+	@Override
+	public final int getActualBaudRate() {
+		final int actual = actualBaudRate;
+		return (opened && actual > 0 ? actual : baudRate);
+	}
+	
 	@Override
 	public final DataBits getDataBits() {
 		return dataBits;
@@ -98,37 +144,196 @@ public abstract class SerialPort extends CommPort implements comm.SerialPort {
 	public final int getFlowControlFlag() {
 		return FlowControl.asFlag(flowControl);
 	}
+	
+	@Override
+	public final LatencyProfile getLatencyProfile() {
+		return latencyProfile;
+	}
+	
+	@Override
+	public final LineSettings getLineSettings() {
+		synchronized(commLock) {
+			return new LineSettings(baudRate, dataBits, stopBits, parity, FlowControl.asFlag(flowControl), readTiming);
+		}
+	}
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	/**
+	 * Must be called while holding commLock.
+	 */
+	private void store(LineSettings settings) {
+		this.baudRate = settings.getBaudRate();
+		this.dataBits = settings.getDataBits();
+		this.stopBits = settings.getStopBits();
+		this.parity = settings.getParity();
+		this.flowControl = settings.getFlowControl();
+		this.readTiming = settings.getReadTiming();
+	}
+	
+	/**
+	 * @param options Null to accept anything.
+	 */
+	protected static boolean isSupported(StopBits[] options, StopBits stopBits) {
+		if (options == null)
+			return true;
+		for(StopBits s : options)
+			if (s == stopBits)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Pushes the settings to the driver unless they're already in effect. 
+	 * Must be called while holding commLock.
+	 */
+	private boolean apply(LineSettings settings) {
+		final BaudRateCapabilities capabilities = getBaudRateCapabilities();
+		if (capabilities != null && !capabilities.isValid(settings.getBaudRate()))
+			return false;
+		if (!isSupported(getStopBitsOptions(), settings.getStopBits()))
+			return false;
+		
+		if (!opened) {
+			store(settings);
+			return true;
+		}
+		
+		if (settings.equals(appliedSettings)) {
+			store(settings);
+			return true;
+		}
+		
+		if (configureSystemSerialPort(settings)) {
+			store(settings);
+			appliedSettings = settings;
+			return true;
+		}
+		return false;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Modem Listener">
+	@Override
+	public final boolean hasModemListeners() {
+		return !modemListeners.isEmpty();
+	}
+	
+	@Override
+	public final boolean hasModemListener(IModemListener listener) {
+		if (listener == null)
+			return false;
+		synchronized(modemListenerLock) {
+			return modemListeners.contains(listener);
+		}
+	}
+	
+	@Override
+	public final boolean addModemListener(IModemListener listener) {
+		if (listener == null)
+			return false;
+		synchronized(modemListenerLock) {
+			modemListeners.add(listener);
+			if (modemListeners.size() == 1)
+				modemListenersChanged(true);
+		}
+		return true;
+	}
+	
+	@Override
+	public final boolean removeModemListener(IModemListener listener) {
+		if (listener == null)
+			return true;
+		synchronized(modemListenerLock) {
+			final boolean removed = modemListeners.remove(listener);
+			if (removed && modemListeners.isEmpty())
+				modemListenersChanged(false);
+			return removed;
+		}
+	}
+	
+	@Override
+	public final boolean clearModemListeners() {
+		synchronized(modemListenerLock) {
+			if (modemListeners.isEmpty())
+				return true;
+			modemListeners.clear();
+			modemListenersChanged(false);
+			return modemListeners.isEmpty();
+		}
+	}
+	
+	public final void notifyModemListenersLinesChanged(int changed, int status) {
+		for(IModemListener listener : modemListeners)
+			listener.modemLinesChanged(changed, status);
+	}
+	
+	public final void notifyModemListenersBreakReceived() {
+		for(IModemListener listener : modemListeners)
+			listener.breakReceived();
+	}
+	
+	public final void notifyModemListenersLineErrors(int errors) {
+		for(IModemListener listener : modemListeners)
+			listener.lineErrors(errors);
+	}
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Public Methods">
 	@Override
-	public final boolean changeFlowControl(int flag) {
-		return changeFlowControl(FlowControl.fromFlag(flag));
+	public final int getModemStatus() {
+		synchronized(commLock) {
+			if (!opened)
+				return -1;
+			return querySystemModemStatus();
+		}
 	}
 	
 	@Override
-	public final boolean changeFlowControl(FlowControl...flowControl) {
+	public final boolean setRTS(boolean state) {
 		synchronized(commLock) {
-			if (!opened) {
-				this.flowControl = flowControl;
-				return true;
-			}
-			
-			if (changeSystemFlowControl(flowControl)) {
-				this.flowControl = flowControl;
-				return true;
-			}
+			return (opened && changeSystemModemLine(MODEM_RTS, state));
 		}
-		return false;
+	}
+	
+	@Override
+	public final boolean setDTR(boolean state) {
+		synchronized(commLock) {
+			return (opened && changeSystemModemLine(MODEM_DTR, state));
+		}
+	}
+	
+	@Override
+	public final boolean setBreak(boolean state) {
+		synchronized(commLock) {
+			return (opened && changeSystemBreak(state));
+		}
+	}
+	
+	@Override
+	public final boolean purgeInput() {
+		synchronized(commLock) {
+			lineDecoder.reset();
+			return (!opened || purgeSystemInput());
+		}
+	}
+	
+	@Override
+	public final boolean changeFlowControl(int flag) {
+		synchronized(commLock) {
+			return apply(new LineSettings(baudRate, dataBits, stopBits, parity, flag, readTiming));
+		}
+	}
+	
+	@Override
+	public final boolean changeFlowControl(FlowControl...flowControl) {
+		return changeFlowControl(FlowControl.asFlag(flowControl));
 	}
 	
 	@Override
 	public final boolean updateConfiguration() {
 		synchronized(commLock) {
-			return configureSystemSerialPort(baudRate, dataBits, stopBits, parity);
+			return apply(getLineSettings());
 		}
 	}
 	
@@ -147,26 +352,150 @@ public abstract class SerialPort extends CommPort implements comm.SerialPort {
 	@Override
 	public final boolean configure(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
 		synchronized(commLock) {
-			if (!opened) {
-				this.baudRate = baudRate;
-				this.dataBits = dataBits;
-				this.stopBits = stopBits;
-				this.parity = parity;
-				return true;
-			}
-			
-			if (configureSystemSerialPort(baudRate, dataBits, stopBits, parity)) {
-				this.baudRate = baudRate;
-				this.dataBits = dataBits;
-				this.stopBits = stopBits;
-				this.parity = parity;
-				return true;
-			}
+			return apply(new LineSettings(baudRate, dataBits, stopBits, parity, FlowControl.asFlag(flowControl), readTiming));
+		}
+	}
+	
+	@Override
+	public final RS485Settings getRS485Settings() {
+		return rs485Settings;
+	}
+	
+	@Override
+	public final boolean setRS485Settings(RS485Settings settings) {
+		synchronized(commLock) {
+			if (opened && !changeSystemRS485(settings))
+				return false;
+			this.rs485Settings = settings;
+			return true;
+		}
+	}
+	
+	@Override
+	public final ReadTiming getReadTiming() {
+		return readTiming;
+	}
+	
+	@Override
+	public final boolean setReadTiming(ReadTiming timing) {
+		synchronized(commLock) {
+			if (opened && !changeSystemReadTiming(timing))
+				return false;
+			this.readTiming = timing;
+			if (appliedSettings != null)
+				appliedSettings = new LineSettings.Builder().setReadTiming(timing).applyTo(appliedSettings);
+			return true;
+		}
+	}
+	
+	@Override
+	public final boolean setLatencyProfile(LatencyProfile profile) {
+		if (profile == null)
+			return false;
+		synchronized(commLock) {
+			if (opened && !changeSystemLatencyProfile(profile))
+				return false;
+			this.latencyProfile = profile;
+			return true;
+		}
+	}
+	
+	@Override
+	public final boolean reconfigure(LineSettings.Builder changes) {
+		if (changes == null)
+			return false;
+		synchronized(commLock) {
+			return apply(changes.applyTo(getLineSettings()));
 		}
-		return false;
 	}
 	//</editor-fold>
-
+	
+	/**
+	 * @return The rates this port accepts, or null to accept anything.
+	 */
+	protected BaudRateCapabilities getBaudRateCapabilities() {
+		return null;
+	}
+	
+	/**
+	 * @return The stop bits this port accepts, or null to accept anything.
+	 */
+	protected StopBits[] getStopBitsOptions() {
+		return null;
+	}
+	
+	/**
+	 * Called with true when the first modem listener is added and false when 
+	 * the last one is removed, so platforms only watch the lines when someone 
+	 * is listening.
+	 */
+	protected void modemListenersChanged(boolean listening) {
+	}
+	
+	/**
+	 * @return The MODEM_* lines that are asserted, or -1 if unknown.
+	 */
+	protected int querySystemModemStatus() {
+		return -1;
+	}
+	
+	/**
+	 * @param line MODEM_RTS or MODEM_DTR.
+	 */
+	protected boolean changeSystemModemLine(int line, boolean state) {
+		return false;
+	}
+	
+	protected boolean changeSystemBreak(boolean state) {
+		return false;
+	}
+	
+	/**
+	 * Discards whatever the driver has received but not yet handed over. 
+	 * Platforms that don't queue input have nothing to do.
+	 */
+	protected boolean purgeSystemInput() {
+		return true;
+	}
+	
+	/**
+	 * Turns RS-485 on, changes it, or turns it off when settings is null. 
+	 * Platforms call this themselves with {@link #rs485Settings} on open.
+	 */
+	protected boolean changeSystemRS485(RS485Settings settings) {
+		return (settings == null);
+	}
+	
+	/**
+	 * Applies the read timing to the open port, or goes back to the platform 
+	 * default when timing is null. Platforms apply {@link #readTiming} 
+	 * themselves on open.
+	 */
+	protected boolean changeSystemReadTiming(ReadTiming timing) {
+		return (timing == null);
+	}
+	
+	/**
+	 * Tunes the open port for the profile. Platforms with nothing to tune 
+	 * accept any profile.
+	 */
+	protected boolean changeSystemLatencyProfile(LatencyProfile profile) {
+		return true;
+	}
+	
+	/**
+	 * Applies all of the settings in one go. The default implementation 
+	 * changes flow control first if it differs, then configures the rest and 
+	 * finally the read timing if that differs.
+	 */
+	protected boolean configureSystemSerialPort(LineSettings settings) {
+		if (settings.getFlowControlFlag() != getFlowControlFlag() && !changeSystemFlowControl(settings.getFlowControl()))
+			return false;
+		if (!configureSystemSerialPort(settings.getBaudRate(), settings.getDataBits(), settings.getStopBits(), settings.getParity()))
+			return false;
+		return (ReadTiming.isSame(settings.getReadTiming(), readTiming) || changeSystemReadTiming(settings.getReadTiming()));
+	}
+	
 	protected abstract boolean configureSystemSerialPort(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity);
 	protected abstract boolean changeSystemFlowControl(FlowControl...flowControl);
 }
@@ -29,12 +29,13 @@
 package comm.platform.dev;
 
 /**
- * Provides details on valid Windows baud rates.
+ * Baud rates common to every platform. See {@link comm.BaudRate} for the full 
+ * set of standard rates.
  * 
  * @author David Hoyt <dhoyt@hoytsoft.org>
  */
 public class StandardBaudRate {
-	public static int 
+	public static final int 
 		  B0                = 0
 		, B50               = 50
 		, B75               = 75
@@ -44,7 +45,7 @@ public class StandardBaudRate {
 		, B200              = 200
 		, B300              = 300
 		, B600              = 600
-		, B1200             = 600
+		, B1200             = 1200
 		, B1800             = 1800
 		, B2400             = 2400
 		, B4800             = 4800
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes characters for the most common charsets directly into a byte 
+ * buffer without going through a {@link java.nio.charset.CharsetEncoder}. 
+ * 
+ * Unmappable and malformed input is replaced with '?' which matches what 
+ * an encoder configured with {@link java.nio.charset.CodingErrorAction#REPLACE} 
+ * would produce.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public enum TextEncoding {
+	  /**
+	   * 7-bit US-ASCII.
+	   */
+	  ASCII(0x7F)
+	  /**
+	   * ISO-8859-1 (Latin-1).
+	   */
+	, ISO_8859_1(0xFF)
+	  /**
+	   * UTF-8.
+	   */
+	, UTF_8(Character.MAX_VALUE)
+	;
+	
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final byte 
+		  REPLACEMENT = (byte)'?'
+	;
+	
+	private static final Charset
+		  CHARSET_ASCII      = Charset.forName("US-ASCII")
+		, CHARSET_ISO_8859_1 = Charset.forName("ISO-8859-1")
+		, CHARSET_UTF_8      = Charset.forName("UTF-8")
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private final int maxChar;
+	
+	private TextEncoding(int maxChar) {
+		this.maxChar = maxChar;
+	}
+	
+	/**
+	 * Locates the fast path encoding for a charset.
+	 * 
+	 * @param charset The charset to look up.
+	 * @return The matching encoding or null if the charset must be handled by a {@link java.nio.charset.CharsetEncoder}.
+	 */
+	public static TextEncoding fromCharset(Charset charset) {
+		if (charset == null)
+			return null;
+		if (CHARSET_ASCII.equals(charset))
+			return ASCII;
+		if (CHARSET_ISO_8859_1.equals(charset))
+			return ISO_8859_1;
+		if (CHARSET_UTF_8.equals(charset))
+			return UTF_8;
+		return null;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * Calculates the exact number of bytes {@link #encode(java.lang.CharSequence, java.nio.ByteBuffer)} 
+	 * will produce for the given value.
+	 */
+	public int encodedLength(CharSequence value) {
+		final int length = value.length();
+		int count = 0;
+		char c;
+		
+		if (this != UTF_8) {
+			//Every char produces 1 byte except for surrogate pairs which are 
+			//replaced as a whole.
+			for(int i = 0; i < length; ++i, ++count) {
+				if (Character.isHighSurrogate(value.charAt(i)) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+					++i;
+			}
+			return count;
+		}
+		
+		for(int i = 0; i < length; ++i) {
+			c = value.charAt(i);
+			if (c < 0x80) {
+				count += 1;
+			} else if (c < 0x800) {
+				count += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				count += 4;
+				++i;
+			} else if (isSurrogate(c)) {
+				count += 1;
+			} else {
+				count += 3;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Narrows/encodes the characters into the destination buffer starting at its 
+	 * current position. The buffer must have at least {@link #encodedLength(java.lang.CharSequence)} 
+	 * bytes remaining.
+	 * 
+	 * @return The number of bytes written.
+	 */
+	public int encode(CharSequence value, ByteBuffer dst) {
+		final int start = dst.position();
+		final int length = value.length();
+		int cp;
+		char c;
+		
+		for(int i = 0; i < length; ++i) {
+			c = value.charAt(i);
+			
+			if (c <= maxChar && !isSurrogate(c)) {
+				if (c < 0x80 || this != UTF_8) {
+					dst.put((byte)c);
+				} else if (c < 0x800) {
+					dst.put((byte)(0xC0 | (c >> 6)));
+					dst.put((byte)(0x80 | (c & 0x3F)));
+				} else {
+					dst.put((byte)(0xE0 | (c >> 12)));
+					dst.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+					dst.put((byte)(0x80 | (c & 0x3F)));
+				}
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				if (this == UTF_8) {
+					cp = Character.toCodePoint(c, value.charAt(i + 1));
+					dst.put((byte)(0xF0 | (cp >> 18)));
+					dst.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+					dst.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+					dst.put((byte)(0x80 | (cp & 0x3F)));
+				} else {
+					dst.put(REPLACEMENT);
+				}
+				++i;
+			} else {
+				dst.put(REPLACEMENT);
+			}
+		}
+		return dst.position() - start;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static boolean isSurrogate(char c) {
+		return (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE);
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import comm.PortType;
+import java.nio.ByteBuffer;
+
+/**
+ * A port with no hardware behind it. Data is pushed in with 
+ * {@link #inject(java.nio.ByteBuffer, int, int)} and delivered to read 
+ * listeners as if it arrived from a device. Writes are reported to the 
+ * write listeners and then discarded.
+ * 
+ * Available on every platform -- useful for replaying captures and testing 
+ * decoders.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class VirtualCommPort extends CommPort {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public VirtualCommPort(String name) {
+		this(name, name, name, PortType.UNKNOWN);
+	}
+	
+	public VirtualCommPort(String name, String title, String description, PortType portType) {
+		super(name, title, description, portType);
+		this.available = true;
+	}
+	
+	@Override
+	protected void disposeObject() {
+		close();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	@Override
+	public boolean open(int readBufferSize, int writeBufferSize) {
+		if (readBufferSize <= 0)
+			throw new IllegalArgumentException("readBufferSize must be > 0");
+		if (writeBufferSize <= 0)
+			throw new IllegalArgumentException("writeBufferSize must be > 0");
+		
+		synchronized(commLock) {
+			return (opened = true);
+		}
+	}
+	
+	@Override
+	public boolean updateConfiguration() {
+		return true;
+	}
+	
+	@Override
+	public boolean close() {
+		synchronized(commLock) {
+			opened = false;
+			return true;
+		}
+	}
+	
+	/**
+	 * Delivers data to the read (and line) listeners on the calling thread. 
+	 * The buffer's position and limit are left untouched.
+	 */
+	public void inject(ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return;
+		try {
+			notifyReadListenersBytesRead(buffer, offset, length);
+		} catch(Throwable t) {
+			if (hasErrorListeners())
+				notifyErrorListenersExceptionCaught(t);
+		}
+	}
+	
+	public void inject(byte[] buffer, int offset, int length) {
+		inject(ByteBuffer.wrap(buffer), offset, length);
+	}
+	
+	/**
+	 * Reports data to the write listeners as if it had been sent.
+	 */
+	public void injectWritten(ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return;
+		try {
+			notifyWriteListenersBytesWritten(buffer, offset, length);
+		} catch(Throwable t) {
+			if (hasErrorListeners())
+				notifyErrorListenersExceptionCaught(t);
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	@Override
+	protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return true;
+		
+		synchronized(commLock) {
+			if (!opened)
+				return false;
+		}
+		
+		if (hasWriteListeners()) {
+			try {
+				notifyWriteListenersBytesWritten(buffer, offset, length);
+				notifyWriteListenersWriteComplete(buffer, length);
+			} catch(Throwable t) {
+				if (hasErrorListeners())
+					notifyErrorListenersExceptionCaught(t);
+			}
+		}
+		return true;
+	}
+	//</editor-fold>
+}
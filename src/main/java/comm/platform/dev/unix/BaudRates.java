@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import comm.BaudRate;
+import comm.platform.api.unix.TermiosAPI;
+import comm.platform.dev.BaudRateCapabilities;
+import comm.platform.dev.StandardBaudRate;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * Provides details on valid Linux baud rates.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class BaudRates {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  B460800           =  460800 //Linux-only
+		, B500000           =  500000 //Linux-only
+		, B576000           =  576000 //Linux-only
+		, B921600           =  921600 //Linux-only
+		, B1000000          = 1000000 //Linux-only
+		, B1152000          = 1152000 //Linux-only
+		, B1500000          = 1500000 //Linux-only
+		, B2000000          = 2000000 //Linux-only
+		, B2500000          = 2500000 //Linux-only
+		, B3000000          = 3000000 //Linux-only
+		, B3500000          = 3500000 //Linux-only
+		, B4000000          = 4000000 //Linux-only
+	;
+	
+	public static final int 
+		DEFAULT_BAUD_RATE   = StandardBaudRate.B9600
+	;
+	//</editor-fold>
+	
+	public static final int[] ValidBaudRates = {
+		  StandardBaudRate.B0
+		, StandardBaudRate.B50
+		, StandardBaudRate.B75
+		, StandardBaudRate.B110
+		, StandardBaudRate.B134
+		, StandardBaudRate.B150
+		, StandardBaudRate.B200
+		, StandardBaudRate.B300
+		, StandardBaudRate.B600
+		, StandardBaudRate.B1200
+		, StandardBaudRate.B1800
+		, StandardBaudRate.B2400
+		, StandardBaudRate.B4800
+		, StandardBaudRate.B9600
+		, StandardBaudRate.B19200
+		, StandardBaudRate.B38400
+		, StandardBaudRate.B57600
+		, StandardBaudRate.B115200
+		, StandardBaudRate.B230400
+		, B460800
+		, B500000
+		, B576000
+		, B921600
+		, B1000000
+		, B1152000
+		, B1500000
+		, B2000000
+		, B2500000
+		, B3000000
+		, B3500000
+		, B4000000
+	};
+	
+	/**
+	 * Any rate can be requested through termios2 and BOTHER (Linux 2.6.20 and 
+	 * later). The driver picks the closest rate its clock allows.
+	 */
+	public static final BaudRateCapabilities Capabilities = new BaudRateCapabilities(
+		  EnumSet.complementOf(EnumSet.of(BaudRate.B7200, BaudRate.B14400, BaudRate.B28800, BaudRate.B76800))
+		, true
+		, 1
+		, Integer.MAX_VALUE
+	);
+	
+	/**
+	 * CBAUD speed codes indexed by {@link BaudRate#ordinal()}. -1 where Linux 
+	 * has no code and BOTHER must be used.
+	 */
+	private static final int[] termiosConstants = new int[BaudRate.values().length];
+	
+	static {
+		Arrays.fill(termiosConstants, -1);
+		termiosConstants[BaudRate.B0.ordinal()]         = TermiosAPI.B0;
+		termiosConstants[BaudRate.B50.ordinal()]        = TermiosAPI.B50;
+		termiosConstants[BaudRate.B75.ordinal()]        = TermiosAPI.B75;
+		termiosConstants[BaudRate.B110.ordinal()]       = TermiosAPI.B110;
+		termiosConstants[BaudRate.B134.ordinal()]       = TermiosAPI.B134;
+		termiosConstants[BaudRate.B150.ordinal()]       = TermiosAPI.B150;
+		termiosConstants[BaudRate.B200.ordinal()]       = TermiosAPI.B200;
+		termiosConstants[BaudRate.B300.ordinal()]       = TermiosAPI.B300;
+		termiosConstants[BaudRate.B600.ordinal()]       = TermiosAPI.B600;
+		termiosConstants[BaudRate.B1200.ordinal()]      = TermiosAPI.B1200;
+		termiosConstants[BaudRate.B1800.ordinal()]      = TermiosAPI.B1800;
+		termiosConstants[BaudRate.B2400.ordinal()]      = TermiosAPI.B2400;
+		termiosConstants[BaudRate.B4800.ordinal()]      = TermiosAPI.B4800;
+		termiosConstants[BaudRate.B9600.ordinal()]      = TermiosAPI.B9600;
+		termiosConstants[BaudRate.B19200.ordinal()]     = TermiosAPI.B19200;
+		termiosConstants[BaudRate.B38400.ordinal()]     = TermiosAPI.B38400;
+		termiosConstants[BaudRate.B57600.ordinal()]     = TermiosAPI.B57600;
+		termiosConstants[BaudRate.B115200.ordinal()]    = TermiosAPI.B115200;
+		termiosConstants[BaudRate.B230400.ordinal()]    = TermiosAPI.B230400;
+		termiosConstants[BaudRate.B460800.ordinal()]    = TermiosAPI.B460800;
+		termiosConstants[BaudRate.B500000.ordinal()]    = TermiosAPI.B500000;
+		termiosConstants[BaudRate.B576000.ordinal()]    = TermiosAPI.B576000;
+		termiosConstants[BaudRate.B921600.ordinal()]    = TermiosAPI.B921600;
+		termiosConstants[BaudRate.B1000000.ordinal()]   = TermiosAPI.B1000000;
+		termiosConstants[BaudRate.B1152000.ordinal()]   = TermiosAPI.B1152000;
+		termiosConstants[BaudRate.B1500000.ordinal()]   = TermiosAPI.B1500000;
+		termiosConstants[BaudRate.B2000000.ordinal()]   = TermiosAPI.B2000000;
+		termiosConstants[BaudRate.B2500000.ordinal()]   = TermiosAPI.B2500000;
+		termiosConstants[BaudRate.B3000000.ordinal()]   = TermiosAPI.B3000000;
+		termiosConstants[BaudRate.B3500000.ordinal()]   = TermiosAPI.B3500000;
+		termiosConstants[BaudRate.B4000000.ordinal()]   = TermiosAPI.B4000000;
+	}
+	
+	/**
+	 * @return The CBAUD code for the rate, or BOTHER if there isn't one.
+	 */
+	public static int mapToSystemConstant(int baudRate) {
+		final BaudRate b = BaudRate.fromValue(baudRate);
+		if (b == null || termiosConstants[b.ordinal()] < 0)
+			return TermiosAPI.BOTHER;
+		return termiosConstants[b.ordinal()];
+	}
+	
+	public static int getDefaultBaudRate() {
+		return DEFAULT_BAUD_RATE;
+	}
+	
+	public static boolean isValidBaudRate(int baudRate) {
+		return Capabilities.isValid(baudRate);
+	}
+}
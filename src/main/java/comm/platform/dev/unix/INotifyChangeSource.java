@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import comm.PortWatcher;
+import comm.platform.api.unix.INotifyAPI;
+import comm.platform.api.unix.UnixLibrary;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static comm.platform.api.unix.INotifyAPI.*;
+
+/**
+ * Waits for device nodes to appear in or disappear from a directory (/dev) 
+ * using inotify. udev creates and removes the nodes as adapters are plugged 
+ * in and out.
+ * 
+ * An eventfd is polled alongside the inotify descriptor so that 
+ * {@link #close()} can wake a blocked {@link #await(long)}.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+class INotifyChangeSource implements PortWatcher.IChangeSource {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final String 
+		  DEFAULT_DIRECTORY = "/dev"
+	;
+	
+	private static final int 
+		  WATCH_MASK = IN_CREATE | IN_DELETE | IN_MOVED_FROM | IN_MOVED_TO | IN_ATTRIB
+	;
+	
+	private static final byte[] WAKE = new byte[] { 1, 0, 0, 0, 0, 0, 0, 0 };
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Object lock = new Object();
+	private final INotifyAPI API;
+	private final NameFilter filter;
+	private final byte[] buffer = new byte[4096];
+	private final INotifyAPI.pollfd[] fds;
+	private int inotifyFd;
+	private int wakeFd;
+	private boolean waiting = false;
+	private volatile boolean closed = false;
+	private volatile boolean failed = false;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	/**
+	 * Decides which device names are worth reporting.
+	 */
+	public static interface NameFilter {
+		boolean accept(String name);
+	}
+	
+	private INotifyChangeSource(INotifyAPI API, int inotifyFd, int wakeFd, NameFilter filter) {
+		this.API = API;
+		this.filter = filter;
+		this.inotifyFd = inotifyFd;
+		this.wakeFd = wakeFd;
+		this.fds = (INotifyAPI.pollfd[])new INotifyAPI.pollfd().toArray(2);
+	}
+	
+	/**
+	 * @return null if inotify isn't available.
+	 */
+	public static INotifyChangeSource create(String directory, NameFilter filter) {
+		try {
+			INotifyAPI API = INotifyAPI.INSTANCE;
+			int ifd = API.inotify_init1(IN_NONBLOCK | IN_CLOEXEC);
+			if (ifd < 0)
+				return null;
+			if (API.inotify_add_watch(ifd, directory, WATCH_MASK | IN_ONLYDIR) < 0) {
+				API.close(ifd);
+				return null;
+			}
+			int efd = API.eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+			if (efd < 0) {
+				API.close(ifd);
+				return null;
+			}
+			return new INotifyChangeSource(API, ifd, efd, filter);
+		} catch(Throwable t) {
+			return null;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	@Override
+	public boolean await(long timeout) {
+		synchronized(lock) {
+			if (closed)
+				return false;
+			waiting = true;
+		}
+		
+		try {
+			fds[0].fd = inotifyFd;
+			fds[0].events = POLLIN;
+			fds[0].revents = 0;
+			fds[1].fd = wakeFd;
+			fds[1].events = POLLIN;
+			fds[1].revents = 0;
+			
+			int rc = API.poll(fds, fds.length, (timeout < 0L ? -1 : (int)Math.min(timeout, Integer.MAX_VALUE)));
+			if (closed)
+				return false;
+			if (rc < 0) {
+				failed = (Native.getLastError() != UnixLibrary.EINTR);
+				return false;
+			}
+			if (rc == 0)
+				return false;
+			if ((fds[0].revents & POLLIN) == 0) {
+				//An error or hangup with nothing to read won't go away by itself.
+				failed = ((fds[0].revents & (POLLERR | POLLHUP)) != 0);
+				return false;
+			}
+			
+			return drain();
+		} finally {
+			synchronized(lock) {
+				waiting = false;
+				if (closed)
+					release();
+			}
+		}
+	}
+	
+	@Override
+	public boolean isFailed() {
+		return failed;
+	}
+	
+	@Override
+	public void close() {
+		synchronized(lock) {
+			if (closed)
+				return;
+			closed = true;
+			
+			//A waiting thread releases the descriptors itself once it wakes up.
+			if (waiting)
+				API.write(wakeFd, WAKE, new NativeLong(WAKE.length));
+			else
+				release();
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	/**
+	 * Reads every pending event. 
+	 * 
+	 * @return true if any of them involved a device we care about.
+	 */
+	private boolean drain() {
+		boolean relevant = false;
+		long read;
+		int offset, mask, len;
+		ByteBuffer bb = ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder());
+		
+		while((read = API.read(inotifyFd, buffer, new NativeLong(buffer.length)).longValue()) > 0L) {
+			offset = 0;
+			while(offset + INOTIFY_EVENT_SIZE <= read) {
+				mask = bb.getInt(offset + 4);
+				len = bb.getInt(offset + 12);
+				
+				if ((mask & IN_Q_OVERFLOW) != 0)
+					relevant = true;
+				else if (len > 0 && !relevant && (filter == null || filter.accept(Native.toString(copy(offset + INOTIFY_EVENT_SIZE, len)))))
+					relevant = true;
+				
+				offset += INOTIFY_EVENT_SIZE + len;
+			}
+		}
+		return relevant;
+	}
+	
+	private byte[] copy(int offset, int length) {
+		byte[] b = new byte[length];
+		System.arraycopy(buffer, offset, b, 0, length);
+		return b;
+	}
+	
+	private void release() {
+		if (inotifyFd >= 0) {
+			API.close(inotifyFd);
+			inotifyFd = -1;
+		}
+		if (wakeFd >= 0) {
+			API.close(wakeFd);
+			wakeFd = -1;
+		}
+	}
+	//</editor-fold>
+}
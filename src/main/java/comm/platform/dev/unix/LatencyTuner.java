@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import comm.LatencyProfile;
+import comm.ReadTiming;
+import comm.platform.api.unix.TermiosAPI;
+import java.io.File;
+import static comm.platform.api.unix.TermiosAPI.*;
+
+/**
+ * Applies a {@link LatencyProfile} to an open tty and puts back whatever it 
+ * changed when the port is closed.
+ * 
+ * Three knobs are involved: the ASYNC_LOW_LATENCY serial flag (TIOCSSERIAL), 
+ * VMIN/VTIME, and the latency_timer attribute that FTDI adapters expose in 
+ * sysfs (16 ms by default). Each one is best effort -- a driver that doesn't 
+ * support a knob, or a sysfs attribute we aren't allowed to write, is skipped 
+ * and reported as it is.
+ * 
+ * A {@link ReadTiming} takes VMIN/VTIME over from the profile.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+final class LatencyTuner {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final int 
+		  DEFAULT_LATENCY_TIMER = 1
+		, MAXIMUM_VMIN          = 255
+	;
+	
+	private static final String 
+		  LATENCY_TIMER = "latency_timer"
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final int fd;
+	private final File latencyTimerFile;
+	
+	private Boolean originalLowLatency;
+	private String originalLatencyTimer;
+	
+	private Boolean lowLatency;
+	private int vmin = -1;
+	private int vtime = -1;
+	private Integer latencyTimer;
+	private ReadTiming readTiming;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	/**
+	 * @param deviceDirectory The tty's sysfs device directory, or null if unknown.
+	 * @param readTiming The port's read timing, or null if it has none.
+	 */
+	LatencyTuner(int fd, File deviceDirectory, ReadTiming readTiming) {
+		this.fd = fd;
+		this.latencyTimerFile = (deviceDirectory != null ? new File(deviceDirectory, LATENCY_TIMER) : null);
+		this.readTiming = readTiming;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	/**
+	 * @return Whether ASYNC_LOW_LATENCY is set, or null if the driver doesn't support it.
+	 */
+	public Boolean isLowLatency() {
+		return lowLatency;
+	}
+	
+	public int getVMin() {
+		return vmin;
+	}
+	
+	public int getVTime() {
+		return vtime;
+	}
+	
+	/**
+	 * @return The latency timer in milliseconds, or null if the adapter has none.
+	 */
+	public Integer getLatencyTimer() {
+		return latencyTimer;
+	}
+	
+	/**
+	 * @return VMIN for the read timing, or 1 to wake on the first byte when 
+	 * there's none. A read returns as soon as VMIN bytes are in, so with a 
+	 * gap it's as large as it goes and the gap ends the read instead.
+	 */
+	static int vmin(ReadTiming timing) {
+		if (timing == null)
+			return 1;
+		return (timing.getInterCharacterTimeout() > 0 ? MAXIMUM_VMIN : timing.getMinimumBytes());
+	}
+	
+	/**
+	 * @return VTIME for the read timing, or 0 when there's none. Without a 
+	 * gap or a minimum VTIME times the whole read instead.
+	 */
+	static int vtime(ReadTiming timing) {
+		if (timing == null)
+			return 0;
+		if (timing.getInterCharacterTimeout() > 0)
+			return timing.getIntervalDeciseconds();
+		return (timing.getMinimumBytes() == 0 ? Math.min(255, (timing.getTotalTimeout() + 99) / 100) : 0);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private void applyLowLatencyFlag(TermiosAPI API, boolean requested) {
+		final serial_struct ss = new serial_struct();
+		if (Util.ioctl(API, fd, TIOCGSERIAL, ss) < 0) {
+			lowLatency = null;
+			return;
+		}
+		
+		final boolean current = (ss.flags & ASYNC_LOW_LATENCY) != 0;
+		if (originalLowLatency == null)
+			originalLowLatency = current;
+		
+		final boolean wanted = (requested || originalLowLatency);
+		if (wanted != current) {
+			ss.flags = (wanted ? ss.flags | ASYNC_LOW_LATENCY : ss.flags & ~ASYNC_LOW_LATENCY);
+			if (Util.ioctl(API, fd, TIOCSSERIAL, ss) < 0 || Util.ioctl(API, fd, TIOCGSERIAL, ss) < 0) {
+				lowLatency = current;
+				return;
+			}
+		}
+		lowLatency = (ss.flags & ASYNC_LOW_LATENCY) != 0;
+	}
+	
+	/**
+	 * @return True if VMIN/VTIME are now what was asked for.
+	 */
+	private boolean applyReadTiming(TermiosAPI API, boolean requested) {
+		final termios2 tio = new termios2();
+		if (Util.ioctl(API, fd, TCGETS2, tio) < 0)
+			return false;
+		
+		//Without a read timing, wake on the first byte with no inter-byte timer.
+		final int wantedMin = vmin(readTiming);
+		final int wantedTime = vtime(readTiming);
+		if ((requested || readTiming != null) && ((tio.c_cc[VMIN] & 0xFF) != wantedMin || (tio.c_cc[VTIME] & 0xFF) != wantedTime)) {
+			tio.c_cc[VMIN] = (byte)wantedMin;
+			tio.c_cc[VTIME] = (byte)wantedTime;
+			if (Util.ioctl(API, fd, TCSETS2, tio) < 0)
+				Util.ioctl(API, fd, TCGETS2, tio);
+		}
+		vmin = (tio.c_cc[VMIN] & 0xFF);
+		vtime = (tio.c_cc[VTIME] & 0xFF);
+		return (vmin == wantedMin && vtime == wantedTime);
+	}
+	
+	private void applyLatencyTimer(boolean requested, int milliseconds) {
+		if (latencyTimerFile == null || !latencyTimerFile.isFile()) {
+			latencyTimer = null;
+			return;
+		}
+		
+		final String current = SysfsDiscovery.readAttribute(latencyTimerFile);
+		if (originalLatencyTimer == null)
+			originalLatencyTimer = current;
+		
+		final String wanted = (requested ? Integer.toString(milliseconds) : originalLatencyTimer);
+		if (wanted != null && !wanted.equals(current))
+			SysfsDiscovery.writeAttribute(latencyTimerFile, wanted);
+		
+		latencyTimer = parse(SysfsDiscovery.readAttribute(latencyTimerFile));
+	}
+	
+	private static Integer parse(String value) {
+		if (value == null)
+			return null;
+		try {
+			return Integer.valueOf(value);
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * @param latencyTimer Milliseconds for the FTDI latency timer under the low latency profile.
+	 */
+	public void apply(LatencyProfile profile, int latencyTimer) {
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		final boolean low = (profile == LatencyProfile.LOW_LATENCY);
+		applyLowLatencyFlag(API, low);
+		applyReadTiming(API, low);
+		applyLatencyTimer(low, latencyTimer);
+	}
+	
+	/**
+	 * Applies the read timing, or goes back to waking on the first byte when 
+	 * timing is null. The previous timing is kept if the driver refuses.
+	 */
+	public boolean setReadTiming(ReadTiming timing) {
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		final ReadTiming previous = readTiming;
+		readTiming = timing;
+		if (applyReadTiming(API, true))
+			return true;
+		readTiming = previous;
+		applyReadTiming(API, true);
+		return false;
+	}
+	
+	/**
+	 * Records a read timing that was written along with the rest of the line 
+	 * settings, so there's nothing left to send.
+	 */
+	public void readTimingApplied(ReadTiming timing) {
+		readTiming = timing;
+		vmin = vmin(timing);
+		vtime = vtime(timing);
+	}
+	
+	/**
+	 * Puts back the serial flag and latency timer as they were before the 
+	 * first {@link #apply(comm.LatencyProfile, int)}. Both outlive the file 
+	 * descriptor, so leaving them changed would affect the next user.
+	 */
+	public void restore() {
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		if (originalLowLatency != null)
+			applyLowLatencyFlag(API, false);
+		if (originalLatencyTimer != null)
+			applyLatencyTimer(false, 0);
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import comm.platform.api.unix.PPDevAPI;
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds parallel ports by their ppdev nodes (/dev/parport0 and up). The 
+ * nodes only exist once the ppdev module is loaded.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class PPDevParallelPortImplementation implements comm.ParallelPorts.Implementation {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final Pattern 
+		  PARPORT = Pattern.compile("parport(\\d+)")
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private static final Object cacheLock = new Object();
+	private static final Map<String, ParallelPort> cache = new TreeMap<String, ParallelPort>();
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static File devRoot() {
+		final String dev = PlatformHint.hint(PlatformHint.DevRoot);
+		return new File(dev != null ? dev : SysfsDiscovery.DEFAULT_DEV_ROOT);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	@Override
+	public void visitAvailableParallelPorts(comm.ParallelPorts.IVisitor visitor) {
+		if (visitor == null)
+			return;
+		
+		final String[] names = devRoot().list();
+		if (names == null)
+			return;
+		
+		final Map<String, String> found = new TreeMap<String, String>();
+		for(String n : names) {
+			final Matcher m = PARPORT.matcher(n);
+			if (m.matches())
+				found.put(new File(devRoot(), n).getPath(), "LPT" + (Integer.parseInt(m.group(1)) + 1));
+		}
+		
+		synchronized(cacheLock) {
+			for(Map.Entry<String, String> e : found.entrySet()) {
+				final String path = e.getKey();
+				final String title = e.getValue();
+				final String description = "Parallel Port (" + path + ")";
+				
+				ParallelPort inst = cache.get(path);
+				if (inst == null)
+					cache.put(path, (inst = new ParallelPort(path, title, description)));
+				else
+					inst.update(title, description);
+				
+				if (!visitor.visit(inst))
+					break;
+			}
+		}
+	}
+	
+	@Override
+	public boolean isPlatformSupported() {
+		try {
+			return (PPDevAPI.INSTANCE != null);
+		} catch(Throwable t) {
+			return false;
+		}
+	}
+	
+	@Override
+	public void addPlatformHint(String name, Object value) {
+		PlatformHint.add(name, value);
+	}
+	
+	@Override
+	public <T> T findPlatformHint(String name) {
+		return PlatformHint.hint(name);
+	}
+	
+	@Override
+	public int[] getBaudRates() {
+		return BaudRates.ValidBaudRates;
+	}
+	
+	@Override
+	public int getDefaultBaudRate() {
+		return BaudRates.DEFAULT_BAUD_RATE;
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import comm.PortType;
+import comm.platform.api.unix.PPDevAPI;
+import comm.platform.api.unix.UnixLibrary;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static comm.platform.api.unix.PPDevAPI.*;
+
+/**
+ * A parallel port driven through ppdev.
+ * 
+ * The port is claimed for as long as it's open. Register access goes 
+ * through one ioctl per change with an argument buffer allocated at open, 
+ * and write() hands whole buffers to the kernel, which does the 
+ * compatibility mode STROBE/BUSY handshake itself.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+class ParallelPort extends comm.platform.dev.ParallelPort {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final int 
+		  INVALID_FD = -1
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private volatile int fd = INVALID_FD;
+	
+	/**
+	 * The ioctl argument. Guarded by commLock.
+	 */
+	private Memory arg;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public ParallelPort(String name, String title, String description) {
+		super(name, title, description, PortType.PARALLEL);
+		this.available = true;
+	}
+	
+	@Override
+	protected void disposeObject() {
+		close();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	/**
+	 * The open file descriptor, or -1 if the port is closed.
+	 */
+	int getFileDescriptor() {
+		return fd;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Update">
+	public void update(String title, String description) {
+		this.title = title;
+		this.description = description;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private void notifyError(Throwable t) {
+		if (hasErrorListeners())
+			notifyErrorListenersExceptionCaught(t);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Registers">
+	@Override
+	protected int readSystemStatus() {
+		if (fd == INVALID_FD)
+			return -1;
+		if (Util.ioctl(PPDevAPI.INSTANCE, fd, PPRSTATUS, arg) < 0)
+			return -1;
+		return (arg.getByte(0) & 0xFF);
+	}
+	
+	@Override
+	protected boolean writeSystemData(int value) {
+		if (fd == INVALID_FD)
+			return false;
+		arg.setByte(0, (byte)value);
+		return (Util.ioctl(PPDevAPI.INSTANCE, fd, PPWDATA, arg) >= 0);
+	}
+	
+	@Override
+	protected boolean writeSystemControl(int value) {
+		if (fd == INVALID_FD)
+			return false;
+		arg.setByte(0, (byte)value);
+		return (Util.ioctl(PPDevAPI.INSTANCE, fd, PPWCONTROL, arg) >= 0);
+	}
+	
+	@Override
+	protected boolean configureSystemParallelPort() {
+		return true;
+	}
+	//</editor-fold>
+	
+	@Override
+	public boolean open(int readBufferSize, int writeBufferSize) {
+		synchronized(commLock) {
+			if (opened)
+				return true;
+			
+			try {
+				final PPDevAPI API = PPDevAPI.INSTANCE;
+				
+				final int f = API.open(name, O_RDWR | O_CLOEXEC);
+				if (f < 0)
+					return false;
+				
+				final Memory m = new Memory(4);
+				
+				//Ask for the port to ourselves. Some drivers don't support it, 
+				//and the claim below still keeps other ppdev users out.
+				Util.ioctl(API, f, PPEXCL, null);
+				
+				if (Util.ioctl(API, f, PPCLAIM, null) < 0) {
+					API.close(f);
+					return false;
+				}
+				
+				m.setInt(0, IEEE1284_MODE_COMPAT);
+				if (Util.ioctl(API, f, PPSETMODE, m) < 0) {
+					Util.ioctl(API, f, PPRELEASE, null);
+					API.close(f);
+					return false;
+				}
+				
+				this.arg = m;
+				this.fd = f;
+				opened = true;
+				return true;
+			} catch(UnsatisfiedLinkError e) {
+				return false;
+			}
+		}
+	}
+	
+	@Override
+	protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return true;
+		
+		final PPDevAPI API = PPDevAPI.INSTANCE;
+		Pointer p;
+		if (buffer.isDirect()) {
+			p = Native.getDirectBufferPointer(buffer).share(offset);
+		} else {
+			final Memory copy = new Memory(length);
+			final ByteBuffer src = buffer.duplicate();
+			src.limit(offset + length);
+			src.position(offset);
+			copy.getByteBuffer(0, length).put(src);
+			p = copy;
+		}
+		
+		synchronized(commLock) {
+			final int f = fd;
+			if (f == INVALID_FD)
+				return false;
+			
+			int written = 0;
+			while(written < length) {
+				final long n = API.write(f, p.share(written), new NativeLong(length - written)).longValue();
+				if (n >= 0L) {
+					written += (int)n;
+					continue;
+				}
+				
+				final int err = Native.getLastError();
+				if (err == UnixLibrary.EINTR)
+					continue;
+				notifyError(new IOException("write() failed on " + name + ": errno " + err));
+				return false;
+			}
+		}
+		
+		if (hasWriteListeners()) {
+			try {
+				notifyWriteListenersBytesWritten(buffer, offset, length);
+				notifyWriteListenersWriteComplete(buffer, length);
+			} catch(Throwable t) {
+				notifyError(t);
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean close() {
+		synchronized(commLock) {
+			if (!opened)
+				return true;
+			
+			opened = false;
+			final int f = fd;
+			fd = INVALID_FD;
+			arg = null;
+			
+			final PPDevAPI API = PPDevAPI.INSTANCE;
+			Util.ioctl(API, f, PPRELEASE, null);
+			API.close(f);
+		}
+		return true;
+	}
+}
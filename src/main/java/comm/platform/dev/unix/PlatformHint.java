@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import comm.util.StringUtil;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Provides hints that can be used to modify runtime behavior.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class PlatformHint {
+	public static final String 
+		  /**
+		   * The root of the sysfs tree. Defaults to "/sys".
+		   */
+		  SysfsRoot = "SysfsRoot"
+		  /**
+		   * The directory holding device nodes. Defaults to "/dev".
+		   */
+		, DevRoot = "DevRoot"
+		  /**
+		   * The number of threads used to read sysfs attributes during discovery. 
+		   * Defaults to the number of processors, up to 4.
+		   */
+		, DiscoveryThreads = "DiscoveryThreads"
+		  /**
+		   * The {@link comm.LatencyProfile} ports start with. Defaults to LOW_LATENCY.
+		   */
+		, LatencyProfile = "LatencyProfile"
+		  /**
+		   * The FTDI latency timer (in milliseconds, as an Integer) used by the 
+		   * low latency profile. Defaults to 1.
+		   */
+		, LatencyTimer = "LatencyTimer"
+		  /**
+		   * How large (in bytes, as an Integer) a port's read buffer may grow. Each 
+		   * wakeup reads until TIOCINQ reports nothing left and delivers it all in 
+		   * one callback. Zero, or anything up to the read buffer size, turns this 
+		   * off and every read is delivered on its own. Defaults to 64K.
+		   */
+		, AdaptiveReadLimit = "AdaptiveReadLimit"
+	;
+	
+	private static final Map<String, Object> hints = new TreeMap<String, Object>();
+	
+	static {
+		hints.put(SysfsRoot, SysfsDiscovery.DEFAULT_SYSFS_ROOT);
+		hints.put(DevRoot, SysfsDiscovery.DEFAULT_DEV_ROOT);
+		hints.put(DiscoveryThreads, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		hints.put(LatencyProfile, comm.LatencyProfile.LOW_LATENCY);
+		hints.put(LatencyTimer, LatencyTuner.DEFAULT_LATENCY_TIMER);
+		hints.put(AdaptiveReadLimit, comm.platform.dev.ReadBatch.DEFAULT_LIMIT);
+	}
+	
+	static void add(final String name, final Object value) {
+		if (StringUtil.isNullOrEmpty(name))
+			return;
+		hints.put(name, value);
+	}
+	
+	static <T> T hint(final String name) {
+		return (T)hints.get(name);
+	}
+}
@@ -0,0 +1,1082 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import comm.DataBits;
+import comm.FlowControl;
+import comm.ISerialPort;
+import comm.LatencyProfile;
+import comm.LineSettings;
+import comm.Parity;
+import comm.PortType;
+import comm.RS485Settings;
+import comm.ReadTiming;
+import comm.StopBits;
+import comm.platform.api.unix.TermiosAPI;
+import comm.platform.api.unix.UnixLibrary;
+import comm.platform.dev.BaudRateCapabilities;
+import comm.platform.dev.ReadBatch;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+import static comm.platform.api.unix.TermiosAPI.*;
+
+/**
+ * A Linux serial port discovered through sysfs and driven through termios2.
+ * 
+ * Reads are serviced by a daemon thread per open port that sleeps in poll() 
+ * until data arrives or the port is closed. While there are modem listeners 
+ * a second daemon thread sleeps in TIOCMIWAIT.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+class SerialPort extends comm.platform.dev.SerialPort {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	private static final int 
+		  INVALID_FD = -1
+		, WATCHED_LINES = TIOCM_CTS | TIOCM_DSR | TIOCM_CAR | TIOCM_RNG
+	;
+	
+	private static final long 
+		  CLOSE_TIMEOUT = 2000L
+		, WATCHER_EXIT_TIMEOUT = 100L
+	;
+	
+	static final StopBits[] STOP_BITS_OPTIONS = { 
+		  StopBits.STOPBITS_1
+		, StopBits.STOPBITS_2
+	};
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private volatile SysfsDiscovery.PortInfo info;
+	private final Object writeLock = new Object();
+	private volatile int fd = INVALID_FD;
+	private volatile int wakeFd = INVALID_FD;
+	
+	/**
+	 * A second, blocking descriptor for the same tty. VTIME is ignored by 
+	 * non-blocking reads, so the reader switches to this one while a read 
+	 * timing with a gap is in effect.
+	 */
+	private volatile int readFd = INVALID_FD;
+	
+	/**
+	 * The gap VTIME actually waits, in milliseconds, or 0 if reads aren't 
+	 * framed.
+	 */
+	private volatile int frameGap;
+	private Thread reader;
+	private LatencyTuner tuner;
+	private ModemWatcher watcher;
+	
+	/**
+	 * A stopped watcher that may still be asleep in TIOCMIWAIT. It's resumed 
+	 * rather than replaced so a port never holds more than one extra 
+	 * descriptor. Guarded by commLock.
+	 */
+	private ModemWatcher idleWatcher;
+	
+	/**
+	 * Set while RTS is toggled around writes. Guarded by writeLock.
+	 */
+	private volatile RS485Settings toggle;
+	
+	/**
+	 * The driver's RS-485 settings from before we changed them, or null if 
+	 * they're untouched. Guarded by commLock.
+	 */
+	private serial_rs485 originalRS485;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public SerialPort(SysfsDiscovery.PortInfo info) {
+		super(info.getName(), info.getTitle(), info.getDescription(), PortType.SERIAL);
+		this.info = info;
+		this.available = true;
+		
+		final LatencyProfile profile = PlatformHint.hint(PlatformHint.LatencyProfile);
+		if (profile != null)
+			this.latencyProfile = profile;
+		setProperty(ISerialPort.PROPERTY_LATENCY_PROFILE, latencyProfile.name());
+	}
+	
+	@Override
+	protected void disposeObject() {
+		close();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public SysfsDiscovery.PortInfo getInfo() {
+		return info;
+	}
+	
+	/**
+	 * The open file descriptor, or -1 if the port is closed.
+	 */
+	int getFileDescriptor() {
+		return fd;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Update">
+	/**
+	 * @return True if the title or description changed.
+	 */
+	public boolean update(SysfsDiscovery.PortInfo info) {
+		final String t = info.getTitle();
+		final String d = info.getDescription();
+		final boolean changed = !t.equals(this.title) || !d.equals(this.description);
+		this.info = info;
+		this.title = t;
+		this.description = d;
+		return changed;
+	}
+	
+	/**
+	 * Cleared while the device is unplugged. The same instance is handed 
+	 * out again if it comes back.
+	 */
+	void setAvailable(boolean available) {
+		this.available = available;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static void closeQuietly(TermiosAPI API, int fd) {
+		if (fd != INVALID_FD)
+			API.close(fd);
+	}
+	
+	private static void wake(TermiosAPI API, int wakeFd) {
+		final Memory one = new Memory(8);
+		one.setLong(0, 1L);
+		API.write(wakeFd, one, new NativeLong(8));
+	}
+	
+	/**
+	 * Waits for room in the output queue. Gives up if the port is closed in 
+	 * the meantime.
+	 */
+	private static boolean awaitWritable(TermiosAPI API, int fd, int wakeFd) {
+		final Memory fds = newPollFds(fd, POLLOUT, wakeFd);
+		while(true) {
+			if (API.poll(fds, 2, -1) >= 0)
+				return (revents(fds, 1) == 0 && (revents(fds, 0) & (POLLERR | POLLHUP | POLLNVAL)) == 0);
+			if (Native.getLastError() != UnixLibrary.EINTR)
+				return false;
+		}
+	}
+	
+	/**
+	 * A struct pollfd[2] for the port and its wake descriptor, kept in plain 
+	 * memory so polling doesn't write and read back Structures each time.
+	 */
+	private static Memory newPollFds(int fd, int events, int wakeFd) {
+		final Memory fds = new Memory(2 * POLLFD_SIZE);
+		fds.clear();
+		fds.setInt(POLLFD_FD, fd);
+		fds.setShort(POLLFD_EVENTS, (short)events);
+		fds.setInt(POLLFD_SIZE + POLLFD_FD, wakeFd);
+		fds.setShort(POLLFD_SIZE + POLLFD_EVENTS, (short)POLLIN);
+		return fds;
+	}
+	
+	private static short revents(Memory fds, int index) {
+		return fds.getShort(index * POLLFD_SIZE + POLLFD_REVENTS);
+	}
+	
+	private static String toString(Object value) {
+		return (value != null ? value.toString() : null);
+	}
+	
+	/**
+	 * Must be called while holding commLock.
+	 */
+	private void publishLatencyProperties() {
+		final LatencyTuner t = tuner;
+		setProperty(ISerialPort.PROPERTY_LATENCY_PROFILE, latencyProfile.name());
+		setProperty(ISerialPort.PROPERTY_LOW_LATENCY, (t != null ? toString(t.isLowLatency()) : null));
+		setProperty(ISerialPort.PROPERTY_VMIN, (t != null && t.getVMin() >= 0 ? Integer.toString(t.getVMin()) : null));
+		setProperty(ISerialPort.PROPERTY_VTIME, (t != null && t.getVTime() >= 0 ? Integer.toString(t.getVTime()) : null));
+		setProperty(ISerialPort.PROPERTY_LATENCY_TIMER, (t != null ? toString(t.getLatencyTimer()) : null));
+	}
+	
+	private static int readLimitHint() {
+		final Integer limit = PlatformHint.hint(PlatformHint.AdaptiveReadLimit);
+		return (limit != null ? limit.intValue() : 0);
+	}
+	
+	/**
+	 * @return The bytes waiting in the driver's input queue, or 0 if it can't 
+	 * be asked.
+	 */
+	private static int queued(TermiosAPI API, int fd, IntByReference count) {
+		return (Util.ioctl(API, fd, TIOCINQ, count) >= 0 ? count.getValue() : 0);
+	}
+	
+	private static int latencyTimerHint() {
+		final Integer ms = PlatformHint.hint(PlatformHint.LatencyTimer);
+		return (ms != null && ms > 0 ? ms.intValue() : LatencyTuner.DEFAULT_LATENCY_TIMER);
+	}
+	
+	private static boolean setModemBits(TermiosAPI API, int fd, int bits, boolean state) {
+		return (Util.ioctl(API, fd, (state ? TIOCMBIS : TIOCMBIC), new IntByReference(bits)) >= 0);
+	}
+	
+	private static void pause(int milliseconds) {
+		if (milliseconds <= 0)
+			return;
+		final long deadline = System.nanoTime() + milliseconds * 1000000L;
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0L)
+			LockSupport.parkNanos(remaining);
+	}
+	
+	private void notifyError(Throwable t) {
+		if (hasErrorListeners())
+			notifyErrorListenersExceptionCaught(t);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Reader">
+	private void readLoop(final int fd, final int readFd, final int wakeFd, final int readBufferSize) {
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		final ReadBatch batch = new ReadBatch(readBufferSize, readLimitHint());
+		final IntByReference queued = new IntByReference();
+		final Memory fds = newPollFds(fd, POLLIN, wakeFd);
+		
+		try {
+			while(true) {
+				if (API.poll(fds, 2, -1) < 0) {
+					if (Native.getLastError() == UnixLibrary.EINTR)
+						continue;
+					notifyError(new IOException("poll() failed on " + name + ": errno " + Native.getLastError()));
+					return;
+				}
+				
+				//Asked to stop.
+				if (revents(fds, 1) != 0)
+					return;
+				
+				final short revents = revents(fds, 0);
+				if ((revents & POLLIN) != 0) {
+					if (batch.isAdaptive())
+						batch.ensure(queued(API, fd, queued));
+					
+					//A framed read blocks until the line has been quiet for VTIME, 
+					//which poll() can't wait for.
+					final int gap = frameGap;
+					long read = API.read((gap > 0 ? readFd : fd), batch.getFree(), new NativeLong(batch.getRoom())).longValue();
+					if (read > 0L) {
+						batch.filled((int)read);
+						
+						if (gap > 0) {
+							//VMIN stops a framed read at 255 bytes. A longer frame carries on 
+							//if more arrives within the gap.
+							while(read == LatencyTuner.MAXIMUM_VMIN && !batch.isFull() && API.poll(fds, 2, gap) > 0 && revents(fds, 1) == 0 && (revents(fds, 0) & POLLIN) != 0) {
+								read = API.read(readFd, batch.getFree(), new NativeLong(batch.getRoom())).longValue();
+								if (read <= 0L)
+									break;
+								batch.filled((int)read);
+							}
+						}
+						
+						//Take whatever else has already arrived so it goes out in one callback. 
+						//Frames are left to arrive one per callback.
+						while(gap == 0 && batch.isAdaptive() && !batch.isFull() && queued(API, fd, queued) > 0) {
+							read = API.read(fd, batch.getFree(), new NativeLong(batch.getRoom())).longValue();
+							if (read <= 0L)
+								break;
+							batch.filled((int)read);
+						}
+						
+						try {
+							notifyReadListenersBytesRead(batch.getBatch(), 0, batch.getFilled());
+						} catch(Throwable t) {
+							notifyError(t);
+						} finally {
+							batch.reset();
+						}
+						continue;
+					}
+					
+					if (read < 0L) {
+						final int err = Native.getLastError();
+						if (err == UnixLibrary.EINTR || err == UnixLibrary.EAGAIN)
+							continue;
+					}
+					
+					//A read of 0 means the device went away.
+					notifyError(new IOException(name + " was disconnected"));
+					return;
+				}
+				
+				if ((revents & (POLLERR | POLLHUP | POLLNVAL)) != 0) {
+					notifyError(new IOException(name + " was disconnected"));
+					return;
+				}
+			}
+		} finally {
+			//Nothing reads into it once this thread is gone.
+			batch.dispose();
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Modem">
+	private static int toModemLines(int status) {
+		int lines = 0;
+		if ((status & TIOCM_CTS) == TIOCM_CTS)
+			lines |= MODEM_CTS;
+		if ((status & TIOCM_DSR) == TIOCM_DSR)
+			lines |= MODEM_DSR;
+		if ((status & TIOCM_RNG) == TIOCM_RNG)
+			lines |= MODEM_RING;
+		if ((status & TIOCM_CAR) == TIOCM_CAR)
+			lines |= MODEM_DCD;
+		if ((status & TIOCM_RTS) == TIOCM_RTS)
+			lines |= MODEM_RTS;
+		if ((status & TIOCM_DTR) == TIOCM_DTR)
+			lines |= MODEM_DTR;
+		return lines;
+	}
+	
+	/**
+	 * Must be called while holding commLock.
+	 */
+	private void startWatcher() {
+		if (!opened || watcher != null || !hasModemListeners())
+			return;
+		
+		//Its descriptor is for the same tty, so it's as good as a new one.
+		final ModemWatcher idle = idleWatcher;
+		idleWatcher = null;
+		if (idle != null && idle.resume()) {
+			watcher = idle;
+			return;
+		}
+		
+		//The watcher gets its own descriptor since it may outlive the port.
+		final int d = TermiosAPI.INSTANCE.dup(fd);
+		if (d < 0) {
+			notifyError(new IOException("Unable to watch the modem lines on " + name + ": errno " + Native.getLastError()));
+			return;
+		}
+		
+		final ModemWatcher mw = new ModemWatcher(d, info.getTTYName());
+		watcher = mw;
+		mw.start();
+	}
+	
+	/**
+	 * Must be called while holding commLock.
+	 * 
+	 * @return The watcher that was stopped, or null if there wasn't one.
+	 */
+	private ModemWatcher stopWatcher() {
+		final ModemWatcher mw = watcher;
+		if (mw == null)
+			return null;
+		watcher = null;
+		mw.stop();
+		idleWatcher = mw;
+		return mw;
+	}
+	
+	/**
+	 * TIOCMIWAIT only returns when an input line changes. Turning the UART's 
+	 * loopback on and off again moves the inputs over to the outputs and 
+	 * back, which wakes it on drivers that support TIOCM_LOOP (8250 and 
+	 * friends). Others ignore it and the watcher stays asleep until the next 
+	 * real change.
+	 * 
+	 * @return True if the watcher exited and released its descriptor.
+	 */
+	private static boolean wakeWatcher(TermiosAPI API, int fd, ModemWatcher mw) {
+		if (mw.hasExited())
+			return true;
+		if (setModemBits(API, fd, TIOCM_LOOP, true))
+			setModemBits(API, fd, TIOCM_LOOP, false);
+		return mw.awaitExit(WATCHER_EXIT_TIMEOUT);
+	}
+	
+	@Override
+	protected void modemListenersChanged(boolean listening) {
+		synchronized(commLock) {
+			if (listening)
+				startWatcher();
+			else
+				stopWatcher();
+		}
+	}
+	
+	@Override
+	protected int querySystemModemStatus() {
+		final IntByReference status = new IntByReference();
+		if (fd == INVALID_FD || Util.ioctl(TermiosAPI.INSTANCE, fd, TIOCMGET, status) < 0)
+			return -1;
+		return toModemLines(status.getValue());
+	}
+	
+	@Override
+	protected boolean changeSystemModemLine(int line, boolean state) {
+		if (fd == INVALID_FD)
+			return false;
+		
+		int bit;
+		switch(line) {
+			case MODEM_RTS:
+				//RTS belongs to the driver while it's doing hardware flow control.
+				if (FlowControl.isFlagged(getFlowControlFlag(), FlowControl.RTSCTS_IN))
+					return false;
+				//Or to the RS-485 transmit enable.
+				if (toggle != null)
+					return false;
+				bit = TIOCM_RTS;
+				break;
+			case MODEM_DTR:
+				bit = TIOCM_DTR;
+				break;
+			default:
+				return false;
+		}
+		return setModemBits(TermiosAPI.INSTANCE, fd, bit, state);
+	}
+	
+	@Override
+	protected boolean changeSystemBreak(boolean state) {
+		if (fd == INVALID_FD)
+			return false;
+		return (Util.ioctl(TermiosAPI.INSTANCE, fd, (state ? TIOCSBRK : TIOCCBRK), 0) >= 0);
+	}
+	
+	@Override
+	protected boolean purgeSystemInput() {
+		if (fd == INVALID_FD)
+			return false;
+		return (Util.ioctl(TermiosAPI.INSTANCE, fd, TCFLSH, TCIFLUSH) >= 0);
+	}
+	
+	/**
+	 * Sleeps in TIOCMIWAIT and reports which input lines changed. The interrupt 
+	 * counters from TIOCGICOUNT catch rings that came and went in between and 
+	 * carry the break and error counts, so breaks and line errors are reported 
+	 * when the next modem line changes rather than when they happen.
+	 * 
+	 * TIOCMIWAIT can't be interrupted from another thread. Close tries to wake 
+	 * it (see {@link #wakeWatcher(TermiosAPI, int, ModemWatcher)}); failing 
+	 * that a stopped watcher stays asleep, keeping the tty open, until the 
+	 * next line change or hangup and then closes its descriptor. If the port 
+	 * wants a watcher again before then the sleeping one is resumed.
+	 */
+	private final class ModemWatcher implements Runnable {
+		private final int fd;
+		private final Thread thread;
+		private boolean stopped;
+		private boolean exited;
+		
+		ModemWatcher(int fd, String ttyName) {
+			this.fd = fd;
+			this.thread = new Thread(this, "Serial Port Modem Watcher (" + ttyName + ")");
+			this.thread.setDaemon(true);
+		}
+		
+		void start() {
+			thread.start();
+		}
+		
+		synchronized void stop() {
+			stopped = true;
+		}
+		
+		/**
+		 * @return False if the watcher has already exited.
+		 */
+		synchronized boolean resume() {
+			if (exited)
+				return false;
+			stopped = false;
+			return true;
+		}
+		
+		/**
+		 * Called after each wake. Deciding to exit and resume() are atomic so 
+		 * a resumed watcher never quits.
+		 */
+		private synchronized boolean isFinished() {
+			if (stopped)
+				exited = true;
+			return exited;
+		}
+		
+		private synchronized boolean isStopped() {
+			return stopped;
+		}
+		
+		boolean hasExited() {
+			return !thread.isAlive();
+		}
+		
+		boolean awaitExit(long timeout) {
+			try {
+				thread.join(timeout);
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			return !thread.isAlive();
+		}
+		
+		@Override
+		public void run() {
+			final TermiosAPI API = TermiosAPI.INSTANCE;
+			final IntByReference status = new IntByReference();
+			final serial_icounter_struct counts = new serial_icounter_struct();
+			try {
+				final boolean counting = (Util.ioctl(API, fd, TIOCGICOUNT, counts) >= 0);
+				int rng = counts.rng, brk = counts.brk, frame = counts.frame, parity = counts.parity, overrun = counts.overrun, bufOverrun = counts.buf_overrun;
+				int previous = (Util.ioctl(API, fd, TIOCMGET, status) >= 0 ? status.getValue() : 0);
+				
+				while(!isFinished()) {
+					if (Util.ioctl(API, fd, TIOCMIWAIT, WATCHED_LINES) < 0) {
+						final int err = Native.getLastError();
+						if (err == UnixLibrary.EINTR)
+							continue;
+						if (!isStopped())
+							notifyError(new IOException("TIOCMIWAIT failed on " + name + ": errno " + err));
+						return;
+					}
+					if (isFinished())
+						return;
+					
+					final int current = (Util.ioctl(API, fd, TIOCMGET, status) >= 0 ? status.getValue() : previous);
+					int changed = toModemLines((previous ^ current) & WATCHED_LINES);
+					int errors = 0;
+					boolean brokeIn = false;
+					
+					if (counting && Util.ioctl(API, fd, TIOCGICOUNT, counts) >= 0) {
+						if (counts.rng != rng)
+							changed |= MODEM_RING;
+						if (counts.frame != frame)
+							errors |= LINE_ERROR_FRAMING;
+						if (counts.parity != parity)
+							errors |= LINE_ERROR_PARITY;
+						if (counts.overrun != overrun)
+							errors |= LINE_ERROR_OVERRUN;
+						if (counts.buf_overrun != bufOverrun)
+							errors |= LINE_ERROR_RX_OVERFLOW;
+						brokeIn = (counts.brk != brk);
+						rng = counts.rng; brk = counts.brk; frame = counts.frame; parity = counts.parity; overrun = counts.overrun; bufOverrun = counts.buf_overrun;
+					}
+					previous = current;
+					
+					try {
+						if (errors != 0)
+							notifyModemListenersLineErrors(errors);
+						if (brokeIn)
+							notifyModemListenersBreakReceived();
+						if (changed != 0)
+							notifyModemListenersLinesChanged(changed, toModemLines(current) | ((changed & MODEM_RING) != 0 ? MODEM_RING : 0));
+					} catch(Throwable t) {
+						notifyError(t);
+					}
+				}
+			} finally {
+				synchronized(this) {
+					exited = true;
+				}
+				API.close(fd);
+			}
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="RS-485">
+	@Override
+	protected boolean changeSystemRS485(RS485Settings settings) {
+		return changeSystemRS485(fd, settings);
+	}
+	
+	/**
+	 * Hands RS-485 to the driver with TIOCSRS485 if it will take it and 
+	 * otherwise toggles RTS around each write. Must be called while holding 
+	 * commLock.
+	 */
+	private boolean changeSystemRS485(int fd, RS485Settings settings) {
+		if (fd == INVALID_FD)
+			return false;
+		
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		if (settings == null) {
+			synchronized(writeLock) {
+				toggle = null;
+			}
+			restoreRS485(API, fd);
+			setProperty(ISerialPort.PROPERTY_RS485_MODE, null);
+			return true;
+		}
+		
+		final serial_rs485 current = new serial_rs485();
+		if (Util.ioctl(API, fd, TIOCGRS485, current) >= 0) {
+			final serial_rs485 wanted = new serial_rs485();
+			wanted.flags = SER_RS485_ENABLED
+				| (settings.isRTSOnSend() ? SER_RS485_RTS_ON_SEND : 0)
+				| (settings.isRTSAfterSend() ? SER_RS485_RTS_AFTER_SEND : 0)
+				| (settings.isReceiveDuringTransmit() ? SER_RS485_RX_DURING_TX : 0)
+			;
+			wanted.delay_rts_before_send = settings.getDelayBeforeSend();
+			wanted.delay_rts_after_send = settings.getDelayAfterSend();
+			
+			if (Util.ioctl(API, fd, TIOCSRS485, wanted) >= 0) {
+				if (originalRS485 == null)
+					originalRS485 = current;
+				synchronized(writeLock) {
+					toggle = null;
+				}
+				setProperty(ISerialPort.PROPERTY_RS485_MODE, ISerialPort.RS485_MODE_DRIVER);
+				return true;
+			}
+		}
+		
+		//Fall back to doing it ourselves, which needs RTS to be free.
+		if (FlowControl.isFlagged(getFlowControlFlag(), FlowControl.RTSCTS_IN))
+			return false;
+		restoreRS485(API, fd);
+		synchronized(writeLock) {
+			if (!setModemBits(API, fd, TIOCM_RTS, settings.isRTSAfterSend()))
+				return false;
+			toggle = settings;
+		}
+		setProperty(ISerialPort.PROPERTY_RS485_MODE, ISerialPort.RS485_MODE_RTS_TOGGLE);
+		return true;
+	}
+	
+	/**
+	 * Must be called while holding commLock.
+	 */
+	private void restoreRS485(TermiosAPI API, int fd) {
+		final serial_rs485 original = originalRS485;
+		if (original == null)
+			return;
+		originalRS485 = null;
+		Util.ioctl(API, fd, TIOCSRS485, original);
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Configuration">
+	@Override
+	protected BaudRateCapabilities getBaudRateCapabilities() {
+		return BaudRates.Capabilities;
+	}
+	
+	@Override
+	protected StopBits[] getStopBitsOptions() {
+		return STOP_BITS_OPTIONS;
+	}
+	
+	/**
+	 * Puts the port in raw mode with the given settings, read timing 
+	 * included, in a single TCSETS2. Standard rates use their CBAUD code and 
+	 * everything else uses BOTHER. The rate the driver settled on is read 
+	 * back into actualBaudRate.
+	 */
+	protected boolean configureSystemSerialPort(int fd, LineSettings settings) {
+		if (fd == INVALID_FD)
+			return false;
+		
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		final termios2 tio = new termios2();
+		if (Util.ioctl(API, fd, TCGETS2, tio) < 0)
+			return false;
+		
+		//Raw mode.
+		tio.c_iflag &= ~(IGNBRK | BRKINT | PARMRK | ISTRIP | INLCR | IGNCR | ICRNL | IXON | IXOFF | IXANY | INPCK | IGNPAR);
+		tio.c_oflag &= ~OPOST;
+		tio.c_lflag &= ~(ECHO | ECHOE | ECHOK | ECHONL | ICANON | ISIG | IEXTEN);
+		tio.c_cflag &= ~(CSIZE | PARENB | PARODD | CMSPAR | CSTOPB | CRTSCTS | CBAUD | CIBAUD);
+		tio.c_cflag |= (CREAD | CLOCAL);
+		
+		switch(settings.getDataBits()) {
+			case DATABITS_5:
+				tio.c_cflag |= CS5;
+				break;
+			case DATABITS_6:
+				tio.c_cflag |= CS6;
+				break;
+			case DATABITS_7:
+				tio.c_cflag |= CS7;
+				break;
+			case DATABITS_8:
+			default:
+				tio.c_cflag |= CS8;
+				break;
+		}
+		
+		switch(settings.getParity()) {
+			case EVEN:
+				tio.c_cflag |= PARENB;
+				break;
+			case ODD:
+				tio.c_cflag |= (PARENB | PARODD);
+				break;
+			case MARK:
+				tio.c_cflag |= (PARENB | CMSPAR | PARODD);
+				break;
+			case SPACE:
+				tio.c_cflag |= (PARENB | CMSPAR);
+				break;
+			case NONE:
+			default:
+				break;
+		}
+		if (settings.getParity() != Parity.NONE)
+			tio.c_iflag |= INPCK;
+		
+		//A UART with 5 data bits turns CSTOPB into 1.5 stop bits on its own; 
+		//termios has no way to ask for 1.5 so it isn't offered.
+		switch(settings.getStopBits()) {
+			case STOPBITS_2:
+				tio.c_cflag |= CSTOPB;
+				break;
+			case STOPBITS_1:
+				break;
+			default:
+				return false;
+		}
+		
+		final int flowControlFlag = settings.getFlowControlFlag();
+		if (FlowControl.isFlagged(flowControlFlag, FlowControl.RTSCTS_IN) || FlowControl.isFlagged(flowControlFlag, FlowControl.RTSCTS_OUT))
+			tio.c_cflag |= CRTSCTS;
+		if (FlowControl.isFlagged(flowControlFlag, FlowControl.XONXOFF_IN))
+			tio.c_iflag |= IXOFF;
+		if (FlowControl.isFlagged(flowControlFlag, FlowControl.XONXOFF_OUT))
+			tio.c_iflag |= IXON;
+		
+		//Input speed follows output speed when CIBAUD is 0.
+		final int baudRate = settings.getBaudRate();
+		tio.c_cflag |= BaudRates.mapToSystemConstant(baudRate);
+		tio.c_ispeed = baudRate;
+		tio.c_ospeed = baudRate;
+		
+		tio.c_cc[VMIN] = (byte)LatencyTuner.vmin(settings.getReadTiming());
+		tio.c_cc[VTIME] = (byte)LatencyTuner.vtime(settings.getReadTiming());
+		
+		if (Util.ioctl(API, fd, TCSETS2, tio) < 0)
+			return false;
+		
+		final termios2 applied = new termios2();
+		this.actualBaudRate = (Util.ioctl(API, fd, TCGETS2, applied) >= 0 && applied.c_ospeed > 0 ? applied.c_ospeed : baudRate);
+		return true;
+	}
+	
+	@Override
+	protected boolean configureSystemSerialPort(LineSettings settings) {
+		if (!configureSystemSerialPort(fd, settings))
+			return false;
+		if (ReadTiming.isSame(settings.getReadTiming(), readTiming))
+			return true;
+		
+		//VMIN/VTIME already went out with everything else.
+		final LatencyTuner t = tuner;
+		if (t != null)
+			t.readTimingApplied(settings.getReadTiming());
+		this.frameGap = frameGap(settings.getReadTiming());
+		publishLatencyProperties();
+		return true;
+	}
+	
+	@Override
+	protected boolean configureSystemSerialPort(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
+		return configureSystemSerialPort(fd, new LineSettings(baudRate, dataBits, stopBits, parity, getFlowControlFlag(), readTiming));
+	}
+	
+	@Override
+	protected boolean changeSystemFlowControl(FlowControl... flowControl) {
+		return configureSystemSerialPort(fd, new LineSettings(baudRate, dataBits, stopBits, parity, FlowControl.asFlag(flowControl), readTiming));
+	}
+	
+	@Override
+	protected boolean changeSystemLatencyProfile(LatencyProfile profile) {
+		final LatencyTuner t = tuner;
+		if (t == null)
+			return false;
+		t.apply(profile, latencyTimerHint());
+		this.latencyProfile = profile;
+		publishLatencyProperties();
+		return true;
+	}
+	
+	@Override
+	protected boolean changeSystemReadTiming(ReadTiming timing) {
+		final LatencyTuner t = tuner;
+		if (t == null)
+			return false;
+		final boolean applied = t.setReadTiming(timing);
+		if (applied)
+			this.frameGap = frameGap(timing);
+		publishLatencyProperties();
+		return applied;
+	}
+	
+	/**
+	 * Only a gap needs the blocking descriptor. A minimum byte count alone is 
+	 * already honored by poll(). Frames longer than VMIN are continued with 
+	 * the same rounded gap so both halves of a read agree on where a frame 
+	 * ends.
+	 */
+	private static int frameGap(ReadTiming timing) {
+		return (timing != null && timing.getInterCharacterTimeout() > 0 ? timing.getIntervalDeciseconds() * 100 : 0);
+	}
+	//</editor-fold>
+
+	@Override
+	public boolean open(int readBufferSize, final int writeBufferSize) {
+		if (readBufferSize <= 0)
+			throw new IllegalArgumentException("readBufferSize must be > 0");
+		if (writeBufferSize <= 0)
+			throw new IllegalArgumentException("writeBufferSize must be > 0");
+		
+		synchronized(commLock) {
+			if (opened)
+				return true;
+			
+			try {
+				final TermiosAPI API = TermiosAPI.INSTANCE;
+				
+				final int f = API.open(info.getName(), O_RDWR | O_NOCTTY | O_NONBLOCK | O_CLOEXEC);
+				if (f < 0)
+					return false;
+				
+				//Opened non-blocking so a missing carrier can't hold up open(), 
+				//then switched over. Has to happen before TIOCEXCL shuts the door.
+				final int r = API.open(info.getName(), O_RDWR | O_NOCTTY | O_NONBLOCK | O_CLOEXEC);
+				if (r < 0 || API.fcntl(r, F_SETFL, API.fcntl(r, F_GETFL, 0) & ~O_NONBLOCK) < 0) {
+					closeQuietly(API, r);
+					API.close(f);
+					return false;
+				}
+				
+				//Keep other processes from opening the port while we have it.
+				if (Util.ioctl(API, f, TIOCEXCL, 0) < 0) {
+					API.close(r);
+					API.close(f);
+					return false;
+				}
+				
+				final LineSettings settings = getLineSettings();
+				if (!configureSystemSerialPort(f, settings)) {
+					API.close(r);
+					API.close(f);
+					return false;
+				}
+				Util.ioctl(API, f, TCFLSH, TCIOFLUSH);
+				
+				final String sysfsRoot = PlatformHint.hint(PlatformHint.SysfsRoot);
+				final LatencyTuner lt = new LatencyTuner(f, (sysfsRoot != null ? SysfsDiscovery.deviceDirectory(new File(sysfsRoot), info.getTTYName()) : null), readTiming);
+				lt.apply(latencyProfile, latencyTimerHint());
+				
+				if (rs485Settings != null && !changeSystemRS485(f, rs485Settings)) {
+					lt.restore();
+					API.close(r);
+					API.close(f);
+					return false;
+				}
+				
+				final int w = API.eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+				if (w < 0) {
+					changeSystemRS485(f, null);
+					lt.restore();
+					API.close(r);
+					API.close(f);
+					return false;
+				}
+				
+				final int size = readBufferSize;
+				final Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						readLoop(f, r, w, size);
+					}
+				}, "Serial Port Reader (" + info.getTTYName() + ")");
+				t.setDaemon(true);
+				
+				this.fd = f;
+				this.readFd = r;
+				this.frameGap = frameGap(readTiming);
+				this.wakeFd = w;
+				this.reader = t;
+				this.tuner = lt;
+				this.appliedSettings = settings;
+				opened = true;
+				publishLatencyProperties();
+				startWatcher();
+				
+				t.start();
+				return true;
+			} catch(UnsatisfiedLinkError e) {
+				return false;
+			}
+		}
+	}
+	
+	@Override
+	protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+		if (length <= 0)
+			return true;
+		
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		Pointer p;
+		if (buffer.isDirect()) {
+			p = Native.getDirectBufferPointer(buffer).share(offset);
+		} else {
+			final Memory copy = new Memory(length);
+			final ByteBuffer src = buffer.duplicate();
+			src.limit(offset + length);
+			src.position(offset);
+			copy.getByteBuffer(0, length).put(src);
+			p = copy;
+		}
+		
+		synchronized(writeLock) {
+			final int f = fd;
+			final int w = wakeFd;
+			if (f == INVALID_FD)
+				return false;
+			
+			//Enable the RS-485 transmitter for the length of the write.
+			final RS485Settings rs = toggle;
+			if (rs != null) {
+				if (!setModemBits(API, f, TIOCM_RTS, rs.isRTSOnSend()))
+					return false;
+				pause(rs.getDelayBeforeSend());
+			}
+			
+			try {
+				int written = 0;
+				while(written < length) {
+					final long n = API.write(f, p.share(written), new NativeLong(length - written)).longValue();
+					if (n >= 0L) {
+						written += (int)n;
+						continue;
+					}
+					
+					final int err = Native.getLastError();
+					if (err == UnixLibrary.EINTR)
+						continue;
+					if (err != UnixLibrary.EAGAIN || !awaitWritable(API, f, w))
+						return false;
+				}
+			} finally {
+				if (rs != null) {
+					//tcdrain(): the driver returns once its transmitter is empty, 
+					//shift register included, so there's nothing to guess at.
+					Util.ioctl(API, f, TCSBRK, 1);
+					pause(rs.getDelayAfterSend());
+					setModemBits(API, f, TIOCM_RTS, rs.isRTSAfterSend());
+				}
+			}
+		}
+		
+		if (hasWriteListeners()) {
+			try {
+				notifyWriteListenersBytesWritten(buffer, offset, length);
+				notifyWriteListenersWriteComplete(buffer, length);
+			} catch(Throwable t) {
+				notifyError(t);
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean close() {
+		final int f, r, w;
+		final Thread t;
+		final LatencyTuner lt;
+		final ModemWatcher mw;
+		
+		synchronized(commLock) {
+			if (!opened)
+				return true;
+			
+			opened = false;
+			f = fd;
+			r = readFd;
+			w = wakeFd;
+			t = reader;
+			reader = null;
+			lt = tuner;
+			tuner = null;
+			appliedSettings = null;
+			actualBaudRate = 0;
+			stopWatcher();
+			mw = idleWatcher;
+			publishLatencyProperties();
+			toggle = null;
+			restoreRS485(TermiosAPI.INSTANCE, f);
+			setProperty(ISerialPort.PROPERTY_RS485_MODE, null);
+		}
+		
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		
+		//A lingering modem watcher keeps the tty open, so let the next open through.
+		if (mw != null && !wakeWatcher(API, f, mw))
+			Util.ioctl(API, f, TIOCNXCL, 0);
+		
+		//Wake the reader and wait for it, unless we are the reader.
+		wake(API, w);
+		if (t != null && t != Thread.currentThread()) {
+			try {
+				t.join(CLOSE_TIMEOUT);
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		if (lt != null)
+			lt.restore();
+		
+		synchronized(writeLock) {
+			fd = INVALID_FD;
+			readFd = INVALID_FD;
+			wakeFd = INVALID_FD;
+			closeQuietly(API, f);
+			closeQuietly(API, r);
+			closeQuietly(API, w);
+		}
+		return true;
+	}
+}
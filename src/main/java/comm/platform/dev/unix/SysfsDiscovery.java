@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import comm.util.StringUtil;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Discovers serial ports by walking /sys/class/tty rather than opening or 
+ * probing devices.
+ * 
+ * Only ttys with a backing device (a "device" link) are considered, which 
+ * skips virtual consoles and ptys. Legacy 8250 ports that the kernel 
+ * reserves but never detected (type 0) are skipped as well. USB adapters 
+ * are described using the vendor/product/serial strings of the USB device 
+ * and their /dev/serial/by-id link.
+ * 
+ * The roots are configurable so discovery can be run against a fake tree.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class SysfsDiscovery {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final String 
+		  DEFAULT_SYSFS_ROOT        = "/sys"
+		, DEFAULT_DEV_ROOT          = "/dev"
+	;
+	
+	private static final String 
+		  CLASS_TTY                 = "class/tty"
+		, SERIAL_BY_ID              = "serial/by-id"
+		, BUS_SERIAL_BASE           = "serial-base"
+	;
+	
+	/**
+	 * How far up from the tty's device to look for the USB device (e.g. 
+	 * ttyUSB0 -> interface -> device).
+	 */
+	private static final int 
+		  MAX_USB_DEPTH             = 4
+	;
+	
+	/**
+	 * Below this many candidates the reads are done on the calling thread.
+	 */
+	private static final int 
+		  MIN_PARALLEL_CANDIDATES   = 4
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final File sysfsRoot;
+	private final File devRoot;
+	private final ExecutorService pool;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	public SysfsDiscovery() {
+		this(new File(DEFAULT_SYSFS_ROOT), new File(DEFAULT_DEV_ROOT), null);
+	}
+	
+	/**
+	 * @param pool Used to read the sysfs attributes in parallel. May be null.
+	 */
+	public SysfsDiscovery(File sysfsRoot, File devRoot, ExecutorService pool) {
+		this.sysfsRoot = sysfsRoot;
+		this.devRoot = devRoot;
+		this.pool = pool;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public File getSysfsRoot() {
+		return sysfsRoot;
+	}
+	
+	public File getDevRoot() {
+		return devRoot;
+	}
+	
+	public boolean isAvailable() {
+		return new File(sysfsRoot, CLASS_TTY).isDirectory();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	/**
+	 * @return The ports found keyed by device path (e.g. "/dev/ttyUSB0").
+	 */
+	public Map<String, PortInfo> discover() {
+		return discover(null);
+	}
+	
+	/**
+	 * @param names Only describe these tty names (e.g. "ttyUSB0"). Null for all.
+	 * @return The ports found keyed by device path (e.g. "/dev/ttyUSB0").
+	 */
+	public Map<String, PortInfo> discover(Set<String> names) {
+		final Map<String, PortInfo> ports = new TreeMap<String, PortInfo>();
+		final String[] entries = new File(sysfsRoot, CLASS_TTY).list();
+		if (entries == null || entries.length == 0)
+			return ports;
+		
+		//Cheap filter first: only ttys backed by a device are interesting.
+		final List<File> candidates = new ArrayList<File>();
+		for(String entry : entries) {
+			if (names != null && !names.contains(entry))
+				continue;
+			File tty = new File(new File(sysfsRoot, CLASS_TTY), entry);
+			if (new File(tty, "device").exists())
+				candidates.add(tty);
+		}
+		if (candidates.isEmpty())
+			return ports;
+		
+		final Map<String, String> byId = readSerialById();
+		PortInfo info;
+		
+		if (pool == null || candidates.size() < MIN_PARALLEL_CANDIDATES) {
+			for(File tty : candidates)
+				if ((info = describe(tty, byId)) != null)
+					ports.put(info.getName(), info);
+			return ports;
+		}
+		
+		final List<Callable<PortInfo>> tasks = new ArrayList<Callable<PortInfo>>(candidates.size());
+		for(final File tty : candidates) {
+			tasks.add(new Callable<PortInfo>() {
+				@Override
+				public PortInfo call() throws Exception {
+					return describe(tty, byId);
+				}
+			});
+		}
+		
+		try {
+			for(Future<PortInfo> f : pool.invokeAll(tasks))
+				if ((info = f.get()) != null)
+					ports.put(info.getName(), info);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException ee) {
+			//describe() doesn't throw.
+		}
+		return ports;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private PortInfo describe(File tty, Map<String, String> byId) {
+		final String ttyName = tty.getName();
+		final File device = canonical(new File(tty, "device"));
+		
+		//UART drivers (e.g. 8250) register every legacy port whether or not 
+		//there's hardware behind it. Undetected ones report a type of 0 
+		//(PORT_UNKNOWN).
+		if ("0".equals(readAttribute(new File(tty, "type"))))
+			return null;
+		
+		final String driver = driverName(device);
+		
+		final PortInfo info = new PortInfo(new File(devRoot, ttyName).getPath(), ttyName, driver, byId.get(ttyName));
+		
+		File usb = device;
+		for(int i = 0; i < MAX_USB_DEPTH && usb != null; ++i, usb = usb.getParentFile()) {
+			if (new File(usb, "idVendor").isFile()) {
+				info.vendorId = readAttribute(new File(usb, "idVendor"));
+				info.productId = readAttribute(new File(usb, "idProduct"));
+				info.manufacturer = readAttribute(new File(usb, "manufacturer"));
+				info.product = readAttribute(new File(usb, "product"));
+				info.serialNumber = readAttribute(new File(usb, "serial"));
+				info.location = usb.getName();
+				break;
+			}
+		}
+		return info;
+	}
+	
+	/**
+	 * Maps tty names to their /dev/serial/by-id links.
+	 */
+	private Map<String, String> readSerialById() {
+		final File dir = new File(devRoot, SERIAL_BY_ID);
+		final File[] links = dir.listFiles();
+		if (links == null || links.length == 0)
+			return Collections.emptyMap();
+		
+		final Map<String, String> map = new HashMap<String, String>(links.length * 2);
+		for(File link : links)
+			map.put(canonical(link).getName(), link.getPath());
+		return map;
+	}
+	
+	private static File canonical(File f) {
+		try {
+			return f.getCanonicalFile();
+		} catch(IOException e) {
+			return f.getAbsoluteFile();
+		}
+	}
+	
+	/**
+	 * Newer kernels put serial core "port" and "ctrl" devices between the 
+	 * tty and the device with the real driver (e.g. 8250_pnp), so skip those.
+	 */
+	private static String driverName(File device) {
+		File d = device, driver;
+		for(int i = 0; i < MAX_USB_DEPTH && d != null; ++i, d = d.getParentFile()) {
+			driver = new File(d, "driver");
+			if (!driver.exists())
+				continue;
+			driver = canonical(driver);
+			
+			//.../bus/<bus>/drivers/<driver>
+			File bus = driver.getParentFile().getParentFile();
+			if (bus != null && BUS_SERIAL_BASE.equals(bus.getName()))
+				continue;
+			return driver.getName();
+		}
+		return null;
+	}
+	
+	/**
+	 * The sysfs directory of the device behind a tty, where drivers put their 
+	 * tunables (e.g. the FTDI latency_timer).
+	 */
+	static File deviceDirectory(File sysfsRoot, String ttyName) {
+		return new File(new File(new File(sysfsRoot, CLASS_TTY), ttyName), "device");
+	}
+	
+	static boolean writeAttribute(File f, String value) {
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(f);
+			out.write(value.getBytes("UTF-8"));
+			return true;
+		} catch(IOException e) {
+			return false;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch(IOException e) {
+				}
+			}
+		}
+	}
+	
+	static String readAttribute(File f) {
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(f);
+			byte[] buffer = new byte[256];
+			int total = 0, read;
+			while(total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0)
+				total += read;
+			String value = new String(buffer, 0, total, "UTF-8").trim();
+			return (value.length() > 0 ? value : null);
+		} catch(IOException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch(IOException e) {
+				}
+			}
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="PortInfo">
+	/**
+	 * What sysfs knows about a port.
+	 */
+	public static class PortInfo {
+		private final String name;
+		private final String ttyName;
+		private final String driver;
+		private final String byIdPath;
+		private String vendorId;
+		private String productId;
+		private String manufacturer;
+		private String product;
+		private String serialNumber;
+		private String location;
+		
+		PortInfo(String name, String ttyName, String driver, String byIdPath) {
+			this.name = name;
+			this.ttyName = ttyName;
+			this.driver = driver;
+			this.byIdPath = byIdPath;
+		}
+		
+		/**
+		 * The device path such as "/dev/ttyUSB0".
+		 */
+		public String getName() {
+			return name;
+		}
+		
+		public String getTTYName() {
+			return ttyName;
+		}
+		
+		public String getDriver() {
+			return driver;
+		}
+		
+		public String getByIdPath() {
+			return byIdPath;
+		}
+		
+		public boolean isUSB() {
+			return (vendorId != null);
+		}
+		
+		public String getVendorId() {
+			return vendorId;
+		}
+		
+		public String getProductId() {
+			return productId;
+		}
+		
+		public String getManufacturer() {
+			return manufacturer;
+		}
+		
+		public String getProduct() {
+			return product;
+		}
+		
+		public String getSerialNumber() {
+			return serialNumber;
+		}
+		
+		/**
+		 * The USB bus path such as "1-1.2".
+		 */
+		public String getLocation() {
+			return location;
+		}
+		
+		/**
+		 * e.g. "FT232R USB UART (ttyUSB0)".
+		 */
+		public String getTitle() {
+			String label = product;
+			if (StringUtil.isNullOrEmpty(label) && byIdPath != null)
+				label = new File(byIdPath).getName();
+			if (StringUtil.isNullOrEmpty(label))
+				label = driver;
+			return (!StringUtil.isNullOrEmpty(label) ? label + " (" + ttyName + ")" : ttyName);
+		}
+		
+		/**
+		 * e.g. "FTDI FT232R USB UART [USB VID:PID=0403:6001 SER=A9012345 LOCATION=1-1.2]".
+		 */
+		public String getDescription() {
+			StringBuilder sb = new StringBuilder(96);
+			if (!StringUtil.isNullOrEmpty(manufacturer))
+				sb.append(manufacturer);
+			if (!StringUtil.isNullOrEmpty(product)) {
+				if (sb.length() > 0)
+					sb.append(' ');
+				sb.append(product);
+			}
+			if (isUSB()) {
+				if (sb.length() > 0)
+					sb.append(' ');
+				sb.append("[USB VID:PID=").append(vendorId).append(':').append(productId);
+				if (!StringUtil.isNullOrEmpty(serialNumber))
+					sb.append(" SER=").append(serialNumber);
+				if (!StringUtil.isNullOrEmpty(location))
+					sb.append(" LOCATION=").append(location);
+				sb.append(']');
+			} else if (!StringUtil.isNullOrEmpty(driver)) {
+				sb.append(driver);
+			}
+			return (sb.length() > 0 ? sb.toString() : ttyName);
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import comm.DataBits;
+import comm.FlowControl;
+import comm.ISerialPort;
+import comm.Parity;
+import comm.PortWatcher;
+import comm.StopBits;
+import comm.platform.dev.BaudRateCapabilities;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serial ports on Linux, discovered through sysfs.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public class SysfsSerialPortImplementation implements comm.SerialPorts.Implementation {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private static final Object cacheLock = new Object();
+	private static final Map<String, SerialPort> cache = new TreeMap<String, SerialPort>();
+	private static final Map<String, String> reported = new TreeMap<String, String>();
+	private static ExecutorService pool;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private static SysfsDiscovery discovery() {
+		String sysfsRoot = PlatformHint.hint(PlatformHint.SysfsRoot);
+		String devRoot = PlatformHint.hint(PlatformHint.DevRoot);
+		return new SysfsDiscovery(new File(sysfsRoot), new File(devRoot), pool());
+	}
+	
+	private static synchronized ExecutorService pool() {
+		if (pool != null)
+			return pool;
+		
+		Integer threads = PlatformHint.hint(PlatformHint.DiscoveryThreads);
+		if (threads == null || threads <= 1)
+			return null;
+		
+		pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Sysfs Discovery " + threadNumber.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		return pool;
+	}
+	
+	private static boolean isTTYName(String name) {
+		return name.startsWith("tty") || name.startsWith("rfcomm");
+	}
+	
+	/**
+	 * What {@link #refreshAvailableSerialPorts(comm.PortWatcher.IPortListener)} 
+	 * compares to decide if a port changed.
+	 */
+	private static String signature(SerialPort port) {
+		return port.getTitle() + '\n' + port.getDescription();
+	}
+	
+	/**
+	 * Brings the cache up to date with what was found. Vanished ports stay 
+	 * cached so callers holding on to one get the same instance back if the 
+	 * device is plugged in again.
+	 * 
+	 * Must be called with the cache lock held.
+	 */
+	private static List<SerialPort> update(Map<String, SysfsDiscovery.PortInfo> found) {
+		final List<SerialPort> current = new ArrayList<SerialPort>(found.size());
+		
+		for(Map.Entry<String, SerialPort> e : cache.entrySet())
+			if (!found.containsKey(e.getKey()))
+				e.getValue().setAvailable(false);
+		
+		SerialPort inst;
+		for(SysfsDiscovery.PortInfo info : found.values()) {
+			if ((inst = cache.get(info.getName())) == null) {
+				cache.put(info.getName(), (inst = new SerialPort(info)));
+			} else {
+				inst.update(info);
+				inst.setAvailable(true);
+			}
+			current.add(inst);
+		}
+		return current;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	@Override
+	public void visitAvailableSerialPorts(comm.SerialPorts.IVisitor visitor) {
+		if (visitor == null)
+			return;
+		
+		final Map<String, SysfsDiscovery.PortInfo> found = discovery().discover();
+		final List<SerialPort> ports;
+		synchronized(cacheLock) {
+			ports = update(found);
+		}
+		for(SerialPort port : ports)
+			if (!visitor.visit(port))
+				break;
+	}
+	
+	@Override
+	public void refreshAvailableSerialPorts(PortWatcher.IPortListener listener) {
+		final Map<String, SysfsDiscovery.PortInfo> found = discovery().discover();
+		final List<ISerialPort> added = new ArrayList<ISerialPort>(1);
+		final List<ISerialPort> removed = new ArrayList<ISerialPort>(1);
+		final List<ISerialPort> changed = new ArrayList<ISerialPort>(1);
+		
+		synchronized(cacheLock) {
+			final List<SerialPort> current = update(found);
+			
+			//Changes are measured against what the last refresh reported, not 
+			//against the cache, so enumerating ports in between doesn't hide them.
+			for(String name : reported.keySet())
+				if (!found.containsKey(name))
+					removed.add(cache.get(name));
+			
+			String previous;
+			for(SerialPort inst : current) {
+				if ((previous = reported.get(inst.getName())) == null)
+					added.add(inst);
+				else if (!previous.equals(signature(inst)))
+					changed.add(inst);
+			}
+			
+			reported.clear();
+			for(SerialPort inst : current)
+				reported.put(inst.getName(), signature(inst));
+		}
+		
+		//Notify outside of the lock so listeners are free to enumerate ports.
+		if (listener == null)
+			return;
+		for(ISerialPort p : removed)
+			listener.portRemoved(p);
+		for(ISerialPort p : added)
+			listener.portAdded(p);
+		for(ISerialPort p : changed)
+			listener.portChanged(p);
+	}
+	
+	@Override
+	public PortWatcher.IChangeSource createChangeSource() {
+		return INotifyChangeSource.create((String)PlatformHint.hint(PlatformHint.DevRoot), new INotifyChangeSource.NameFilter() {
+			@Override
+			public boolean accept(String name) {
+				return isTTYName(name);
+			}
+		});
+	}
+	
+	@Override
+	public void shutdown() {
+		synchronized(SysfsSerialPortImplementation.class) {
+			if (pool != null) {
+				pool.shutdownNow();
+				pool = null;
+			}
+		}
+	}
+	
+	@Override
+	public boolean isPlatformSupported() {
+		return discovery().isAvailable();
+	}
+	
+	@Override
+	public void addPlatformHint(String name, Object value) {
+		PlatformHint.add(name, value);
+	}
+	
+	@Override
+	public <T> T findPlatformHint(String name) {
+		return PlatformHint.hint(name);
+	}
+	
+	@Override
+	public int getDefaultBaudRate() {
+		return BaudRates.DEFAULT_BAUD_RATE;
+	}
+	
+	@Override
+	public int[] getPlatformBaudRateOptions() {
+		return BaudRates.ValidBaudRates;
+	}
+	
+	@Override
+	public BaudRateCapabilities getBaudRateCapabilities() {
+		return BaudRates.Capabilities;
+	}
+	
+	@Override
+	public DataBits[] getPlatformDataBitsOptions() {
+		return DataBits.values();
+	}
+
+	@Override
+	public StopBits[] getPlatformStopBitsOptions() {
+		return SerialPort.STOP_BITS_OPTIONS.clone();
+	}
+
+	@Override
+	public FlowControl[] getPlatformFlowControlOptions() {
+		return FlowControl.values();
+	}
+
+	@Override
+	public Parity[] getPlatformParityOptions() {
+		return Parity.values();
+	}
+	//</editor-fold>
+}
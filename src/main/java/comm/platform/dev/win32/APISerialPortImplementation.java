@@ -30,15 +30,24 @@ package comm.platform.dev.win32;
 
 import comm.DataBits;
 import comm.FlowControl;
+import comm.ISerialPort;
 import comm.Parity;
 import comm.PortType;
+import comm.PortWatcher;
 import comm.StopBits;
 import comm.platform.Sys;
 import comm.platform.api.win32.API;
 import comm.platform.api.win32.DosAPI;
+import comm.platform.api.win32.RegistryAPI;
 import comm.platform.api.win32.SetupAPI;
+import comm.platform.dev.BaudRateCapabilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  *
@@ -51,6 +60,15 @@ public class APISerialPortImplementation implements comm.SerialPorts.Implementat
 	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
 	private static final Object cacheLock = new Object();
 	private static final Map<String, SerialPort> cache = new TreeMap<String, SerialPort>();
+	private static final Map<String, String> reported = new TreeMap<String, String>();
+	
+	/**
+	 * What {@link #refreshAvailableSerialPorts(comm.PortWatcher.IPortListener)} 
+	 * compares to decide if a port changed.
+	 */
+	private static String signature(SerialPort port) {
+		return port.getName() + '\n' + port.getPortType();
+	}
 	
 	@Override
 	public void visitAvailableSerialPorts(comm.SerialPorts.IVisitor visitor) {
@@ -108,6 +126,7 @@ public class APISerialPortImplementation implements comm.SerialPorts.Implementat
 						)
 					);
 				} else {
+					inst.setAvailable(true);
 					if (instDetails != null) {
 						inst.update(
 							instInfo.getName(), 
@@ -134,6 +153,117 @@ public class APISerialPortImplementation implements comm.SerialPorts.Implementat
 		}
 	}
 	
+	@Override
+	public void refreshAvailableSerialPorts(PortWatcher.IPortListener listener) {
+		//Same bookkeeping as visitAvailableSerialPorts() but the (expensive) 
+		//SetupAPI walk is limited to ports that weren't already cached.
+		Map<String, DosAPI.Util.CommInfo> ports = DosAPI.Util.discoverCommNames(PortType.SERIAL);
+		if (ports == null)
+			ports = Collections.emptyMap();
+		
+		final List<ISerialPort> added = new ArrayList<ISerialPort>(1);
+		final List<ISerialPort> removed = new ArrayList<ISerialPort>(1);
+		final List<ISerialPort> changed = new ArrayList<ISerialPort>(1);
+		
+		synchronized(cacheLock) {
+			SerialPort inst;
+			DosAPI.Util.CommInfo instInfo;
+			
+			//Vanished ports stay cached so callers holding on to one get the 
+			//same instance back if the device is plugged in again.
+			for(Map.Entry<String, SerialPort> e : cache.entrySet())
+				if (!ports.containsKey(e.getKey()))
+					e.getValue().setAvailable(false);
+			
+			Set<String> names = new TreeSet<String>();
+			for(String portName : ports.keySet())
+				if (!cache.containsKey(portName))
+					names.add(portName);
+			
+			Map<String, SetupAPI.Util.CommDetails> details = SetupAPI.Util.discoverCommDetails(null, null, PortType.SERIAL, names);
+			SetupAPI.Util.CommDetails instDetails;
+			
+			for(Map.Entry<String, DosAPI.Util.CommInfo> e : ports.entrySet()) {
+				instInfo = e.getValue();
+				if (instInfo == null)
+					continue;
+				
+				if ((inst = cache.get(e.getKey())) == null) {
+					instDetails = (details != null ? details.get(e.getKey()) : null);
+					cache.put(
+						e.getKey(), 
+						(inst = 
+							(instDetails != null ? 
+								  new SerialPort(
+									instInfo.getName(), 
+									instDetails.getFriendlyName(), 
+									instDetails.getDescription(), 
+									instInfo.getPortType()
+								  )
+								: new SerialPort(
+									instInfo.getName(), 
+									instInfo.getName(), 
+									instInfo.getName(), 
+									instInfo.getPortType()
+								  )
+							)
+						)
+					);
+				} else {
+					inst.update(
+						instInfo.getName(), 
+						inst.getTitle(), 
+						inst.getDescription(), 
+						instInfo.getPortType()
+					);
+					inst.setAvailable(true);
+				}
+			}
+			
+			//Changes are measured against what the last refresh reported, not 
+			//against the cache, so enumerating ports in between doesn't hide them.
+			for(String portName : reported.keySet())
+				if (!ports.containsKey(portName))
+					removed.add(cache.get(portName));
+			
+			String previous;
+			for(String portName : ports.keySet()) {
+				if ((inst = cache.get(portName)) == null)
+					continue;
+				if ((previous = reported.get(portName)) == null)
+					added.add(inst);
+				else if (!previous.equals(signature(inst)))
+					changed.add(inst);
+			}
+			
+			reported.clear();
+			for(String portName : ports.keySet())
+				if ((inst = cache.get(portName)) != null)
+					reported.put(portName, signature(inst));
+		}
+		
+		//Notify outside of the lock so listeners are free to enumerate ports.
+		if (listener == null)
+			return;
+		for(ISerialPort p : removed)
+			listener.portRemoved(p);
+		for(ISerialPort p : added)
+			listener.portAdded(p);
+		for(ISerialPort p : changed)
+			listener.portChanged(p);
+	}
+	
+	@Override
+	public PortWatcher.IChangeSource createChangeSource() {
+		return RegistryChangeSource.create(RegistryAPI.REG_SERIALCOMM_KEY_NAME);
+	}
+	
+	@Override
+	public void shutdown() {
+		//Don't let a lingering IO completion port hold up the VM.
+		IOComPort.shutdown();
+	}
+	
 	@Override
 	public boolean isPlatformSupported() {
 		return API.Util.isPlatformSupported();
@@ -159,6 +289,11 @@ public class APISerialPortImplementation implements comm.SerialPorts.Implementat
 		return BaudRates.ValidBaudRates;
 	}
 	
+	@Override
+	public BaudRateCapabilities getBaudRateCapabilities() {
+		return BaudRates.Capabilities;
+	}
+	
 	@Override
 	public DataBits[] getPlatformDataBitsOptions() {
 		return DataBits.values();
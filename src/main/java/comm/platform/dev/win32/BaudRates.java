@@ -28,7 +28,11 @@
  */
 package comm.platform.dev.win32;
 
+import comm.BaudRate;
+import comm.platform.dev.BaudRateCapabilities;
 import comm.platform.dev.StandardBaudRate;
+import comm.platform.api.win32.CommAPI;
+import java.util.EnumSet;
 
 /**
  * Provides details on valid Windows baud rates.
@@ -75,6 +79,79 @@ public class BaudRates {
 		, StandardBaudRate.B230400
 	};
 	
+	/**
+	 * DCB.BaudRate takes the rate itself, so drivers that can divide their 
+	 * clock finely (most USB adapters) accept any rate. This is only what the 
+	 * platform allows; an open port narrows it to what its driver reports 
+	 * through {@link #fromSettableBaud(int)}.
+	 */
+	public static final BaudRateCapabilities Capabilities = new BaudRateCapabilities(
+		  EnumSet.range(BaudRate.B0, BaudRate.B230400)
+		, true
+		, 1
+		, Integer.MAX_VALUE
+	);
+	
+	/**
+	 * COMMPROP.dwSettableBaud bits and the standard rate each one stands for.
+	 */
+	private static final int[] SettableBaudBits = {
+		  CommAPI.BAUD_075
+		, CommAPI.BAUD_110
+		, CommAPI.BAUD_134_5
+		, CommAPI.BAUD_150
+		, CommAPI.BAUD_300
+		, CommAPI.BAUD_600
+		, CommAPI.BAUD_1200
+		, CommAPI.BAUD_1800
+		, CommAPI.BAUD_2400
+		, CommAPI.BAUD_4800
+		, CommAPI.BAUD_7200
+		, CommAPI.BAUD_9600
+		, CommAPI.BAUD_14400
+		, CommAPI.BAUD_19200
+		, CommAPI.BAUD_38400
+		, CommAPI.BAUD_57600
+		, CommAPI.BAUD_115200
+	};
+	
+	private static final BaudRate[] SettableBaudRates = {
+		  BaudRate.B75
+		, BaudRate.B110
+		, BaudRate.B134
+		, BaudRate.B150
+		, BaudRate.B300
+		, BaudRate.B600
+		, BaudRate.B1200
+		, BaudRate.B1800
+		, BaudRate.B2400
+		, BaudRate.B4800
+		, BaudRate.B7200
+		, BaudRate.B9600
+		, BaudRate.B14400
+		, BaudRate.B19200
+		, BaudRate.B38400
+		, BaudRate.B57600
+		, BaudRate.B115200
+	};
+	
+	/**
+	 * What one port's driver says it can do. Without BAUD_USER only the 
+	 * listed rates are accepted. With it the driver takes rates it has no 
+	 * bit for, but how close it gets is only known by reading the rate back 
+	 * after SetCommState().
+	 */
+	public static BaudRateCapabilities fromSettableBaud(int settableBaud) {
+		final EnumSet<BaudRate> standard = EnumSet.noneOf(BaudRate.class);
+		for(int i = 0; i < SettableBaudBits.length; ++i)
+			if ((settableBaud & SettableBaudBits[i]) != 0)
+				standard.add(SettableBaudRates[i]);
+		
+		if ((settableBaud & CommAPI.BAUD_USER) != 0)
+			return new BaudRateCapabilities(standard, true, 1, Integer.MAX_VALUE);
+		return new BaudRateCapabilities(standard, false, 0, 0);
+	}
+	
 	public static int mapToSystemConstant(int baudRate) {
 		return baudRate;
 	}
@@ -84,9 +161,6 @@ public class BaudRates {
 	}
 	
 	public static boolean isValidBaudRate(int baudRate) {
-		for(int i = 0; i < ValidBaudRates.length; ++i)
-			if (ValidBaudRates[i] == baudRate)
-				return true;
-		return false;
+		return Capabilities.isValid(baudRate);
 	}
 }
@@ -33,13 +33,16 @@ import java.nio.ByteBuffer;
 import com.sun.jna.Memory;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
-import com.sun.jna.ptr.IntByReference;
-import com.sun.jna.ptr.PointerByReference;
 import comm.ICommPort;
+import comm.ISerialPort;
 import comm.platform.api.MemoryBuffer;
 import comm.platform.api.win32.CommAPI;
 import comm.platform.api.win32.IOComPortsAPI;
 import comm.platform.dev.CommPort;
+import comm.platform.dev.ReadBatch;
+import comm.platform.dev.TextEncoding;
+import comm.util.CommThreadFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +50,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -59,20 +64,42 @@ import static comm.platform.api.win32.IOComPortsAPI.*;
  * @author David Hoyt <dhoyt@hoytsoft.org>
  */
 class IOComPort {
+	/**
+	 * Milliseconds to keep the engine running after the last port closes.
+	 */
+	public static final long 
+		  DEFAULT_IDLE_LINGER       = 1000L
+	;
+	
+	/**
+	 * Upper bound on how long shutting down waits for the service threads.
+	 */
+	private static final long 
+		  SHUTDOWN_TIMEOUT          = 5000L
+	;
+	
 	private static final Object portLock = new Object();
 	private static final AtomicInteger portCount = new AtomicInteger(0);
 	private static final Map<HANDLE, PortInfo> ports = new ConcurrentHashMap<HANDLE, PortInfo>(8);
+	private static final int 
+		  MODEM_EVENT_MASK = CommAPI.EV_CTS | CommAPI.EV_DSR | CommAPI.EV_RLSD | CommAPI.EV_RING | CommAPI.EV_BREAK | CommAPI.EV_ERR
+		, EVENT_MASK = CommAPI.EV_RXCHAR | MODEM_EVENT_MASK
+	;
+	
 	private static HANDLE ioCompletionPort = INVALID_HANDLE_VALUE;
 	private static List<ThreadInfo> ioCompletionPortServiceThreads = null;
+	private static ScheduledExecutorService lingerTimer = null;
+	private static ScheduledFuture<?> pendingStop = null;
 	
 	private static class PortInfo {
 		HANDLE port;
-		Memory readBuffer;
+		ReadBatch readBatch;
 		ByteBuffer writeBuffer;
 		int readBufferSize;
 		int writeBufferSize;
-		IntByReference pBytesRead;
-		IntByReference pEventMask;
+		int writeLimit;
+		Memory pBytesRead;
+		Memory pEventMask;
 		OVERLAPPED_EX waitCommOverlapped;
 		Pointer pWaitCommOverlapped;
 		OVERLAPPED_EX waitCommImmediateOverlapped;
@@ -80,6 +107,10 @@ class IOComPort {
 		OVERLAPPED_EX readOverlapped;
 		Pointer pReadOverlapped;
 		CommPort commPort;
+		Memory pModemStatus;
+		Memory pErrors;
+		Memory pComStat;
+		int modemStatus;
 		
 		Map<Pointer, ByteBuffer> pendingWrites;
 		
@@ -88,9 +119,19 @@ class IOComPort {
 			this.commPort = commPort;
 			this.readBufferSize = (readBufferSize > 0 ? readBufferSize : ICommPort.DEFAULT_READ_BUFFER_SIZE);
 			this.writeBufferSize = (writeBufferSize > 0 ? writeBufferSize : ICommPort.DEFAULT_WRITE_BUFFER_SIZE);
-			this.pEventMask = new IntByReference();
-			this.pBytesRead = new IntByReference();
-			this.readBuffer = new Memory(this.readBufferSize);
+			//DWORD out parameters, passed as plain pointers so JNA has nothing 
+			//to convert on each call.
+			this.pEventMask = new Memory(4);
+			this.pBytesRead = new Memory(4);
+			this.pModemStatus = new Memory(4);
+			this.pErrors = new Memory(4);
+			this.pComStat = new Memory(CommAPI.COMSTAT.SIZE);
+			
+			final Integer limit = PlatformHint.hint(PlatformHint.AdaptiveReadLimit);
+			this.readBatch = new ReadBatch(this.readBufferSize, (limit != null ? limit.intValue() : 0));
+			
+			final Integer writeLimit = PlatformHint.hint(PlatformHint.WriteLimit);
+			this.writeLimit = (writeLimit != null ? Math.max(0, writeLimit.intValue()) : 0);
 			
 			this.pendingWrites = new HashMap<Pointer, ByteBuffer>(128, 0.78125f);
 			
@@ -151,22 +192,12 @@ class IOComPort {
 		synchronized(portLock) {
 			//Verify that we don't already hold this port.
 			if (!ports.containsKey(port)) {
-				//If this is the first port we're adding, we'll need to create an unassociated IO completion port.
+				//If this is the first port we're adding, we'll need an IO completion port -- unless 
+				//it's still lingering from the last time a port was open.
 				if (portCount.incrementAndGet() == 1) {
-					//Determine the number of concurrent threads that IOCP will use. Typically it's best to actually 
-					//create twice as many as the value passed to CreateIoCompletionPort().
-					Integer concurrentThreadCount = PlatformHint.hint(PlatformHint.IOCompletionPortNumberOfConcurrentThreads);
-					int threadCount = (concurrentThreadCount == null || concurrentThreadCount < 0 ? Math.max(1, ICommPort.DEFAULT_THREAD_POOL_SIZE / 2) : concurrentThreadCount.intValue());
-					ThreadFactory threadFactory = PlatformHint.hint(PlatformHint.IOCompletionPortThreadFactory);
-					if (threadFactory == null)
-						threadFactory = Executors.defaultThreadFactory();
-					
-					//Create the completion port.
-					HANDLE completionPort = ioCompletionPort = IOComPortsAPI.Util.CreateUnassociatedIoCompletionPort();
-					 
-					//Spin up each service thread.
-					//The call will block until all the threads have started.
-					ioCompletionPortServiceThreads = launchServiceThreads(threadCount, threadFactory, completionPort);
+					cancelPendingStop();
+					if (ioCompletionPort == INVALID_HANDLE_VALUE)
+						startEngine();
 				}
 				
 				//Now associate our open file handle with the IO completion port.
@@ -180,8 +211,12 @@ class IOComPort {
 				PortInfo pi = new PortInfo(port, commPort, readBufferSize, writeBufferSize);
 				ports.put(port, pi);
 				
+				//Remember where the modem lines start so changes can be reported.
+				if (API.GetCommModemStatus(port, pi.pModemStatus))
+					pi.modemStatus = pi.pModemStatus.getInt(0L);
+				
 				//Specify which events we're interested in knowing about.
-				API.SetCommMask(port, CommAPI.EV_RXCHAR);
+				API.SetCommMask(port, EVENT_MASK);
 				
 				waitCommEvent(API, port, pi, false);
 				return true;
@@ -190,6 +225,139 @@ class IOComPort {
 		return false;
 	}
 	
+	//<editor-fold defaultstate="collapsed" desc="Engine">
+	/**
+	 * Daemon threads, so a program that's done with its ports can exit while 
+	 * the engine is still lingering.
+	 */
+	static ThreadFactory newDefaultThreadFactory() {
+		return new CommThreadFactory() {
+			@Override
+			protected Thread configureThread(Thread t) {
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+	
+	private static void startEngine() {
+		//Determine the number of concurrent threads that IOCP will use. Typically it's best to actually 
+		//create twice as many as the value passed to CreateIoCompletionPort().
+		Integer concurrentThreadCount = PlatformHint.hint(PlatformHint.IOCompletionPortNumberOfConcurrentThreads);
+		int threadCount = (concurrentThreadCount == null || concurrentThreadCount < 0 ? Math.max(1, ICommPort.DEFAULT_THREAD_POOL_SIZE / 2) : concurrentThreadCount.intValue());
+		ThreadFactory threadFactory = PlatformHint.hint(PlatformHint.IOCompletionPortThreadFactory);
+		if (threadFactory == null)
+			threadFactory = newDefaultThreadFactory();
+
+		//Create the completion port.
+		HANDLE completionPort = ioCompletionPort = IOComPortsAPI.Util.CreateUnassociatedIoCompletionPort();
+
+		//Spin up each service thread.
+		//The call will block until all the threads have started.
+		ioCompletionPortServiceThreads = launchServiceThreads(threadCount, threadFactory, completionPort);
+	}
+	
+	/**
+	 * Must be called while holding portLock.
+	 */
+	private static void stopEngine() {
+		cancelPendingStop();
+		
+		//Stop the threads in the pool.
+		shutdownServiceThreads(ioCompletionPortServiceThreads);
+		ioCompletionPortServiceThreads = null;
+
+		if (ioCompletionPort != INVALID_HANDLE_VALUE) {
+			IOComPortsAPI.INSTANCE.CloseHandle(ioCompletionPort);
+			ioCompletionPort = INVALID_HANDLE_VALUE;
+		}
+	}
+	
+	/**
+	 * Called when the last port closes. Must be called while holding portLock.
+	 */
+	private static void idleEngine() {
+		//Accept any numeric hint (e.g. an Integer added by the caller).
+		Number hint = PlatformHint.hint(PlatformHint.IOCompletionPortIdleLinger);
+		long linger = (hint != null ? hint.longValue() : DEFAULT_IDLE_LINGER);
+		
+		if (linger == 0L) {
+			stopEngine();
+			return;
+		}
+		
+		//Keep running until shutdown.
+		if (linger < 0L)
+			return;
+		
+		cancelPendingStop();
+		pendingStop = timer().schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(portLock) {
+					//A port may have been opened in the meantime.
+					if (portCount.get() == 0 && pendingStop != null)
+						stopEngine();
+				}
+			}
+		}, linger, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Must be called while holding portLock.
+	 */
+	private static ScheduledExecutorService timer() {
+		if (lingerTimer == null) {
+			lingerTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "IO Completion Port Linger");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return lingerTimer;
+	}
+	
+	/**
+	 * Runs a short task later on the engine's timer so that delays never 
+	 * hold up the IOCP threads.
+	 */
+	static void schedule(Runnable task, long delay) {
+		synchronized(portLock) {
+			timer().schedule(task, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private static void cancelPendingStop() {
+		if (pendingStop != null) {
+			pendingStop.cancel(false);
+			pendingStop = null;
+		}
+	}
+	
+	/**
+	 * Stops the engine right away if no ports are open, regardless of the linger setting.
+	 */
+	public static void shutdown() {
+		synchronized(portLock) {
+			if (portCount.get() == 0)
+				stopEngine();
+			if (lingerTimer != null) {
+				lingerTimer.shutdownNow();
+				lingerTimer = null;
+			}
+		}
+	}
+	
+	public static boolean isEngineRunning() {
+		synchronized(portLock) {
+			return (ioCompletionPort != INVALID_HANDLE_VALUE);
+		}
+	}
+	//</editor-fold>
+	
 	private static List<ThreadInfo> launchServiceThreads(final int threadCount, final ThreadFactory threadFactory, final HANDLE completionPort) {
 		//Create a pool of threads and keep hold of them.
 		final CountDownLatch counter = new CountDownLatch(threadCount);
@@ -239,37 +407,29 @@ class IOComPort {
 		post.op = OVERLAPPED_EX.OP_EXITTHREAD;
 		//</editor-fold>
 
-		//TODO: Find a more intelligent way to do this that does not require pounding on the worker 
-		//      threads until they see that they should exit.
-		for(ThreadInfo ti : serviceThreads) {
-			if (ti == null || !ti.thread.isAlive())
-				continue;
-			
+		//Every thread exits as soon as it dequeues an exit request, so one request 
+		//per thread is enough.
+		final List<ThreadInfo> threads = new ArrayList<ThreadInfo>(serviceThreads);
+		for(ThreadInfo ti : threads) {
 			//Ask the thread to exit nicely.
 			ti.pleaseExit = true;
-			
-			//Post message to thread.
 			API.PostQueuedCompletionStatus(ioCompletionPort, 0, null, post);
 		}
 		
-		boolean allDone;
-		do {
-			allDone = true;
-			//This list will get gradually smaller and smaller since as threads exit 
-			//they remove themselves from the list.
-			for(ThreadInfo ti : serviceThreads) {
-				//If the thread hasn't died yet, then forcefully remove it.
-				try {
-					//Ensure that the thread has exited.
-					if (ti.thread.isAlive() && !ti.threadExited.await(1L, TimeUnit.MILLISECONDS)) {
-						//Post message again.
-						API.PostQueuedCompletionStatus(ioCompletionPort, 0, null, post);
-						allDone = false;
-					}
-				} catch(Throwable w) {
-				}
+		//Wait for them all against a single deadline.
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT);
+		try {
+			for(ThreadInfo ti : threads) {
+				if (ti.thread == Thread.currentThread())
+					continue;
+				ti.threadExited.await(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
 			}
-		} while(!allDone);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} finally {
+			//The posted structure must stay reachable until the threads have read it.
+			post.op = OVERLAPPED_EX.OP_EXITTHREAD;
+		}
 		
 		serviceThreads.clear();
 	}
@@ -279,9 +439,9 @@ class IOComPort {
 		HANDLE completionPort = ti.completionPort;
 		HANDLE port = new HANDLE();
 		OVERLAPPED_EX overlapped = new OVERLAPPED_EX();
-		IntByReference pBytesTransferred = new IntByReference();
-		PointerByReference ppOverlapped = new PointerByReference();
-		PointerByReference pCompletionKey = new PointerByReference();
+		Memory pBytesTransferred = new Memory(4);
+		Memory ppOverlapped = new Memory(Pointer.SIZE);
+		Memory pCompletionKey = new Memory(Pointer.SIZE);
 		int bytesTransferred;
 		Pointer pOverlapped;
 		PortInfo pi;
@@ -294,21 +454,21 @@ class IOComPort {
 			
 			//If no OVERLAPPED/OVERLAPPEDEX instance is specified, then there's 
 			//something wrong and we need to exit.
-			if (ppOverlapped == null || (pOverlapped = ppOverlapped.getValue()) == null || pOverlapped == Pointer.NULL)
+			if ((pOverlapped = ppOverlapped.getPointer(0L)) == null)
 				return;
 			
-			//Retrieve data from the event.
+			//Retrieve data from the event. The fields are read at their offsets 
+			//rather than through Structure.read().
 			overlapped.reuse(pOverlapped);
 			//overlapped = new OVERLAPPED_EX(pOverlapped);
-			port.reuse(pCompletionKey.getValue());
+			port.reuse(pCompletionKey.getPointer(0L));
 			//port = new HANDLE(pCompletionKey.getValue());
-			bytesTransferred = pBytesTransferred.getValue();
+			bytesTransferred = pBytesTransferred.getInt(0L);
 			
 			//If we've received a message asking to break out of the thread, then 
-			//loop back and around and check that our flag has been set. If so, 
-			//then it's time to go!
+			//it's time to go! Each thread consumes exactly one of these.
 			if (overlapped.op == OVERLAPPED_EX.OP_EXITTHREAD)
-				continue;
+				return;
 			
 			//If, for some unknown reason, we are processing an event for a port we 
 			//haven't seen before, then go ahead and ignore it.
@@ -319,7 +479,9 @@ class IOComPort {
 				case OVERLAPPED_EX.OP_WAITCOMMEVENT:
 					if (!API.GetOverlappedResult(port, pOverlapped, pBytesTransferred, false))
 						continue;
-					evaluateCommEvent(API, port, pi, pi.pEventMask.getValue());
+					//Anything other than a read completion has to wait for the next event itself.
+					if (!evaluateCommEvent(API, port, pi, pi.pEventMask.getInt(0L)))
+						waitCommEvent(API, port, pi, true);
 					break;
 				case OVERLAPPED_EX.OP_WAITCOMMEVENT_IMMEDIATE:
 					//The events found (event mask) were placed in .ex so it needs to be 
@@ -332,36 +494,54 @@ class IOComPort {
 					if (!API.GetOverlappedResult(port, pOverlapped, pBytesTransferred, false))
 						continue;
 					
+					final ReadBatch batch = pi.readBatch;
 					if (bytesTransferred > 0) {
-						if (pi.commPort.hasReadListeners()) {
+						batch.filled(bytesTransferred);
+						
+						//Keep reading while the driver has more queued so it all goes out 
+						//in one callback. The completion of that read comes back here.
+						if (batch.isAdaptive() && !batch.isFull() && !isFramed(pi) && queued(API, port, pi) > 0 && read(API, port, pi))
+							break;
+					}
+					
+					if (batch.getFilled() > 0) {
+						if (pi.commPort.hasReadListeners() || pi.commPort.hasLineListeners()) {
 							//Notify application that data has arrived.
 							try {
-								pi.commPort.notifyReadListenersBytesRead(pi.readBuffer.getByteBuffer(0, bytesTransferred), 0, bytesTransferred);
+								pi.commPort.notifyReadListenersBytesRead(batch.getBatch(), 0, batch.getFilled());
 							} catch(Throwable t) {
 								if (pi.commPort.hasErrorListeners())
 									pi.commPort.notifyErrorListenersExceptionCaught(t);
 							}
 						}
+						batch.reset();
 					}
 					
-					//Read again if necessary. Otherwise wait for another comm event.
-					if (bytesTransferred <= 0 || !read(API, port, pi))
+					//Read again if necessary. Otherwise wait for another comm event. A 
+					//framed read would sit waiting for the next frame and hold up the 
+					//modem events, so it's only issued once something has arrived.
+					if (bytesTransferred <= 0 || (isFramed(pi) && queued(API, port, pi) <= 0) || !read(API, port, pi))
 						waitCommEvent(API, port, pi, true);
 					break;
 				case OVERLAPPED_EX.OP_WRITE:
 				case OVERLAPPED_EX.OP_WRITE_IMMEDIATE:
 					isImmediate = (overlapped.op == OVERLAPPED_EX.OP_WRITE_IMMEDIATE);
-					bytesTransferred = (!isImmediate ? pBytesTransferred.getValue() : overlapped.ex);
-					
-					if (!API.GetOverlappedResult(port, pOverlapped, pBytesTransferred, false) && !isImmediate)
-						continue;
-					
+					bytesTransferred = (!isImmediate ? pBytesTransferred.getInt(0L) : overlapped.ex);
 					
 					//Requests that the memorybuffer instance find itself in its list of references and 
 					//then update private variables as appropriate. This should be called any time 
 					//JNA constructs an instance on its own.
 					overlapped.memBuffer.refresh();
+					
+					if (!API.GetOverlappedResult(port, pOverlapped, pBytesTransferred, false) && !isImmediate) {
+						release(overlapped.memBuffer);
+						transmitComplete(pi);
+						continue;
+					}
+					
+					//A partial completion picks up from what the earlier ones wrote.
 					ByteBuffer bb = overlapped.memBuffer.getByteBuffer(0L, overlapped.memBuffer.size);
+					bb.position(writeProgress(bb.limit(), overlapped.progress, 0));
 
 					if (pi.commPort.hasWriteListeners()) {
 						ByteBuffer slice;
@@ -380,8 +560,9 @@ class IOComPort {
 						}
 
 						if (bytesTransferred >= bb.remaining()) {
-							bb.position(0);
-							slice = bb.slice();
+							slice = bb.duplicate();
+							slice.position(0);
+							slice = slice.slice();
 							try {
 								pi.commPort.notifyWriteListenersWriteComplete(slice, slice.remaining());
 							} catch(Throwable t) {
@@ -392,14 +573,28 @@ class IOComPort {
 						}
 					}
 
-					bb.position(Math.min(bb.limit(), bb.position() + bytesTransferred));
+					bb.position(writeProgress(bb.limit(), bb.position(), bytesTransferred));
 
 					//Clean up memory we're holding onto so we don't crash.
 					if (!bb.hasRemaining()) {
-						//Clean up memory.
-						overlapped.memBuffer.dispose();
+						//Clean up memory. Broadcast buffers are only freed by the last write using them.
+						release(overlapped.memBuffer);
+						transmitComplete(pi);
 					} else {
-						writeFile(API, pi, port, overlapped.memBuffer.getBufferPointer(), bb.remaining(), overlapped);
+						//Resubmit the rest. The call writes the cleared OVERLAPPED and the 
+						//progress back out before WriteFile sees them.
+						overlapped.ovl.Internal = 0;
+						overlapped.ovl.InternalHigh = 0;
+						overlapped.ovl.Offset = 0;
+						overlapped.ovl.OffsetHigh = 0;
+						overlapped.ovl.hEvent = 0;
+						overlapped.op = OVERLAPPED_EX.OP_WRITE;
+						overlapped.ex = 0;
+						overlapped.progress = bb.position();
+						if (!writeFile(API, pi, port, overlapped.memBuffer.getBufferPointer().share(bb.position()), bb.remaining(), overlapped)) {
+							release(overlapped.memBuffer);
+							transmitComplete(pi);
+						}
 					}
 					break;
 				default:
@@ -414,9 +609,9 @@ class IOComPort {
 		//post them to the IOCP but then block until they've been processed. That way, we 
 		//can ensure that all our event firing, reading, and writing are always done from the 
 		//worker threads. It's just nicer for consistency's sake.
-		while (API.WaitCommEvent(port, pi.pEventMask, pi.waitCommOverlapped) && !iocpThread) {
+		while (API.WaitCommEvent(port, pi.pEventMask, pi.pWaitCommOverlapped) && !iocpThread) {
 			//Set the event mask so we can pick it up inside the IOCP worker thread.
-			pi.waitCommImmediateOverlapped.ex = pi.pEventMask.getValue();
+			pi.waitCommImmediateOverlapped.ex = pi.pEventMask.getInt(0L);
 			//Post the event.
 			API.PostQueuedCompletionStatus(ioCompletionPort, Native.POINTER_SIZE, port.getPointer(), pi.waitCommImmediateOverlapped);
 			//Wait for the IOCP worker thread to signal that it's done processing it.
@@ -425,31 +620,189 @@ class IOComPort {
 		}
 	}
 	
-	private static void evaluateCommEvent(IOComPortsAPI API, HANDLE port, PortInfo pi, int eventMask) {
-		if ((eventMask & CommAPI.EV_RXCHAR) == CommAPI.EV_RXCHAR)
+	/**
+	 * @return True if a read was started, in which case its completion waits 
+	 * for the next comm event.
+	 */
+	private static boolean evaluateCommEvent(IOComPortsAPI API, HANDLE port, PortInfo pi, int eventMask) {
+		if ((eventMask & CommAPI.EV_TXEMPTY) == CommAPI.EV_TXEMPTY && pi.commPort instanceof SerialPort) {
+			try {
+				((SerialPort)pi.commPort).transmitterEmpty();
+			} catch(Throwable t) {
+				if (pi.commPort.hasErrorListeners())
+					pi.commPort.notifyErrorListenersExceptionCaught(t);
+			}
+		}
+		
+		if ((eventMask & MODEM_EVENT_MASK) != 0 && pi.commPort instanceof SerialPort) {
+			try {
+				evaluateModemEvent(API, port, pi, (SerialPort)pi.commPort, eventMask);
+			} catch(Throwable t) {
+				if (pi.commPort.hasErrorListeners())
+					pi.commPort.notifyErrorListenersExceptionCaught(t);
+			}
+		}
+		
+		if ((eventMask & CommAPI.EV_RXCHAR) == CommAPI.EV_RXCHAR) {
 			read(API, port, pi);
+			return true;
+		}
+		return false;
+	}
+	
+	private static void evaluateModemEvent(IOComPortsAPI API, HANDLE port, PortInfo pi, SerialPort serialPort, int eventMask) {
+		if ((eventMask & CommAPI.EV_ERR) == CommAPI.EV_ERR || (eventMask & CommAPI.EV_BREAK) == CommAPI.EV_BREAK) {
+			//ClearCommError() has to be called anyway so the driver resumes after an error.
+			int errors = (API.ClearCommError(port, pi.pErrors, null) ? pi.pErrors.getInt(0L) : 0);
+			reportLineErrors(serialPort, errors, (eventMask & CommAPI.EV_BREAK) == CommAPI.EV_BREAK);
+		}
+		
+		if ((eventMask & (CommAPI.EV_CTS | CommAPI.EV_DSR | CommAPI.EV_RLSD | CommAPI.EV_RING)) != 0) {
+			int previous = pi.modemStatus;
+			int current = (API.GetCommModemStatus(port, pi.pModemStatus) ? pi.pModemStatus.getInt(0L) : previous);
+			pi.modemStatus = current;
+			
+			int changed = toModemLines(previous ^ current);
+			
+			//The ring indicator usually drops again before we get to look at it.
+			if ((eventMask & CommAPI.EV_RING) == CommAPI.EV_RING) {
+				changed |= ISerialPort.MODEM_RING;
+				current |= CommAPI.MS_RING_ON;
+			}
+			
+			if (changed != 0 && serialPort.hasModemListeners())
+				serialPort.notifyModemListenersLinesChanged(changed, toModemLines(current) | serialPort.getOutputLines());
+		}
+	}
+	
+	private static void transmitComplete(PortInfo pi) {
+		if (!(pi.commPort instanceof SerialPort))
+			return;
+		try {
+			((SerialPort)pi.commPort).transmitComplete();
+		} catch(Throwable t) {
+			if (pi.commPort.hasErrorListeners())
+				pi.commPort.notifyErrorListenersExceptionCaught(t);
+		}
 	}
 	
+	/**
+	 * Adds or removes EV_TXEMPTY from the events we wait for. Changing the mask 
+	 * completes the pending WaitCommEvent(), which is then simply re-armed.
+	 */
+	static boolean watchTransmitter(HANDLE port, boolean watch) {
+		if (ports.get(port) == null)
+			return false;
+		return IOComPortsAPI.INSTANCE.SetCommMask(port, (watch ? EVENT_MASK | CommAPI.EV_TXEMPTY : EVENT_MASK));
+	}
+	
+	/**
+	 * Translates MS_*_ON flags from GetCommModemStatus() into ISerialPort.MODEM_* lines.
+	 */
+	static int toModemLines(int status) {
+		int lines = 0;
+		if ((status & CommAPI.MS_CTS_ON) == CommAPI.MS_CTS_ON)
+			lines |= ISerialPort.MODEM_CTS;
+		if ((status & CommAPI.MS_DSR_ON) == CommAPI.MS_DSR_ON)
+			lines |= ISerialPort.MODEM_DSR;
+		if ((status & CommAPI.MS_RING_ON) == CommAPI.MS_RING_ON)
+			lines |= ISerialPort.MODEM_RING;
+		if ((status & CommAPI.MS_RLSD_ON) == CommAPI.MS_RLSD_ON)
+			lines |= ISerialPort.MODEM_DCD;
+		return lines;
+	}
+	
+	/**
+	 * Translates CE_* flags from ClearCommError() into ISerialPort.LINE_ERROR_* flags.
+	 */
+	static int toLineErrors(int errors) {
+		int lineErrors = 0;
+		if ((errors & CommAPI.CE_OVERRUN) == CommAPI.CE_OVERRUN)
+			lineErrors |= ISerialPort.LINE_ERROR_OVERRUN;
+		if ((errors & CommAPI.CE_RXPARITY) == CommAPI.CE_RXPARITY)
+			lineErrors |= ISerialPort.LINE_ERROR_PARITY;
+		if ((errors & CommAPI.CE_FRAME) == CommAPI.CE_FRAME)
+			lineErrors |= ISerialPort.LINE_ERROR_FRAMING;
+		if ((errors & CommAPI.CE_RXOVER) == CommAPI.CE_RXOVER)
+			lineErrors |= ISerialPort.LINE_ERROR_RX_OVERFLOW;
+		return lineErrors;
+	}
+	
+	private static void reportLineErrors(SerialPort serialPort, int errors, boolean breakEvent) {
+		int lineErrors = toLineErrors(errors);
+		if (lineErrors != 0 && serialPort.hasModemListeners())
+			serialPort.notifyModemListenersLineErrors(lineErrors);
+		if ((breakEvent || (errors & CommAPI.CE_BREAK) == CommAPI.CE_BREAK) && serialPort.hasModemListeners())
+			serialPort.notifyModemListenersBreakReceived();
+	}
+	
+	/**
+	 * @return The bytes waiting in the driver's input queue (COMSTAT.cbInQue). 
+	 * Asking also clears any pending errors, so those are reported here.
+	 */
+	private static int queued(IOComPortsAPI API, HANDLE port, PortInfo pi) {
+		if (!API.ClearCommError(port, pi.pErrors, pi.pComStat))
+			return 0;
+		
+		final int errors = pi.pErrors.getInt(0L);
+		if (errors != 0 && pi.commPort instanceof SerialPort) {
+			try {
+				reportLineErrors((SerialPort)pi.commPort, errors, false);
+			} catch(Throwable t) {
+				if (pi.commPort.hasErrorListeners())
+					pi.commPort.notifyErrorListenersExceptionCaught(t);
+			}
+		}
+		return pi.pComStat.getInt(CommAPI.COMSTAT.OFFSET_CBINQUE);
+	}
+	
+	/**
+	 * Starts a read. True if it's completed or in flight, either way its 
+	 * completion comes back through the completion port.
+	 */
 	private static boolean read(IOComPortsAPI API, HANDLE port, PortInfo pi) {
-		return API.ReadFile(port, pi.readBuffer, pi.readBufferSize, pi.pBytesRead, pi.pReadOverlapped);
+		final ReadBatch batch = pi.readBatch;
+		if (batch.isAdaptive() && batch.getFilled() == 0)
+			batch.ensure(queued(API, port, pi));
+		if (API.ReadFile(port, batch.getFree(), batch.getRoom(), pi.pBytesRead, pi.pReadOverlapped))
+			return true;
+		return (Native.getLastError() == ERROR_IO_PENDING);
+	}
+	
+	private static boolean isFramed(PortInfo pi) {
+		return (pi.commPort instanceof SerialPort && ((SerialPort)pi.commPort).isFramedReads());
 	}
 	
 	static boolean write(IOComPortsAPI API, HANDLE port, ByteBuffer buffer, int offset, int length) {
 		PortInfo pi = ports.get(port);
 		if (pi == null)
 			return false;
+		
+		//A whole MemoryBuffer (such as a PortGroup broadcast) is written in 
+		//place. The write holds a reference until it completes.
+		final MemoryBuffer shared = findShared(buffer, offset, length);
+		if (shared != null) {
+			shared.reference();
+			OVERLAPPED_EX ovl = new OVERLAPPED_EX();
+			ovl.op = OVERLAPPED_EX.OP_WRITE;
+			ovl.memBuffer = shared.share();
+			ovl.write();
+			if (writeFile(API, pi, port, shared.getBufferPointer(), length, ovl))
+				return true;
+			shared.unreference();
+			return false;
+		}
 
 		OVERLAPPED_EX ovl;
 		ByteBuffer direct_buffer;
 		try {
-			ovl = new OVERLAPPED_EX();
-			ovl.op = OVERLAPPED_EX.OP_WRITE;
-			
 			buffer = buffer.slice();
 			buffer.position(offset);
 			length = Math.min(buffer.remaining(), length);
+			if (length <= 0)
+				return true;
 			
-			ovl.memBuffer = new MemoryBuffer(length);
+			ovl = newWriteOverlapped(length);
 			
 			direct_buffer = ovl.memBuffer.getByteBuffer(0L, length);
 			direct_buffer.put(buffer);
@@ -467,10 +820,73 @@ class IOComPort {
 		return writeFile(API, pi, port, ovl.memBuffer.getBufferPointer(), length, ovl);
 	}
 	
+	static boolean write(IOComPortsAPI API, HANDLE port, CharSequence value, TextEncoding encoding) {
+		PortInfo pi = ports.get(port);
+		if (pi == null)
+			return false;
+		
+		OVERLAPPED_EX ovl;
+		int length;
+		try {
+			length = encoding.encodedLength(value);
+			if (length <= 0)
+				return true;
+			
+			ovl = newWriteOverlapped(length);
+			
+			//Encode straight into native memory -- there's no intermediate heap buffer.
+			encoding.encode(value, ovl.memBuffer.getByteBuffer(0L, length));
+			
+			ovl.write();
+		} catch(OutOfMemoryError oome) {
+			return false;
+		}
+		
+		return writeFile(API, pi, port, ovl.memBuffer.getBufferPointer(), length, ovl);
+	}
+	
+	private static MemoryBuffer findShared(ByteBuffer buffer, int offset, int length) {
+		if (!buffer.isDirect() || offset != 0 || length <= 0)
+			return null;
+		final MemoryBuffer mb = MemoryBuffer.find(Native.getDirectBufferPointer(buffer));
+		return (mb != null && mb.getBufferSize() == length ? mb : null);
+	}
+	
+	/**
+	 * Drops a write's reference to its memory, freeing it if nothing else is 
+	 * using it.
+	 */
+	private static void release(MemoryBuffer memBuffer) {
+		final MemoryBuffer owner = MemoryBuffer.find(memBuffer.getBufferPointer());
+		if (owner != null)
+			owner.unreference();
+	}
+	
+	/**
+	 * Where a write stands once <code>bytesTransferred</code> more bytes have 
+	 * gone out after <code>progress</code>, kept within the 
+	 * <code>length</code> bytes being written.
+	 */
+	static int writeProgress(int length, int progress, int bytesTransferred) {
+		final long position = (long)Math.max(0, progress) + Math.max(0, bytesTransferred);
+		return (int)Math.min(Math.max(0, length), position);
+	}
+	
+	private static OVERLAPPED_EX newWriteOverlapped(int length) {
+		OVERLAPPED_EX ovl = new OVERLAPPED_EX();
+		ovl.op = OVERLAPPED_EX.OP_WRITE;
+		ovl.memBuffer = new MemoryBuffer(length);
+		return ovl;
+	}
+	
 	private static boolean writeFile(IOComPortsAPI API, PortInfo pi, HANDLE port, Pointer buffer, int length, OVERLAPPED_EX ovl) {
 		if (ovl == null || buffer == null || length <= 0)
 			return true;
 		
+		//Anything past the limit is resubmitted from the completion.
+		if (pi.writeLimit > 0)
+			length = Math.min(length, pi.writeLimit);
+		
 		boolean api_result = false;
 		int err = ERROR_SUCCESS;
 		
@@ -493,6 +909,15 @@ class IOComPort {
 		}
 	}
 	
+	/**
+	 * @return The buffer the port reads into, or null if it isn't associated. 
+	 * Whoever closes the port frees it once the handle is closed.
+	 */
+	static ReadBatch getReadBatch(HANDLE port) {
+		final PortInfo pi = ports.get(port);
+		return (pi != null ? pi.readBatch : null);
+	}
+	
 	public static boolean unassociateCommPort(HANDLE port) {
 		PortInfo pi;
 		synchronized(portLock) {
@@ -501,15 +926,9 @@ class IOComPort {
 			if (ports.containsKey(port) && (pi = ports.remove(port)) != null && pi.dispose()) {
 				//Unassociate this port from the IO completion port.
 				
-				if (portCount.decrementAndGet() == 0) {
-					//Stop the threads in the pool.
-					shutdownServiceThreads(ioCompletionPortServiceThreads);
-					
-					if (ioCompletionPort != INVALID_HANDLE_VALUE) {
-						IOComPortsAPI.INSTANCE.CloseHandle(ioCompletionPort);
-						ioCompletionPort = INVALID_HANDLE_VALUE;
-					}
-				}
+				//Keep the engine around for a bit in case another port is opened soon.
+				if (portCount.decrementAndGet() == 0)
+					idleEngine();
 				
 				return true;
 			}
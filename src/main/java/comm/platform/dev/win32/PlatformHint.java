@@ -29,7 +29,6 @@
 package comm.platform.dev.win32;
 
 import comm.ICommPort;
-import comm.util.CommThreadFactory;
 import comm.util.StringUtil;
 import java.util.Map;
 import java.util.TreeMap;
@@ -48,16 +47,42 @@ public class PlatformHint {
 		   */
 		  IOCompletionPortNumberOfConcurrentThreads = "IOCompletionPortNumberOfConcurrentThreads"
 		  /**
-		   * Provides a thread factory for use by IO completion ports.
+		   * Provides a thread factory for use by IO completion ports. The default one 
+		   * makes daemon threads. A factory making anything else keeps the VM alive 
+		   * while the engine lingers, or indefinitely with a negative linger, unless 
+		   * SerialPorts.shutdown() is called.
 		   */
 		, IOCompletionPortThreadFactory = "IOCompletionPortThreadFactory"
+		  /**
+		   * How long (in milliseconds, as any Number) the IO completion port and its threads are 
+		   * kept running after the last port closes so reopening a port is cheap. Zero stops 
+		   * them right away and a negative value keeps them running until shutdown.
+		   */
+		, IOCompletionPortIdleLinger = "IOCompletionPortIdleLinger"
+		  /**
+		   * How large (in bytes, as an Integer) a port's read buffer may grow. Reads 
+		   * keep going while ClearCommError() reports queued bytes and are delivered 
+		   * in one callback. Zero, or anything up to the read buffer size, turns this 
+		   * off and every ReadFile() is delivered on its own. Defaults to 64K.
+		   */
+		, AdaptiveReadLimit = "AdaptiveReadLimit"
+		  /**
+		   * Caps how many bytes (as an Integer) are handed to a single WriteFile(). The 
+		   * rest goes out from the completion, the same way a write the driver only 
+		   * partly finished is resubmitted, so that path can be exercised on purpose. 
+		   * Read when a port is opened. Zero (the default) writes everything at once.
+		   */
+		, WriteLimit = "WriteLimit"
 	;
 	
 	private static final Map<String, Object> hints = new TreeMap<String, Object>();
 	
 	static {
 		hints.put(IOCompletionPortNumberOfConcurrentThreads, ICommPort.DEFAULT_THREAD_POOL_SIZE);
-		hints.put(IOCompletionPortThreadFactory, new CommThreadFactory());
+		hints.put(IOCompletionPortThreadFactory, IOComPort.newDefaultThreadFactory());
+		hints.put(IOCompletionPortIdleLinger, IOComPort.DEFAULT_IDLE_LINGER);
+		hints.put(AdaptiveReadLimit, comm.platform.dev.ReadBatch.DEFAULT_LIMIT);
+		hints.put(WriteLimit, 0);
 	}
 	
 	static void add(final String name, final Object value) {
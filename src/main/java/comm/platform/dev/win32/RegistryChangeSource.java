@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.win32;
+
+import com.sun.jna.ptr.PointerByReference;
+import comm.PortWatcher;
+import comm.platform.api.win32.IOComPortsAPI;
+import comm.platform.api.win32.RegistryAPI;
+import static comm.platform.api.win32.API.*;
+import static comm.platform.api.win32.RegistryAPI.*;
+
+/**
+ * Waits for values to be added to or removed from a registry key under 
+ * HKEY_LOCAL_MACHINE (e.g. HARDWARE\DEVICEMAP\SERIALCOMM, which serial 
+ * drivers update as devices come and go).
+ * 
+ * Registry notifications are cancelled when the thread that asked for them 
+ * exits, so {@link #await(long)} must always be called from the same thread.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+class RegistryChangeSource implements PortWatcher.IChangeSource {
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private final Object lock = new Object();
+	private HKEY key;
+	private HANDLE event;
+	private boolean armed = false;
+	private boolean waiting = false;
+	private volatile boolean closed = false;
+	private volatile boolean failed = false;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private RegistryChangeSource(HKEY key, HANDLE event) {
+		this.key = key;
+		this.event = event;
+	}
+	
+	/**
+	 * @return null if the key or the event couldn't be created.
+	 */
+	public static RegistryChangeSource create(String subKey) {
+		try {
+			PointerByReference phkResult = new PointerByReference();
+			if (RegistryAPI.INSTANCE.RegOpenKeyEx(HKEY_LOCAL_MACHINE, subKey, 0, KEY_NOTIFY, phkResult) != ERROR_SUCCESS)
+				return null;
+			
+			HKEY key = new HKEY(phkResult.getValue());
+			HANDLE event = IOComPortsAPI.INSTANCE.CreateEvent(null, false, false, null);
+			if (event == null || INVALID_HANDLE_VALUE.equals(event)) {
+				RegistryAPI.INSTANCE.RegCloseKey(key);
+				return null;
+			}
+			return new RegistryChangeSource(key, event);
+		} catch(Throwable t) {
+			return null;
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Methods">
+	@Override
+	public boolean await(long timeout) {
+		HANDLE ev;
+		synchronized(lock) {
+			if (closed)
+				return false;
+			
+			if (!armed) {
+				if (RegistryAPI.INSTANCE.RegNotifyChangeKeyValue(key, false, REG_NOTIFY_CHANGE_NAME | REG_NOTIFY_CHANGE_LAST_SET, event, true) != ERROR_SUCCESS) {
+					failed = true;
+					return false;
+				}
+				armed = true;
+			}
+			ev = event;
+			waiting = true;
+		}
+		
+		int rc = IOComPortsAPI.INSTANCE.WaitForSingleObject(ev, (timeout < 0L ? INFINITE : (int)Math.min(timeout, Integer.MAX_VALUE)));
+		
+		synchronized(lock) {
+			waiting = false;
+			if (closed) {
+				release();
+				return false;
+			}
+			if (rc != WAIT_OBJECT_0) {
+				failed = (rc != WAIT_TIMEOUT);
+				return false;
+			}
+			
+			//Notifications are one-shot -- re-arm on the next wait.
+			armed = false;
+			return true;
+		}
+	}
+	
+	@Override
+	public boolean isFailed() {
+		return failed;
+	}
+	
+	@Override
+	public void close() {
+		synchronized(lock) {
+			if (closed)
+				return;
+			closed = true;
+			
+			//A waiting thread releases the handles itself once it wakes up.
+			if (waiting)
+				IOComPortsAPI.INSTANCE.SetEvent(event);
+			else
+				release();
+		}
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private void release() {
+		if (key != null) {
+			RegistryAPI.INSTANCE.RegCloseKey(key);
+			key = null;
+		}
+		if (event != null) {
+			IOComPortsAPI.INSTANCE.CloseHandle(event);
+			event = null;
+		}
+	}
+	//</editor-fold>
+}
@@ -29,13 +29,20 @@
 package comm.platform.dev.win32;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import comm.DataBits;
 import comm.FlowControl;
+import comm.LineSettings;
 import comm.Parity;
 import comm.PortType;
+import comm.RS485Settings;
+import comm.ReadTiming;
 import comm.StopBits;
+import comm.platform.dev.BaudRateCapabilities;
+import comm.platform.dev.ReadBatch;
+import comm.platform.dev.TextEncoding;
 import comm.platform.api.win32.CommAPI;
 import comm.platform.api.win32.IOComPortsAPI;
 import static comm.platform.api.win32.API.*;
@@ -48,6 +55,47 @@ import static comm.platform.api.win32.CommAPI.*;
 class SerialPort extends comm.platform.dev.SerialPort {
 	//<editor-fold defaultstate="collapsed" desc="Variables">
 	private HANDLE handle;
+	
+	/**
+	 * The DCB as last read from or written to the driver. Reusing it lets a 
+	 * reconfigure skip GetCommState. Guarded by commLock.
+	 */
+	private DCB dcb;
+	
+	/**
+	 * What the driver reported through GetCommProperties() when the port was 
+	 * last opened, or null to use the platform's.
+	 */
+	private volatile BaudRateCapabilities capabilities;
+	private volatile StopBits[] stopBitsOptions;
+	
+	/**
+	 * RTS and DTR as last set. Windows can't report its own outputs so they're 
+	 * tracked here and carried across SetCommState.
+	 */
+	private volatile int outputLines;
+	
+	/**
+	 * Set while RTS is toggled around writes for RS-485. The transmitter is 
+	 * enabled by the first write and released once no writes are outstanding 
+	 * and the driver reports its output queue empty. Guarded by transmitLock.
+	 */
+	private volatile RS485Settings toggle;
+	private final Object transmitLock = new Object();
+	private int transmitting;
+	private boolean transmitterEnabled;
+	
+	/**
+	 * Identifies the scheduled release of the transmitter, if any. A write 
+	 * that starts in the meantime clears it so the release is skipped. 
+	 * Guarded by transmitLock.
+	 */
+	private Object pendingRelease;
+	
+	/**
+	 * Set while the timeouts make reads wait for a frame.
+	 */
+	private volatile boolean framedReads;
 	//</editor-fold>
 	
 	//<editor-fold defaultstate="collapsed" desc="Init">
@@ -57,6 +105,7 @@ class SerialPort extends comm.platform.dev.SerialPort {
 	}
 	
 	private void init() {
+		this.available = true;
 	}
 	//</editor-fold>
 	
@@ -70,8 +119,55 @@ class SerialPort extends comm.platform.dev.SerialPort {
 		this.description = description;
 		this.portType = portType;
 	}
+	
+	/**
+	 * Cleared while the device is unplugged. The same instance is handed 
+	 * out again if it comes back.
+	 */
+	void setAvailable(boolean available) {
+		this.available = available;
+	}
 	//</editor-fold>
 
+	@Override
+	protected BaudRateCapabilities getBaudRateCapabilities() {
+		final BaudRateCapabilities c = capabilities;
+		return (c != null ? c : BaudRates.Capabilities);
+	}
+	
+	@Override
+	protected StopBits[] getStopBitsOptions() {
+		return stopBitsOptions;
+	}
+	
+	/**
+	 * Narrows the accepted rates and stop bits to what the driver reports. 
+	 * Drivers that leave the fields empty keep the platform's.
+	 */
+	private void readCommProperties(HANDLE h) {
+		final COMMPROP prop = new COMMPROP();
+		if (!CommAPI.INSTANCE.GetCommProperties(h, prop))
+			return;
+		
+		if (prop.dwSettableBaud != 0)
+			this.capabilities = BaudRates.fromSettableBaud(prop.dwSettableBaud);
+		
+		final int settable = prop.wSettableStopParity & 0xFFFF;
+		final StopBits[] options = new StopBits[3];
+		int count = 0;
+		if ((settable & STOPBITS_10) != 0)
+			options[count++] = StopBits.STOPBITS_1;
+		if ((settable & STOPBITS_15) != 0)
+			options[count++] = StopBits.STOPBITS_1_5;
+		if ((settable & STOPBITS_20) != 0)
+			options[count++] = StopBits.STOPBITS_2;
+		if (count > 0) {
+			final StopBits[] supported = new StopBits[count];
+			System.arraycopy(options, 0, supported, 0, count);
+			this.stopBitsOptions = supported;
+		}
+	}
+	
 	@Override
 	public boolean open(int readBufferSize, int writeBufferSize) {
 		if (readBufferSize <= 0)
@@ -114,10 +210,22 @@ class SerialPort extends comm.platform.dev.SerialPort {
 					return false;
 				}
 				
-				if (!configureSystemSerialPort(h, baudRate, dataBits, stopBits, parity)) {
+				readCommProperties(h);
+				
+				final LineSettings settings = getLineSettings();
+				final BaudRateCapabilities c = capabilities;
+				final StopBits[] s = stopBitsOptions;
+				if ((c != null && !c.isValid(baudRate)) || !isSupported(s, stopBits)) {
+					API.CloseHandle(h);
+					return false;
+				}
+				
+				this.dcb = null;
+				if (!configureSystemSerialPort(h, settings, true)) {
 					API.CloseHandle(h);
 					return false;
 				}
+				this.appliedSettings = settings;
 				
 				//Associate this port's handle with the IO completion port.
 				if (!IOComPort.associateCommPort(h, this, readBufferSize, writeBufferSize)) {
@@ -128,6 +236,13 @@ class SerialPort extends comm.platform.dev.SerialPort {
 				
 				this.handle = h;
 				
+				if (rs485Settings != null && !changeSystemRS485(rs485Settings)) {
+					IOComPort.unassociateCommPort(h);
+					API.CloseHandle(h);
+					this.handle = null;
+					return false;
+				}
+				
 				return (opened = true);
 			} catch(ExceptionInInitializerError e) {
 				throw e;
@@ -140,24 +255,42 @@ class SerialPort extends comm.platform.dev.SerialPort {
 	
 	@Override
 	protected boolean configureSystemSerialPort(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
-		return configureSystemSerialPort(handle, baudRate, dataBits, stopBits, parity);
+		return configureSystemSerialPort(handle, new LineSettings(baudRate, dataBits, stopBits, parity, getFlowControlFlag(), readTiming), false);
 	}
 	
-	protected boolean configureSystemSerialPort(HANDLE handle, int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
+	@Override
+	protected boolean configureSystemSerialPort(LineSettings settings) {
+		return configureSystemSerialPort(handle, settings, !ReadTiming.isSame(settings.getReadTiming(), readTiming));
+	}
+	
+	/**
+	 * Writes baud rate, framing and flow control to the driver with a single 
+	 * SetCommState, followed by the settings' read timing when asked to (on 
+	 * open, or when the timing changes along with the rest). 
+	 * {@link #changeSystemReadTiming(ReadTiming)} changes the timing alone.
+	 */
+	protected boolean configureSystemSerialPort(HANDLE handle, LineSettings settings, boolean setTimeouts) {
 		if (handle == null || handle == INVALID_HANDLE_VALUE)
 			return false;
 		
 		CommAPI	API = CommAPI.INSTANCE;
-		DCB dcb = new DCB();
-		dcb.DCBlength = dcb.size();
-		if (!API.GetCommState(handle, dcb))
-			return false;
+		DCB dcb = this.dcb;
+		if (dcb == null) {
+			dcb = new DCB();
+			dcb.DCBlength = dcb.size();
+			if (!API.GetCommState(handle, dcb))
+				return false;
+		}
+		
+		final DataBits dataBits = settings.getDataBits();
+		final StopBits stopBits = settings.getStopBits();
+		final Parity parity = settings.getParity();
 		
 		byte sb = ONESTOPBIT;
 		byte par = NOPARITY;
 		byte db = 8;
 		int flags = 0;
-		int flowControlFlag = getFlowControlFlag();
+		int flowControlFlag = settings.getFlowControlFlag();
 		
 		//Build DCB flags
 		flags |= DCB.BIT_FIELD_FLAG_BINARY;
@@ -168,6 +301,11 @@ class SerialPort extends comm.platform.dev.SerialPort {
 		flags |= (FlowControl.isFlagged(flowControlFlag, FlowControl.XONXOFF_IN) || FlowControl.isFlagged(flowControlFlag, FlowControl.XONXOFF_OUT) ? DCB.BIT_FIELD_FLAG_TXCONTINUEONXOFF : DCB.BIT_FIELD_FLAG_NOP);
 		flags |= DCB.BIT_FIELD_FLAG_ABORTONERROR;
 		
+		//SetCommState() would otherwise drop whatever lines were raised with EscapeCommFunction().
+		final int lines = outputLines;
+		flags |= ((lines & MODEM_DTR) == MODEM_DTR ? DCB.DTR_CONTROL_ENABLE : DCB.BIT_FIELD_FLAG_NOP);
+		flags |= ((lines & MODEM_RTS) == MODEM_RTS ? DCB.RTS_CONTROL_ENABLE : DCB.BIT_FIELD_FLAG_NOP);
+		
 		switch(dataBits) {
 			case DATABITS_5:
 				db = 5;
@@ -215,7 +353,7 @@ class SerialPort extends comm.platform.dev.SerialPort {
 				break;
 		}
 		
-		dcb.BaudRate = BaudRates.mapToSystemConstant(baudRate);
+		dcb.BaudRate = BaudRates.mapToSystemConstant(settings.getBaudRate());
 		dcb.fFlags = flags;
 		//dcb.XonLim = 128;
 		//dcb.XoffLim = 128;
@@ -227,14 +365,65 @@ class SerialPort extends comm.platform.dev.SerialPort {
 		//dcb.EvtChar = '\n';
 		//dcb.EofChar = 0;
 		
+		if (!API.SetCommState(handle, dcb)) {
+			//Don't trust the cached copy after a failure.
+			this.dcb = null;
+			return false;
+		}
+		
+		//Drivers may round the rate to what their divisor allows.
+		final DCB applied = new DCB();
+		applied.DCBlength = applied.size();
+		if (API.GetCommState(handle, applied)) {
+			this.dcb = applied;
+			this.actualBaudRate = (applied.BaudRate > 0 ? applied.BaudRate : settings.getBaudRate());
+		} else {
+			this.dcb = null;
+			this.actualBaudRate = settings.getBaudRate();
+		}
+		
+		if (!setTimeouts)
+			return true;
+		
+		return setCommTimeouts(handle, settings.getReadTiming());
+	}
+	
+	/**
+	 * With no read timing, reads return immediately with whatever has 
+	 * arrived. Otherwise the gap becomes the interval timeout and the total 
+	 * timeout the constant, so a read completes once per frame. Windows has 
+	 * no minimum byte count; a timing with only that keeps the default.
+	 */
+	private boolean setCommTimeouts(HANDLE handle, ReadTiming timing) {
+		final boolean frame = (timing != null && (timing.getInterCharacterTimeout() > 0 || timing.getTotalTimeout() > 0));
+		
 		COMMTIMEOUTS tm = new COMMTIMEOUTS();
-		tm.ReadIntervalTimeout = MAXDWORD;
+		tm.ReadIntervalTimeout = (frame ? timing.getInterCharacterTimeout() : MAXDWORD);
 		tm.ReadTotalTimeoutMultiplier = 0;
-		tm.ReadTotalTimeoutConstant = 0;
+		tm.ReadTotalTimeoutConstant = (frame ? timing.getTotalTimeout() : 0);
 		tm.WriteTotalTimeoutMultiplier = 0;
 		tm.WriteTotalTimeoutConstant = 0;
 		
-		return (API.SetCommState(handle, dcb) && API.SetCommTimeouts(handle, tm));
+		if (!CommAPI.INSTANCE.SetCommTimeouts(handle, tm))
+			return false;
+		this.framedReads = frame;
+		return true;
+	}
+	
+	/**
+	 * True while reads wait for a frame rather than returning immediately. 
+	 * The service thread then only issues a read once data is waiting and 
+	 * doesn't merge consecutive reads.
+	 */
+	boolean isFramedReads() {
+		return framedReads;
+	}
+	
+	@Override
+	protected boolean changeSystemReadTiming(ReadTiming timing) {
+		if (handle == null || handle == INVALID_HANDLE_VALUE)
+			return false;
+		return setCommTimeouts(handle, timing);
 	}
 	
 	@Override
@@ -242,12 +431,246 @@ class SerialPort extends comm.platform.dev.SerialPort {
 		return true;
 	}
 	
+	int getOutputLines() {
+		return outputLines;
+	}
+	
+	@Override
+	protected int querySystemModemStatus() {
+		if (handle == null || handle == INVALID_HANDLE_VALUE)
+			return -1;
+		int[] stat = new int[1];
+		if (!CommAPI.INSTANCE.GetCommModemStatus(handle, stat))
+			return -1;
+		return IOComPort.toModemLines(stat[0]) | outputLines;
+	}
+	
+	@Override
+	protected boolean changeSystemModemLine(int line, boolean state) {
+		if (handle == null || handle == INVALID_HANDLE_VALUE)
+			return false;
+		
+		int func;
+		switch(line) {
+			case MODEM_RTS:
+				//RTS belongs to the driver while it's doing hardware flow control, 
+				//and to us while it's the RS-485 transmit enable.
+				if (FlowControl.isFlagged(getFlowControlFlag(), FlowControl.RTSCTS_IN) || toggle != null)
+					return false;
+				func = (state ? SETRTS : CLRRTS);
+				break;
+			case MODEM_DTR:
+				func = (state ? SETDTR : CLRDTR);
+				break;
+			default:
+				return false;
+		}
+		
+		if (!CommAPI.INSTANCE.EscapeCommFunction(handle, func))
+			return false;
+		outputLines = (state ? outputLines | line : outputLines & ~line);
+		return true;
+	}
+	
+	@Override
+	protected boolean changeSystemBreak(boolean state) {
+		if (handle == null || handle == INVALID_HANDLE_VALUE)
+			return false;
+		return (state ? CommAPI.INSTANCE.SetCommBreak(handle) : CommAPI.INSTANCE.ClearCommBreak(handle));
+	}
+	
+	@Override
+	protected boolean purgeSystemInput() {
+		if (handle == null || handle == INVALID_HANDLE_VALUE)
+			return false;
+		//Only the driver's queue; a read already in flight completes normally.
+		return CommAPI.INSTANCE.PurgeComm(handle, CommAPI.PURGE_RXCLEAR);
+	}
+	
 	@Override
 	protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
 		if (handle == null || handle == INVALID_HANDLE_VALUE)
 			return false;
-		return IOComPort.write(IOComPortsAPI.INSTANCE, handle, buffer, offset, length);
+		if (!beginTransmit())
+			return false;
+		if (IOComPort.write(IOComPortsAPI.INSTANCE, handle, buffer, offset, length))
+			return true;
+		transmitComplete();
+		return false;
+	}
+	
+	@Override
+	protected boolean writeSystem(CharSequence value, TextEncoding encoding) {
+		if (handle == null || handle == INVALID_HANDLE_VALUE)
+			return false;
+		if (!beginTransmit())
+			return false;
+		if (IOComPort.write(IOComPortsAPI.INSTANCE, handle, value, encoding))
+			return true;
+		transmitComplete();
+		return false;
+	}
+	
+	//<editor-fold defaultstate="collapsed" desc="RS-485">
+	private static void pause(int milliseconds) {
+		if (milliseconds <= 0)
+			return;
+		final long deadline = System.nanoTime() + milliseconds * 1000000L;
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0L)
+			LockSupport.parkNanos(remaining);
+	}
+	
+	private boolean setRTSLine(boolean state) {
+		if (!CommAPI.INSTANCE.EscapeCommFunction(handle, (state ? SETRTS : CLRRTS)))
+			return false;
+		outputLines = (state ? outputLines | MODEM_RTS : outputLines & ~MODEM_RTS);
+		return true;
+	}
+	
+	/**
+	 * Windows has no driver-level RS-485 that works across USB adapters, so 
+	 * RTS is always toggled here and EV_TXEMPTY tells us when to let go.
+	 * 
+	 * Neither EV_TXEMPTY nor an empty output queue (cbOutQue == 0) means the 
+	 * line is idle: both only say the driver has handed its last byte to the 
+	 * hardware. The UART's FIFO (16 bytes on a 16550, more on USB adapters) 
+	 * and its shift register may still be sending, so the after send delay 
+	 * has to cover them or the end of the frame is cut off.
+	 */
+	@Override
+	protected boolean changeSystemRS485(RS485Settings settings) {
+		if (handle == null || handle == INVALID_HANDLE_VALUE)
+			return false;
+		
+		synchronized(transmitLock) {
+			if (settings == null) {
+				toggle = null;
+				transmitting = 0;
+				transmitterEnabled = false;
+				pendingRelease = null;
+				IOComPort.watchTransmitter(handle, false);
+				setProperty(PROPERTY_RS485_MODE, null);
+				return true;
+			}
+			
+			if (FlowControl.isFlagged(getFlowControlFlag(), FlowControl.RTSCTS_IN))
+				return false;
+			if (!transmitterEnabled && !setRTSLine(settings.isRTSAfterSend()))
+				return false;
+			if (!IOComPort.watchTransmitter(handle, true))
+				return false;
+			toggle = settings;
+			setProperty(PROPERTY_RS485_MODE, RS485_MODE_RTS_TOGGLE);
+			return true;
+		}
+	}
+	
+	/**
+	 * Enables the transmitter ahead of a write. Writes that come in behind it 
+	 * wait out the turnaround delay here before being queued.
+	 */
+	private boolean beginTransmit() {
+		if (toggle == null)
+			return true;
+		synchronized(transmitLock) {
+			final RS485Settings rs = toggle;
+			if (rs == null)
+				return true;
+			++transmitting;
+			//Still enabled from the last write; no turnaround needed.
+			pendingRelease = null;
+			if (transmitterEnabled)
+				return true;
+			if (!setRTSLine(rs.isRTSOnSend())) {
+				--transmitting;
+				return false;
+			}
+			transmitterEnabled = true;
+			pause(rs.getDelayBeforeSend());
+			return true;
+		}
+	}
+	
+	/**
+	 * Called by the IOCP thread when a write has finished, successfully or 
+	 * not. EV_TXEMPTY may already have come and gone while the write was 
+	 * still outstanding, so the output queue is checked here as well.
+	 */
+	void transmitComplete() {
+		if (toggle == null)
+			return;
+		synchronized(transmitLock) {
+			if (transmitting > 0)
+				--transmitting;
+			if (transmitting > 0 || !transmitterEnabled)
+				return;
+			
+			final int[] errors = new int[1];
+			final COMSTAT stat = new COMSTAT();
+			if (!CommAPI.INSTANCE.ClearCommError(handle, errors, stat))
+				return;
+			
+			//Don't lose any errors we cleared along the way.
+			final int lineErrors = IOComPort.toLineErrors(errors[0]);
+			if (lineErrors != 0 && hasModemListeners())
+				notifyModemListenersLineErrors(lineErrors);
+			
+			if (stat.cbOutQue == 0)
+				releaseTransmitter();
+		}
+	}
+	
+	/**
+	 * Called by the IOCP thread on EV_TXEMPTY.
+	 */
+	void transmitterEmpty() {
+		if (toggle == null)
+			return;
+		synchronized(transmitLock) {
+			if (transmitting == 0 && transmitterEnabled)
+				releaseTransmitter();
+		}
+	}
+	
+	/**
+	 * Must be called while holding transmitLock. Called on the IOCP thread, so 
+	 * the after send delay is waited out on the engine's timer instead.
+	 */
+	private void releaseTransmitter() {
+		final RS485Settings rs = toggle;
+		if (rs == null)
+			return;
+		
+		final int delay = rs.getDelayAfterSend();
+		if (delay <= 0) {
+			if (setRTSLine(rs.isRTSAfterSend()))
+				transmitterEnabled = false;
+			return;
+		}
+		
+		//Already on its way.
+		if (pendingRelease != null)
+			return;
+		
+		final Object release = new Object();
+		pendingRelease = release;
+		IOComPort.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(transmitLock) {
+					//Skipped if a write started, RS-485 was turned off, or the port closed.
+					final RS485Settings current = toggle;
+					if (pendingRelease != release || current == null)
+						return;
+					pendingRelease = null;
+					if (transmitting == 0 && transmitterEnabled && setRTSLine(current.isRTSAfterSend()))
+						transmitterEnabled = false;
+				}
+			}
+		}, delay);
 	}
+	//</editor-fold>
 	
 	@Override
 	public boolean close() {
@@ -262,14 +685,30 @@ class SerialPort extends comm.platform.dev.SerialPort {
 				//This will cause the IOCP worker threads to exit if this is 
 				//the last running port. It's possible that this could take 
 				//a while if there are lots of pending I/O events.
+				final ReadBatch batch = IOComPort.getReadBatch(handle);
 				if (!IOComPort.unassociateCommPort(handle))
 					return false;
 				
 				//Instruct the OS that we're done with this handle.
 				if (!API.CloseHandle(handle))
 					return false;
+				
+				//The driver completes any read still outstanding when the handle 
+				//closes, so nothing can be writing into the batch any more.
+				if (batch != null)
+					batch.dispose();
 
 				this.handle = null;
+				this.dcb = null;
+				this.outputLines = 0;
+				synchronized(transmitLock) {
+					this.toggle = null;
+					this.transmitting = 0;
+					this.transmitterEnabled = false;
+					this.pendingRelease = null;
+				}
+				setProperty(PROPERTY_RS485_MODE, null);
+				this.appliedSettings = null;
 				
 				return !(opened = false);
 			} catch(Throwable t) {
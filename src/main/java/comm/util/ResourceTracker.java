@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.util;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs cleanup actions for objects that become unreachable without being 
+ * disposed -- a phantom reference based replacement for finalizers, 
+ * modeled after java.lang.ref.Cleaner (which isn't available on the Java 
+ * versions we target).
+ * 
+ * Registration and explicit cleanup are O(1): live entries are kept in an 
+ * intrusive doubly-linked list. Cleanup actions must not refer to the 
+ * object being tracked or it will never become unreachable.
+ * 
+ * Resources reclaimed by the garbage collector instead of being disposed 
+ * are counted as leaks. Set the "comm.leakReport" system property to true 
+ * to print a report to stderr at shutdown.
+ * 
+ * @author David Hoyt <dhoyt@hoytsoft.org>
+ */
+public final class ResourceTracker {
+	//<editor-fold defaultstate="collapsed" desc="Constants">
+	public static final String 
+		  LEAK_REPORT_PROPERTY = "comm.leakReport"
+	;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Variables">
+	private static final Object lock = new Object();
+	private static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	private static final Map<String, long[]> leaks = new TreeMap<String, long[]>();
+	
+	//Sentinel for the list of live entries.
+	private static final Entry head = new Entry();
+	private static int liveCount = 0;
+	private static long leakedCount = 0L;
+	
+	private static final Thread cleanerThread;
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	static {
+		head.next = head.prev = head;
+		
+		cleanerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(true) {
+					try {
+						((Entry)queue.remove()).clean(true);
+					} catch(InterruptedException ie) {
+						//Keep running -- there's no other way to free these.
+					} catch(Throwable t) {
+						//A failing action shouldn't stop the others from running.
+					}
+				}
+			}
+		}, "Resource Cleaner");
+		cleanerThread.setDaemon(true);
+		cleanerThread.setPriority(Thread.MAX_PRIORITY - 2);
+		cleanerThread.start();
+		
+		if (isLeakReportEnabled()) {
+			Thread hook = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					String report = getLeakReport();
+					if (!StringUtil.isNullOrEmpty(report))
+						System.err.print(report);
+				}
+			}, "Resource Leak Report");
+			Runtime.getRuntime().addShutdownHook(hook);
+		}
+	}
+	
+	private ResourceTracker() {
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Interfaces">
+	public static interface ICleanable {
+		/**
+		 * Deregisters the object and runs its cleanup action. Only the first 
+		 * call has any effect.
+		 */
+		void clean();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Getters">
+	public static boolean isLeakReportEnabled() {
+		return Boolean.getBoolean(LEAK_REPORT_PROPERTY);
+	}
+	
+	/**
+	 * Number of registered objects that haven't been cleaned yet.
+	 */
+	public static int getLiveCount() {
+		synchronized(lock) {
+			return liveCount;
+		}
+	}
+	
+	/**
+	 * Number of objects cleaned by the garbage collector rather than explicitly.
+	 */
+	public static long getLeakedCount() {
+		synchronized(lock) {
+			return leakedCount;
+		}
+	}
+	
+	/**
+	 * Describes, per kind of resource, how many are still live and how many 
+	 * were reclaimed without being disposed. Empty if there's nothing to report.
+	 */
+	public static String getLeakReport() {
+		final Map<String, long[]> counts = new TreeMap<String, long[]>();
+		synchronized(lock) {
+			for(Map.Entry<String, long[]> e : leaks.entrySet())
+				counts.put(e.getKey(), new long[] { 0L, e.getValue()[0] });
+			for(Entry e = head.next; e != head; e = e.next) {
+				long[] c = counts.get(e.kind);
+				if (c == null)
+					counts.put(e.kind, (c = new long[2]));
+				c[0]++;
+			}
+		}
+		
+		if (counts.isEmpty())
+			return StringUtil.empty;
+		
+		final StringBuilder sb = new StringBuilder(64 * (counts.size() + 1));
+		sb.append("Undisposed native resources:\n");
+		for(Map.Entry<String, long[]> e : counts.entrySet())
+			sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()[0]).append(" live, ").append(e.getValue()[1]).append(" leaked\n");
+		return sb.toString();
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Public Static Methods">
+	/**
+	 * Runs <code>action</code> once <code>referent</code> becomes phantom 
+	 * reachable, unless {@link ICleanable#clean()} is called first.
+	 * 
+	 * @param kind Groups resources in the leak report (e.g. "FreeableMemory").
+	 */
+	public static ICleanable register(Object referent, Runnable action, String kind) {
+		if (referent == null)
+			throw new NullPointerException("referent cannot be null");
+		if (action == null)
+			throw new NullPointerException("action cannot be null");
+		
+		final Entry e = new Entry(referent, action, kind);
+		synchronized(lock) {
+			e.prev = head;
+			e.next = head.next;
+			head.next.prev = e;
+			head.next = e;
+			++liveCount;
+		}
+		return e;
+	}
+	//</editor-fold>
+	
+	//<editor-fold defaultstate="collapsed" desc="Entry">
+	private static final class Entry extends PhantomReference<Object> implements ICleanable {
+		private final Runnable action;
+		private final String kind;
+		Entry prev, next;
+		
+		/**
+		 * Used for the list sentinel.
+		 */
+		Entry() {
+			super(null, null);
+			this.action = null;
+			this.kind = null;
+		}
+		
+		Entry(Object referent, Runnable action, String kind) {
+			super(referent, queue);
+			this.action = action;
+			this.kind = (kind != null ? kind : referent.getClass().getName());
+		}
+		
+		@Override
+		public void clean() {
+			clean(false);
+		}
+		
+		void clean(boolean collected) {
+			synchronized(lock) {
+				//Already unlinked?
+				if (next == null)
+					return;
+				prev.next = next;
+				next.prev = prev;
+				next = prev = null;
+				--liveCount;
+				
+				if (collected) {
+					++leakedCount;
+					long[] c = leaks.get(kind);
+					if (c == null)
+						leaks.put(kind, (c = new long[1]));
+					c[0]++;
+				}
+			}
+			clear();
+			action.run();
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import java.nio.ByteBuffer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class LineSettingsTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	private static class CountingPort extends comm.platform.dev.SerialPort {
+		int applies;
+		LineSettings last;
+		
+		CountingPort(String name) {
+			super(name, name, name, PortType.SERIAL);
+		}
+		
+		@Override
+		public boolean open(int readBufferSize, int writeBufferSize) {
+			appliedSettings = getLineSettings();
+			return (opened = true);
+		}
+		
+		@Override
+		public boolean close() {
+			appliedSettings = null;
+			opened = false;
+			return true;
+		}
+		
+		@Override
+		protected boolean configureSystemSerialPort(LineSettings settings) {
+			++applies;
+			last = settings;
+			return true;
+		}
+		
+		@Override
+		protected boolean configureSystemSerialPort(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
+			return true;
+		}
+		
+		@Override
+		protected boolean changeSystemFlowControl(FlowControl... flowControl) {
+			return true;
+		}
+		
+		@Override
+		protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+			return true;
+		}
+	}
+
+	@Test
+	public void builderOnlyChangesWhatWasSet() {
+		LineSettings base = new LineSettings(9600, DataBits.DATABITS_8, StopBits.STOPBITS_1, Parity.NONE, FlowControl.NONE);
+		LineSettings next = new LineSettings.Builder()
+			.setBaudRate(115200)
+			.setFlowControl(FlowControl.RTSCTS_IN, FlowControl.RTSCTS_OUT)
+			.applyTo(base)
+		;
+		
+		assertEquals(115200, next.getBaudRate());
+		assertEquals(DataBits.DATABITS_8, next.getDataBits());
+		assertEquals(StopBits.STOPBITS_1, next.getStopBits());
+		assertEquals(Parity.NONE, next.getParity());
+		assertEquals(ISerialPort.FLOWCONTROL_RTSCTS_IN | ISerialPort.FLOWCONTROL_RTSCTS_OUT, next.getFlowControlFlag());
+		assertEquals(base, new LineSettings.Builder().applyTo(base));
+		assertNull(next.getReadTiming());
+		
+		final ReadTiming timing = new ReadTiming(50, 0, 0);
+		LineSettings timed = new LineSettings.Builder().setReadTiming(timing).applyTo(base);
+		assertEquals(timing, timed.getReadTiming());
+		assertFalse(base.equals(timed));
+		assertEquals(timing, new LineSettings.Builder().setBaudRate(19200).applyTo(timed).getReadTiming());
+		assertNull(new LineSettings.Builder().setReadTiming(null).applyTo(timed).getReadTiming());
+	}
+	
+	@Test
+	public void unchangedSettingsAreNotReapplied() {
+		CountingPort port = new CountingPort("COM9");
+		assertTrue(port.configure(9600, DataBits.DATABITS_8, StopBits.STOPBITS_1, Parity.NONE));
+		assertTrue(port.open());
+		
+		assertTrue(port.configure(9600, DataBits.DATABITS_8, StopBits.STOPBITS_1, Parity.NONE));
+		assertTrue(port.updateConfiguration());
+		assertTrue(port.reconfigure(new LineSettings.Builder().setBaudRate(9600)));
+		assertEquals(0, port.applies);
+		
+		//Baud, parity and flow control in one go.
+		assertTrue(port.reconfigure(new LineSettings.Builder()
+			.setBaudRate(19200)
+			.setParity(Parity.EVEN)
+			.setFlowControl(FlowControl.XONXOFF_IN)
+		));
+		assertEquals(1, port.applies);
+		assertEquals(19200, port.getBaudRate());
+		assertEquals(Parity.EVEN, port.getParity());
+		
+		assertTrue(port.changeFlowControl(FlowControl.XONXOFF_IN));
+		assertEquals(1, port.applies);
+		port.close();
+	}
+	
+	@Test
+	public void readTimingGoesOutWithTheRest() {
+		CountingPort port = new CountingPort("COM9");
+		assertTrue(port.open());
+		
+		final ReadTiming timing = new ReadTiming(50, 0, 0);
+		assertTrue(port.reconfigure(new LineSettings.Builder()
+			.setBaudRate(19200)
+			.setReadTiming(timing)
+		));
+		assertEquals(1, port.applies);
+		assertEquals(19200, port.last.getBaudRate());
+		assertEquals(timing, port.last.getReadTiming());
+		assertEquals(timing, port.getReadTiming());
+		assertEquals(timing, port.getLineSettings().getReadTiming());
+		
+		//Other changes keep the timing.
+		assertTrue(port.configure(9600, DataBits.DATABITS_8, StopBits.STOPBITS_1, Parity.NONE));
+		assertEquals(2, port.applies);
+		assertEquals(timing, port.last.getReadTiming());
+		assertTrue(port.reconfigure(new LineSettings.Builder().setReadTiming(timing)));
+		assertEquals(2, port.applies);
+		port.close();
+	}
+}
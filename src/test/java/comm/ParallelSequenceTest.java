@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class ParallelSequenceTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	/**
+	 * Records register writes. The status lines show BUSY until the given 
+	 * number of reads have gone by.
+	 */
+	private static class RecordingPort extends comm.platform.dev.ParallelPort {
+		final List<String> writes = new ArrayList<String>();
+		int busyReads;
+		
+		RecordingPort() {
+			super("parport0", "LPT1", "LPT1", PortType.PARALLEL);
+			this.available = true;
+		}
+		
+		@Override
+		public boolean open(int readBufferSize, int writeBufferSize) {
+			return (opened = true);
+		}
+		
+		@Override
+		public boolean close() {
+			opened = false;
+			return true;
+		}
+		
+		@Override
+		protected boolean configureSystemParallelPort() {
+			return true;
+		}
+		
+		@Override
+		protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+			return true;
+		}
+		
+		@Override
+		protected int readSystemStatus() {
+			if (busyReads > 0) {
+				--busyReads;
+				return IParallelPort.STATUS_BUSY | IParallelPort.STATUS_SELECT;
+			}
+			return IParallelPort.STATUS_SELECT;
+		}
+		
+		@Override
+		protected boolean writeSystemData(int value) {
+			writes.add("D" + Integer.toHexString(value));
+			return true;
+		}
+		
+		@Override
+		protected boolean writeSystemControl(int value) {
+			writes.add("C" + Integer.toHexString(value));
+			return true;
+		}
+	}
+	
+	@Test
+	public void strobeSkipsRedundantWrites() {
+		final RecordingPort port = new RecordingPort();
+		final ParallelSequence seq = new ParallelSequence.Builder()
+			.control(IParallelPort.CONTROL_INIT)
+			.strobe(0x41, 0)
+			.strobe(0x41, 0)
+			.strobe(0x42, 0)
+			.readStatus()
+			.build()
+		;
+		
+		assertFalse(port.run(seq));
+		assertTrue(port.open());
+		
+		final byte[] status = new byte[seq.getStatusCount()];
+		assertTrue(port.run(seq, status));
+		assertEquals("[C4, D41, C5, C4, C5, C4, D42, C5, C4]", port.writes.toString());
+		assertEquals(IParallelPort.STATUS_SELECT, status[0] & 0xFF);
+		port.close();
+	}
+	
+	@Test
+	public void waitStatusTimesOut() {
+		final RecordingPort port = new RecordingPort();
+		assertTrue(port.open());
+		
+		final ParallelSequence seq = new ParallelSequence.Builder()
+			.waitStatus(IParallelPort.STATUS_BUSY, 0)
+			.data(0x55)
+			.setTimeout(100000)
+			.build()
+		;
+		
+		port.busyReads = 3;
+		assertTrue(port.run(seq));
+		assertEquals(0, port.busyReads);
+		
+		port.busyReads = Integer.MAX_VALUE;
+		port.writes.clear();
+		assertFalse(port.run(seq));
+		assertTrue(port.writes.isEmpty());
+		port.close();
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import comm.platform.api.MemoryBuffer;
+import comm.platform.dev.VirtualCommPort;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class PortGroupTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	@Test
+	public void manyProducersKeepPerPortOrder() throws Exception {
+		final int PORTS = 8;
+		final int READS = 2000;
+		final PortGroup group = new PortGroup(256, 8);
+		final VirtualCommPort[] ports = new VirtualCommPort[PORTS];
+		for(int i = 0; i < PORTS; ++i) {
+			ports[i] = new VirtualCommPort("COM" + (i + 1));
+			assertTrue(group.attach(ports[i]));
+		}
+		assertFalse(group.attach(ports[0]));
+		
+		final CountDownLatch go = new CountDownLatch(1);
+		final Thread[] producers = new Thread[PORTS];
+		for(int i = 0; i < PORTS; ++i) {
+			final VirtualCommPort port = ports[i];
+			producers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						go.await();
+					} catch(InterruptedException ie) {
+						return;
+					}
+					//Each read is a 4 byte counter; retry drops so every value arrives.
+					final ByteBuffer b = ByteBuffer.allocate(4);
+					for(int n = 0; n < READS; ) {
+						final long before = group.getDroppedCount(port);
+						b.putInt(0, n);
+						port.inject(b, 0, 4);
+						if (group.getDroppedCount(port) == before)
+							++n;
+						else
+							Thread.yield();
+					}
+				}
+			});
+			producers[i].start();
+		}
+		
+		final Map<ICommPort, Integer> next = new HashMap<ICommPort, Integer>();
+		final PortGroup.IEventHandler handler = new PortGroup.IEventHandler() {
+			@Override
+			public void bytesRead(ICommPort port, long timestamp, ByteBuffer buffer, int offset, int length) {
+				assertEquals(4, length);
+				final Integer expected = next.get(port);
+				assertEquals((expected != null ? expected : 0), buffer.getInt(offset));
+				next.put(port, buffer.getInt(offset) + 1);
+			}
+		};
+		
+		go.countDown();
+		int total = 0;
+		final long deadline = System.currentTimeMillis() + 10000L;
+		while(total < PORTS * READS && System.currentTimeMillis() < deadline)
+			total += group.drain(handler, 64, 10L, TimeUnit.MILLISECONDS);
+		for(Thread t : producers)
+			t.join();
+		
+		assertEquals(PORTS * READS, total);
+		for(VirtualCommPort port : ports) {
+			assertEquals(Integer.valueOf(READS), next.get(port));
+			assertEquals(READS, group.getEventCount(port));
+		}
+		assertEquals(0, group.getPending());
+		group.dispose();
+	}
+	
+	@Test
+	public void busyPortIsHeldToItsShare() {
+		final PortGroup group = new PortGroup(16, 4);
+		final VirtualCommPort busy = new VirtualCommPort("COM1");
+		final VirtualCommPort quiet = new VirtualCommPort("COM2");
+		group.attach(busy);
+		group.attach(quiet);
+		
+		//Ten bytes need three slots; the busy port can fill up to half the ring 
+		//and then only its share of 8.
+		final byte[] ten = new byte[10];
+		for(int i = 0; i < 5; ++i)
+			busy.inject(ten, 0, ten.length);
+		assertEquals(9, group.getPending());
+		assertEquals(2, group.getDroppedCount(busy));
+		assertEquals(20, group.getDroppedBytes(busy));
+		
+		//The quiet port still gets in.
+		quiet.inject(new byte[] { 1, 2 }, 0, 2);
+		assertEquals(0, group.getDroppedCount(quiet));
+		
+		final int[] bytes = new int[2];
+		final int events = group.drain(new PortGroup.IEventHandler() {
+			@Override
+			public void bytesRead(ICommPort port, long timestamp, ByteBuffer buffer, int offset, int length) {
+				bytes[port == busy ? 0 : 1] += length;
+			}
+		}, Integer.MAX_VALUE);
+		assertEquals(10, events);
+		assertEquals(30, bytes[0]);
+		assertEquals(2, bytes[1]);
+		assertEquals(2, group.getDroppedCount());
+		
+		//Detached ports stop publishing.
+		assertTrue(group.detach(busy));
+		busy.inject(ten, 0, ten.length);
+		assertEquals(0, group.getPending());
+		group.dispose();
+	}
+	
+	@Test
+	public void broadcastSharesOneNativeBuffer() throws Exception {
+		final PortGroup group = new PortGroup();
+		final VirtualCommPort[] ports = new VirtualCommPort[3];
+		final AtomicInteger direct = new AtomicInteger(0);
+		final byte[][] received = new byte[ports.length][];
+		for(int i = 0; i < ports.length; ++i) {
+			final int n = i;
+			ports[i] = new VirtualCommPort("COM" + (i + 1));
+			ports[i].addWriteListener(new ICommPort.WriteListenerAdapter() {
+				@Override
+				public void bytesWritten(ByteBuffer buffer, int offset, int length) {
+					if (buffer.isDirect())
+						direct.incrementAndGet();
+					received[n] = new byte[length];
+					for(int j = 0; j < length; ++j)
+						received[n][j] = buffer.get(offset + j);
+				}
+			});
+			group.attach(ports[i]);
+		}
+		ports[0].open();
+		ports[1].open();
+		
+		final int before = MemoryBuffer.getGlobalInstanceCount();
+		final ByteBuffer payload = ByteBuffer.wrap(new byte[] { 9, 8, 7, 6, 5 });
+		payload.position(1);
+		final PortGroup.WriteFuture future = group.write(payload);
+		
+		assertEquals(Integer.valueOf(2), future.get(5L, TimeUnit.SECONDS));
+		assertTrue(future.isDone());
+		assertArrayEquals(new ICommPort[] { ports[2] }, future.getFailedPorts());
+		assertEquals(2, direct.get());
+		assertArrayEquals(new byte[] { 8, 7, 6, 5 }, received[0]);
+		assertArrayEquals(new byte[] { 8, 7, 6, 5 }, received[1]);
+		assertNull(received[2]);
+		
+		//The payload is untouched and the native copy is gone.
+		assertEquals(1, payload.position());
+		assertEquals(before, MemoryBuffer.getGlobalInstanceCount());
+		group.dispose();
+	}
+}
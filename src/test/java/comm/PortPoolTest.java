@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class PortPoolTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	private static class CountingPort extends comm.platform.dev.SerialPort {
+		int opens, closes, configures, purges;
+		
+		CountingPort(String name) {
+			super(name, name, name, PortType.SERIAL);
+			this.available = true;
+		}
+		
+		@Override
+		public boolean open(int readBufferSize, int writeBufferSize) {
+			++opens;
+			return (opened = true);
+		}
+		
+		@Override
+		public boolean close() {
+			++closes;
+			opened = false;
+			return true;
+		}
+		
+		@Override
+		protected boolean configureSystemSerialPort(int baudRate, DataBits dataBits, StopBits stopBits, Parity parity) {
+			++configures;
+			return true;
+		}
+		
+		@Override
+		protected boolean changeSystemFlowControl(FlowControl... flowControl) {
+			return true;
+		}
+		
+		@Override
+		protected boolean purgeSystemInput() {
+			++purges;
+			return true;
+		}
+		
+		@Override
+		protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+			return true;
+		}
+		
+		void receive(String value) throws Exception {
+			final byte[] b = value.getBytes("US-ASCII");
+			notifyReadListenersBytesRead(ByteBuffer.wrap(b), 0, b.length);
+		}
+	}
+	
+	private static class Collector implements ICommPort.IReadListener, ICommPort.ILineListener {
+		final List<String> lines = new ArrayList<String>();
+		int reads;
+		
+		@Override
+		public void bytesRead(ByteBuffer buffer, int offset, int length) {
+			++reads;
+		}
+		
+		@Override
+		public void lineRead(String line) {
+			lines.add(line);
+		}
+	}
+	
+	private static ISerialPort.IConfiguration config(final int baudRate) {
+		return new ISerialPort.IConfiguration() {
+			@Override
+			public int getBaudRate() {
+				return baudRate;
+			}
+			
+			@Override
+			public DataBits getDataBits() {
+				return DataBits.DATABITS_8;
+			}
+			
+			@Override
+			public StopBits getStopBits() {
+				return StopBits.STOPBITS_1;
+			}
+			
+			@Override
+			public Parity getParity() {
+				return Parity.NONE;
+			}
+		};
+	}
+
+	@Test
+	public void portsStayWarmBetweenLeases() {
+		CountingPort port = new CountingPort("COM7");
+		PortPool pool = new PortPool();
+		assertTrue(pool.add(port));
+		
+		PortPool.Lease a = pool.tryLease("com7", "a", config(9600));
+		assertNotNull(a);
+		assertTrue(port.isOwned());
+		assertEquals("a", port.getOwner());
+		assertNull(pool.tryLease("COM7", "b", config(9600)));
+		assertTrue(a.release());
+		assertFalse(a.release());
+		assertFalse(port.isOwned());
+		
+		//Same settings: no reopen, no reconfigure.
+		PortPool.Lease b = pool.tryLease("COM7", "b", config(9600));
+		assertNotNull(b);
+		assertEquals(1, port.opens);
+		assertEquals(0, port.configures);
+		b.release();
+		
+		//Different settings: reconfigure only.
+		PortPool.Lease c = pool.tryLease("COM7", "c", config(115200));
+		assertNotNull(c);
+		assertEquals(1, port.opens);
+		assertEquals(1, port.configures);
+		assertEquals(115200, port.getBaudRate());
+		c.release();
+		
+		pool.dispose();
+		assertEquals(1, port.closes);
+		assertNull(pool.tryLease("COM7", "d", null));
+	}
+	
+	@Test
+	public void nextLesseeStartsClean() throws Exception {
+		CountingPort port = new CountingPort("COM9");
+		PortPool pool = new PortPool();
+		pool.add(port);
+		
+		PortPool.Lease a = pool.tryLease("COM9", "a", null);
+		assertNotNull(a);
+		Collector first = new Collector();
+		a.getPort().addReadListener(first);
+		a.getPort().addLineListener(first);
+		a.getPort().addModemListener(new ISerialPort.ModemListenerAdapter() { });
+		port.receive("ok\r\npart");
+		assertEquals(1, first.reads);
+		assertEquals(Arrays.asList("ok"), first.lines);
+		a.release();
+		
+		assertFalse(port.hasReadListeners());
+		assertFalse(port.hasLineListeners());
+		assertFalse(port.hasModemListeners());
+		assertEquals(1, port.purges);
+		
+		PortPool.Lease b = pool.tryLease("COM9", "b", null);
+		assertNotNull(b);
+		Collector second = new Collector();
+		b.getPort().addLineListener(second);
+		port.receive("next\r\n");
+		
+		//Neither a's listeners nor a's half line carry over.
+		assertEquals(1, first.reads);
+		assertEquals(Arrays.asList("ok"), first.lines);
+		assertEquals(Arrays.asList("next"), second.lines);
+		b.release();
+		pool.dispose();
+	}
+	
+	@Test
+	public void waitersAreHandedThePortOnRelease() throws Exception {
+		CountingPort port = new CountingPort("COM8");
+		final PortPool pool = new PortPool();
+		pool.add(port);
+		
+		PortPool.Lease first = pool.tryLease("COM8", "first", null);
+		assertNotNull(first);
+		assertNull(pool.lease("COM8", "timeout", null, 10L));
+		
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<PortPool.Lease> second = new AtomicReference<PortPool.Lease>();
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				second.set(pool.lease("COM8", "second", null, -1L));
+				done.countDown();
+			}
+		});
+		t.start();
+		
+		while(pool.getWaitingCount("COM8") == 0)
+			Thread.sleep(1L);
+		first.release();
+		
+		assertTrue(done.await(5L, TimeUnit.SECONDS));
+		assertNotNull(second.get());
+		assertEquals("second", port.getOwner());
+		second.get().release();
+		pool.dispose();
+	}
+}
@@ -18,8 +18,15 @@ package comm;
 import comm.ISerialPort;
 import comm.SerialPorts;
 import comm.ICommPort;
+import comm.platform.OSFamily;
+import comm.platform.Sys;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -63,4 +70,53 @@ public class SerialPortTest {
 		//Thread.sleep(60000 * 3);
 		assertTrue(serialPort.close());
 	}
+	
+	@Test
+	public void partialWritesAreResubmitted() throws InterruptedException {
+		Assume.assumeTrue(Sys.isOSFamily(OSFamily.Windows));
+		
+		ISerialPort serialPort = SerialPorts.find("COM2");
+		assertNotNull(serialPort);
+		
+		//Every WriteFile() only gets 3 bytes so the engine has to resubmit the rest.
+		SerialPorts.addPlatformHint("WriteLimit", 3);
+		try {
+			final AtomicInteger pieces = new AtomicInteger();
+			final AtomicInteger written = new AtomicInteger();
+			final AtomicInteger largest = new AtomicInteger();
+			final AtomicInteger completed = new AtomicInteger();
+			final CountDownLatch done = new CountDownLatch(1);
+			serialPort.addWriteListener(new ICommPort.WriteListenerAdapter() {
+				@Override
+				public void bytesWritten(ByteBuffer buffer, int offset, int length) {
+					pieces.incrementAndGet();
+					written.addAndGet(length);
+					if (length > largest.get())
+						largest.set(length);
+				}
+
+				@Override
+				public void writeComplete(ByteBuffer buffer, int length) {
+					completed.set(length);
+					done.countDown();
+				}
+			});
+			
+			assertTrue(serialPort.open());
+			final byte[] data = new byte[64];
+			for(int i = 0; i < data.length; ++i)
+				data[i] = (byte)i;
+			assertTrue(serialPort.write(data, 0, data.length));
+			assertTrue(done.await(5L, TimeUnit.SECONDS));
+			
+			assertEquals(data.length, completed.get());
+			assertEquals(data.length, written.get());
+			assertTrue(largest.get() <= 3);
+			assertTrue(pieces.get() >= (data.length + 2) / 3);
+		} finally {
+			SerialPorts.addPlatformHint("WriteLimit", 0);
+			serialPort.clearWriteListeners();
+			serialPort.close();
+		}
+	}
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.capture;
+
+import comm.ICommPort.IReadListener;
+import comm.ICommPort.WriteListenerAdapter;
+import comm.platform.dev.VirtualCommPort;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class CaptureTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private File directory;
+	
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("capture", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null)
+			for(File f : files)
+				f.delete();
+		directory.delete();
+	}
+	//</editor-fold>
+
+	@Test
+	public void recordAndReplayAcrossSegments() throws Exception {
+		VirtualCommPort source = new VirtualCommPort("COM1");
+		assertTrue(source.open());
+		
+		//Small segments force the recorder to roll over several times.
+		CaptureRecorder recorder = new CaptureRecorder(source, directory, CaptureFormat.MINIMUM_SEGMENT_SIZE, 0);
+		assertTrue(recorder.start());
+		
+		ByteArrayCollector expectedReads = new ByteArrayCollector();
+		byte[] chunk = new byte[100];
+		for(int i = 0; i < 200; ++i) {
+			for(int j = 0; j < chunk.length; ++j)
+				chunk[j] = (byte)(i + j);
+			source.inject(chunk, 0, chunk.length);
+			expectedReads.add(chunk, 0, chunk.length);
+			if (i % 50 == 0)
+				source.write(new byte[] { 'A', 'T', '\r' }, 0, 3);
+		}
+		
+		assertTrue(recorder.stop());
+		recorder.dispose();
+		assertEquals(0L, recorder.getDroppedCount());
+		assertEquals(204L, recorder.getRecordedCount());
+		assertTrue(recorder.getSegments().size() > 1);
+		
+		VirtualCommPort target = new VirtualCommPort("COM1");
+		final ByteArrayCollector reads = new ByteArrayCollector();
+		final ByteArrayCollector writes = new ByteArrayCollector();
+		target.addReadListener(new IReadListener() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				//Bounded to the record, the way a port delivers a read.
+				assertEquals(0, offset);
+				assertEquals(length, buffer.remaining());
+				reads.add(buffer, offset, length);
+				buffer.position(buffer.limit());
+			}
+		});
+		target.addWriteListener(new WriteListenerAdapter() {
+			@Override
+			public void bytesWritten(ByteBuffer buffer, int offset, int length) {
+				writes.add(buffer, offset, length);
+			}
+		});
+		
+		CaptureReplayer replayer = new CaptureReplayer(CaptureReader.open(directory, "COM1"), target, CaptureReplayer.AS_FAST_AS_POSSIBLE, true);
+		assertTrue(replayer.replay());
+		
+		assertArrayEquals(expectedReads.toByteArray(), reads.toByteArray());
+		assertEquals(4 * 3, writes.size());
+	}
+	
+	@Test
+	public void readerSkipsWritesByDefault() throws Exception {
+		VirtualCommPort source = new VirtualCommPort("COM2");
+		source.open();
+		CaptureRecorder recorder = new CaptureRecorder(source, directory);
+		assertTrue(recorder.start());
+		source.inject(new byte[] { 1, 2, 3 }, 0, 3);
+		source.write(new byte[] { 4, 5 }, 0, 2);
+		source.inject(new byte[] { 6 }, 0, 1);
+		assertTrue(recorder.stop());
+		recorder.dispose();
+		
+		CaptureReader reader = CaptureReader.open(directory, "COM2");
+		assertTrue(reader.next());
+		assertTrue(reader.isRead());
+		assertTrue(reader.next());
+		assertTrue(reader.isWrite());
+		assertEquals(2, reader.getLength());
+		assertTrue(reader.next());
+		assertTrue(reader.getTimestamp() >= 0L);
+		assertFalse(reader.next());
+		
+		reader.rewind();
+		final ByteArrayCollector reads = new ByteArrayCollector();
+		VirtualCommPort target = new VirtualCommPort("COM2");
+		target.addReadListener(new IReadListener() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				reads.add(buffer, offset, length);
+			}
+		});
+		CaptureReplayer replayer = new CaptureReplayer(reader, target, 100.0);
+		assertTrue(replayer.replay());
+		assertEquals(2L, replayer.getReplayedCount());
+		assertArrayEquals(new byte[] { 1, 2, 3, 6 }, reads.toByteArray());
+	}
+	
+	@Test
+	public void recordsFromAnOffsetWithoutDisturbingTheBuffer() throws Exception {
+		VirtualCommPort source = new VirtualCommPort("COM3");
+		source.open();
+		final List<Integer> positions = new ArrayList<Integer>();
+		CaptureRecorder recorder = new CaptureRecorder(source, directory);
+		assertTrue(recorder.start());
+		source.addReadListener(new IReadListener() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				positions.add(buffer.position());
+				positions.add(buffer.limit());
+			}
+		});
+		source.inject(new byte[] { 9, 9, 1, 2, 3, 9 }, 2, 3);
+		assertTrue(recorder.stop());
+		recorder.dispose();
+		
+		//The recorder ran first and left the buffer as it found it.
+		assertEquals(0, positions.get(0).intValue());
+		assertEquals(6, positions.get(1).intValue());
+		
+		CaptureReader reader = CaptureReader.open(directory, "COM3");
+		assertTrue(reader.next());
+		assertEquals(3, reader.getLength());
+		final ByteArrayCollector recorded = new ByteArrayCollector();
+		recorded.add(reader.getBuffer(), reader.getOffset(), reader.getLength());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, recorded.toByteArray());
+	}
+	
+	private static class ByteArrayCollector extends java.io.ByteArrayOutputStream {
+		public void add(ByteBuffer buffer, int offset, int length) {
+			for(int i = 0; i < length; ++i)
+				write(buffer.get(offset + i));
+		}
+		
+		public void add(byte[] buffer, int offset, int length) {
+			write(buffer, offset, length);
+		}
+	}
+}
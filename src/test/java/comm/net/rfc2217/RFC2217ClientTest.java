@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import comm.DataBits;
+import comm.ICommPort.ErrorListenerAdapter;
+import comm.ICommPort.ReadListenerAdapter;
+import comm.ICommPort.WriteListenerAdapter;
+import comm.ISerialPort;
+import comm.ISerialPort.ModemListenerAdapter;
+import comm.Parity;
+import comm.SerialPorts;
+import comm.StopBits;
+import comm.platform.dev.VirtualSerialPort;
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class RFC2217ClientTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private RFC2217Server server;
+	private VirtualSerialPort device;
+	private ISerialPort remote;
+	
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		server = new RFC2217Server();
+		device = new VirtualSerialPort("COM1");
+		final InetSocketAddress address = server.export(device, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		remote = SerialPorts.find("127.0.0.1:" + address.getPort());
+		assertNotNull(remote);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		remote.close();
+		server.dispose();
+		device.dispose();
+	}
+	//</editor-fold>
+	
+	private static final class Collector extends ByteArrayOutputStream {
+		synchronized void add(ByteBuffer buffer, int offset, int length) {
+			for(int i = 0; i < length; ++i)
+				write(buffer.get(offset + i));
+			notifyAll();
+		}
+		
+		synchronized byte[] await(int length) throws InterruptedException {
+			final long deadline = System.currentTimeMillis() + 5000L;
+			while(size() < length && System.currentTimeMillis() < deadline)
+				wait(100L);
+			return toByteArray();
+		}
+	}
+	
+	private static void await(Condition condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while(!condition.met() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10L);
+		assertTrue(condition.met());
+	}
+	
+	private static interface Condition {
+		boolean met();
+	}
+	
+	@Test
+	public void remoteNames() {
+		assertTrue(RFC2217SerialPortImplementation.isRemoteName("localhost:2217"));
+		assertTrue(RFC2217SerialPortImplementation.isRemoteName("rfc2217://10.0.0.5:4001"));
+		assertTrue(RFC2217SerialPortImplementation.isRemoteName("[::1]:2217"));
+		assertFalse(RFC2217SerialPortImplementation.isRemoteName("COM1"));
+		assertFalse(RFC2217SerialPortImplementation.isRemoteName("/dev/ttyS0"));
+		assertFalse(RFC2217SerialPortImplementation.isRemoteName("::1:2217"));
+		assertFalse(RFC2217SerialPortImplementation.isRemoteName("host:70000"));
+		
+		assertSame(remote, SerialPorts.find("RFC2217://" + remote.getName()));
+	}
+	
+	@Test
+	public void configureAndStreamData() throws Exception {
+		final Collector toDevice = new Collector();
+		device.addWriteListener(new WriteListenerAdapter() {
+			@Override
+			public void bytesWritten(ByteBuffer buffer, int offset, int length) {
+				toDevice.add(buffer, offset, length);
+			}
+		});
+		final Collector fromDevice = new Collector();
+		remote.addReadListener(new ReadListenerAdapter() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				fromDevice.add(buffer, offset, length);
+			}
+		});
+		
+		assertTrue(remote.configure(115200, DataBits.DATABITS_7, StopBits.STOPBITS_2, Parity.EVEN));
+		assertTrue(remote.open());
+		await(new Condition() {
+			@Override
+			public boolean met() {
+				return remote.getActualBaudRate() == 115200 && device.getStopBits() == StopBits.STOPBITS_2;
+			}
+		});
+		assertEquals(115200, device.getBaudRate());
+		assertEquals(DataBits.DATABITS_7, device.getDataBits());
+		assertEquals(Parity.EVEN, device.getParity());
+		
+		//Reconfiguring an open port goes straight to the server.
+		assertTrue(remote.configure(57600, DataBits.DATABITS_8, StopBits.STOPBITS_1, Parity.NONE));
+		await(new Condition() {
+			@Override
+			public boolean met() {
+				return device.getBaudRate() == 57600 && remote.getActualBaudRate() == 57600;
+			}
+		});
+		
+		//0xFF survives the trip both ways.
+		assertTrue(remote.write(new byte[] { 'a', (byte)0xFF, 'b' }, 0, 3));
+		assertTrue(remote.write(new byte[] { 'c' }, 0, 1));
+		assertArrayEquals(new byte[] { 'a', (byte)0xFF, 'b', 'c' }, toDevice.await(4));
+		
+		device.inject(new byte[] { 'x', (byte)0xFF, 'y' }, 0, 3);
+		assertArrayEquals(new byte[] { 'x', (byte)0xFF, 'y' }, fromDevice.await(3));
+	}
+	
+	@Test
+	public void modemLinesAndDisconnect() throws Exception {
+		final int[] lines = new int[1];
+		remote.addModemListener(new ModemListenerAdapter() {
+			@Override
+			public void modemLinesChanged(int changed, int status) {
+				synchronized(lines) {
+					lines[0] = status;
+				}
+			}
+		});
+		final Throwable[] error = new Throwable[1];
+		remote.addErrorListener(new ErrorListenerAdapter() {
+			@Override
+			public void exceptionCaught(Throwable exc) {
+				error[0] = exc;
+			}
+		});
+		
+		assertTrue(remote.open());
+		
+		//Opening raises DTR and RTS like a local port.
+		await(new Condition() {
+			@Override
+			public boolean met() {
+				return device.getModemStatus() == (ISerialPort.MODEM_DTR | ISerialPort.MODEM_RTS);
+			}
+		});
+		assertTrue(remote.setDTR(false));
+		assertTrue(remote.setBreak(true));
+		await(new Condition() {
+			@Override
+			public boolean met() {
+				return device.getModemStatus() == ISerialPort.MODEM_RTS && device.isBreaking();
+			}
+		});
+		
+		device.setInputLines(ISerialPort.MODEM_CTS | ISerialPort.MODEM_DCD);
+		await(new Condition() {
+			@Override
+			public boolean met() {
+				synchronized(lines) {
+					return (lines[0] & (ISerialPort.MODEM_CTS | ISerialPort.MODEM_DCD)) == (ISerialPort.MODEM_CTS | ISerialPort.MODEM_DCD);
+				}
+			}
+		});
+		assertEquals(ISerialPort.MODEM_CTS | ISerialPort.MODEM_DCD | ISerialPort.MODEM_RTS, remote.getModemStatus());
+		
+		//The server going away closes the port and says why.
+		server.unexport(device);
+		await(new Condition() {
+			@Override
+			public boolean met() {
+				return !remote.isOpen() && error[0] != null;
+			}
+		});
+	}
+}
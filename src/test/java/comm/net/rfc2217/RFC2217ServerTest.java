@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import comm.ICommPort.WriteListenerAdapter;
+import comm.ISerialPort;
+import comm.platform.dev.VirtualSerialPort;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static comm.net.rfc2217.RFC2217.*;
+
+/**
+ * @author David Hoyt
+ */
+public class RFC2217ServerTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private RFC2217Server server;
+	private VirtualSerialPort port;
+	private Socket client;
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+	
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		server = new RFC2217Server();
+		port = new VirtualSerialPort("COM1");
+		final InetSocketAddress address = server.export(port, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		client = new Socket(address.getAddress(), address.getPort());
+		client.setSoTimeout(5000);
+		
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while(server.getConnectionCount() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10L);
+		assertEquals(1, server.getConnectionCount());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.dispose();
+		port.dispose();
+	}
+	//</editor-fold>
+	
+	private static byte[] bytes(int...values) {
+		final byte[] b = new byte[values.length];
+		for(int i = 0; i < values.length; ++i)
+			b[i] = (byte)values[i];
+		return b;
+	}
+	
+	private void send(int...values) throws Exception {
+		client.getOutputStream().write(bytes(values));
+		client.getOutputStream().flush();
+	}
+	
+	/**
+	 * Reads from the client socket until the sequence shows up.
+	 */
+	private void expect(int...values) throws Exception {
+		final byte[] wanted = bytes(values);
+		final InputStream in = client.getInputStream();
+		final byte[] buffer = new byte[256];
+		while(indexOf(received.toByteArray(), wanted) < 0) {
+			final int n = in.read(buffer);
+			assertTrue("Connection closed while waiting for " + Arrays.toString(wanted), n > 0);
+			received.write(buffer, 0, n);
+		}
+	}
+	
+	private static int indexOf(byte[] haystack, byte[] needle) {
+		outer:
+		for(int i = 0; i <= haystack.length - needle.length; ++i) {
+			for(int j = 0; j < needle.length; ++j)
+				if (haystack[i + j] != needle[j])
+					continue outer;
+			return i;
+		}
+		return -1;
+	}
+
+	@Test
+	public void configureAndStreamData() throws Exception {
+		final ByteArrayOutputStream written = new ByteArrayOutputStream();
+		port.addWriteListener(new WriteListenerAdapter() {
+			@Override
+			public void bytesWritten(ByteBuffer buffer, int offset, int length) {
+				synchronized(written) {
+					for(int i = 0; i < length; ++i)
+						written.write(buffer.get(offset + i));
+					written.notifyAll();
+				}
+			}
+		});
+		
+		expect(IAC, WILL, TRANSMIT_BINARY);
+		assertTrue(port.isOpen());
+		
+		send(IAC, WILL, COM_PORT_OPTION);
+		expect(IAC, DO, COM_PORT_OPTION);
+		
+		//115200 baud, then 7E2.
+		send(IAC, SB, COM_PORT_OPTION, SET_BAUDRATE, 0x00, 0x01, 0xC2, 0x00, IAC, SE);
+		expect(IAC, SB, COM_PORT_OPTION, SET_BAUDRATE + SERVER_OFFSET, 0x00, 0x01, 0xC2, 0x00, IAC, SE);
+		send(IAC, SB, COM_PORT_OPTION, SET_DATASIZE, 7, IAC, SE, IAC, SB, COM_PORT_OPTION, SET_PARITY, PARITY_EVEN, IAC, SE);
+		expect(IAC, SB, COM_PORT_OPTION, SET_PARITY + SERVER_OFFSET, PARITY_EVEN, IAC, SE);
+		assertEquals(115200, port.getBaudRate());
+		assertEquals(comm.DataBits.DATABITS_7, port.getDataBits());
+		assertEquals(comm.Parity.EVEN, port.getParity());
+		
+		//Port to client, with 0xFF escaped.
+		port.inject(bytes('a', 0xFF, 'b'), 0, 3);
+		expect('a', 0xFF, 0xFF, 'b');
+		
+		//Client to port, unescaped.
+		send('x', IAC, IAC, 'y');
+		synchronized(written) {
+			final long deadline = System.currentTimeMillis() + 5000L;
+			while(written.size() < 3 && System.currentTimeMillis() < deadline)
+				written.wait(100L);
+		}
+		assertArrayEquals(bytes('x', 0xFF, 'y'), written.toByteArray());
+	}
+	
+	@Test
+	public void modemLinesAndControl() throws Exception {
+		send(IAC, SB, COM_PORT_OPTION, SET_CONTROL, CONTROL_DTR_ON, IAC, SE);
+		expect(IAC, SB, COM_PORT_OPTION, SET_CONTROL + SERVER_OFFSET, CONTROL_DTR_ON, IAC, SE);
+		assertEquals(ISerialPort.MODEM_DTR, port.getModemStatus() & ISerialPort.MODEM_DTR);
+		
+		send(IAC, SB, COM_PORT_OPTION, SET_CONTROL, CONTROL_BREAK_ON, IAC, SE);
+		expect(IAC, SB, COM_PORT_OPTION, SET_CONTROL + SERVER_OFFSET, CONTROL_BREAK_ON, IAC, SE);
+		assertTrue(port.isBreaking());
+		
+		port.setInputLines(ISerialPort.MODEM_CTS | ISerialPort.MODEM_DCD);
+		expect(IAC, SB, COM_PORT_OPTION, NOTIFY_MODEMSTATE + SERVER_OFFSET, MODEMSTATE_DCD | MODEMSTATE_CTS | MODEMSTATE_DELTA_DCD | MODEMSTATE_DELTA_CTS, IAC, SE);
+		
+		//Closing the connection closes the port the server opened.
+		client.close();
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while(port.isOpen() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10L);
+		assertFalse(port.isOpen());
+	}
+	
+	@Test
+	public void stalledPortDoesNotHoldUpOtherClients() throws Exception {
+		final CountDownLatch stalled = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ByteArrayOutputStream written = new ByteArrayOutputStream();
+		final VirtualSerialPort slow = new VirtualSerialPort("COM2") {
+			@Override
+			protected boolean writeSystem(ByteBuffer buffer, int offset, int length) {
+				stalled.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException ie) {
+					return false;
+				}
+				synchronized(written) {
+					for(int i = 0; i < length; ++i)
+						written.write(buffer.get(offset + i));
+					written.notifyAll();
+				}
+				return true;
+			}
+		};
+		
+		final RFC2217Server small = new RFC2217Server(64);
+		try {
+			final InetSocketAddress address = small.export(slow, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+			final Socket other = new Socket(address.getAddress(), address.getPort());
+			try {
+				//Far more than the limit, so the server has to stop reading.
+				final byte[] data = new byte[4096];
+				for(int i = 0; i < data.length; ++i)
+					data[i] = (byte)('a' + (i % 26));
+				other.getOutputStream().write(data);
+				other.getOutputStream().flush();
+				assertTrue(stalled.await(5L, TimeUnit.SECONDS));
+				
+				//This client's commands still get through.
+				send(IAC, SB, COM_PORT_OPTION, SET_CONTROL, CONTROL_DTR_ON, IAC, SE);
+				expect(IAC, SB, COM_PORT_OPTION, SET_CONTROL + SERVER_OFFSET, CONTROL_DTR_ON, IAC, SE);
+				
+				//Everything arrives, in order, once the port moves again.
+				release.countDown();
+				synchronized(written) {
+					final long deadline = System.currentTimeMillis() + 5000L;
+					while(written.size() < data.length && System.currentTimeMillis() < deadline)
+						written.wait(100L);
+				}
+				assertArrayEquals(data, written.toByteArray());
+			} finally {
+				other.close();
+			}
+		} finally {
+			release.countDown();
+			small.dispose();
+			slow.dispose();
+		}
+	}
+	
+	@Test
+	public void codecSplitsAcrossReads() {
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		final int[] sb = new int[2];
+		final TelnetCodec codec = new TelnetCodec(new TelnetCodec.Handler() {
+			@Override
+			public void data(byte[] buffer, int offset, int length) {
+				data.write(buffer, offset, length);
+			}
+			
+			@Override
+			public void command(int command, int option) {
+			}
+			
+			@Override
+			public void subnegotiation(int option, byte[] payload, int length) {
+				sb[0] = option;
+				sb[1] = TelnetCodec.value(payload, 1, length - 1);
+			}
+		});
+		
+		final byte[] stream = bytes('a', IAC, IAC, 'b', IAC, SB, COM_PORT_OPTION, SET_BAUDRATE, 0, 0, 0x25, IAC, IAC, IAC, SE, 'c');
+		for(int i = 0; i < stream.length; ++i)
+			codec.decode(stream, i, 1);
+		
+		assertArrayEquals(bytes('a', 0xFF, 'b', 'c'), data.toByteArray());
+		assertEquals(COM_PORT_OPTION, sb[0]);
+		assertEquals(0x25FF, sb[1]);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.net.rfc2217;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class SelectorLoopTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private SelectorLoop loop;
+	
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		loop = new SelectorLoop("Selector Loop Test");
+	}
+
+	@After
+	public void tearDown() {
+		loop.stop(2000L);
+	}
+	//</editor-fold>
+	
+	private void await(final CountDownLatch latch) throws Exception {
+		assertTrue(latch.await(5L, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void failingTaskDoesNotStopTheLoop() throws Exception {
+		final CountDownLatch ran = new CountDownLatch(1);
+		loop.submit(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("task");
+			}
+		});
+		loop.submit(new Runnable() {
+			@Override
+			public void run() {
+				ran.countDown();
+			}
+		});
+		await(ran);
+		assertTrue(loop.isRunning());
+	}
+	
+	@Test
+	public void failingAttachmentIsClosedAlone() throws Exception {
+		final Pipe bad = Pipe.open();
+		final Pipe good = Pipe.open();
+		bad.source().configureBlocking(false);
+		good.source().configureBlocking(false);
+		
+		final CountDownLatch badClosed = new CountDownLatch(1);
+		final CountDownLatch goodRead = new CountDownLatch(1);
+		final boolean[] goodClosed = new boolean[1];
+		final CountDownLatch registered = new CountDownLatch(1);
+		loop.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					loop.register(bad.source(), SelectionKey.OP_READ, new SelectorLoop.Attachment() {
+						@Override
+						public void ready(SelectionKey key) {
+							throw new RuntimeException("attachment");
+						}
+						
+						@Override
+						public void close() {
+							badClosed.countDown();
+							throw new Error("close");
+						}
+					});
+					loop.register(good.source(), SelectionKey.OP_READ, new SelectorLoop.Attachment() {
+						@Override
+						public void ready(SelectionKey key) throws java.io.IOException {
+							good.source().read(ByteBuffer.allocate(16));
+							goodRead.countDown();
+						}
+						
+						@Override
+						public void close() {
+							goodClosed[0] = true;
+						}
+					});
+				} catch(Exception e) {
+					throw new RuntimeException(e);
+				}
+				registered.countDown();
+			}
+		});
+		await(registered);
+		
+		bad.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+		await(badClosed);
+		
+		good.sink().write(ByteBuffer.wrap(new byte[] { 2 }));
+		await(goodRead);
+		assertTrue(loop.isRunning());
+		assertFalse(goodClosed[0]);
+		
+		bad.sink().close();
+		bad.source().close();
+		good.sink().close();
+		good.source().close();
+	}
+}
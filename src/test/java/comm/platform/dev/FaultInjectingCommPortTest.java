@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import comm.ICommPort;
+import comm.ISerialPort;
+import comm.platform.dev.FaultInjectingCommPort.Fault;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class FaultInjectingCommPortTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	private static FaultInjectingCommPort.Builder faults(long seed) {
+		return new FaultInjectingCommPort.Builder()
+			.setSeed(seed)
+			.setRate(Fault.SHORT_READ, 0.5D)
+			.setRate(Fault.DROPPED_BYTES, 0.2D)
+			.setRate(Fault.LINE_ERROR, 0.2D)
+			.setRate(Fault.SPURIOUS_WAKEUP, 0.2D)
+			.setRate(Fault.PARTIAL_WRITE, 0.5D)
+		;
+	}
+	
+	/**
+	 * Runs the same traffic through a fresh port and returns what the 
+	 * listeners saw, one entry per callback.
+	 */
+	private static List<String> run(FaultInjectingCommPort.Builder builder, final ByteArrayOutputStream written) {
+		final VirtualCommPort device = new VirtualCommPort("COM1");
+		final FaultInjectingCommPort port = builder.build(device);
+		final List<String> seen = new ArrayList<String>();
+		port.addReadListener(new ICommPort.IReadListener() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				final StringBuilder sb = new StringBuilder();
+				for(int i = 0; i < length; ++i)
+					sb.append((char)buffer.get(offset + i));
+				seen.add(sb.toString());
+			}
+		});
+		final int[] lineErrors = new int[1];
+		port.addModemListener(new ISerialPort.ModemListenerAdapter() {
+			@Override
+			public void lineErrors(int errors) {
+				assertTrue(errors == ISerialPort.LINE_ERROR_PARITY || errors == ISerialPort.LINE_ERROR_FRAMING);
+				++lineErrors[0];
+				seen.add("e" + errors);
+			}
+		});
+		device.addWriteListener(new ICommPort.WriteListenerAdapter() {
+			@Override
+			public void bytesWritten(ByteBuffer buffer, int offset, int length) {
+				for(int i = 0; i < length; ++i)
+					written.write(buffer.get(offset + i));
+				seen.add("w" + length);
+			}
+		});
+		assertTrue(port.open());
+		
+		final byte[] chunk = "abcdefghijklmnop".getBytes();
+		for(int i = 0; i < 200; ++i) {
+			device.inject(chunk, 0, 1 + (i % chunk.length));
+			assertTrue(port.write(chunk, 0, chunk.length));
+		}
+		
+		assertTrue(port.getInjectedCount(Fault.SHORT_READ) > 0);
+		assertTrue(port.getInjectedCount(Fault.DROPPED_BYTES) > 0);
+		assertTrue(port.getInjectedCount(Fault.LINE_ERROR) > 0);
+		assertEquals(port.getInjectedCount(Fault.LINE_ERROR), lineErrors[0]);
+		assertTrue(port.getInjectedCount(Fault.SPURIOUS_WAKEUP) > 0);
+		assertTrue(port.getInjectedCount(Fault.PARTIAL_WRITE) > 0);
+		assertEquals(0L, port.getInjectedCount(Fault.DISCONNECT));
+		assertTrue(port.close());
+		return seen;
+	}
+	
+	@Test
+	public void sameSeedInjectsTheSameFaults() {
+		final ByteArrayOutputStream first = new ByteArrayOutputStream();
+		final ByteArrayOutputStream second = new ByteArrayOutputStream();
+		final List<String> a = run(faults(42L), first);
+		final List<String> b = run(faults(42L), second);
+		assertEquals(a, b);
+		assertFalse(a.equals(run(faults(43L), new ByteArrayOutputStream())));
+		
+		//Split writes still get every byte through, in order.
+		final StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 200; ++i)
+			expected.append("abcdefghijklmnop");
+		assertEquals(expected.toString(), new String(first.toByteArray()));
+		
+		//Nothing set, nothing injected.
+		final VirtualCommPort device = new VirtualCommPort("COM2");
+		final FaultInjectingCommPort clean = new FaultInjectingCommPort.Builder().build(device);
+		final List<String> seen = new ArrayList<String>();
+		clean.addReadListener(new ICommPort.IReadListener() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				seen.add(Integer.toString(length));
+			}
+		});
+		assertTrue(clean.open());
+		device.inject("hello".getBytes(), 0, 5);
+		assertEquals(1, seen.size());
+		assertEquals("5", seen.get(0));
+	}
+	
+	@Test
+	public void disconnectClosesThePort() {
+		final VirtualCommPort device = new VirtualCommPort("COM1");
+		final FaultInjectingCommPort port = new FaultInjectingCommPort.Builder().setRate(Fault.DISCONNECT, 1.0D).build(device);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		port.addErrorListener(new ICommPort.ErrorListenerAdapter() {
+			@Override
+			public void exceptionCaught(Throwable exc) {
+				error.set(exc);
+			}
+		});
+		
+		assertTrue(port.open());
+		assertTrue(device.isOpen());
+		assertFalse(port.print("gone"));
+		assertTrue(port.isDisconnected());
+		assertFalse(port.isOpen());
+		assertFalse(port.isAvailable());
+		assertFalse(device.isOpen());
+		assertTrue(error.get() instanceof IOException);
+		assertFalse(port.open());
+		
+		port.reconnect();
+		assertTrue(port.open());
+		assertTrue(port.close());
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import comm.ICommPort.ILineListener;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class LineDecoderTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private final List<String> lines = new ArrayList<String>();
+	private final ILineListener collector = new ILineListener() {
+		@Override
+		public void lineRead(String line) {
+			lines.add(line);
+		}
+	};
+	
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+		lines.clear();
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+
+	@Test
+	public void asciiLinesAcrossReads() {
+		LineDecoder decoder = new LineDecoder(Charset.forName("US-ASCII"));
+		feed(decoder, "OK\r\nAT+C".getBytes());
+		feed(decoder, "SQ\r\n\n".getBytes());
+		
+		assertEquals(3, lines.size());
+		assertEquals("OK", lines.get(0));
+		assertEquals("AT+CSQ", lines.get(1));
+		assertEquals("", lines.get(2));
+	}
+	
+	@Test
+	public void asciiReplacesHighBytes() {
+		LineDecoder decoder = new LineDecoder(Charset.forName("US-ASCII"));
+		feed(decoder, new byte[] { 'a', (byte)0xE9, 'b', '\n' });
+		
+		assertEquals(1, lines.size());
+		assertEquals("a\uFFFDb", lines.get(0));
+	}
+	
+	@Test
+	public void utf8SequenceSplitAcrossReads() throws Exception {
+		LineDecoder decoder = new LineDecoder(Charset.forName("UTF-8"));
+		byte[] data = "\u00E9t\u00E9 \u20AC \uD83D\uDE00\n".getBytes("UTF-8");
+		
+		//Deliver one byte at a time so every multi-byte sequence is split.
+		for(int i = 0; i < data.length; ++i)
+			feed(decoder, new byte[] { data[i] });
+		
+		assertEquals(1, lines.size());
+		assertEquals("\u00E9t\u00E9 \u20AC \uD83D\uDE00", lines.get(0));
+	}
+	
+	@Test
+	public void respectsOffsetAndLength() {
+		LineDecoder decoder = new LineDecoder(Charset.forName("ISO-8859-1"));
+		ByteBuffer buffer = ByteBuffer.wrap("xxabc\nyy".getBytes());
+		decoder.decode(buffer, 2, 4, collector);
+		
+		assertEquals(1, lines.size());
+		assertEquals("abc", lines.get(0));
+		assertEquals(0, buffer.position());
+	}
+	
+	@Test
+	public void resetDiscardsPartialLine() {
+		LineDecoder decoder = new LineDecoder(Charset.forName("UTF-8"));
+		feed(decoder, "partial".getBytes());
+		decoder.reset();
+		feed(decoder, "line\n".getBytes());
+		
+		assertEquals(1, lines.size());
+		assertEquals("line", lines.get(0));
+	}
+	
+	@Test
+	public void unterminatedInputIsCappedAndDispatchedOutsideTheLock() {
+		final LineDecoder decoder = new LineDecoder(Charset.forName("ISO-8859-1"), 8);
+		final List<Boolean> locked = new ArrayList<Boolean>();
+		final byte[] data = "0123456789abcdefXY\n".getBytes();
+		decoder.decode(ByteBuffer.wrap(data), 0, data.length, new ILineListener() {
+			@Override
+			public void lineRead(String line) {
+				lines.add(line);
+				locked.add(Thread.holdsLock(decoder));
+			}
+		});
+		
+		assertEquals(3, lines.size());
+		assertEquals("01234567", lines.get(0));
+		assertEquals("89abcdef", lines.get(1));
+		assertEquals("XY", lines.get(2));
+		assertFalse(locked.contains(Boolean.TRUE));
+	}
+	
+	private void feed(LineDecoder decoder, byte[] data) {
+		decoder.decode(ByteBuffer.wrap(data), 0, data.length, collector);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import comm.util.ResourceTracker;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class ReadBatchTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	@Test
+	public void readsAppendUntilDelivered() {
+		final ReadBatch batch = new ReadBatch(16, 16);
+		assertFalse(batch.isAdaptive());
+		
+		batch.getFree().setByte(0, (byte)'a');
+		batch.filled(1);
+		batch.getFree().setByte(0, (byte)'b');
+		batch.filled(1);
+		assertEquals(14, batch.getRoom());
+		assertEquals('a', batch.getBatch().get(0));
+		assertEquals('b', batch.getBatch().get(1));
+		assertEquals(2, batch.getBatch().remaining());
+		
+		batch.reset();
+		assertEquals(0, batch.getFilled());
+		assertEquals(16, batch.getCapacity());
+	}
+	
+	@Test
+	public void growsWithBurstsAndShrinksWhenQuiet() {
+		final ReadBatch batch = new ReadBatch(16, 128);
+		assertTrue(batch.isAdaptive());
+		
+		//Full batches double the buffer up to the limit.
+		for(int i = 0; i < 8; ++i) {
+			batch.filled(batch.getRoom());
+			batch.reset();
+		}
+		assertEquals(128, batch.getCapacity());
+		
+		//A few small batches aren't enough to give the memory back.
+		for(int i = 0; i < 8; ++i) {
+			batch.filled(1);
+			batch.reset();
+		}
+		assertEquals(128, batch.getCapacity());
+		
+		for(int i = 0; i < 1000; ++i) {
+			batch.filled(1);
+			batch.reset();
+		}
+		assertEquals(16, batch.getCapacity());
+		
+		//Bytes known to be waiting are made room for up front.
+		batch.ensure(40);
+		assertEquals(64, batch.getCapacity());
+		batch.ensure(1000);
+		assertEquals(128, batch.getCapacity());
+	}
+	
+	@Test
+	public void resizingFreesTheOldBuffer() {
+		final int live = ResourceTracker.getLiveCount();
+		final ReadBatch batch = new ReadBatch(16, 128);
+		assertEquals(live + 1, ResourceTracker.getLiveCount());
+		
+		for(int i = 0; i < 8; ++i) {
+			batch.filled(batch.getRoom());
+			batch.reset();
+		}
+		assertEquals(128, batch.getCapacity());
+		assertEquals(live + 1, ResourceTracker.getLiveCount());
+		
+		batch.dispose();
+		assertEquals(live, ResourceTracker.getLiveCount());
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class TextEncodingTest {
+	private static final String[] SAMPLES = {
+		  ""
+		, "plain ascii\r\n"
+		, "caf\u00E9 \u00FF\u0100"
+		, "\u20AC 100 \u65E5\u672C"
+		, "pair \uD83D\uDE00 end"
+		, "\uD83D\uDE00\uD834\uDD1E"
+		, "lone high \uD83D x"
+		, "lone low \uDE00 x"
+		, "trailing high \uD83D"
+		, "\uDE00\uD83D"
+	};
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	private static void assertMatchesCharset(TextEncoding encoding, String charset) throws Exception {
+		for(String sample : SAMPLES) {
+			final byte[] expected = sample.getBytes(charset);
+			final int length = encoding.encodedLength(sample);
+			assertEquals(sample, expected.length, length);
+			
+			final ByteBuffer dst = ByteBuffer.allocate(length);
+			assertEquals(sample, length, encoding.encode(sample, dst));
+			assertFalse(sample, dst.hasRemaining());
+			assertTrue(sample, Arrays.equals(expected, dst.array()));
+		}
+	}
+	
+	@Test
+	public void utf8MatchesTheJDK() throws Exception {
+		assertMatchesCharset(TextEncoding.UTF_8, "UTF-8");
+		
+		//A lone surrogate becomes a single '?'.
+		final ByteBuffer dst = ByteBuffer.allocate(3);
+		assertEquals(3, TextEncoding.UTF_8.encode("a\uDE00b", dst));
+		assertEquals('?', dst.get(1));
+	}
+	
+	@Test
+	public void narrowCharsetsMatchTheJDK() throws Exception {
+		assertMatchesCharset(TextEncoding.ASCII, "US-ASCII");
+		assertMatchesCharset(TextEncoding.ISO_8859_1, "ISO-8859-1");
+		assertSame(TextEncoding.UTF_8, TextEncoding.fromCharset(Charset.forName("UTF-8")));
+		assertNull(TextEncoding.fromCharset(Charset.forName("UTF-16")));
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import comm.ISerialPort;
+import comm.PortWatcher;
+import comm.SerialPorts;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs discovery against a fake sysfs tree laid out like a real one:
+ * 
+ * <pre>
+ *   sys/class/tty/ttyUSB0 -> ../../devices/pci0/usb1/1-1/1-1:1.0/ttyUSB0/tty/ttyUSB0
+ *   sys/devices/pci0/usb1/1-1/{idVendor,idProduct,manufacturer,product,serial}
+ * </pre>
+ * 
+ * @author David Hoyt
+ */
+public class SysfsDiscoveryTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	private File root;
+	private File sys;
+	private File dev;
+	
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		root = File.createTempFile("sysfs", "");
+		root.delete();
+		sys = new File(root, "sys");
+		dev = new File(root, "dev");
+		new File(sys, "class/tty").mkdirs();
+		new File(sys, "bus/usb-serial/drivers/ftdi_sio").mkdirs();
+		new File(sys, "bus/usb/drivers/cdc_acm").mkdirs();
+		new File(sys, "bus/platform/drivers/serial8250").mkdirs();
+		new File(sys, "bus/serial-base/drivers/port").mkdirs();
+		new File(dev, "serial/by-id").mkdirs();
+		
+		//Symbolic links are required to mimic sysfs.
+		Assume.assumeTrue(link(new File(sys, "class"), new File(root, "probe")));
+		new File(root, "probe").delete();
+	}
+
+	@After
+	public void tearDown() {
+		delete(root);
+	}
+	//</editor-fold>
+
+	@Test
+	public void describesUSBAdapters() throws Exception {
+		addUSB("ttyUSB0", "1-1", "1-1:1.0/ttyUSB0", "ftdi_sio", "usb-serial", "0403", "6001", "FTDI", "FT232R USB UART", "A9012345");
+		addUSB("ttyACM0", "1-2", "1-2:1.0", "cdc_acm", "usb", "2341", "0043", "Arduino (www.arduino.cc)", null, "85235353137351E02242");
+		new File(dev, "ttyUSB0").createNewFile();
+		link(new File(dev, "ttyUSB0"), new File(dev, "serial/by-id/usb-FTDI_FT232R_USB_UART_A9012345-if00-port0"));
+		
+		Map<String, SysfsDiscovery.PortInfo> ports = new SysfsDiscovery(sys, dev, null).discover();
+		assertEquals(2, ports.size());
+		
+		SysfsDiscovery.PortInfo ftdi = ports.get(new File(dev, "ttyUSB0").getPath());
+		assertNotNull(ftdi);
+		assertEquals("ftdi_sio", ftdi.getDriver());
+		assertEquals("0403", ftdi.getVendorId());
+		assertEquals("6001", ftdi.getProductId());
+		assertEquals("A9012345", ftdi.getSerialNumber());
+		assertEquals("1-1", ftdi.getLocation());
+		assertEquals("FT232R USB UART (ttyUSB0)", ftdi.getTitle());
+		assertEquals("FTDI FT232R USB UART [USB VID:PID=0403:6001 SER=A9012345 LOCATION=1-1]", ftdi.getDescription());
+		assertTrue(ftdi.getByIdPath().endsWith("usb-FTDI_FT232R_USB_UART_A9012345-if00-port0"));
+		
+		SysfsDiscovery.PortInfo acm = ports.get(new File(dev, "ttyACM0").getPath());
+		assertNotNull(acm);
+		assertEquals("cdc_acm (ttyACM0)", acm.getTitle());
+		assertNull(acm.getByIdPath());
+	}
+	
+	@Test
+	public void skipsVirtualAndUndetectedTTYs() throws Exception {
+		//Virtual consoles have no device link.
+		new File(sys, "devices/virtual/tty/tty0").mkdirs();
+		link(new File(sys, "devices/virtual/tty/tty0"), new File(sys, "class/tty/tty0"));
+		
+		addPlatform("ttyS0", "4");
+		addPlatform("ttyS1", "0");
+		
+		Map<String, SysfsDiscovery.PortInfo> ports = new SysfsDiscovery(sys, dev, null).discover();
+		assertEquals(1, ports.size());
+		SysfsDiscovery.PortInfo s0 = ports.get(new File(dev, "ttyS0").getPath());
+		assertNotNull(s0);
+		assertFalse(s0.isUSB());
+		assertEquals("serial8250 (ttyS0)", s0.getTitle());
+	}
+	
+	@Test
+	public void parallelMatchesSequential() throws Exception {
+		for(int i = 0; i < 32; ++i)
+			addUSB("ttyUSB" + i, "1-" + (i + 1), "1-" + (i + 1) + ":1.0/ttyUSB" + i, "ftdi_sio", "usb-serial", "0403", "6001", "FTDI", "FT232R USB UART", "S" + i);
+		for(int i = 0; i < 64; ++i) {
+			new File(sys, "devices/virtual/tty/tty" + i).mkdirs();
+			link(new File(sys, "devices/virtual/tty/tty" + i), new File(sys, "class/tty/tty" + i));
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			Map<String, SysfsDiscovery.PortInfo> sequential = new SysfsDiscovery(sys, dev, null).discover();
+			Map<String, SysfsDiscovery.PortInfo> parallel = new SysfsDiscovery(sys, dev, pool).discover();
+			assertEquals(32, sequential.size());
+			assertEquals(sequential.keySet(), parallel.keySet());
+			for(String name : sequential.keySet())
+				assertEquals(sequential.get(name).getDescription(), parallel.get(name).getDescription());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void lookupsBetweenRefreshesDontHideChanges() throws Exception {
+		Assume.assumeTrue(SerialPorts.isPlatformSupported());
+		
+		final Object sysfsRoot = PlatformHint.hint(PlatformHint.SysfsRoot);
+		final Object devRoot = PlatformHint.hint(PlatformHint.DevRoot);
+		PlatformHint.add(PlatformHint.SysfsRoot, sys.getPath());
+		PlatformHint.add(PlatformHint.DevRoot, dev.getPath());
+		try {
+			final SysfsSerialPortImplementation impl = new SysfsSerialPortImplementation();
+			final List<String> events = new ArrayList<String>();
+			final PortWatcher.IPortListener listener = new PortWatcher.IPortListener() {
+				@Override
+				public void portAdded(ISerialPort port) {
+					events.add("added " + port.getName());
+				}
+
+				@Override
+				public void portRemoved(ISerialPort port) {
+					events.add("removed " + port.getName());
+				}
+
+				@Override
+				public void portChanged(ISerialPort port) {
+					events.add("changed " + port.getName());
+				}
+			};
+			
+			//What the watcher does when it starts.
+			impl.refreshAvailableSerialPorts(null);
+			
+			addUSB("ttyUSB0", "1-1", "1-1:1.0/ttyUSB0", "ftdi_sio", "usb-serial", "0403", "6001", "FTDI", "FT232R USB UART", "A9012345");
+			final String name = new File(dev, "ttyUSB0").getPath();
+			SerialPorts.invalidate();
+			assertNotNull(SerialPorts.find(name));
+			impl.refreshAvailableSerialPorts(listener);
+			assertEquals(1, events.size());
+			assertEquals("added " + name, events.get(0));
+			
+			events.clear();
+			new File(sys, "class/tty/ttyUSB0").delete();
+			SerialPorts.invalidate();
+			assertNull(SerialPorts.find(name));
+			impl.refreshAvailableSerialPorts(listener);
+			assertEquals(1, events.size());
+			assertEquals("removed " + name, events.get(0));
+		} finally {
+			PlatformHint.add(PlatformHint.SysfsRoot, sysfsRoot);
+			PlatformHint.add(PlatformHint.DevRoot, devRoot);
+			SerialPorts.invalidate();
+		}
+	}
+	
+	//<editor-fold defaultstate="collapsed" desc="Helper Methods">
+	private void addUSB(String tty, String usbDevice, String path, String driver, String bus, String vid, String pid, String manufacturer, String product, String serial) throws IOException {
+		File usb = new File(sys, "devices/pci0/usb1/" + usbDevice);
+		File device = new File(usb, path);
+		File ttyDir = new File(device, "tty/" + tty);
+		ttyDir.mkdirs();
+		
+		write(new File(usb, "idVendor"), vid);
+		write(new File(usb, "idProduct"), pid);
+		write(new File(usb, "manufacturer"), manufacturer);
+		write(new File(usb, "product"), product);
+		write(new File(usb, "serial"), serial);
+		
+		link(new File(sys, "bus/" + bus + "/drivers/" + driver), new File(device, "driver"));
+		link(device, new File(ttyDir, "device"));
+		link(ttyDir, new File(sys, "class/tty/" + tty));
+	}
+	
+	private void addPlatform(String tty, String type) throws IOException {
+		//Newer kernels add a serial core "port" device below the platform device.
+		File platform = new File(sys, "devices/platform/serial8250");
+		File device = new File(platform, tty + ".0");
+		File ttyDir = new File(device, "tty/" + tty);
+		ttyDir.mkdirs();
+		write(new File(ttyDir, "type"), type);
+		
+		if (!new File(platform, "driver").exists())
+			link(new File(sys, "bus/platform/drivers/serial8250"), new File(platform, "driver"));
+		link(new File(sys, "bus/serial-base/drivers/port"), new File(device, "driver"));
+		link(device, new File(ttyDir, "device"));
+		link(ttyDir, new File(sys, "class/tty/" + tty));
+	}
+	
+	private static void write(File f, String value) throws IOException {
+		if (value == null)
+			return;
+		FileOutputStream out = new FileOutputStream(f);
+		try {
+			out.write((value + "\n").getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+	
+	private static boolean link(File target, File link) {
+		try {
+			Process p = new ProcessBuilder("ln", "-s", target.getAbsolutePath(), link.getAbsolutePath()).start();
+			return (p.waitFor() == 0);
+		} catch(Exception e) {
+			return false;
+		}
+	}
+	
+	private static void delete(File f) {
+		//Don't follow links out of the tree.
+		try {
+			if (f.isDirectory() && f.getCanonicalFile().equals(f.getAbsoluteFile())) {
+				File[] children = f.listFiles();
+				if (children != null)
+					for(File c : children)
+						delete(c);
+			}
+		} catch(IOException e) {
+		}
+		f.delete();
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.unix;
+
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.ptr.IntByReference;
+import comm.BaudRate;
+import comm.ICommPort;
+import comm.ISerialPort;
+import comm.LatencyProfile;
+import comm.LineSettings;
+import comm.RS485Settings;
+import comm.ReadTiming;
+import comm.platform.OSFamily;
+import comm.platform.Sys;
+import comm.platform.api.unix.TermiosAPI;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Drives the termios code against a pseudo terminal.
+ * 
+ * @author David Hoyt
+ */
+public class TermiosSerialPortTest {
+	private static final int 
+		  TIOCGPTN   = 0x80045430
+		, TIOCSPTLCK = 0x40045431
+	;
+	
+	private int master = -1;
+	private SerialPort port;
+	
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+		if (port != null)
+			port.close();
+		if (master >= 0)
+			TermiosAPI.INSTANCE.close(master);
+	}
+	//</editor-fold>
+	
+	private SerialPort openPseudoTerminal() {
+		Assume.assumeTrue(Sys.isOSFamily(OSFamily.Unix) && new File("/dev/ptmx").exists());
+		
+		final TermiosAPI API = TermiosAPI.INSTANCE;
+		master = API.open("/dev/ptmx", TermiosAPI.O_RDWR | TermiosAPI.O_NOCTTY);
+		Assume.assumeTrue(master >= 0);
+		
+		final IntByReference ref = new IntByReference(0);
+		assertTrue(TermiosAPI.Util.ioctl(API, master, TIOCSPTLCK, ref) >= 0);
+		assertTrue(TermiosAPI.Util.ioctl(API, master, TIOCGPTN, ref) >= 0);
+		
+		final String path = "/dev/pts/" + ref.getValue();
+		return new SerialPort(new SysfsDiscovery.PortInfo(path, "pts" + ref.getValue(), "pty", null));
+	}
+	
+	private static int openDescriptors() {
+		final String[] fds = new File("/proc/self/fd").list();
+		Assume.assumeTrue(fds != null);
+		return fds.length;
+	}
+
+	@Test
+	public void standardRatesAreIndexed() {
+		assertEquals(1200, BaudRate.B1200.getValue());
+		assertEquals(BaudRate.B921600, BaudRate.fromValue(921600));
+		assertNull(BaudRate.fromValue(250000));
+		
+		assertTrue(BaudRates.Capabilities.isStandard(3000000));
+		assertFalse(BaudRates.Capabilities.isStandard(7200));
+		assertTrue(BaudRates.Capabilities.isValid(250000));
+		assertFalse(BaudRates.Capabilities.isValid(-1));
+		
+		assertEquals(TermiosAPI.B1200, BaudRates.mapToSystemConstant(1200));
+		assertEquals(TermiosAPI.B921600, BaudRates.mapToSystemConstant(921600));
+		assertEquals(TermiosAPI.BOTHER, BaudRates.mapToSystemConstant(250000));
+	}
+	
+	@Test
+	public void arbitraryRateRoundTrip() throws Exception {
+		port = openPseudoTerminal();
+		assertTrue(port.configure(250000, comm.DataBits.DATABITS_8, comm.StopBits.STOPBITS_1, comm.Parity.NONE));
+		
+		final CountDownLatch received = new CountDownLatch(1);
+		final StringBuilder text = new StringBuilder();
+		port.addReadListener(new ICommPort.IReadListener() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				for(int i = 0; i < length; ++i)
+					text.append((char)buffer.get(offset + i));
+				if (text.length() >= 4)
+					received.countDown();
+			}
+		});
+		
+		assertTrue(port.open());
+		assertEquals(250000, port.getBaudRate());
+		assertEquals(250000, port.getActualBaudRate());
+		
+		//A standard rate goes through CBAUD.
+		assertTrue(port.reconfigure(new LineSettings.Builder().setBaudRate(921600)));
+		assertEquals(921600, port.getActualBaudRate());
+		
+		//termios can't ask for 1.5 stop bits.
+		assertFalse(port.configure(921600, comm.DataBits.DATABITS_5, comm.StopBits.STOPBITS_1_5, comm.Parity.NONE));
+		assertEquals(comm.StopBits.STOPBITS_1, port.getStopBits());
+		
+		//Device to host.
+		final Memory out = new Memory(4);
+		out.write(0, "ping".getBytes("ASCII"), 0, 4);
+		assertEquals(4L, TermiosAPI.INSTANCE.write(master, out, new NativeLong(4)).longValue());
+		assertTrue(received.await(5L, TimeUnit.SECONDS));
+		assertEquals("ping", text.toString());
+		
+		//Host to device.
+		assertTrue(port.print("pong"));
+		final Memory in = new Memory(16);
+		assertEquals(4L, TermiosAPI.INSTANCE.read(master, in, new NativeLong(16)).longValue());
+		assertEquals("pong", new String(in.getByteArray(0, 4), "ASCII"));
+		
+		assertTrue(port.close());
+		assertEquals(-1, port.getFileDescriptor());
+	}
+	
+	@Test
+	public void lowLatencyProfileIsAppliedAndRestored() throws Exception {
+		port = openPseudoTerminal();
+		
+		//Fake the FTDI latency_timer attribute for this pty.
+		final File sysfs = new File(System.getProperty("java.io.tmpdir"), "comm-latency-" + System.nanoTime());
+		final File device = SysfsDiscovery.deviceDirectory(sysfs, port.getInfo().getTTYName());
+		assertTrue(device.mkdirs());
+		final File timer = new File(device, "latency_timer");
+		final FileOutputStream out = new FileOutputStream(timer);
+		out.write("16\n".getBytes("ASCII"));
+		out.close();
+		
+		final Object root = PlatformHint.hint(PlatformHint.SysfsRoot);
+		PlatformHint.add(PlatformHint.SysfsRoot, sysfs.getPath());
+		try {
+			assertTrue(port.setLatencyProfile(LatencyProfile.LOW_LATENCY));
+			assertTrue(port.open());
+			
+			Map<String, String> properties = port.getProperties();
+			assertEquals("LOW_LATENCY", properties.get(ISerialPort.PROPERTY_LATENCY_PROFILE));
+			assertEquals("1", properties.get(ISerialPort.PROPERTY_VMIN));
+			assertEquals("0", properties.get(ISerialPort.PROPERTY_VTIME));
+			assertEquals("1", properties.get(ISerialPort.PROPERTY_LATENCY_TIMER));
+			assertEquals("1", SysfsDiscovery.readAttribute(timer));
+			
+			assertTrue(port.setLatencyProfile(LatencyProfile.STANDARD));
+			assertEquals("16", port.getProperties().get(ISerialPort.PROPERTY_LATENCY_TIMER));
+			assertTrue(port.setLatencyProfile(LatencyProfile.LOW_LATENCY));
+			
+			assertTrue(port.close());
+			assertEquals("16", SysfsDiscovery.readAttribute(timer));
+			assertNull(port.getProperties().get(ISerialPort.PROPERTY_LATENCY_TIMER));
+		} finally {
+			PlatformHint.add(PlatformHint.SysfsRoot, root);
+			timer.delete();
+			device.delete();
+			device.getParentFile().delete();
+			device.getParentFile().getParentFile().delete();
+			device.getParentFile().getParentFile().getParentFile().delete();
+			sysfs.delete();
+		}
+	}
+	
+	@Test
+	public void modemListenersOnPseudoTerminal() throws Exception {
+		port = openPseudoTerminal();
+		
+		final ISerialPort.IModemListener listener = new ISerialPort.ModemListenerAdapter() {
+		};
+		assertEquals(-1, port.getModemStatus());
+		assertFalse(port.setDTR(true));
+		assertTrue(port.addModemListener(listener));
+		assertTrue(port.hasModemListener(listener));
+		
+		assertTrue(port.open());
+		
+		//Ptys accept a break but have no modem lines to report.
+		assertTrue(port.setBreak(true));
+		assertTrue(port.setBreak(false));
+		
+		//Whatever the watcher is doing, closing must leave the port free to reopen.
+		assertTrue(port.close());
+		
+		//And watcher descriptors don't pile up over open/close cycles.
+		final int before = openDescriptors();
+		for(int i = 0; i < 10; ++i) {
+			assertTrue(port.open());
+			assertTrue(port.close());
+		}
+		assertTrue(openDescriptors() <= before + 1);
+		
+		assertTrue(port.open());
+		assertTrue(port.removeModemListener(listener));
+		assertFalse(port.hasModemListeners());
+		assertTrue(port.close());
+	}
+	
+	@Test
+	public void rs485NeedsDriverOrRTS() throws Exception {
+		port = openPseudoTerminal();
+		
+		final RS485Settings settings = new RS485Settings.Builder().setDelayAfterSend(1).build();
+		assertTrue(settings.isRTSOnSend());
+		assertFalse(settings.isRTSAfterSend());
+		
+		//Closed ports just remember the settings.
+		assertTrue(port.setRS485Settings(settings));
+		assertEquals(settings, port.getRS485Settings());
+		assertTrue(port.setRS485Settings(null));
+		
+		//A pty has neither TIOCSRS485 nor an RTS line to toggle.
+		assertTrue(port.open());
+		assertFalse(port.setRS485Settings(settings));
+		assertNull(port.getRS485Settings());
+		assertNull(port.getProperties().get(ISerialPort.PROPERTY_RS485_MODE));
+		assertTrue(port.print("ok"));
+	}
+	
+	@Test
+	public void readTimingDeliversOneCallbackPerFrame() throws Exception {
+		port = openPseudoTerminal();
+		
+		final ReadTiming timing = new ReadTiming.Builder().setFrameGap(9600, comm.DataBits.DATABITS_8, comm.StopBits.STOPBITS_1, comm.Parity.NONE).build();
+		assertEquals(4, timing.getInterCharacterTimeout());
+		assertEquals(LatencyTuner.MAXIMUM_VMIN, LatencyTuner.vmin(timing));
+		assertEquals(1, LatencyTuner.vtime(timing));
+		assertEquals(1, LatencyTuner.vmin(null));
+		assertEquals(0, LatencyTuner.vtime(null));
+		
+		final List<String> frames = new CopyOnWriteArrayList<String>();
+		final CountDownLatch received = new CountDownLatch(2);
+		port.addReadListener(new ICommPort.IReadListener() {
+			@Override
+			public void bytesRead(ByteBuffer buffer, int offset, int length) {
+				final StringBuilder frame = new StringBuilder();
+				for(int i = 0; i < length; ++i)
+					frame.append((char)buffer.get(offset + i));
+				frames.add(frame.toString());
+				received.countDown();
+			}
+		});
+		
+		assertTrue(port.open());
+		assertTrue(port.setReadTiming(timing));
+		assertEquals(timing, port.getReadTiming());
+		assertEquals("255", port.getProperties().get(ISerialPort.PROPERTY_VMIN));
+		assertEquals("1", port.getProperties().get(ISerialPort.PROPERTY_VTIME));
+		
+		//VTIME rounds the 4 ms gap up to 100 ms, so writes 50 ms apart are 
+		//still one frame. The third comes well after the rounded gap.
+		final Memory out = new Memory(3);
+		out.write(0, "abc".getBytes("ASCII"), 0, 3);
+		assertEquals(3L, TermiosAPI.INSTANCE.write(master, out, new NativeLong(3)).longValue());
+		Thread.sleep(50L);
+		out.write(0, "def".getBytes("ASCII"), 0, 3);
+		assertEquals(3L, TermiosAPI.INSTANCE.write(master, out, new NativeLong(3)).longValue());
+		Thread.sleep(250L);
+		out.write(0, "xyz".getBytes("ASCII"), 0, 3);
+		assertEquals(3L, TermiosAPI.INSTANCE.write(master, out, new NativeLong(3)).longValue());
+		
+		assertTrue(received.await(5L, TimeUnit.SECONDS));
+		assertEquals("abcdef", frames.get(0));
+		assertEquals("xyz", frames.get(1));
+		
+		//Back to waking on the first byte.
+		assertTrue(port.setReadTiming(null));
+		assertEquals("0", port.getProperties().get(ISerialPort.PROPERTY_VTIME));
+		assertTrue(port.close());
+	}
+	
+	@Test
+	public void reconfigureCarriesReadTiming() throws Exception {
+		port = openPseudoTerminal();
+		assertTrue(port.open());
+		
+		final ReadTiming timing = new ReadTiming(200, 0, 0);
+		assertTrue(port.reconfigure(new comm.LineSettings.Builder()
+			.setBaudRate(19200)
+			.setReadTiming(timing)
+		));
+		assertEquals(19200, port.getBaudRate());
+		assertEquals(timing, port.getReadTiming());
+		assertEquals("255", port.getProperties().get(ISerialPort.PROPERTY_VMIN));
+		assertEquals("2", port.getProperties().get(ISerialPort.PROPERTY_VTIME));
+		
+		//A later change to the rate alone leaves the timing in place.
+		assertTrue(port.reconfigure(new comm.LineSettings.Builder().setBaudRate(9600)));
+		assertEquals("2", port.getProperties().get(ISerialPort.PROPERTY_VTIME));
+		
+		assertTrue(port.reconfigure(new comm.LineSettings.Builder().setReadTiming(null)));
+		assertNull(port.getReadTiming());
+		assertEquals("1", port.getProperties().get(ISerialPort.PROPERTY_VMIN));
+		assertEquals("0", port.getProperties().get(ISerialPort.PROPERTY_VTIME));
+		assertTrue(port.close());
+	}
+}
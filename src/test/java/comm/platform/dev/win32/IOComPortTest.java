@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.platform.dev.win32;
+
+import java.util.concurrent.ThreadFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class IOComPortTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+	
+	@Test
+	public void partialWritesResumeWhereTheyLeftOff() {
+		//A 10 byte write that completes as 4, then 3, then 3.
+		int progress = IOComPort.writeProgress(10, 0, 0);
+		assertEquals(0, progress);
+		
+		progress = IOComPort.writeProgress(10, progress, 4);
+		assertEquals(4, progress);
+		
+		//The resubmitted write starts at the progress it was handed.
+		assertEquals(4, IOComPort.writeProgress(10, progress, 0));
+		progress = IOComPort.writeProgress(10, progress, 3);
+		assertEquals(7, progress);
+		
+		progress = IOComPort.writeProgress(10, progress, 3);
+		assertEquals(10, progress);
+	}
+	
+	@Test
+	public void serviceThreadsDontKeepTheVMAlive() {
+		final Runnable nothing = new Runnable() {
+			@Override
+			public void run() {
+			}
+		};
+		assertTrue(IOComPort.newDefaultThreadFactory().newThread(nothing).isDaemon());
+		
+		final ThreadFactory hinted = PlatformHint.hint(PlatformHint.IOCompletionPortThreadFactory);
+		assertTrue(hinted.newThread(nothing).isDaemon());
+	}
+	
+	@Test
+	public void writeProgressStaysWithinTheBuffer() {
+		assertEquals(10, IOComPort.writeProgress(10, 8, 5));
+		assertEquals(10, IOComPort.writeProgress(10, 12, 0));
+		assertEquals(10, IOComPort.writeProgress(10, Integer.MAX_VALUE, Integer.MAX_VALUE));
+		assertEquals(3, IOComPort.writeProgress(10, -1, 3));
+		assertEquals(5, IOComPort.writeProgress(10, 5, -2));
+		assertEquals(0, IOComPort.writeProgress(0, 0, 4));
+	}
+}
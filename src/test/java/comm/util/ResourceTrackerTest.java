@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2011 David Hoyt
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, 
+ * are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list 
+ * of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this 
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ *  
+ * The names of any contributors may not be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, 
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package comm.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author David Hoyt
+ */
+public class ResourceTrackerTest {
+	//<editor-fold defaultstate="collapsed" desc="Init">
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+	}
+
+	@Before
+	public void setUp() {
+	}
+
+	@After
+	public void tearDown() {
+	}
+	//</editor-fold>
+
+	@Test
+	public void explicitCleanRunsOnce() {
+		final AtomicInteger runs = new AtomicInteger();
+		final Object resource = new Object();
+		int live = ResourceTracker.getLiveCount();
+		long leaked = ResourceTracker.getLeakedCount();
+		
+		ResourceTracker.ICleanable c = ResourceTracker.register(resource, new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, "test");
+		assertEquals(live + 1, ResourceTracker.getLiveCount());
+		
+		c.clean();
+		c.clean();
+		assertEquals(1, runs.get());
+		assertEquals(live, ResourceTracker.getLiveCount());
+		assertEquals(leaked, ResourceTracker.getLeakedCount());
+	}
+	
+	@Test
+	public void unreachableObjectsAreCleanedAndReported() throws Exception {
+		final CountDownLatch cleaned = new CountDownLatch(1);
+		long leaked = ResourceTracker.getLeakedCount();
+		
+		register(cleaned);
+		for(int i = 0; i < 50 && !cleaned.await(100, TimeUnit.MILLISECONDS); ++i)
+			System.gc();
+		
+		assertEquals(0L, cleaned.getCount());
+		assertEquals(leaked + 1, ResourceTracker.getLeakedCount());
+		assertTrue(ResourceTracker.getLeakReport().contains("leaked-test"));
+	}
+	
+	private static void register(final CountDownLatch cleaned) {
+		ResourceTracker.register(new byte[1024], new Runnable() {
+			@Override
+			public void run() {
+				cleaned.countDown();
+			}
+		}, "leaked-test");
+	}
+}